@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.dom.DOMBuilder;
+import com.siemens.ct.exi.main.api.dom.DOMWriter;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.stream.StAXDecoder;
+import com.siemens.ct.exi.main.api.stream.StAXEncoder;
+import com.siemens.ct.exi.main.api.xmlpull.EXIPullParser;
+import com.siemens.ct.exi.main.api.xmlpull.EXISerializer;
+import com.siemens.ct.exi.main.helpers.SharedImportsEntityResolver;
+
+/**
+ * Encode and decode throughput of every API binding (SAX, StAX, DOM,
+ * XmlPull) per coding mode, schema-less and schema-informed, for documents
+ * of the W3C, XSLT and general test data.
+ * 
+ * <p>
+ * Input for the encoders is prepared once: SAX and XmlPull replay recorded
+ * SAX events, DOM encodes a parsed document. The StAX encoder pulls from an
+ * <code>XMLStreamReader</code> and therefore includes StAX parsing. Each
+ * decoder reads the stream its own binding encoded and consumes all events
+ * without writing XML, pull decoders the way a typical application does:
+ * names and attributes of elements and character data.
+ * </p>
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar APIBindingBenchmark -p api=SAX,DOM
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APIBindingBenchmark {
+
+	@Param({ "SAX", "StAX", "DOM", "XmlPull" })
+	public String api;
+
+	@Param({ "BIT_PACKED", "BYTE_PACKED", "PRE_COMPRESSION", "COMPRESSION" })
+	public CodingMode codingMode;
+
+	@Param({ "false", "true" })
+	public boolean schemaInformed;
+
+	@Param({ "W3C/PrimerNotebook/notebook.xml", "W3C/XMLSample/XMLSample.xml",
+			"XSLT/Examples/expand.xsl", "general/person.xml",
+			"general/randj.xml" })
+	public String document;
+
+	Binding binding;
+	byte[] exi;
+	ByteArrayOutputStream baos;
+
+	/* encodes and decodes one document with one API */
+	static abstract class Binding {
+		abstract void encode(ByteArrayOutputStream os) throws Exception;
+
+		abstract int decode(ByteArrayInputStream is) throws Exception;
+	}
+
+	/**
+	 * Returns the schema of a test document, <code>name.xsd</code> next to
+	 * <code>name.xml</code> and the XSLT 2.0 schema for stylesheets.
+	 * 
+	 * @param document
+	 *            document relative to the data directory
+	 * @return schema relative to the data directory
+	 */
+	static String getSchema(String document) {
+		if (document.startsWith("XSLT/")) {
+			return "XSLT/schema-for-xslt20.xsd";
+		}
+		return document.substring(0, document.lastIndexOf('.')) + ".xsd";
+	}
+
+	static EXIFactory createFactory(CodingMode codingMode, String xsd)
+			throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(codingMode);
+		if (xsd != null) {
+			// W3C schemas imported by the XSLT schema from local copies
+			SharedImportsEntityResolver resolver = new SharedImportsEntityResolver();
+			String[] local = { "xml.xsd", "XMLSchema.xsd", "XMLSchema.dtd",
+					"datatypes.dtd" };
+			for (String name : local) {
+				resolver.addLocation("http://www.w3.org/2001/" + name,
+						BenchmarkData.get("W3C/xsd/" + name));
+			}
+			factory.setGrammars(GrammarFactory.newInstance().createGrammars(
+					xsd, resolver));
+		}
+		return factory;
+	}
+
+	static Binding createBinding(String api, EXIFactory factory, String xml)
+			throws Exception {
+		if ("SAX".equals(api)) {
+			return new SAXBinding(factory, xml);
+		} else if ("StAX".equals(api)) {
+			return new StAXBinding(factory, xml);
+		} else if ("DOM".equals(api)) {
+			return new DOMBinding(factory, xml);
+		} else if ("XmlPull".equals(api)) {
+			return new XmlPullBinding(factory, xml);
+		}
+		throw new IllegalArgumentException("Unknown API " + api);
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		String xml = BenchmarkData.get(document);
+		EXIFactory factory = createFactory(codingMode,
+				schemaInformed ? BenchmarkData.get(getSchema(document)) : null);
+
+		binding = createBinding(api, factory, xml);
+
+		baos = new ByteArrayOutputStream();
+		binding.encode(baos);
+		exi = baos.toByteArray();
+	}
+
+	@Benchmark
+	public int encode() throws Exception {
+		baos.reset();
+		binding.encode(baos);
+		return baos.size();
+	}
+
+	@Benchmark
+	public int decode() throws Exception {
+		return binding.decode(new ByteArrayInputStream(exi));
+	}
+
+	static class SAXBinding extends Binding {
+		final SAXEventRecording recording;
+		final SAXEncoder encoder;
+		final XMLReader decoder;
+		final CountingHandler handler = new CountingHandler();
+
+		SAXBinding(EXIFactory factory, String xml) throws Exception {
+			recording = SAXEventRecording.record(xml);
+			SAXFactory saxFactory = new SAXFactory(factory);
+			encoder = saxFactory.createEXIWriter();
+			decoder = saxFactory.createEXIReader();
+			decoder.setContentHandler(handler);
+		}
+
+		void encode(ByteArrayOutputStream os) throws Exception {
+			encoder.reset(os);
+			recording.replay(encoder);
+		}
+
+		int decode(ByteArrayInputStream is) throws Exception {
+			handler.count = 0;
+			decoder.parse(new InputSource(is));
+			return handler.count;
+		}
+	}
+
+	static class StAXBinding extends Binding {
+		final byte[] xml;
+		final XMLInputFactory xmlInputFactory;
+		final StAXEncoder encoder;
+		final StAXDecoder decoder;
+
+		StAXBinding(EXIFactory factory, String xml) throws Exception {
+			this.xml = Files.readAllBytes(Paths.get(xml));
+			xmlInputFactory = XMLInputFactory.newInstance();
+			xmlInputFactory.setProperty(
+					XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+					Boolean.FALSE);
+			xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD,
+					Boolean.FALSE);
+			encoder = new StAXEncoder(factory);
+			decoder = new StAXDecoder(factory);
+		}
+
+		void encode(ByteArrayOutputStream os) throws Exception {
+			XMLStreamReader reader = xmlInputFactory
+					.createXMLStreamReader(new ByteArrayInputStream(xml));
+			encoder.setOutputStream(os);
+			encoder.encode(reader);
+			reader.close();
+		}
+
+		int decode(ByteArrayInputStream is) throws Exception {
+			decoder.setInputStream(is);
+			int count = 0;
+			while (decoder.hasNext()) {
+				switch (decoder.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					count += decoder.getName().getLocalPart().length();
+					for (int i = 0; i < decoder.getAttributeCount(); i++) {
+						count += decoder.getAttributeName(i).getLocalPart()
+								.length()
+								+ decoder.getAttributeValue(i).length();
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+					count += decoder.getTextLength();
+					break;
+				}
+			}
+			return count;
+		}
+	}
+
+	static class DOMBinding extends Binding {
+		final Document document;
+		final DOMWriter writer;
+		final DOMBuilder builder;
+
+		DOMBinding(EXIFactory factory, String xml) throws Exception {
+			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+			dbf.setNamespaceAware(true);
+			document = dbf.newDocumentBuilder().parse(xml);
+			writer = new DOMWriter(factory);
+			builder = new DOMBuilder(factory);
+		}
+
+		void encode(ByteArrayOutputStream os) throws Exception {
+			writer.setOutput(os);
+			writer.encode(document);
+		}
+
+		int decode(ByteArrayInputStream is) throws Exception {
+			return builder.parse(is).getDocumentElement().getChildNodes()
+					.getLength();
+		}
+	}
+
+	static class XmlPullBinding extends Binding {
+		final SAXEventRecording recording;
+		final SerializerHandler handler;
+		final EXIPullParser parser;
+
+		XmlPullBinding(EXIFactory factory, String xml) throws Exception {
+			recording = SAXEventRecording.record(xml);
+			handler = new SerializerHandler(new EXISerializer(factory));
+			parser = new EXIPullParser(factory);
+		}
+
+		void encode(ByteArrayOutputStream os) throws Exception {
+			handler.serializer.reset(os);
+			recording.replay(handler);
+		}
+
+		int decode(ByteArrayInputStream is) throws Exception {
+			parser.setInput(is, null);
+			int count = 0;
+			int event;
+			while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+				if (event == XmlPullParser.START_TAG) {
+					count += parser.getName().length();
+					for (int i = 0; i < parser.getAttributeCount(); i++) {
+						count += parser.getAttributeName(i).length()
+								+ parser.getAttributeValue(i).length();
+					}
+				} else if (event == XmlPullParser.TEXT) {
+					count += parser.getText().length();
+				}
+			}
+			return count;
+		}
+	}
+
+	/* counts elements, keeps the decoder from being optimized away */
+	static class CountingHandler extends DefaultHandler {
+		int count;
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) {
+			count++;
+		}
+	}
+
+	/* drives an XmlPull serializer with SAX events */
+	static class SerializerHandler extends DefaultHandler {
+		final EXISerializer serializer;
+
+		SerializerHandler(EXISerializer serializer) {
+			this.serializer = serializer;
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			try {
+				serializer.startDocument(null, null);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			try {
+				serializer.endDocument();
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri)
+				throws SAXException {
+			try {
+				serializer.setPrefix(prefix, uri);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) throws SAXException {
+			try {
+				serializer.startTag(uri, localName);
+				for (int i = 0; i < attributes.getLength(); i++) {
+					serializer.attribute(attributes.getURI(i),
+							attributes.getLocalName(i), attributes.getValue(i));
+				}
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+				throws SAXException {
+			try {
+				serializer.endTag(uri, localName);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			try {
+				serializer.text(ch, start, length);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+	}
+
+}
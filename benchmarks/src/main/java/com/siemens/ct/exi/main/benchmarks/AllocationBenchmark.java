@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+
+/**
+ * Allocation of the coders per document, meant to be run with the GC
+ * profiler (<code>-prof gc</code>, see <code>AllocationBudget</code>) whose
+ * <code>gc.alloc.rate.norm</code> is the number of bytes allocated per
+ * operation. Coders, buffers and input are set up once, so the measured
+ * allocation is the one of the coding itself (event values, names,
+ * attribute containers, ...).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+	@Param({ "SAX", "StAX", "DOM", "XmlPull" })
+	public String api;
+
+	@Param({ "false", "true" })
+	public boolean schemaInformed;
+
+	@Param({ "W3C/XMLSample/XMLSample.xml", "general/randj.xml" })
+	public String document;
+
+	APIBindingBenchmark.Binding binding;
+	byte[] exi;
+	ByteArrayOutputStream baos;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		String xml = BenchmarkData.get(document);
+		EXIFactory factory = APIBindingBenchmark.createFactory(
+				CodingMode.BIT_PACKED,
+				schemaInformed ? BenchmarkData.get(APIBindingBenchmark
+						.getSchema(document)) : null);
+		binding = APIBindingBenchmark.createBinding(api, factory, xml);
+
+		baos = new ByteArrayOutputStream();
+		binding.encode(baos);
+		exi = baos.toByteArray();
+		// output buffer at its final size
+		baos.reset();
+	}
+
+	@Benchmark
+	public int encode() throws Exception {
+		baos.reset();
+		binding.encode(baos);
+		return baos.size();
+	}
+
+	@Benchmark
+	public int decode() throws Exception {
+		return binding.decode(new ByteArrayInputStream(exi));
+	}
+
+}
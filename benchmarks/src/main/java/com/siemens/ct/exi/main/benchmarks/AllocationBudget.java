@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs <code>AllocationBenchmark</code> with the GC profiler and checks the
+ * bytes allocated per event against a budget file. An event is a SAX event
+ * of the document (element, characters, prefix mapping, ...), the same
+ * denominator for every API.
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar com.siemens.ct.exi.main.benchmarks.AllocationBudget [-record] [-allowMissing] [-budget &lt;file&gt;] [-tolerance &lt;fraction&gt;] [JMH options]
+ * </pre>
+ * 
+ * <p>
+ * With <code>-record</code> the measured values become the new budget.
+ * Otherwise the run fails (exit code 1) if a benchmark allocates more per
+ * event than its budget plus tolerance, or if it has no budget. With
+ * <code>-allowMissing</code> benchmarks without budget are only reported. A
+ * missing or empty budget file fails before any benchmark runs.
+ * </p>
+ */
+public final class AllocationBudget {
+
+	public static final String DEFAULT_BUDGET_FILE = "allocation-budget.properties";
+	public static final String DEFAULT_RESULT_FILE = "jmh-allocation.json";
+	/* allowed noise above the budget */
+	public static final double DEFAULT_TOLERANCE = 0.05;
+
+	static final String ALLOCATION_NORM = "gc.alloc.rate.norm";
+
+	private AllocationBudget() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		String budgetFile = DEFAULT_BUDGET_FILE;
+		double tolerance = DEFAULT_TOLERANCE;
+		boolean record = false;
+		boolean allowMissing = false;
+		List<String> jmhArgs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("-record".equals(args[i])) {
+				record = true;
+			} else if ("-allowMissing".equals(args[i])) {
+				allowMissing = true;
+			} else if ("-budget".equals(args[i])) {
+				budgetFile = args[++i];
+			} else if ("-tolerance".equals(args[i])) {
+				tolerance = Double.parseDouble(args[++i]);
+			} else {
+				jmhArgs.add(args[i]);
+			}
+		}
+
+		File file = new File(budgetFile);
+		Map<String, Double> budget = read(file);
+		if (!record && budget.isEmpty()) {
+			// nothing to check against, do not pass silently
+			System.out.println("[NO BUDGET] " + file
+					+ " has no entries, record a baseline with -record");
+			System.exit(1);
+		}
+
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(jmhArgs
+						.toArray(new String[jmhArgs.size()])))
+				.include(AllocationBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(DEFAULT_RESULT_FILE).build();
+		Map<String, Double> measured = measure(new Runner(options).run());
+
+		if (record) {
+			write(measured, file);
+			System.out.println("Recorded allocation budget " + file);
+			return;
+		}
+		List<String> violations = check(measured, budget, tolerance,
+				allowMissing);
+		for (String violation : violations) {
+			System.out.println(violation);
+		}
+		if (!violations.isEmpty()) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Computes bytes per event for each run.
+	 * 
+	 * @param results
+	 *            JMH results of <code>AllocationBenchmark</code>
+	 * @return bytes per event by budget key
+	 * @throws Exception
+	 *             if a document cannot be read
+	 */
+	static Map<String, Double> measure(Collection<RunResult> results)
+			throws Exception {
+		Map<String, Integer> events = new HashMap<String, Integer>();
+		Map<String, Double> measured = new TreeMap<String, Double>();
+		for (RunResult r : results) {
+			BenchmarkParams params = r.getParams();
+			String document = params.getParam("document");
+			Integer n = events.get(document);
+			if (n == null) {
+				n = SAXEventRecording.record(BenchmarkData.get(document))
+						.size();
+				events.put(document, n);
+			}
+			Result norm = null;
+			for (Map.Entry<String, Result> e : r.getSecondaryResults()
+					.entrySet()) {
+				// older JMH versions prefix the label
+				if (e.getKey().endsWith(ALLOCATION_NORM)) {
+					norm = e.getValue();
+				}
+			}
+			if (norm == null) {
+				throw new IllegalStateException("No " + ALLOCATION_NORM
+						+ " for " + params.getBenchmark()
+						+ ", GC profiler not available?");
+			}
+			double perEvent = norm.getScore() / n;
+			String key = getKey(params);
+			measured.put(key, perEvent);
+			System.out.println(String.format(Locale.ENGLISH,
+					"%-60s %10.1f bytes/event", key, perEvent));
+		}
+		return measured;
+	}
+
+	/* e.g. decode.StAX.schema-informed.general/randj.xml */
+	static String getKey(BenchmarkParams params) {
+		String benchmark = params.getBenchmark();
+		return benchmark.substring(benchmark.lastIndexOf('.') + 1)
+				+ "."
+				+ params.getParam("api")
+				+ "."
+				+ (Boolean.parseBoolean(params.getParam("schemaInformed")) ? "schema-informed"
+						: "schema-less") + "." + params.getParam("document");
+	}
+
+	static List<String> check(Map<String, Double> measured,
+			Map<String, Double> budget, double tolerance, boolean allowMissing) {
+		List<String> violations = new ArrayList<String>();
+		for (Map.Entry<String, Double> e : measured.entrySet()) {
+			Double limit = budget.get(e.getKey());
+			if (limit == null) {
+				if (allowMissing) {
+					System.out.println("[NO BUDGET] " + e.getKey());
+				} else {
+					violations.add("[NO BUDGET] " + e.getKey()
+							+ ", record it with -record");
+				}
+			} else if (e.getValue() > limit * (1 + tolerance)) {
+				violations.add(String.format(Locale.ENGLISH,
+						"[BUDGET EXCEEDED] %s: %.1f bytes/event, budget %.1f",
+						e.getKey(), e.getValue(), limit));
+			}
+		}
+		return violations;
+	}
+
+	static Map<String, Double> read(File file) throws IOException {
+		Map<String, Double> budget = new HashMap<String, Double>();
+		if (!file.isFile()) {
+			return budget;
+		}
+		Properties p = new Properties();
+		InputStream is = new FileInputStream(file);
+		try {
+			p.load(is);
+		} finally {
+			is.close();
+		}
+		for (String key : p.stringPropertyNames()) {
+			budget.put(key, Double.valueOf(p.getProperty(key)));
+		}
+		return budget;
+	}
+
+	static void write(Map<String, Double> measured, File file)
+			throws IOException {
+		// merge, runs restricted by JMH options keep the other entries
+		Map<String, Double> budget = new TreeMap<String, Double>(read(file));
+		budget.putAll(measured);
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file), StandardCharsets.ISO_8859_1));
+		try {
+			pw.println("# Bytes allocated per SAX event, recorded by AllocationBudget -record");
+			pw.println("# <benchmark>.<api>.<schema-less|schema-informed>.<document>=<bytes>");
+			for (Map.Entry<String, Double> e : budget.entrySet()) {
+				pw.println(String.format(Locale.ENGLISH, "%s=%.1f",
+						e.getKey(), e.getValue()));
+			}
+		} finally {
+			pw.close();
+		}
+	}
+
+}
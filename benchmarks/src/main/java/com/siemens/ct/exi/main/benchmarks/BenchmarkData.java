@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Locates the test data of the main project. Benchmarks are expected to run
+ * from the <code>benchmarks</code> directory, other locations can be set with
+ * <code>-Dexi.data=&lt;dir&gt;</code>.
+ */
+public final class BenchmarkData {
+
+	public static final String DATA_DIRECTORY = System.getProperty(
+			"exi.data", "../data");
+
+	private BenchmarkData() {
+	}
+
+	public static String get(String relativePath) {
+		File f = new File(DATA_DIRECTORY, relativePath);
+		if (!f.isFile()) {
+			throw new IllegalStateException("Missing benchmark data " + f
+					+ " (set -Dexi.data=<dir>)");
+		}
+		return f.getPath();
+	}
+
+	/**
+	 * Lists the XML files of a data directory in name order.
+	 * 
+	 * @param relativePath
+	 *            directory relative to the data directory
+	 * @return paths of the <code>*.xml</code> files
+	 */
+	public static List<String> list(String relativePath) {
+		return list(relativePath, ".xml");
+	}
+
+	/**
+	 * Lists the files of a data directory with the given extension in name
+	 * order.
+	 * 
+	 * @param relativePath
+	 *            directory relative to the data directory
+	 * @param extension
+	 *            file extension, e.g. <code>.xsl</code>
+	 * @return paths of the files
+	 */
+	public static List<String> list(String relativePath, String extension) {
+		File dir = new File(DATA_DIRECTORY, relativePath);
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IllegalStateException("Missing benchmark data " + dir
+					+ " (set -Dexi.data=<dir>)");
+		}
+		Arrays.sort(files);
+		List<String> xmls = new ArrayList<String>();
+		for (File f : files) {
+			if (f.isFile() && f.getName().endsWith(extension)) {
+				xmls.add(f.getPath());
+			}
+		}
+		return xmls;
+	}
+
+}
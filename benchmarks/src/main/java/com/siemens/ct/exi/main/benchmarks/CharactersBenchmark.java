@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+
+/**
+ * Encodes the <code>data/general</code> corpus with character data reported
+ * as recorded or split into small chunks. Run with <code>-prof gc</code> to
+ * compare the allocation per operation (<code>gc.alloc.rate.norm</code>) of
+ * the coalescing encoder with one encoding every callback on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharactersBenchmark {
+
+	/* the former SAXEncoder behavior, one String and value per callback */
+	static class PerCallbackEncoder extends SAXEncoder {
+		PerCallbackEncoder(EXIFactory factory) throws EXIException {
+			super(factory);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			try {
+				encoder.encodeCharacters(new StringValue(new String(ch, start,
+						length)));
+			} catch (Exception e) {
+				throw new SAXException("characters", e);
+			}
+		}
+	}
+
+	@Param({ "coalescing", "perCallback" })
+	public String encoder;
+
+	/* 0 keeps the chunks reported by the parser */
+	@Param({ "0", "16" })
+	public int maxChunk;
+
+	List<SAXEventRecording> corpus;
+	ByteArrayOutputStream baos;
+	SAXEncoder saxEncoder;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		corpus = new ArrayList<SAXEventRecording>();
+		for (String xml : BenchmarkData.list("general")) {
+			try {
+				corpus.add(SAXEventRecording.record(xml));
+			} catch (Exception e) {
+				// not well-formed on purpose or external entities missing
+			}
+		}
+		baos = new ByteArrayOutputStream(1 << 16);
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		saxEncoder = "perCallback".equals(encoder) ? new PerCallbackEncoder(
+				factory) : new SAXEncoder(factory);
+	}
+
+	@Benchmark
+	public int encodeCorpus() throws Exception {
+		int size = 0;
+		for (int i = 0; i < corpus.size(); i++) {
+			baos.reset();
+			saxEncoder.reset(baos);
+			corpus.get(i).replay(saxEncoder, maxChunk);
+			size += baos.size();
+		}
+		return size;
+	}
+
+}
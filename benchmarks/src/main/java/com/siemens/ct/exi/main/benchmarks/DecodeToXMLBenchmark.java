@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.xml.EXIToXMLWriter;
+
+/**
+ * EXI to XML text through a JAXP identity transformer compared to the
+ * native <code>EXIToXMLWriter</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeToXMLBenchmark {
+
+	@Param({ "general/person.xml", "general/randj.xml" })
+	public String document;
+
+	EXIFactory factory;
+	byte[] exi;
+	ByteArrayOutputStream baos;
+	TransformerFactory tf;
+	SAXFactory saxFactory;
+	EXIToXMLWriter writer;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		factory = DefaultEXIFactory.newInstance();
+		SAXEncoder encoder = new SAXEncoder(factory);
+		baos = new ByteArrayOutputStream();
+		encoder.setOutputStream(baos);
+		SAXEventRecording.record(BenchmarkData.get(document)).replay(encoder);
+		exi = baos.toByteArray();
+
+		tf = TransformerFactory.newInstance();
+		saxFactory = new SAXFactory(factory);
+		writer = new EXIToXMLWriter(factory);
+	}
+
+	@Benchmark
+	public int transformer() throws Exception {
+		baos.reset();
+		Transformer transformer = tf.newTransformer();
+		SAXSource exiSource = new SAXSource(new InputSource(
+				new ByteArrayInputStream(exi)));
+		exiSource.setXMLReader(saxFactory.createEXIReader());
+		transformer.transform(exiSource, new StreamResult(baos));
+		return baos.size();
+	}
+
+	@Benchmark
+	public int writer() throws Exception {
+		baos.reset();
+		writer.decode(new ByteArrayInputStream(exi), baos);
+		return baos.size();
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.EXIResult;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+
+/**
+ * Encoding small (~1 KB) messages with a new encoder per message compared to
+ * one encoder that is reset per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderReuseBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean schemaInformed;
+
+	EXIFactory factory;
+	SAXEventRecording message;
+	ByteArrayOutputStream baos;
+	SAXEncoder reused;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		factory = DefaultEXIFactory.newInstance();
+		if (schemaInformed) {
+			factory.setGrammars(GrammarFactory.newInstance().createGrammars(
+					BenchmarkData.get("general/person.xsd")));
+		}
+		message = SAXEventRecording.record(BenchmarkData
+				.get("general/person.xml"));
+		baos = new ByteArrayOutputStream(2048);
+		reused = new SAXEncoder(factory);
+	}
+
+	@Benchmark
+	public int newEncoderPerMessage() throws Exception {
+		baos.reset();
+		EXIResult exiResult = new EXIResult(factory);
+		exiResult.setOutputStream(baos);
+		message.replay(exiResult.getHandler());
+		return baos.size();
+	}
+
+	@Benchmark
+	public int resetEncoder() throws Exception {
+		baos.reset();
+		reused.reset(baos);
+		message.replay(reused);
+		return baos.size();
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.xml.FastXMLEncoder;
+
+/**
+ * XML to EXI encoding with a SAX parser driving the <code>SAXEncoder</code>
+ * compared to the built-in tokenizer of <code>FastXMLEncoder</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastXMLEncodeBenchmark {
+
+	@Param({ "general/person.xml", "general/randj.xml" })
+	public String document;
+
+	byte[] xml;
+	ByteArrayOutputStream baos;
+	XMLReader xmlReader;
+	SAXEncoder saxEncoder;
+	FastXMLEncoder fastEncoder;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		xml = Files.readAllBytes(Paths.get(BenchmarkData.get(document)));
+		baos = new ByteArrayOutputStream(xml.length);
+		xmlReader = XMLReaderFactory.createXMLReader();
+		saxEncoder = new SAXEncoder(factory);
+		xmlReader.setContentHandler(saxEncoder);
+		fastEncoder = new FastXMLEncoder(factory);
+	}
+
+	@Benchmark
+	public int saxParser() throws Exception {
+		baos.reset();
+		saxEncoder.reset(baos);
+		xmlReader.parse(new InputSource(new ByteArrayInputStream(xml)));
+		return baos.size();
+	}
+
+	@Benchmark
+	public int fastTokenizer() throws Exception {
+		baos.reset();
+		fastEncoder.encode(xml, 0, xml.length, baos);
+		return baos.size();
+	}
+
+}
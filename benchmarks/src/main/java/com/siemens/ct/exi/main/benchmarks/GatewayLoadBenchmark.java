@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.http.EXIGateway;
+
+/**
+ * Load test of the <code>EXIGateway</code>: concurrent local clients post
+ * XML for EXI and EXI for XML over keep-alive connections. The number of
+ * clients is the JMH thread count (<code>-t</code>), the score is requests
+ * per second over all clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class GatewayLoadBenchmark {
+
+	@Param({ "general/person.xml", "general/randj.xml" })
+	public String document;
+
+	EXIGateway gateway;
+	URL url;
+	byte[] xml;
+	byte[] exi;
+
+	@State(Scope.Thread)
+	public static class Client {
+		final byte[] buffer = new byte[8192];
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		xml = Files.readAllBytes(Paths.get(BenchmarkData.get(document)));
+		SAXEncoder encoder = new SAXEncoder(factory);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.setOutputStream(baos);
+		SAXEventRecording.record(BenchmarkData.get(document)).replay(encoder);
+		exi = baos.toByteArray();
+
+		gateway = new EXIGateway(factory);
+		gateway.start(new InetSocketAddress("localhost", 0));
+		url = new URL("http://localhost:" + gateway.getPort() + "/");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (gateway.getFailureCount() > 0) {
+			throw new IllegalStateException(gateway.getFailureCount()
+					+ " failed requests");
+		}
+		gateway.stop(0);
+	}
+
+	protected long post(Client client, String contentType, String accept,
+			byte[] body) throws Exception {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		conn.setFixedLengthStreamingMode(body.length);
+		conn.setRequestProperty("Content-Type", contentType);
+		conn.setRequestProperty("Accept", accept);
+		OutputStream os = conn.getOutputStream();
+		os.write(body);
+		os.close();
+		if (conn.getResponseCode() != 200) {
+			throw new IllegalStateException("HTTP " + conn.getResponseCode());
+		}
+		// read the body completely, keeps the connection alive
+		long n = 0;
+		InputStream is = conn.getInputStream();
+		int len;
+		while ((len = is.read(client.buffer)) != -1) {
+			n += len;
+		}
+		is.close();
+		return n;
+	}
+
+	@Benchmark
+	public long encode(Client client) throws Exception {
+		return post(client, EXIGateway.MEDIA_TYPE_XML,
+				EXIGateway.MEDIA_TYPE_EXI, xml);
+	}
+
+	@Benchmark
+	public long decode(Client client) throws Exception {
+		return post(client, EXIGateway.MEDIA_TYPE_EXI,
+				EXIGateway.MEDIA_TYPE_XML, exi);
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+
+/**
+ * Encodes and decodes a corpus with schema-informed grammars, run with
+ * several threads (JMH <code>-t</code>, see <code>ScalingHarness</code>).
+ * 
+ * <p>
+ * With <code>grammars=shared</code> all threads use one
+ * <code>EXIFactory</code> and its <code>Grammars</code>, with
+ * <code>grammars=private</code> every thread compiles its own copy of the
+ * same schema. Coders are per thread in both cases, so the difference
+ * between the two at equal thread count is the cost of sharing the grammar
+ * structures (contention, false sharing of written fields); what remains
+ * below linear scaling for private grammars is memory bandwidth and the
+ * machine.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrammarScalingBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Corpus {
+
+		@Param({ "XSLT", "XMLSample" })
+		public String corpus;
+
+		@Param({ "shared", "private" })
+		public String grammars;
+
+		String xsd;
+		EXIFactory sharedFactory;
+		final List<SAXEventRecording> documents = new ArrayList<SAXEventRecording>();
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			List<String> paths;
+			if ("XSLT".equals(corpus)) {
+				xsd = BenchmarkData.get("XSLT/schema-for-xslt20.xsd");
+				paths = BenchmarkData.list("XSLT/Examples", ".xsl");
+			} else if ("XMLSample".equals(corpus)) {
+				xsd = BenchmarkData.get("W3C/XMLSample/XMLSample.xsd");
+				paths = BenchmarkData.list("W3C/XMLSample");
+			} else {
+				throw new IllegalArgumentException("Unknown corpus " + corpus);
+			}
+			sharedFactory = createFactory();
+
+			// documents the schema-informed encoder rejects are left out
+			SAXEncoder encoder = new SAXFactory(sharedFactory)
+					.createEXIWriter();
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			for (String path : paths) {
+				SAXEventRecording recording = SAXEventRecording.record(path);
+				try {
+					baos.reset();
+					encoder.reset(baos);
+					recording.replay(encoder);
+					documents.add(recording);
+				} catch (Exception e) {
+					System.err.println("Skipping " + path + ": " + e);
+				}
+			}
+			if (documents.isEmpty()) {
+				throw new IllegalStateException("No documents in corpus "
+						+ corpus);
+			}
+		}
+
+		EXIFactory createFactory() throws Exception {
+			return APIBindingBenchmark.createFactory(CodingMode.BIT_PACKED,
+					xsd);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Coders {
+
+		SAXEncoder encoder;
+		XMLReader decoder;
+		ByteArrayOutputStream baos;
+		final List<byte[]> exi = new ArrayList<byte[]>();
+
+		@Setup(Level.Trial)
+		public void setup(Corpus corpus) throws Exception {
+			EXIFactory factory = "shared".equals(corpus.grammars) ? corpus.sharedFactory
+					: corpus.createFactory();
+			SAXFactory saxFactory = new SAXFactory(factory);
+			encoder = saxFactory.createEXIWriter();
+			decoder = saxFactory.createEXIReader();
+			decoder.setContentHandler(new DefaultHandler());
+
+			// streams to decode, thread-local like the coders
+			baos = new ByteArrayOutputStream();
+			for (SAXEventRecording recording : corpus.documents) {
+				baos.reset();
+				encoder.reset(baos);
+				recording.replay(encoder);
+				exi.add(baos.toByteArray());
+			}
+		}
+	}
+
+	@Benchmark
+	public int encode(Corpus corpus, Coders coders) throws Exception {
+		int n = 0;
+		for (SAXEventRecording recording : corpus.documents) {
+			coders.baos.reset();
+			coders.encoder.reset(coders.baos);
+			recording.replay(coders.encoder);
+			n += coders.baos.size();
+		}
+		return n;
+	}
+
+	@Benchmark
+	public int decode(Coders coders) throws Exception {
+		for (byte[] exi : coders.exi) {
+			coders.decoder.parse(new InputSource(new ByteArrayInputStream(
+					exi)));
+		}
+		return coders.exi.size();
+	}
+
+}
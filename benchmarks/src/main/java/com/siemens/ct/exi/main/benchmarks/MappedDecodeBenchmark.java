@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.util.MappedFileInputStream;
+
+/**
+ * Decodes a generated EXI file of <code>sizeMB</code> megabytes from a plain
+ * <code>FileInputStream</code>, a <code>BufferedInputStream</code> and a
+ * memory mapped file. Divide the file size by the reported time for the
+ * throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedDecodeBenchmark {
+
+	@Param({ "stream", "buffered", "mapped" })
+	public String input;
+
+	@Param({ "64" })
+	public int sizeMB;
+
+	EXIFactory factory;
+	File exi;
+	XMLReader reader;
+
+	/* counts elements so that decoding cannot be optimized away */
+	static class CountingHandler extends DefaultHandler {
+		long elements;
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) {
+			elements++;
+		}
+	}
+
+	CountingHandler handler = new CountingHandler();
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		factory = DefaultEXIFactory.newInstance();
+		exi = File.createTempFile("mapped-benchmark", ".exi");
+		exi.deleteOnExit();
+
+		// generate records until the EXI file has the requested size
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(exi));
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(os);
+		AttributesImpl atts = new AttributesImpl();
+		encoder.startDocument();
+		encoder.startElement("", "records", "records", atts);
+		long target = (long) sizeMB << 20;
+		for (long i = 0; exi.length() + (1 << 16) < target; i++) {
+			atts.clear();
+			atts.addAttribute("", "id", "id", "CDATA", Long.toString(i));
+			encoder.startElement("", "record", "record", atts);
+			atts.clear();
+			encoder.startElement("", "name", "name", atts);
+			char[] name = ("name-" + i).toCharArray();
+			encoder.characters(name, 0, name.length);
+			encoder.endElement("", "name", "name");
+			encoder.startElement("", "value", "value", atts);
+			char[] value = Double.toString(i * 0.25).toCharArray();
+			encoder.characters(value, 0, value.length);
+			encoder.endElement("", "value", "value");
+			encoder.endElement("", "record", "record");
+			if ((i & 0xFFFF) == 0) {
+				os.flush();
+			}
+		}
+		encoder.endElement("", "records", "records");
+		encoder.endDocument();
+		os.close();
+
+		reader = new SAXFactory(factory).createEXIReader();
+		reader.setContentHandler(handler);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		exi.delete();
+	}
+
+	@Benchmark
+	public long decode() throws Exception {
+		InputStream is;
+		if ("mapped".equals(input)) {
+			is = new MappedFileInputStream(exi);
+		} else if ("buffered".equals(input)) {
+			is = new BufferedInputStream(new FileInputStream(exi));
+		} else {
+			is = new FileInputStream(exi);
+		}
+		try {
+			handler.elements = 0;
+			reader.parse(new InputSource(is));
+			return handler.elements;
+		} finally {
+			is.close();
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.PipelinedSAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+
+/**
+ * XML to EXI encoding of a generated document of <code>sizeKB</code>
+ * kilobytes with the parser driving the encoder on one thread compared to
+ * parser and encoder pipelined on two threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelinedEncodeBenchmark {
+
+	@Param({ "64", "4096" })
+	public int sizeKB;
+
+	EXIFactory factory;
+	byte[] xml;
+	ByteArrayOutputStream baos;
+	XMLReader xmlReader;
+	SAXEncoder encoder;
+	PipelinedSAXEncoder pipelined;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		factory = DefaultEXIFactory.newInstance();
+
+		// repeat a sample document below one root element
+		String sample = new String(Files.readAllBytes(Paths.get(BenchmarkData
+				.get("general/randj.xml"))), "UTF-8");
+		sample = sample.substring(sample.indexOf('<', sample.indexOf("?>")));
+		StringBuilder sb = new StringBuilder("<root>");
+		while (sb.length() < sizeKB * 1024) {
+			sb.append(sample);
+		}
+		xml = sb.append("</root>").toString().getBytes("UTF-8");
+
+		baos = new ByteArrayOutputStream(xml.length);
+		xmlReader = XMLReaderFactory.createXMLReader();
+		encoder = new SAXEncoder(factory);
+		pipelined = new PipelinedSAXEncoder(factory);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pipelined.shutdown();
+	}
+
+	@Benchmark
+	public int sequential() throws Exception {
+		baos.reset();
+		encoder.reset(baos);
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(new ByteArrayInputStream(xml)));
+		return baos.size();
+	}
+
+	@Benchmark
+	public int pipelined() throws Exception {
+		baos.reset();
+		pipelined.encode(xmlReader,
+				new InputSource(new ByteArrayInputStream(xml)), baos);
+		return baos.size();
+	}
+
+}
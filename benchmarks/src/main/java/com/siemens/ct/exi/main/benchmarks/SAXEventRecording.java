@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Records the SAX events of a document once so that benchmarks can replay
+ * them without measuring the XML parser.
+ */
+public class SAXEventRecording extends DefaultHandler {
+
+	static final int START_DOCUMENT = 0;
+	static final int END_DOCUMENT = 1;
+	static final int START_PREFIX_MAPPING = 2;
+	static final int END_PREFIX_MAPPING = 3;
+	static final int START_ELEMENT = 4;
+	static final int END_ELEMENT = 5;
+	static final int CHARACTERS = 6;
+
+	static class Event {
+		final int type;
+		final String uri;
+		final String localName;
+		final String qName;
+		final Attributes attributes;
+		final char[] ch;
+
+		Event(int type, String uri, String localName, String qName,
+				Attributes attributes, char[] ch) {
+			this.type = type;
+			this.uri = uri;
+			this.localName = localName;
+			this.qName = qName;
+			this.attributes = attributes;
+			this.ch = ch;
+		}
+	}
+
+	protected final List<Event> events = new ArrayList<Event>();
+
+	public static SAXEventRecording record(String xml) throws Exception {
+		SAXEventRecording recording = new SAXEventRecording();
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setFeature("http://xml.org/sax/features/namespaces", true);
+		xmlReader.setContentHandler(recording);
+		xmlReader.parse(new InputSource(xml));
+		return recording;
+	}
+
+	public void replay(ContentHandler ch) throws SAXException {
+		replay(ch, 0);
+	}
+
+	/**
+	 * Replays the recorded events and reports character data in chunks of at
+	 * most <code>maxChunk</code> characters, the way SAX parsers split text
+	 * at buffer boundaries or entity references.
+	 * 
+	 * @param ch
+	 *            content handler
+	 * @param maxChunk
+	 *            maximum chunk length, 0 for the recorded chunks
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void replay(ContentHandler ch, int maxChunk) throws SAXException {
+		for (int i = 0; i < events.size(); i++) {
+			Event e = events.get(i);
+			switch (e.type) {
+			case START_DOCUMENT:
+				ch.startDocument();
+				break;
+			case END_DOCUMENT:
+				ch.endDocument();
+				break;
+			case START_PREFIX_MAPPING:
+				ch.startPrefixMapping(e.localName, e.uri);
+				break;
+			case END_PREFIX_MAPPING:
+				ch.endPrefixMapping(e.localName);
+				break;
+			case START_ELEMENT:
+				ch.startElement(e.uri, e.localName, e.qName, e.attributes);
+				break;
+			case END_ELEMENT:
+				ch.endElement(e.uri, e.localName, e.qName);
+				break;
+			case CHARACTERS:
+				if (maxChunk <= 0) {
+					ch.characters(e.ch, 0, e.ch.length);
+				} else {
+					for (int off = 0; off < e.ch.length; off += maxChunk) {
+						ch.characters(e.ch, off,
+								Math.min(maxChunk, e.ch.length - off));
+					}
+				}
+				break;
+			}
+		}
+	}
+
+	public int size() {
+		return events.size();
+	}
+
+	@Override
+	public void startDocument() {
+		events.add(new Event(START_DOCUMENT, null, null, null, null, null));
+	}
+
+	@Override
+	public void endDocument() {
+		events.add(new Event(END_DOCUMENT, null, null, null, null, null));
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) {
+		events.add(new Event(START_PREFIX_MAPPING, uri, prefix, null, null,
+				null));
+	}
+
+	@Override
+	public void endPrefixMapping(String prefix) {
+		events.add(new Event(END_PREFIX_MAPPING, null, prefix, null, null,
+				null));
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) {
+		events.add(new Event(START_ELEMENT, uri, localName, qName,
+				new AttributesImpl(attributes), null));
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) {
+		events.add(new Event(END_ELEMENT, uri, localName, qName, null, null));
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		char[] copy = new char[length];
+		System.arraycopy(ch, start, copy, 0, length);
+		events.add(new Event(CHARACTERS, null, null, null, null, copy));
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs <code>GrammarScalingBenchmark</code> with 1, 2, 4, ... up to N threads
+ * and reports the throughput per thread count together with the scaling
+ * efficiency (throughput / (threads * single-thread throughput)).
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar com.siemens.ct.exi.main.benchmarks.ScalingHarness [-maxThreads &lt;n&gt;] [JMH options]
+ * </pre>
+ * 
+ * <p>
+ * For every thread count the efficiency with shared grammars is compared to
+ * the one with private grammars per thread. Shared grammars scaling clearly
+ * worse (by more than <code>CONTENTION_THRESHOLD</code>) are reported as
+ * contention in the shared grammar structures. Profilers to locate it can be
+ * added as JMH options, e.g. <code>-prof perfc2c</code> on Linux or
+ * <code>-prof perfnorm</code> for cache misses per operation. JSON results
+ * of every thread count are written to
+ * <code>jmh-scaling-&lt;threads&gt;.json</code>.
+ * </p>
+ */
+public final class ScalingHarness {
+
+	/* relative efficiency loss of shared grammars reported as contention */
+	public static final double CONTENTION_THRESHOLD = 0.10;
+
+	private ScalingHarness() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		List<String> jmhArgs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("-maxThreads".equals(args[i])) {
+				maxThreads = Integer.parseInt(args[++i]);
+			} else {
+				jmhArgs.add(args[i]);
+			}
+		}
+		CommandLineOptions cmdOptions = new CommandLineOptions(
+				jmhArgs.toArray(new String[jmhArgs.size()]));
+
+		// benchmark.corpus.grammars --> threads --> ops/s
+		Map<String, Map<Integer, Double>> scores = new TreeMap<String, Map<Integer, Double>>();
+		for (int threads : getThreadCounts(maxThreads)) {
+			Options options = new OptionsBuilder().parent(cmdOptions)
+					.include(GrammarScalingBenchmark.class.getSimpleName())
+					.threads(threads).resultFormat(ResultFormatType.JSON)
+					.result("jmh-scaling-" + threads + ".json").build();
+			for (RunResult r : new Runner(options).run()) {
+				BenchmarkParams params = r.getParams();
+				String benchmark = params.getBenchmark();
+				String key = benchmark.substring(benchmark.lastIndexOf('.') + 1)
+						+ "." + params.getParam("corpus") + "."
+						+ params.getParam("grammars");
+				Map<Integer, Double> byThreads = scores.get(key);
+				if (byThreads == null) {
+					byThreads = new TreeMap<Integer, Double>();
+					scores.put(key, byThreads);
+				}
+				byThreads.put(threads, r.getPrimaryResult().getScore());
+			}
+		}
+
+		print(scores);
+		for (String warning : checkContention(scores)) {
+			System.out.println("[CONTENTION] " + warning);
+		}
+	}
+
+	/* 1, 2, 4, ... and maxThreads itself */
+	static List<Integer> getThreadCounts(int maxThreads) {
+		List<Integer> counts = new ArrayList<Integer>();
+		for (int t = 1; t < maxThreads; t <<= 1) {
+			counts.add(t);
+		}
+		counts.add(Math.max(1, maxThreads));
+		return counts;
+	}
+
+	static double efficiency(Map<Integer, Double> byThreads, int threads) {
+		Double single = byThreads.get(1);
+		Double score = byThreads.get(threads);
+		if (single == null || score == null || single == 0) {
+			return Double.NaN;
+		}
+		return score / (threads * single);
+	}
+
+	static void print(Map<String, Map<Integer, Double>> scores) {
+		System.out.println();
+		System.out.println(String.format(Locale.ENGLISH,
+				"%-32s %8s %14s %14s %10s", "Benchmark", "Threads", "ops/s",
+				"ops/s/thread", "Efficiency"));
+		for (Map.Entry<String, Map<Integer, Double>> e : scores.entrySet()) {
+			for (Map.Entry<Integer, Double> t : e.getValue().entrySet()) {
+				System.out.println(String.format(Locale.ENGLISH,
+						"%-32s %8d %14.1f %14.1f %9.0f%%", e.getKey(),
+						t.getKey(), t.getValue(), t.getValue() / t.getKey(),
+						100 * efficiency(e.getValue(), t.getKey())));
+			}
+		}
+	}
+
+	static List<String> checkContention(Map<String, Map<Integer, Double>> scores) {
+		List<String> warnings = new ArrayList<String>();
+		for (Map.Entry<String, Map<Integer, Double>> e : scores.entrySet()) {
+			if (!e.getKey().endsWith(".shared")) {
+				continue;
+			}
+			String base = e.getKey().substring(0,
+					e.getKey().length() - ".shared".length());
+			Map<Integer, Double> privateScores = scores.get(base + ".private");
+			if (privateScores == null) {
+				continue;
+			}
+			for (Integer threads : e.getValue().keySet()) {
+				double shared = efficiency(e.getValue(), threads);
+				double isolated = efficiency(privateScores, threads);
+				if (threads > 1 && shared < isolated * (1 - CONTENTION_THRESHOLD)) {
+					warnings.add(String.format(Locale.ENGLISH,
+							"%s with %d threads: %.0f%% efficiency with shared,"
+									+ " %.0f%% with private grammars", base,
+							threads, 100 * shared, 100 * isolated));
+				}
+			}
+		}
+		return warnings;
+	}
+
+}
@@ -24,6 +24,8 @@
 package com.siemens.ct.exi.main.api.dom;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -39,6 +41,8 @@ import com.siemens.ct.exi.core.Constants;
 import com.siemens.ct.exi.core.EXIFactory;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
+import com.siemens.ct.exi.main.util.ChannelInputStream;
 
 /**
  * Builds a <code>Document</code> for a given EXI stream.
@@ -91,6 +95,40 @@ public class DOMBuilder {
 		return parse(is, false);
 	}
 
+	/**
+	 * Builds the document for the EXI stream read from the given channel. The
+	 * channel is not closed.
+	 * 
+	 * @param channel
+	 *            source channel
+	 * @return document
+	 * @throws EXIException
+	 *             EXI exception
+	 */
+	public Document parse(ReadableByteChannel channel) throws EXIException {
+		ChannelInputStream cis = new ChannelInputStream(channel);
+		try {
+			return parse(cis, false);
+		} finally {
+			// hand back pooled buffer
+			cis.close();
+		}
+	}
+
+	/**
+	 * Builds the document for the EXI stream between position and limit of
+	 * the given heap or direct buffer.
+	 * 
+	 * @param buffer
+	 *            source buffer
+	 * @return document
+	 * @throws EXIException
+	 *             EXI exception
+	 */
+	public Document parse(ByteBuffer buffer) throws EXIException {
+		return parse(new ByteBufferInputStream(buffer), false);
+	}
+
 	public Document parse(InputStream is, boolean exiBodyOnly)
 			throws EXIException {
 		try {
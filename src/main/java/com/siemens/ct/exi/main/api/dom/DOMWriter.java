@@ -25,6 +25,8 @@ package com.siemens.ct.exi.main.api.dom;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +47,8 @@ import com.siemens.ct.exi.core.attributes.AttributeFactory;
 import com.siemens.ct.exi.core.attributes.AttributeList;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.main.util.ByteBufferOutputStream;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
 
 /**
  * Serializes an Document/DocumentFragment to an EXI stream.
@@ -63,6 +67,9 @@ public class DOMWriter {
 	protected EXIStreamEncoder exiStream;
 	protected EXIBodyEncoder exiBody;
 
+	// channel output (reused across documents)
+	protected ChannelOutputStream channelOutput;
+
 	// attributes
 	private AttributeList exiAttributes;
 
@@ -90,6 +97,60 @@ public class DOMWriter {
 		exiBody = exiStream.encodeHeader(os);
 	}
 
+	/**
+	 * Writes the EXI stream to the given channel. Bytes are collected in a
+	 * pooled buffer that is written to the channel whenever it fills up and
+	 * when the document ends. The channel is not closed.
+	 * 
+	 * @param channel
+	 *            target channel
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutput(WritableByteChannel channel) throws EXIException,
+			IOException {
+		if (channelOutput == null) {
+			channelOutput = new ChannelOutputStream(channel);
+		} else {
+			channelOutput.setChannel(channel);
+		}
+		setOutput(channelOutput);
+	}
+
+	/**
+	 * Writes the EXI stream directly into the given heap or direct buffer,
+	 * starting at its current position. Encoding fails if the buffer is too
+	 * small.
+	 * 
+	 * @param buffer
+	 *            target buffer
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutput(ByteBuffer buffer) throws EXIException, IOException {
+		setOutput(new ByteBufferOutputStream(buffer));
+	}
+
+	/**
+	 * Prepares this writer for the next document. The stream encoder and the
+	 * attribute list are reused.
+	 * 
+	 * @param os
+	 *            output stream of the next document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void reset(OutputStream os) throws EXIException, IOException {
+		exiAttributes.clear();
+		setOutput(os);
+	}
+
 	public void encode(Document doc) throws EXIException, IOException {
 		if (exiBody == null) {
 			throw new EXIException("Please specify output stream");
@@ -23,8 +23,6 @@
 
 package com.siemens.ct.exi.main.api.dom;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -35,6 +33,8 @@ import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
+import com.siemens.ct.exi.main.util.FragmentUtilities;
+
 /**
  * Builds a <code>DocumentFragment</code> for a given EXI stream.
  * 
@@ -57,20 +57,9 @@ public class DocumentFragmentBuilder {
 
 	public DocumentFragment parse(InputStream is) throws SAXException,
 			IOException {
-		// Wrap the fragment in an arbitrary element
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		baos.write("<fragment>".getBytes());
-
-		int b;
-		while ((b = is.read()) != -1) {
-			baos.write(b);
-		}
-
-		baos.write("</fragment>".getBytes());
-
-		// parse
-		Document doc = this.docBuilder.parse(new ByteArrayInputStream(baos
-				.toByteArray()));
+		// Wrap the fragment in an arbitrary element (streamed)
+		Document doc = this.docBuilder.parse(FragmentUtilities
+				.getSurroundingInputStream(is, "fragment"));
 
 		// // Import the nodes of the new document into doc so that they
 		// // will be compatible with doc
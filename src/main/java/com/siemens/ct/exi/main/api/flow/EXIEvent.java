@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.flow;
+
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * Decoded EXI event as emitted by <code>EXIEventPublisher</code>. Element
+ * and attribute events carry the <code>QNameContext</code> of the grammar,
+ * attribute and character events the typed <code>Value</code> (no string
+ * conversion is performed).
+ * 
+ * @see EXIEventPublisher
+ */
+
+public class EXIEvent {
+
+	public enum Type {
+		START_DOCUMENT, END_DOCUMENT, START_ELEMENT, ATTRIBUTE, END_ELEMENT, CHARACTERS, DOC_TYPE, ENTITY_REFERENCE, COMMENT, PROCESSING_INSTRUCTION
+	}
+
+	protected final Type type;
+	protected final QNameContext qname;
+	protected final String prefix;
+	protected final Value value;
+	protected final String name;
+	protected final String text;
+
+	protected EXIEvent(Type type, QNameContext qname, String prefix,
+			Value value, String name, String text) {
+		this.type = type;
+		this.qname = qname;
+		this.prefix = prefix;
+		this.value = value;
+		this.name = name;
+		this.text = text;
+	}
+
+	static EXIEvent startDocument() {
+		return new EXIEvent(Type.START_DOCUMENT, null, null, null, null, null);
+	}
+
+	static EXIEvent endDocument() {
+		return new EXIEvent(Type.END_DOCUMENT, null, null, null, null, null);
+	}
+
+	static EXIEvent startElement(QNameContext qname) {
+		return new EXIEvent(Type.START_ELEMENT, qname, null, null, null, null);
+	}
+
+	static EXIEvent attribute(QNameContext qname, String prefix, Value value) {
+		return new EXIEvent(Type.ATTRIBUTE, qname, prefix, value, null, null);
+	}
+
+	static EXIEvent endElement(QNameContext qname, String prefix) {
+		return new EXIEvent(Type.END_ELEMENT, qname, prefix, null, null, null);
+	}
+
+	static EXIEvent characters(Value value) {
+		return new EXIEvent(Type.CHARACTERS, null, null, value, null, null);
+	}
+
+	static EXIEvent docType(String name, String text) {
+		return new EXIEvent(Type.DOC_TYPE, null, null, null, name, text);
+	}
+
+	static EXIEvent entityReference(String name) {
+		return new EXIEvent(Type.ENTITY_REFERENCE, null, null, null, name,
+				null);
+	}
+
+	static EXIEvent comment(String text) {
+		return new EXIEvent(Type.COMMENT, null, null, null, null, text);
+	}
+
+	static EXIEvent processingInstruction(String target, String data) {
+		return new EXIEvent(Type.PROCESSING_INSTRUCTION, null, null, null,
+				target, data);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Qualified name of element and attribute events, null otherwise.
+	 * 
+	 * @return qname context
+	 */
+	public QNameContext getQNameContext() {
+		return qname;
+	}
+
+	/**
+	 * Prefix of attribute and end element events if prefixes are preserved,
+	 * null otherwise. Start element prefixes are only known once the
+	 * namespace declarations that follow have been decoded.
+	 * 
+	 * @return prefix or null
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Typed value of attribute and character events, null otherwise.
+	 * 
+	 * @return value
+	 */
+	public Value getValue() {
+		return value;
+	}
+
+	/**
+	 * Name of DOCTYPE and entity reference events, target of processing
+	 * instructions.
+	 * 
+	 * @return name or null
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Text of comments, processing instruction data and DOCTYPE internal
+	 * subset.
+	 * 
+	 * @return text or null
+	 */
+	public String getText() {
+		return text;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(type.name());
+		if (qname != null) {
+			sb.append(' ').append(qname.getQName());
+		}
+		if (name != null) {
+			sb.append(' ').append(name);
+		}
+		if (value != null) {
+			sb.append(" '").append(value).append('\'');
+		}
+		if (text != null) {
+			sb.append(" '").append(text).append('\'');
+		}
+		return sb.toString();
+	}
+
+}
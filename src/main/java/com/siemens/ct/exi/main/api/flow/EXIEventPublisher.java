@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.flow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.siemens.ct.exi.core.EXIBodyDecoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.EXIStreamDecoder;
+import com.siemens.ct.exi.core.container.DocType;
+import com.siemens.ct.exi.core.container.ProcessingInstruction;
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.event.EventType;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.helpers.CachingSchemaIdResolver;
+
+/**
+ * Publishes the events of one EXI stream with demand-driven backpressure. The
+ * decoding loop is the one of <code>SAXDecoder.parseEXIEvents</code>, but an
+ * event is only decoded once the subscriber has requested it. A slow
+ * subscriber therefore neither blocks a thread nor makes events pile up in
+ * memory.
+ * 
+ * <p>
+ * The nested <code>Subscriber</code> and <code>Subscription</code> interfaces
+ * follow <code>java.util.concurrent.Flow</code> (and Reactive Streams) method
+ * by method, which are not available for the Java 8 target of this library.
+ * Adapting them to <code>Flow</code> only takes a delegating wrapper.
+ * </p>
+ * 
+ * <p>
+ * Events are decoded and signalled on the thread calling
+ * <code>request</code>, or on the given executor. Signals are never
+ * concurrent and never recursive, a subscriber may call <code>request</code>
+ * from <code>onNext</code>. The publisher supports one subscriber, the input
+ * stream is not closed.
+ * </p>
+ * 
+ * @see com.siemens.ct.exi.main.api.sax.SAXDecoder
+ */
+
+public class EXIEventPublisher {
+
+	/**
+	 * Receiver of decoded EXI events, see
+	 * <code>java.util.concurrent.Flow.Subscriber</code>
+	 */
+	public interface Subscriber {
+
+		void onSubscribe(Subscription subscription);
+
+		void onNext(EXIEvent event);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+	/**
+	 * Demand control, see <code>java.util.concurrent.Flow.Subscription</code>
+	 */
+	public interface Subscription {
+
+		void request(long n);
+
+		void cancel();
+	}
+
+	protected final EXIFactory noOptionsFactory;
+	protected final InputStream is;
+	protected final Executor executor;
+
+	protected final AtomicBoolean subscribed;
+
+	public EXIEventPublisher(EXIFactory noOptionsFactory, InputStream is) {
+		this(noOptionsFactory, is, null);
+	}
+
+	/**
+	 * Creates a publisher for the given EXI stream.
+	 * 
+	 * @param noOptionsFactory
+	 *            EXI factory
+	 * @param is
+	 *            EXI stream, read when events are requested
+	 * @param executor
+	 *            executor running the decoding, null for the requesting
+	 *            thread
+	 */
+	public EXIEventPublisher(EXIFactory noOptionsFactory, InputStream is,
+			Executor executor) {
+		if (noOptionsFactory.getSchemaIdResolver() == null) {
+			// set default schemaId resolver (shared grammar cache)
+			noOptionsFactory.setSchemaIdResolver(CachingSchemaIdResolver
+					.getSharedInstance());
+		}
+		this.noOptionsFactory = noOptionsFactory;
+		this.is = is;
+		this.executor = executor;
+		this.subscribed = new AtomicBoolean();
+	}
+
+	public void subscribe(Subscriber subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		if (subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new EventSubscription(subscriber));
+		} else {
+			subscriber.onSubscribe(new Subscription() {
+				public void request(long n) {
+				}
+
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException(
+					"EXI event publisher allows only one subscriber"));
+		}
+	}
+
+	protected class EventSubscription implements Subscription, Runnable {
+
+		protected final Subscriber subscriber;
+
+		protected final AtomicLong demand = new AtomicLong();
+		// number of pending drain requests
+		protected final AtomicInteger wip = new AtomicInteger();
+
+		protected volatile boolean cancelled;
+		protected volatile Throwable invalidRequest;
+
+		// only accessed while draining
+		protected EXIBodyDecoder decoder;
+		protected boolean done;
+
+		protected EventSubscription(Subscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException(
+						"non-positive request " + n);
+			} else {
+				long r, u;
+				do {
+					r = demand.get();
+					u = r + n;
+					if (u < 0) {
+						// unbounded
+						u = Long.MAX_VALUE;
+					}
+				} while (!demand.compareAndSet(r, u));
+			}
+			schedule();
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		protected void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				if (executor == null) {
+					run();
+				} else {
+					executor.execute(this);
+				}
+			}
+		}
+
+		public void run() {
+			int missed = 1;
+			do {
+				drain();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		protected void drain() {
+			while (!cancelled && !done) {
+				if (invalidRequest != null) {
+					fail(invalidRequest);
+					return;
+				}
+				long r = demand.get();
+				if (r == 0) {
+					return;
+				}
+				EXIEvent event;
+				try {
+					if (decoder == null) {
+						EXIStreamDecoder exiStream = noOptionsFactory
+								.createEXIStreamDecoder();
+						decoder = exiStream.decodeHeader(is);
+					}
+					EventType eventType = decoder.next();
+					if (eventType == null) {
+						// stream ended without ED
+						done = true;
+						decoder = null;
+						subscriber.onComplete();
+						return;
+					}
+					event = decodeEvent(decoder, eventType);
+				} catch (Exception e) {
+					fail(e);
+					return;
+				}
+				if (event != null) {
+					if (r != Long.MAX_VALUE) {
+						demand.decrementAndGet();
+					}
+					subscriber.onNext(event);
+					if (event.getType() == EXIEvent.Type.END_DOCUMENT) {
+						done = true;
+						decoder = null;
+						subscriber.onComplete();
+					}
+				}
+			}
+		}
+
+		protected void fail(Throwable t) {
+			done = true;
+			decoder = null;
+			subscriber.onError(t);
+		}
+	}
+
+	/*
+	 * Decodes one event, returns null for events that are handled internally
+	 * (namespace declarations, self-contained)
+	 */
+	protected EXIEvent decodeEvent(EXIBodyDecoder decoder, EventType eventType)
+			throws EXIException, IOException {
+		switch (eventType) {
+		/* DOCUMENT */
+		case START_DOCUMENT:
+			decoder.decodeStartDocument();
+			return EXIEvent.startDocument();
+		case END_DOCUMENT:
+			decoder.decodeEndDocument();
+			return EXIEvent.endDocument();
+		/* ATTRIBUTES */
+		case ATTRIBUTE_XSI_NIL:
+			return attribute(decoder, decoder.decodeAttributeXsiNil());
+		case ATTRIBUTE_XSI_TYPE:
+			return attribute(decoder, decoder.decodeAttributeXsiType());
+		case ATTRIBUTE:
+		case ATTRIBUTE_NS:
+		case ATTRIBUTE_GENERIC:
+		case ATTRIBUTE_GENERIC_UNDECLARED:
+		case ATTRIBUTE_INVALID_VALUE:
+		case ATTRIBUTE_ANY_INVALID_VALUE:
+			return attribute(decoder, decoder.decodeAttribute());
+		/* NAMESPACE DECLARATION */
+		case NAMESPACE_DECLARATION:
+			// Note: Prefix declaration etc. is done internally
+			decoder.decodeNamespaceDeclaration();
+			return null;
+		/* SELF_CONTAINED */
+		case SELF_CONTAINED:
+			decoder.decodeStartSelfContainedFragment();
+			return null;
+		/* ELEMENT CONTENT EVENTS */
+		case START_ELEMENT:
+		case START_ELEMENT_NS:
+		case START_ELEMENT_GENERIC:
+		case START_ELEMENT_GENERIC_UNDECLARED:
+			return EXIEvent.startElement(decoder.decodeStartElement());
+		case END_ELEMENT:
+		case END_ELEMENT_UNDECLARED:
+			String eePrefix = decoder.getElementPrefix();
+			return EXIEvent.endElement(decoder.decodeEndElement(), eePrefix);
+		case CHARACTERS:
+		case CHARACTERS_GENERIC:
+		case CHARACTERS_GENERIC_UNDECLARED:
+			return EXIEvent.characters(decoder.decodeCharacters());
+		/* MISC */
+		case DOC_TYPE:
+			DocType docType = decoder.decodeDocType();
+			return EXIEvent.docType(new String(docType.name), new String(
+					docType.text));
+		case ENTITY_REFERENCE:
+			return EXIEvent.entityReference(new String(decoder
+					.decodeEntityReference()));
+		case COMMENT:
+			return EXIEvent.comment(new String(decoder.decodeComment()));
+		case PROCESSING_INSTRUCTION:
+			ProcessingInstruction pi = decoder.decodeProcessingInstruction();
+			return EXIEvent.processingInstruction(pi.target, pi.data);
+		default:
+			throw new RuntimeException("Unexpected EXI Event '" + eventType
+					+ "' ");
+		}
+	}
+
+	protected EXIEvent attribute(EXIBodyDecoder decoder, QNameContext atQName) {
+		Value value = decoder.getAttributeValue();
+		return EXIEvent.attribute(atQName, decoder.getAttributePrefix(), value);
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.ext.LexicalHandler;
+
+import com.siemens.ct.exi.core.DecodingOptions;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.api.dom.SaxToDomHandler;
+
+/**
+ * Reads EXI documents that follow each other in one input stream, e.g. as
+ * written by <code>EXIDocumentStreamWriter</code>. The input is wrapped into a
+ * <code>PushbackInputStream</code> of
+ * <code>DecodingOptions.PUSHBACK_BUFFER_SIZE</code> so that the
+ * (pre-)compression decoder can hand back what it read beyond the end of a
+ * document, and one <code>SAXDecoder</code> is used for all documents.
+ * 
+ * <p>
+ * A further document is assumed as long as the next byte can start an EXI
+ * header (EXI cookie or distinguishing bits). Other trailing bytes are left
+ * in the stream returned by <code>getInputStream()</code>. Not thread-safe.
+ * </p>
+ * 
+ * @see EXIDocumentStreamWriter
+ */
+
+public class EXIDocumentStreamReader {
+
+	protected final PushbackInputStream is;
+	protected final SAXDecoder decoder;
+
+	// lazily created, for documents()
+	protected DOMImplementation domImplementation;
+
+	protected long documentCount;
+
+	public EXIDocumentStreamReader(EXIFactory factory, InputStream is)
+			throws EXIException {
+		if (is instanceof PushbackInputStream) {
+			this.is = (PushbackInputStream) is;
+		} else {
+			this.is = new PushbackInputStream(is,
+					DecodingOptions.PUSHBACK_BUFFER_SIZE);
+		}
+		this.decoder = new SAXDecoder(factory);
+	}
+
+	/**
+	 * Tells whether another EXI document follows. Blocks until the first byte
+	 * of the next document is available.
+	 * 
+	 * @return true if a document follows
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public boolean hasNextDocument() throws IOException {
+		int b = is.read();
+		if (b == -1) {
+			return false;
+		}
+		is.unread(b);
+		// '$' of "$EXI" cookie or distinguishing bits 10
+		return b == '$' || (b & 0xC0) == 0x80;
+	}
+
+	/**
+	 * Decodes the next document into the given handler, which also receives
+	 * lexical and declaration events if it implements
+	 * <code>LexicalHandler</code> or <code>DeclHandler</code>.
+	 * 
+	 * @param handler
+	 *            content handler
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void parseNextDocument(ContentHandler handler) throws IOException,
+			SAXException {
+		decoder.setContentHandler(handler);
+		decoder.setProperty("http://xml.org/sax/properties/lexical-handler",
+				handler instanceof LexicalHandler ? handler : null);
+		decoder.setProperty(
+				"http://xml.org/sax/properties/declaration-handler",
+				handler instanceof DeclHandler ? handler : null);
+		decoder.parse(new InputSource(is));
+		documentCount++;
+	}
+
+	/**
+	 * Returns an iterator that decodes one DOM document per element. Decoding
+	 * errors are thrown as <code>IllegalStateException</code>.
+	 * 
+	 * @return document iterator
+	 */
+	public Iterator<Document> documents() {
+		return new Iterator<Document>() {
+			public boolean hasNext() {
+				try {
+					return hasNextDocument();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			public Document next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				try {
+					SaxToDomHandler s2dHandler = new SaxToDomHandler(
+							getDOMImplementation(), false);
+					parseNextDocument(s2dHandler);
+					return s2dHandler.getDocument();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	protected DOMImplementation getDOMImplementation()
+			throws ParserConfigurationException {
+		if (domImplementation == null) {
+			DocumentBuilderFactory dbFactory = DocumentBuilderFactory
+					.newInstance();
+			dbFactory.setNamespaceAware(true);
+			domImplementation = dbFactory.newDocumentBuilder()
+					.getDOMImplementation();
+		}
+		return domImplementation;
+	}
+
+	/**
+	 * Returns the number of documents decoded so far.
+	 * 
+	 * @return number of documents
+	 */
+	public long getDocumentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * Returns the underlying stream, positioned after the last decoded
+	 * document.
+	 * 
+	 * @return input stream
+	 */
+	public PushbackInputStream getInputStream() {
+		return is;
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+
+/**
+ * Writes several EXI documents back to back into one output stream. A single
+ * <code>SAXEncoder</code> is reset for each document, so that per-document
+ * costs are limited to the EXI header and the grammar/string table reset the
+ * format requires.
+ * 
+ * <p>
+ * The resulting stream is read with <code>EXIDocumentStreamReader</code>. In
+ * (pre-)compression mode the documents do not need any framing, the decoder
+ * rewinds what it read beyond the end of a document. Not thread-safe.
+ * </p>
+ * 
+ * @see EXIDocumentStreamReader
+ */
+
+public class EXIDocumentStreamWriter {
+
+	protected final OutputStream os;
+	protected final SAXEncoder encoder;
+
+	// lazily created, to encode XML documents
+	protected XMLReader xmlReader;
+
+	protected long documentCount;
+
+	public EXIDocumentStreamWriter(EXIFactory factory, OutputStream os)
+			throws EXIException {
+		this.os = os;
+		this.encoder = new SAXFactory(factory).createEXIWriter();
+	}
+
+	/**
+	 * Starts the next document and writes its EXI header. The SAX events of
+	 * the document (<code>startDocument</code> to <code>endDocument</code>)
+	 * are passed to the returned encoder, which is both content and lexical
+	 * handler.
+	 * 
+	 * @return encoder of the next document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public SAXEncoder nextDocument() throws EXIException, IOException {
+		if (documentCount == 0) {
+			encoder.setOutputStream(os);
+		} else {
+			encoder.reset(os);
+		}
+		documentCount++;
+		return encoder;
+	}
+
+	/**
+	 * Encodes the given XML document as next EXI document.
+	 * 
+	 * @param xml
+	 *            XML input
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void writeDocument(InputSource xml) throws EXIException,
+			IOException, SAXException {
+		SAXEncoder handler = nextDocument();
+		if (xmlReader == null) {
+			xmlReader = XMLReaderFactory.createXMLReader();
+		}
+		xmlReader.setContentHandler(handler);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				handler);
+		xmlReader.parse(xml);
+	}
+
+	/**
+	 * Returns the number of documents started so far.
+	 * 
+	 * @return number of documents
+	 */
+	public long getDocumentCount() {
+		return documentCount;
+	}
+
+	public void flush() throws IOException {
+		os.flush();
+	}
+
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.siemens.ct.exi.core.EXIBodyDecoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.coder.EXIBodyDecoderInOrderSC;
+import com.siemens.ct.exi.core.container.DocType;
+import com.siemens.ct.exi.core.container.NamespaceDeclaration;
+import com.siemens.ct.exi.core.container.ProcessingInstruction;
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.event.EventType;
+import com.siemens.ct.exi.core.io.channel.DecoderChannel;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.helpers.SelfContainedIndex;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
+import com.siemens.ct.exi.main.util.ChannelInputStream;
+import com.siemens.ct.exi.main.util.SAXEventBuffer;
+
+/**
+ * Decodes the self-contained (SC) fragments of an EXI stream concurrently on
+ * a fork-join pool. Fragment boundaries are taken from a
+ * <code>SelfContainedIndex</code>; EXI does not length-prefix fragments, so
+ * finding them without an index would take a sequential decode of the whole
+ * stream.
+ * 
+ * <p>
+ * Every worker thread decodes with its own
+ * <code>SelfContainedFragmentReader</code>, the events of a fragment are
+ * buffered and delivered to the caller's handler in document order. At most
+ * <code>window</code> fragments are in flight, which bounds the memory used
+ * for buffered events.
+ * </p>
+ * 
+ * <p>
+ * The handler receives the whole document. Content outside of SC fragments
+ * is decoded sequentially on the calling thread, which skips the bytes of
+ * each fragment once its worker has found where the fragment ends, and the
+ * SC elements are replayed from the workers' buffers in their place. The
+ * skipped bytes are read but not decoded, the position of each fragment is
+ * checked against the index.
+ * </p>
+ * 
+ * <p>
+ * SC fragments must not be nested: a fragment is read from its offset up to
+ * the offset of the next one.
+ * </p>
+ * 
+ * @see SelfContainedIndex
+ * @see SelfContainedFragmentReader
+ */
+
+public class ParallelFragmentDecoder {
+
+	protected final EXIFactory factory;
+	protected final SelfContainedIndex index;
+	protected final ForkJoinPool pool;
+	protected final boolean ownsPool;
+	protected final int window;
+
+	// one fragment reader per worker thread
+	protected final ThreadLocal<SelfContainedFragmentReader> readers;
+
+	/**
+	 * Creates a decoder that uses all available processors.
+	 * 
+	 * @param factory
+	 *            EXI factory the stream was encoded with
+	 * @param index
+	 *            SC index of the stream
+	 */
+	public ParallelFragmentDecoder(EXIFactory factory, SelfContainedIndex index) {
+		this(factory, index, new ForkJoinPool(), true);
+	}
+
+	public ParallelFragmentDecoder(EXIFactory factory,
+			SelfContainedIndex index, ForkJoinPool pool) {
+		this(factory, index, pool, false);
+	}
+
+	protected ParallelFragmentDecoder(EXIFactory factory,
+			SelfContainedIndex index, ForkJoinPool pool, boolean ownsPool) {
+		this.factory = factory;
+		this.index = index;
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.window = 4 * pool.getParallelism();
+		this.readers = new ThreadLocal<SelfContainedFragmentReader>();
+	}
+
+	/*
+	 * Whole stream and region of one fragment
+	 */
+	protected interface FragmentSource {
+		InputStream open() throws IOException;
+
+		ByteBuffer get(long offset, long end) throws IOException;
+	}
+
+	/**
+	 * Decodes the EXI stream held by the given buffer (starting at its
+	 * position). The buffer is not modified.
+	 * 
+	 * @param exi
+	 *            heap, direct or mapped buffer
+	 * @param handler
+	 *            content handler, also lexical handler if implemented
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void parse(final ByteBuffer exi, ContentHandler handler)
+			throws IOException, SAXException {
+		final int base = exi.position();
+		parse(new FragmentSource() {
+			public InputStream open() {
+				return new ByteBufferInputStream(exi.duplicate());
+			}
+
+			public ByteBuffer get(long offset, long end) {
+				ByteBuffer fragment = exi.duplicate();
+				fragment.limit(end < 0 ? exi.limit() : base + (int) end);
+				fragment.position(base + (int) offset);
+				return fragment;
+			}
+		}, handler);
+	}
+
+	/**
+	 * Decodes the EXI file behind the given channel. Each fragment is mapped
+	 * separately, the rest of the file is read through the channel, so that
+	 * files beyond 2 GB can be read. The channel is repositioned but not
+	 * closed.
+	 * 
+	 * @param channel
+	 *            file channel
+	 * @param handler
+	 *            content handler, also lexical handler if implemented
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void parse(final FileChannel channel, ContentHandler handler)
+			throws IOException, SAXException {
+		final long size = channel.size();
+		parse(new FragmentSource() {
+			public InputStream open() throws IOException {
+				channel.position(0);
+				return new ChannelInputStream(channel);
+			}
+
+			public ByteBuffer get(long offset, long end)
+					throws IOException {
+				long length = (end < 0 ? size : end) - offset;
+				return channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						length);
+			}
+		}, handler);
+	}
+
+	protected void parse(FragmentSource source, ContentHandler handler)
+			throws IOException, SAXException {
+		CountingInputStream is = new CountingInputStream(source.open());
+		OuterDecoder decoder;
+		try {
+			decoder = new OuterDecoder(source, is);
+		} catch (EXIException e) {
+			is.close();
+			throw new SAXException(e);
+		}
+		decoder.setContentHandler(handler);
+		decoder.setProperty("http://xml.org/sax/properties/lexical-handler",
+				handler instanceof LexicalHandler ? handler : null);
+		try {
+			// the workers start on the fragments while the stream is opened
+			decoder.submitWindow();
+			decoder.parse(new InputSource(is));
+			if (decoder.ordinal != index.size()) {
+				throw new SAXException("EXI stream has " + decoder.ordinal
+						+ " of " + index.size() + " indexed SC fragments");
+			}
+		} finally {
+			decoder.cancel();
+			is.close();
+		}
+	}
+
+	protected Future<DecodedFragment> submit(final FragmentSource source,
+			final int ordinal) {
+		return pool.submit(new Callable<DecodedFragment>() {
+			public DecodedFragment call() throws Exception {
+				long end = ordinal + 1 < index.size() ? index
+						.getOffset(ordinal + 1) : -1;
+				ByteBuffer fragment = source.get(index.getOffset(ordinal), end);
+				CountingInputStream is = new CountingInputStream(
+						new ByteBufferInputStream(fragment));
+				DecodedFragment events = new DecodedFragment();
+				getReader().parse(is, events);
+				events.length = is.count;
+				return events;
+			}
+		});
+	}
+
+	protected SelfContainedFragmentReader getReader() throws EXIException {
+		SelfContainedFragmentReader reader = readers.get();
+		if (reader == null) {
+			reader = new SelfContainedFragmentReader(factory, index);
+			readers.set(reader);
+		}
+		return reader;
+	}
+
+	protected static DecodedFragment get(Future<DecodedFragment> future)
+			throws IOException, SAXException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SAXException("Interrupted while decoding SC fragments",
+					e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new SAXException("Decoding SC fragment failed",
+					cause instanceof Exception ? (Exception) cause : e);
+		}
+	}
+
+	/*
+	 * Events of one fragment and its length in bytes, padding included
+	 */
+	static class DecodedFragment extends SAXEventBuffer {
+		long length;
+	}
+
+	/*
+	 * Counts the bytes taken by the decoder. Reads without read-ahead, the
+	 * core does not buffer a BufferedInputStream again.
+	 */
+	static class CountingInputStream extends BufferedInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in, 1);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return in.available();
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/*
+	 * Sequential decoder for the content outside of SC fragments. It skips
+	 * each fragment and replays the events decoded by the worker instead of
+	 * the start of the SC element.
+	 */
+	protected class OuterDecoder extends SAXDecoder {
+
+		final FragmentSource source;
+		final CountingInputStream input;
+		final ArrayDeque<Future<DecodedFragment>> inFlight;
+		// next fragment to submit and to skip
+		int next;
+		int ordinal;
+		// fragment skipped, SC element not reported yet
+		DecodedFragment skipped;
+
+		OuterDecoder(FragmentSource source, CountingInputStream input)
+				throws EXIException {
+			super(factory);
+			this.source = source;
+			this.input = input;
+			this.inFlight = new ArrayDeque<Future<DecodedFragment>>();
+		}
+
+		void submitWindow() {
+			while (next < index.size() && next - ordinal < window) {
+				inFlight.add(submit(source, next++));
+			}
+		}
+
+		void cancel() {
+			for (Future<DecodedFragment> f : inFlight) {
+				f.cancel(false);
+			}
+		}
+
+		void skipFragment(EXIBodyDecoder decoder) throws EXIException,
+				IOException {
+			if (ordinal == index.size()) {
+				throw new EXIException("SC fragment " + ordinal
+						+ " is not in the index");
+			}
+			// the SC event code ends in the byte in front of the fragment
+			if (input.count != index.getOffset(ordinal)) {
+				throw new EXIException("SC fragment " + ordinal + " at byte "
+						+ input.count + ", the index expects it at "
+						+ index.getOffset(ordinal));
+			}
+			try {
+				skipped = get(inFlight.poll());
+			} catch (SAXException e) {
+				throw new EXIException(e);
+			}
+			ordinal++;
+			submitWindow();
+			((EXIBodyDecoderInOrderSC) decoder).skipSCElement(skipped.length);
+		}
+
+		@Override
+		protected void parseEXIEvents(EXIBodyDecoder decoder)
+				throws IOException, EXIException, SAXException {
+			super.parseEXIEvents(new SkippingBodyDecoder(decoder, this));
+		}
+
+		@Override
+		protected void handleDeferredStartElement(EXIBodyDecoder decoder,
+				QNameContext deferredStartElement, AttributesImpl attributes)
+				throws SAXException, IOException, EXIException {
+			if (skipped == null) {
+				super.handleDeferredStartElement(decoder,
+						deferredStartElement, attributes);
+				return;
+			}
+			// the fragment holds the whole SC element
+			if (!deferredStartElement.getQName().equals(
+					index.getQName(ordinal - 1))) {
+				throw new SAXException("SC element "
+						+ deferredStartElement.getQName()
+						+ " does not match the index");
+			}
+			skipped.replay(contentHandler);
+			skipped = null;
+			attributes.clear();
+		}
+	}
+
+	/*
+	 * Body decoder that skips SC fragments instead of decoding them
+	 */
+	static class SkippingBodyDecoder implements EXIBodyDecoder {
+
+		final EXIBodyDecoder decoder;
+		final OuterDecoder outer;
+
+		SkippingBodyDecoder(EXIBodyDecoder decoder, OuterDecoder outer) {
+			this.decoder = decoder;
+			this.outer = outer;
+		}
+
+		public void decodeStartSelfContainedFragment() throws EXIException,
+				IOException {
+			outer.skipFragment(decoder);
+		}
+
+		public void setInputStream(InputStream is) throws EXIException,
+				IOException {
+			decoder.setInputStream(is);
+		}
+
+		public void setInputChannel(DecoderChannel channel)
+				throws EXIException, IOException {
+			decoder.setInputChannel(channel);
+		}
+
+		public void updateInputStream(InputStream is) throws EXIException,
+				IOException {
+			decoder.updateInputStream(is);
+		}
+
+		public void updateInputChannel(DecoderChannel channel)
+				throws EXIException, IOException {
+			decoder.updateInputChannel(channel);
+		}
+
+		public EventType next() throws EXIException, IOException {
+			return decoder.next();
+		}
+
+		public void decodeStartDocument() throws EXIException, IOException {
+			decoder.decodeStartDocument();
+		}
+
+		public void decodeEndDocument() throws EXIException, IOException {
+			decoder.decodeEndDocument();
+		}
+
+		public QNameContext decodeStartElement() throws EXIException,
+				IOException {
+			return decoder.decodeStartElement();
+		}
+
+		public String getElementPrefix() {
+			return decoder.getElementPrefix();
+		}
+
+		public String getElementQNameAsString() {
+			return decoder.getElementQNameAsString();
+		}
+
+		public QNameContext decodeEndElement() throws EXIException,
+				IOException {
+			return decoder.decodeEndElement();
+		}
+
+		public QNameContext decodeAttributeXsiNil() throws EXIException,
+				IOException {
+			return decoder.decodeAttributeXsiNil();
+		}
+
+		public QNameContext decodeAttributeXsiType() throws EXIException,
+				IOException {
+			return decoder.decodeAttributeXsiType();
+		}
+
+		public QNameContext decodeAttribute() throws EXIException,
+				IOException {
+			return decoder.decodeAttribute();
+		}
+
+		public String getAttributePrefix() {
+			return decoder.getAttributePrefix();
+		}
+
+		public String getAttributeQNameAsString() {
+			return decoder.getAttributeQNameAsString();
+		}
+
+		public Value getAttributeValue() {
+			return decoder.getAttributeValue();
+		}
+
+		public NamespaceDeclaration decodeNamespaceDeclaration()
+				throws EXIException, IOException {
+			return decoder.decodeNamespaceDeclaration();
+		}
+
+		public List<NamespaceDeclaration> getDeclaredPrefixDeclarations() {
+			return decoder.getDeclaredPrefixDeclarations();
+		}
+
+		public Value decodeCharacters() throws EXIException, IOException {
+			return decoder.decodeCharacters();
+		}
+
+		public DocType decodeDocType() throws EXIException, IOException {
+			return decoder.decodeDocType();
+		}
+
+		public char[] decodeEntityReference() throws EXIException,
+				IOException {
+			return decoder.decodeEntityReference();
+		}
+
+		public char[] decodeComment() throws EXIException, IOException {
+			return decoder.decodeComment();
+		}
+
+		public ProcessingInstruction decodeProcessingInstruction()
+				throws EXIException, IOException {
+			return decoder.decodeProcessingInstruction();
+		}
+	}
+
+	/**
+	 * Shuts down the pool if it was created by this decoder.
+	 */
+	public void shutdown() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+
+}
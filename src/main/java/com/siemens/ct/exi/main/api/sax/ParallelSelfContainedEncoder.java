@@ -0,0 +1,495 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.helpers.SelfContainedIndex;
+import com.siemens.ct.exi.main.util.SAXEventBuffer;
+
+/**
+ * Encodes the self-contained (SC) subtrees of a document concurrently on a
+ * fork-join pool and stitches them into one EXI stream.
+ * 
+ * <p>
+ * An SC fragment starts byte-aligned with reset string tables and grammars,
+ * and the state of the enclosing stream is restored after it. The enclosing
+ * document is therefore encoded on the calling thread with every
+ * outermost SC element left empty, while worker threads encode the real
+ * subtrees. The empty placeholder fragments are then replaced by the real
+ * ones. The result is the same stream a single <code>SAXEncoder</code>
+ * produces.
+ * </p>
+ * 
+ * <p>
+ * Only the byte-packed coding mode is supported: in bit-packed mode a
+ * fragment starts but does not necessarily end on a byte boundary, so that
+ * fragments cannot be exchanged byte-wise. The stream is assembled in
+ * memory. Not thread-safe.
+ * </p>
+ * 
+ * @see ParallelFragmentDecoder
+ * @see SelfContainedIndex
+ */
+
+public class ParallelSelfContainedEncoder {
+
+	protected final EXIFactory factory;
+	protected final QName[] scElements;
+	// decision of the core encoder per element name
+	protected final Map<QName, Boolean> scNames;
+	protected final EXIFactory scFactory;
+	protected final ForkJoinPool pool;
+	protected final boolean ownsPool;
+
+	// one encoder per worker thread
+	protected final ThreadLocal<FragmentEncoder> encoders;
+
+	/**
+	 * Creates an encoder that uses all available processors.
+	 * 
+	 * @param factory
+	 *            byte-packed EXI factory with SC fidelity
+	 * @param scElements
+	 *            self-contained elements
+	 * @throws EXIException
+	 *             if the factory does not fit
+	 */
+	public ParallelSelfContainedEncoder(EXIFactory factory, QName[] scElements)
+			throws EXIException {
+		this(factory, scElements, new ForkJoinPool(), true);
+	}
+
+	public ParallelSelfContainedEncoder(EXIFactory factory,
+			QName[] scElements, ForkJoinPool pool) throws EXIException {
+		this(factory, scElements, pool, false);
+	}
+
+	protected ParallelSelfContainedEncoder(EXIFactory factory,
+			QName[] scElements, ForkJoinPool pool, boolean ownsPool)
+			throws EXIException {
+		if (factory.getCodingMode() != CodingMode.BYTE_PACKED) {
+			throw new EXIException(
+					"Parallel SC encoding requires byte-packed coding mode");
+		}
+		if (!factory.getFidelityOptions().isFidelityEnabled(
+				FidelityOptions.FEATURE_SC)) {
+			throw new EXIException(
+					"Parallel SC encoding requires self-contained fidelity");
+		}
+		this.factory = factory;
+		this.scElements = scElements;
+		this.scNames = new HashMap<QName, Boolean>();
+		this.scFactory = factory.clone();
+		this.scFactory.setSelfContainedElements(scElements);
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.encoders = new ThreadLocal<FragmentEncoder>();
+	}
+
+	/**
+	 * Encodes recorded SAX events as one document.
+	 * 
+	 * @param events
+	 *            document content
+	 * @param os
+	 *            output stream (not closed)
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void encode(SAXEventBuffer events, OutputStream os)
+			throws EXIException, IOException, SAXException {
+		Splitter splitter = new Splitter();
+		splitter.startDocument();
+		events.replay(splitter);
+		splitter.endDocument();
+		splitter.stitch(os);
+	}
+
+	/**
+	 * Encodes the given DOM document.
+	 * 
+	 * @param document
+	 *            document
+	 * @param os
+	 *            output stream (not closed)
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void encode(Document document, OutputStream os)
+			throws EXIException, IOException, SAXException {
+		Splitter splitter = new Splitter();
+		SAXResult result = new SAXResult(splitter);
+		result.setLexicalHandler(splitter);
+		try {
+			TransformerFactory.newInstance().newTransformer()
+					.transform(new DOMSource(document), result);
+		} catch (TransformerException e) {
+			if (e.getCause() instanceof SAXException) {
+				throw (SAXException) e.getCause();
+			}
+			throw new EXIException(e);
+		}
+		splitter.stitch(os);
+	}
+
+	/*
+	 * Asks the factory like the core encoder does, so that both agree on
+	 * the SC elements whatever the name matching of the core is. Cached, the
+	 * core may evaluate the names as patterns.
+	 */
+	protected boolean isSelfContained(String uri, String localName) {
+		QName qname = new QName(uri, localName);
+		Boolean sc = scNames.get(qname);
+		if (sc == null) {
+			sc = scFactory.isSelfContainedElement(qname);
+			scNames.put(qname, sc);
+		}
+		return sc;
+	}
+
+	protected Future<byte[]> submit(final SAXEventBuffer subtree) {
+		return pool.submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return getEncoder().encode(subtree);
+			}
+		});
+	}
+
+	protected FragmentEncoder getEncoder() throws EXIException {
+		FragmentEncoder encoder = encoders.get();
+		if (encoder == null) {
+			encoder = new FragmentEncoder();
+			encoders.set(encoder);
+		}
+		return encoder;
+	}
+
+	protected EXIFactory createFactory(SelfContainedIndex index) {
+		EXIFactory f = factory.clone();
+		f.setSelfContainedElements(scElements, index);
+		return f;
+	}
+
+	/*
+	 * Encodes one subtree as document and cuts out its SC fragment
+	 */
+	protected class FragmentEncoder {
+		final SelfContainedIndex index;
+		final SAXEncoder encoder;
+		boolean used;
+
+		FragmentEncoder() throws EXIException {
+			index = new SelfContainedIndex();
+			encoder = new SAXFactory(createFactory(index)).createEXIWriter();
+		}
+
+		byte[] encode(SAXEventBuffer subtree) throws EXIException,
+				IOException, SAXException {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			OutputStream os = index.track(baos);
+			if (used) {
+				encoder.reset(os);
+			} else {
+				encoder.setOutputStream(os);
+				used = true;
+			}
+			encoder.startDocument();
+			subtree.replay(encoder);
+			long end = index.getPosition();
+			encoder.endDocument();
+			if (index.size() == 0) {
+				throw new EXIException("Subtree not encoded self-contained");
+			}
+			return Arrays.copyOfRange(baos.toByteArray(),
+					(int) index.getOffset(0), (int) end);
+		}
+	}
+
+	/*
+	 * Encodes the enclosing document with empty SC elements and hands the SC
+	 * subtrees to the workers
+	 */
+	protected class Splitter implements ContentHandler, LexicalHandler {
+		final SelfContainedIndex index;
+		final SAXEncoder outer;
+		final ByteArrayOutputStream outerBytes;
+
+		// end of each placeholder fragment
+		final List<Long> ends;
+		final List<Future<byte[]>> fragments;
+
+		// subtree being recorded, depth within it
+		SAXEventBuffer subtree;
+		int depth;
+		// prefix mappings in front of the next start element
+		final List<String> pendingPrefixes;
+
+		Splitter() throws EXIException, IOException {
+			index = new SelfContainedIndex();
+			outer = new SAXFactory(createFactory(index)).createEXIWriter();
+			outerBytes = new ByteArrayOutputStream();
+			outer.setOutputStream(index.track(outerBytes));
+			ends = new ArrayList<Long>();
+			fragments = new ArrayList<Future<byte[]>>();
+			pendingPrefixes = new ArrayList<String>();
+		}
+
+		void stitch(OutputStream os) throws EXIException, IOException,
+				SAXException {
+			try {
+				if (index.size() != fragments.size()) {
+					throw new EXIException("Found " + fragments.size()
+							+ " SC subtrees but encoded " + index.size());
+				}
+				byte[] bytes = outerBytes.toByteArray();
+				int pos = 0;
+				for (int i = 0; i < fragments.size(); i++) {
+					int start = (int) index.getOffset(i);
+					os.write(bytes, pos, start - pos);
+					os.write(get(fragments.get(i)));
+					pos = (int) ends.get(i).longValue();
+				}
+				os.write(bytes, pos, bytes.length - pos);
+				os.flush();
+			} finally {
+				for (Future<byte[]> f : fragments) {
+					f.cancel(false);
+				}
+			}
+		}
+
+		public void setDocumentLocator(Locator locator) {
+		}
+
+		public void startDocument() throws SAXException {
+			outer.startDocument();
+		}
+
+		public void endDocument() throws SAXException {
+			outer.endDocument();
+		}
+
+		public void startPrefixMapping(String prefix, String uri)
+				throws SAXException {
+			if (subtree != null) {
+				subtree.startPrefixMapping(prefix, uri);
+			} else {
+				pendingPrefixes.add(prefix);
+				pendingPrefixes.add(uri);
+			}
+		}
+
+		public void endPrefixMapping(String prefix) throws SAXException {
+			if (subtree != null) {
+				subtree.endPrefixMapping(prefix);
+			} else {
+				outer.endPrefixMapping(prefix);
+			}
+		}
+
+		public void startElement(String uri, String localName, String qName,
+				Attributes atts) throws SAXException {
+			if (subtree != null) {
+				depth++;
+				subtree.startElement(uri, localName, qName, atts);
+				return;
+			}
+			for (int i = 0; i < pendingPrefixes.size(); i += 2) {
+				outer.startPrefixMapping(pendingPrefixes.get(i),
+						pendingPrefixes.get(i + 1));
+			}
+			if (isSelfContained(uri, localName)) {
+				// record subtree, placeholder without attributes
+				subtree = new SAXEventBuffer();
+				for (int i = 0; i < pendingPrefixes.size(); i += 2) {
+					subtree.startPrefixMapping(pendingPrefixes.get(i),
+							pendingPrefixes.get(i + 1));
+				}
+				subtree.startElement(uri, localName, qName, atts);
+				depth = 1;
+				outer.startElement(uri, localName, qName, new AttributesImpl());
+			} else {
+				outer.startElement(uri, localName, qName, atts);
+			}
+			pendingPrefixes.clear();
+		}
+
+		public void endElement(String uri, String localName, String qName)
+				throws SAXException {
+			if (subtree == null) {
+				outer.endElement(uri, localName, qName);
+				return;
+			}
+			subtree.endElement(uri, localName, qName);
+			if (--depth == 0) {
+				fragments.add(submit(subtree));
+				subtree = null;
+				outer.endElement(uri, localName, qName);
+				ends.add(index.getPosition());
+			}
+		}
+
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			if (subtree != null) {
+				subtree.characters(ch, start, length);
+			} else {
+				outer.characters(ch, start, length);
+			}
+		}
+
+		public void ignorableWhitespace(char[] ch, int start, int length)
+				throws SAXException {
+			if (subtree != null) {
+				subtree.ignorableWhitespace(ch, start, length);
+			} else {
+				outer.ignorableWhitespace(ch, start, length);
+			}
+		}
+
+		public void processingInstruction(String target, String data)
+				throws SAXException {
+			if (subtree != null) {
+				subtree.processingInstruction(target, data);
+			} else {
+				outer.processingInstruction(target, data);
+			}
+		}
+
+		public void skippedEntity(String name) throws SAXException {
+			if (subtree != null) {
+				subtree.skippedEntity(name);
+			} else {
+				outer.skippedEntity(name);
+			}
+		}
+
+		public void comment(char[] ch, int start, int length)
+				throws SAXException {
+			if (subtree != null) {
+				subtree.comment(ch, start, length);
+			} else {
+				outer.comment(ch, start, length);
+			}
+		}
+
+		public void startDTD(String name, String publicId, String systemId)
+				throws SAXException {
+			outer.startDTD(name, publicId, systemId);
+		}
+
+		public void endDTD() throws SAXException {
+			outer.endDTD();
+		}
+
+		public void startEntity(String name) throws SAXException {
+			outer.startEntity(name);
+		}
+
+		public void endEntity(String name) throws SAXException {
+			outer.endEntity(name);
+		}
+
+		public void startCDATA() throws SAXException {
+			if (subtree == null) {
+				outer.startCDATA();
+			}
+		}
+
+		public void endCDATA() throws SAXException {
+			if (subtree == null) {
+				outer.endCDATA();
+			}
+		}
+	}
+
+	protected static byte[] get(Future<byte[]> future) throws IOException,
+			SAXException, EXIException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EXIException("Interrupted while encoding SC subtrees", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof EXIException) {
+				throw (EXIException) cause;
+			} else if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new EXIException("Encoding SC subtree failed", e);
+		}
+	}
+
+	/**
+	 * Shuts down the pool if it was created by this encoder.
+	 */
+	public void shutdown() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.util.SAXEventRing;
+
+/**
+ * Encodes XML to EXI in two pipelined stages: the XML parser runs on the
+ * calling thread and hands its events through a <code>SAXEventRing</code> to
+ * a second thread that runs the EXI encoder. Parsing and encoding of a
+ * document therefore overlap, which pays off for large documents where both
+ * stages take comparable time.
+ * 
+ * <p>
+ * The output is identical to the output of a <code>SAXEncoder</code> the
+ * parser drives directly. Not thread-safe, one document at a time.
+ * </p>
+ * 
+ * <pre>
+ * PipelinedSAXEncoder encoder = new PipelinedSAXEncoder(exiFactory);
+ * try {
+ * 	encoder.encode(new InputSource(&quot;doc.xml&quot;), os);
+ * } finally {
+ * 	encoder.shutdown();
+ * }
+ * </pre>
+ * 
+ */
+
+public class PipelinedSAXEncoder {
+
+	protected final SAXEncoder encoder;
+	protected final SAXEventRing ring;
+	protected final ExecutorService executor;
+	protected final boolean ownsExecutor;
+
+	/**
+	 * Creates an encoder with its own encoding thread.
+	 * 
+	 * @param factory
+	 *            EXI factory
+	 * @throws EXIException
+	 *             EXI exception
+	 */
+	public PipelinedSAXEncoder(EXIFactory factory) throws EXIException {
+		this(factory, SAXEventRing.DEFAULT_CAPACITY, Executors
+				.newSingleThreadExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "exi-pipelined-encoder");
+						t.setDaemon(true);
+						return t;
+					}
+				}), true);
+	}
+
+	/**
+	 * Creates an encoder that encodes on the given executor.
+	 * 
+	 * @param factory
+	 *            EXI factory
+	 * @param capacity
+	 *            number of events the ring buffers
+	 * @param executor
+	 *            executor that runs the encoding stage, needs a thread
+	 *            besides the calling one
+	 * @throws EXIException
+	 *             EXI exception
+	 */
+	public PipelinedSAXEncoder(EXIFactory factory, int capacity,
+			ExecutorService executor) throws EXIException {
+		this(factory, capacity, executor, false);
+	}
+
+	protected PipelinedSAXEncoder(EXIFactory factory, int capacity,
+			ExecutorService executor, boolean ownsExecutor)
+			throws EXIException {
+		this.encoder = new SAXFactory(factory).createEXIWriter();
+		this.ring = new SAXEventRing(capacity);
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Parses the XML input with a default XML reader and writes the EXI
+	 * stream.
+	 * 
+	 * @param xml
+	 *            XML input
+	 * @param os
+	 *            output stream (flushed, not closed)
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void encode(InputSource xml, OutputStream os) throws EXIException,
+			IOException, SAXException {
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setFeature("http://xml.org/sax/features/namespaces", true);
+		xmlReader.setFeature("http://xml.org/sax/features/namespace-prefixes",
+				false);
+		encode(xmlReader, xml, os);
+	}
+
+	/**
+	 * Parses the XML input with the given XML reader and writes the EXI
+	 * stream. The content, lexical and declaration handlers of the reader
+	 * are replaced.
+	 * 
+	 * @param xmlReader
+	 *            configured XML reader
+	 * @param xml
+	 *            XML input
+	 * @param os
+	 *            output stream (flushed, not closed)
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void encode(XMLReader xmlReader, InputSource xml, OutputStream os)
+			throws EXIException, IOException, SAXException {
+		ring.reset();
+		encoder.reset(os);
+
+		xmlReader.setContentHandler(ring);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				ring);
+		xmlReader.setProperty(
+				"http://xml.org/sax/properties/declaration-handler", ring);
+
+		// stage 2: encoding
+		Future<Void> encoding = executor.submit(new Callable<Void>() {
+			public Void call() throws SAXException {
+				ring.drainTo(encoder);
+				return null;
+			}
+		});
+
+		// stage 1: parsing on the calling thread
+		try {
+			xmlReader.parse(xml);
+		} catch (SAXException e) {
+			ring.abort(e);
+			if (ring.getFailure() != e) {
+				// parser reports the aborted ring, the encoder failed first
+				get(encoding);
+			}
+			await(encoding);
+			throw e;
+		} catch (IOException e) {
+			ring.abort(e);
+			await(encoding);
+			throw e;
+		} catch (RuntimeException e) {
+			ring.abort(e);
+			await(encoding);
+			throw e;
+		}
+
+		get(encoding);
+		os.flush();
+	}
+
+	protected static void get(Future<Void> encoding) throws SAXException {
+		try {
+			encoding.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SAXException("Interrupted while encoding", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			}
+			throw new SAXException("Encoding stage failed",
+					cause instanceof Exception ? (Exception) cause : e);
+		}
+	}
+
+	/*
+	 * Waits for an aborted encoding stage, so that the ring can be reset for
+	 * the next document.
+	 */
+	protected static void await(Future<Void> encoding) {
+		try {
+			encoding.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// failure of the aborted stage
+		}
+	}
+
+	/**
+	 * Stops the encoding thread if the encoder created it.
+	 */
+	public void shutdown() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.helpers.EXIFactoryFingerprint;
+
+/**
+ * 
+ * Thread-safe pool of SAX readers (<code>SAXDecoder</code>) and writers (
+ * <code>SAXEncoder</code>).
+ * 
+ * <p>
+ * Instances are keyed by the fingerprint of the <code>EXIFactory</code> (see
+ * {@link EXIFactoryFingerprint}) and created via <code>SAXFactory</code> from
+ * a clone of the first factory seen for a fingerprint. Each thread keeps its
+ * most recently returned instance per key (fast path without contention),
+ * further idle instances are shared between threads up to the configured
+ * maximum per key.
+ * </p>
+ * 
+ * <pre>
+ * SAXEncoder writer = pool.borrowWriter(exiFactory);
+ * try {
+ * 	writer.reset(os);
+ * 	xmlReader.setContentHandler(writer);
+ * 	xmlReader.parse(is);
+ * } finally {
+ * 	pool.returnWriter(writer);
+ * }
+ * </pre>
+ * 
+ */
+
+public class SAXCoderPool {
+
+	public static final int DEFAULT_MAXIMUM_IDLE = 16;
+
+	protected final int maximumIdle;
+
+	protected final ConcurrentHashMap<EXIFactoryFingerprint, Entry> entries = new ConcurrentHashMap<EXIFactoryFingerprint, Entry>();
+
+	/* pooled coders refer to the cloned factory of their entry */
+	protected final ConcurrentHashMap<FactoryIdentity, Entry> entriesByFactory = new ConcurrentHashMap<FactoryIdentity, Entry>();
+
+	// metrics
+	protected final AtomicLong created = new AtomicLong();
+	protected final AtomicLong borrowed = new AtomicLong();
+	protected final AtomicLong returned = new AtomicLong();
+	protected final AtomicLong threadLocalHits = new AtomicLong();
+	protected final AtomicLong sharedHits = new AtomicLong();
+	protected final AtomicLong discarded = new AtomicLong();
+
+	public SAXCoderPool() {
+		this(DEFAULT_MAXIMUM_IDLE);
+	}
+
+	/**
+	 * @param maximumIdle
+	 *            maximum number of idle readers and writers (each) shared per
+	 *            factory fingerprint, per-thread instances not included
+	 */
+	public SAXCoderPool(int maximumIdle) {
+		if (maximumIdle < 0) {
+			throw new IllegalArgumentException(
+					"Maximum number of idle instances must not be negative, but was "
+							+ maximumIdle);
+		}
+		this.maximumIdle = maximumIdle;
+	}
+
+	/* idle instances of one kind */
+	static class Slots<T> {
+		final ThreadLocal<T> local = new ThreadLocal<T>();
+		final Queue<T> shared = new ConcurrentLinkedQueue<T>();
+		final AtomicInteger sharedSize = new AtomicInteger();
+	}
+
+	/* per fingerprint */
+	static class Entry {
+		final EXIFactory factory;
+		final Slots<SAXDecoder> readers = new Slots<SAXDecoder>();
+		final Slots<SAXEncoder> writers = new Slots<SAXEncoder>();
+
+		Entry(EXIFactory factory) {
+			this.factory = factory;
+		}
+	}
+
+	static final class FactoryIdentity {
+		final EXIFactory factory;
+
+		FactoryIdentity(EXIFactory factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof FactoryIdentity
+					&& ((FactoryIdentity) o).factory == factory;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(factory);
+		}
+	}
+
+	protected Entry getEntry(EXIFactory exiFactory) {
+		EXIFactoryFingerprint key = EXIFactoryFingerprint.of(exiFactory);
+		Entry e = entries.get(key);
+		if (e == null) {
+			// coders must not see later changes to the callers factory
+			Entry n = new Entry(exiFactory.clone());
+			e = entries.putIfAbsent(key, n);
+			if (e == null) {
+				e = n;
+				entriesByFactory.put(new FactoryIdentity(n.factory), n);
+			}
+		}
+		return e;
+	}
+
+	private <T> T poll(Slots<T> slots) {
+		T t = slots.local.get();
+		if (t != null) {
+			slots.local.set(null);
+			threadLocalHits.incrementAndGet();
+			return t;
+		}
+		t = slots.shared.poll();
+		if (t != null) {
+			slots.sharedSize.decrementAndGet();
+			sharedHits.incrementAndGet();
+		}
+		return t;
+	}
+
+	private <T> void offer(Slots<T> slots, T t) {
+		returned.incrementAndGet();
+		if (slots.local.get() == null) {
+			slots.local.set(t);
+		} else if (slots.sharedSize.incrementAndGet() <= maximumIdle) {
+			slots.shared.offer(t);
+		} else {
+			slots.sharedSize.decrementAndGet();
+			discarded.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Borrows a reader for the given factory settings. The reader has no
+	 * handlers set and default features.
+	 * 
+	 * @param exiFactory
+	 *            factory settings
+	 * @return reader
+	 * @throws EXIException
+	 *             if a new reader cannot be created
+	 */
+	public SAXDecoder borrowReader(EXIFactory exiFactory) throws EXIException {
+		borrowed.incrementAndGet();
+		Entry e = getEntry(exiFactory);
+		SAXDecoder reader = poll(e.readers);
+		if (reader == null) {
+			reader = (SAXDecoder) new SAXFactory(e.factory).createEXIReader();
+			created.incrementAndGet();
+		}
+		return reader;
+	}
+
+	/**
+	 * Returns a reader to the pool. The reader must not be used by the caller
+	 * afterwards.
+	 * 
+	 * @param reader
+	 *            previously borrowed reader
+	 */
+	public void returnReader(SAXDecoder reader) {
+		Entry e = entriesByFactory.get(new FactoryIdentity(
+				reader.noOptionsFactory));
+		if (e == null) {
+			// not created by this pool (or pool cleared)
+			discarded.incrementAndGet();
+			return;
+		}
+		reader.reset();
+		offer(e.readers, reader);
+	}
+
+	/**
+	 * Borrows a writer for the given factory settings. The output stream must
+	 * be set via <code>reset(OutputStream)</code> before use.
+	 * 
+	 * @param exiFactory
+	 *            factory settings
+	 * @return writer
+	 * @throws EXIException
+	 *             if a new writer cannot be created
+	 */
+	public SAXEncoder borrowWriter(EXIFactory exiFactory) throws EXIException {
+		borrowed.incrementAndGet();
+		Entry e = getEntry(exiFactory);
+		SAXEncoder writer = poll(e.writers);
+		if (writer == null) {
+			writer = new SAXFactory(e.factory).createEXIWriter();
+			created.incrementAndGet();
+		}
+		return writer;
+	}
+
+	/**
+	 * Returns a writer to the pool. The writer must not be used by the caller
+	 * afterwards.
+	 * 
+	 * @param writer
+	 *            previously borrowed writer
+	 */
+	public void returnWriter(SAXEncoder writer) {
+		Entry e = entriesByFactory.get(new FactoryIdentity(writer.factory));
+		if (e == null) {
+			// not created by this pool (or pool cleared)
+			discarded.incrementAndGet();
+			return;
+		}
+		writer.exiAttributes.clear();
+		offer(e.writers, writer);
+	}
+
+	/**
+	 * Drops all idle instances held in the shared queues, instances borrowed
+	 * before are discarded when returned. Per-thread instances are released
+	 * when their threads terminate.
+	 */
+	public void clear() {
+		entries.clear();
+		entriesByFactory.clear();
+	}
+
+	public int getMaximumIdle() {
+		return maximumIdle;
+	}
+
+	/**
+	 * @return number of distinct factory fingerprints seen
+	 */
+	public int getKeyCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of idle instances in the shared queues
+	 */
+	public int getSharedIdleCount() {
+		int n = 0;
+		for (Entry e : entries.values()) {
+			n += e.readers.sharedSize.get() + e.writers.sharedSize.get();
+		}
+		return n;
+	}
+
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	public long getBorrowedCount() {
+		return borrowed.get();
+	}
+
+	public long getReturnedCount() {
+		return returned.get();
+	}
+
+	public long getThreadLocalHitCount() {
+		return threadLocalHits.get();
+	}
+
+	public long getSharedHitCount() {
+		return sharedHits.get();
+	}
+
+	public long getDiscardedCount() {
+		return discarded.get();
+	}
+
+	@Override
+	public String toString() {
+		return "SAXCoderPool[keys=" + getKeyCount() + ", created="
+				+ getCreatedCount() + ", borrowed=" + getBorrowedCount()
+				+ ", returned=" + getReturnedCount() + ", threadLocalHits="
+				+ getThreadLocalHitCount() + ", sharedHits="
+				+ getSharedHitCount() + ", discarded=" + getDiscardedCount()
+				+ "]";
+	}
+
+}
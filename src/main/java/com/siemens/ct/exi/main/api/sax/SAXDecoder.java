@@ -23,11 +23,14 @@
 
 package com.siemens.ct.exi.main.api.sax;
 
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 
 import org.xml.sax.ContentHandler;
@@ -58,7 +61,9 @@ import com.siemens.ct.exi.core.grammars.event.EventType;
 import com.siemens.ct.exi.core.values.ListValue;
 import com.siemens.ct.exi.core.values.Value;
 import com.siemens.ct.exi.core.values.ValueType;
-import com.siemens.ct.exi.main.helpers.DefaultSchemaIdResolver;
+import com.siemens.ct.exi.main.helpers.CachingSchemaIdResolver;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
+import com.siemens.ct.exi.main.util.ChannelInputStream;
 import com.siemens.ct.exi.main.util.NoEntityResolver;
 
 /**
@@ -92,11 +97,15 @@ public class SAXDecoder implements XMLReader {
 	/* Helper for building strings */
 	protected StringBuilder sbHelper;
 
+	/* DTD text parser, created on first use and reused */
+	protected DocTypeTextLexicalHandler docTypeTextHandler;
+
 	protected SAXDecoder(EXIFactory noOptionsFactory, char[] cbuffer) throws EXIException {
 		this.noOptionsFactory = noOptionsFactory;
 		if (noOptionsFactory.getSchemaIdResolver() == null) {
-			// set default schemaId resolver
-			noOptionsFactory.setSchemaIdResolver(new DefaultSchemaIdResolver());
+			// set default schemaId resolver (shared grammar cache)
+			noOptionsFactory.setSchemaIdResolver(CachingSchemaIdResolver
+					.getSharedInstance());
 		}
 		this.exiStream = noOptionsFactory.createEXIStreamDecoder();
 		/*
@@ -118,6 +127,24 @@ public class SAXDecoder implements XMLReader {
 		this(noOptionsFactory, new char[DEFAULT_CHAR_BUFFER_SIZE]);
 	}
 
+	/**
+	 * Drops all handlers and restores the default features so that this
+	 * reader can be handed out again (e.g., by a pool). Decoders and buffers
+	 * are kept.
+	 */
+	protected void reset() {
+		contentHandler = null;
+		dtdHandler = null;
+		lexicalHandler = null;
+		declHandler = null;
+		errorHandler = null;
+
+		namespaces = true;
+		namespacePrefixes = noOptionsFactory.getFidelityOptions()
+				.isFidelityEnabled(FidelityOptions.FEATURE_PREFIX);
+		exiBodyOnly = false;
+	}
+
 	/*
 	 * XML READER INTERFACE
 	 */
@@ -210,9 +237,44 @@ public class SAXDecoder implements XMLReader {
 	}
 
 	public void parse(String systemId) throws IOException, SAXException {
-		FileInputStream fis = new FileInputStream(systemId);
-		InputSource is = new InputSource(fis);
-		this.parse(is);
+		this.parse(new InputSource(systemId));
+	}
+
+	/**
+	 * Decodes the EXI stream read from the given channel. The channel is not
+	 * closed.
+	 * 
+	 * @param channel
+	 *            source channel
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void parse(ReadableByteChannel channel) throws IOException,
+			SAXException {
+		ChannelInputStream cis = new ChannelInputStream(channel);
+		try {
+			this.parse(new InputSource(cis));
+		} finally {
+			// hand back pooled buffer
+			cis.close();
+		}
+	}
+
+	/**
+	 * Decodes the EXI stream between position and limit of the given heap or
+	 * direct buffer. Decoding advances the position of the buffer.
+	 * 
+	 * @param buffer
+	 *            source buffer
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void parse(ByteBuffer buffer) throws IOException, SAXException {
+		this.parse(new InputSource(new ByteBufferInputStream(buffer)));
 	}
 
 	public void parse(InputSource inputSource) throws IOException, SAXException {
@@ -223,13 +285,15 @@ public class SAXDecoder implements XMLReader {
 			throw new SAXException("No content handler set!");
 		}
 
+		InputStream opened = null;
 		try {
 			// setup input stream
 			InputStream is = inputSource.getByteStream();
 
-			// systemId ?
+			// systemId ? (stream is owned and closed by the decoder)
 			if (is == null && inputSource.getSystemId() != null) {
-				is = new FileInputStream(inputSource.getSystemId());
+				is = opened = new BufferedInputStream(new FileInputStream(
+						inputSource.getSystemId()));
 			}
 			if (is == null) {
 				throw new EXIException("No valid input source " + is);
@@ -255,6 +319,10 @@ public class SAXDecoder implements XMLReader {
 			// This typically occurs when decoding a non-EXI file and we
 			// attempt to decode a byte that is not a valid Unicode code point
 			throw new SAXException("Error decoding EXI file: " + i.getLocalizedMessage());
+		} finally {
+			if (opened != null) {
+				opened.close();
+			}
 		}
 	}
 
@@ -629,9 +697,10 @@ public class SAXDecoder implements XMLReader {
 				}
 
 				if (dh != null) {
-					DocTypeTextLexicalHandler dttlh = new DocTypeTextLexicalHandler(
-							dh);
-					dttlh.parse(docType.text);
+					if (docTypeTextHandler == null) {
+						docTypeTextHandler = new DocTypeTextLexicalHandler();
+					}
+					docTypeTextHandler.parse(docType.text, dh);
 				}
 			}
 
@@ -682,10 +751,9 @@ public class SAXDecoder implements XMLReader {
 
 		// DeclHandler dh;
 		XMLReader xmlReader;
+		StringBuilder dt;
 
-		public DocTypeTextLexicalHandler(DeclHandler dh) throws SAXException {
-			// this.dh = dh;
-
+		public DocTypeTextLexicalHandler() throws SAXException {
 			xmlReader = XMLReaderFactory.createXMLReader();
 
 			// xmlReader.setProperty(
@@ -698,13 +766,15 @@ public class SAXDecoder implements XMLReader {
 			// *skip* resolving entities like DTDs
 			xmlReader.setEntityResolver(new NoEntityResolver());
 
-			xmlReader.setProperty(
-					"http://xml.org/sax/properties/declaration-handler", dh);
+			dt = new StringBuilder();
 		}
 
-		public void parse(char[] docTypeText) throws IOException, SAXException {
-			StringBuilder dt = new StringBuilder();
+		public void parse(char[] docTypeText, DeclHandler dh)
+				throws IOException, SAXException {
+			xmlReader.setProperty(
+					"http://xml.org/sax/properties/declaration-handler", dh);
 
+			dt.setLength(0);
 			dt.append("<!DOCTYPE foo_name [ ");
 			dt.append(docTypeText);
 			dt.append("]>");
@@ -28,6 +28,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -41,6 +43,9 @@ import com.siemens.ct.exi.core.attributes.AttributeFactory;
 import com.siemens.ct.exi.core.attributes.AttributeList;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.main.util.ByteBufferOutputStream;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
+import com.siemens.ct.exi.main.util.ReusableBufferedOutputStream;
 
 /**
  * Serializes SAX events to EXI stream.
@@ -59,6 +64,17 @@ public class SAXEncoder extends DefaultHandler2 {
 	// attributes
 	protected AttributeList exiAttributes;
 
+	// output buffer (reused across documents)
+	protected ReusableBufferedOutputStream bufferedOutput;
+	protected ChannelOutputStream channelOutput;
+
+	// pending characters (adjacent SAX character callbacks are merged)
+	protected char[] pendingChars;
+	protected int pendingCharsLength;
+
+	/* pending buffers larger than that are not kept for the next document */
+	protected static final int MAXIMUM_RETAINED_PENDING_CHARS = 1 << 16;
+
 	public SAXEncoder(EXIFactory factory) throws EXIException {
 		this.factory = factory;
 
@@ -68,21 +84,90 @@ public class SAXEncoder extends DefaultHandler2 {
 		// attribute list
 		AttributeFactory attFactory = AttributeFactory.newInstance();
 		exiAttributes = attFactory.createAttributeListInstance(factory);
+
+		pendingChars = new char[256];
 	}
 
 	public void setOutputStream(OutputStream os) throws EXIException,
 			IOException {
-		// buffer stream if not already
-		// TODO is there a *nice* way to detect whether a stream is buffered
+		// drop characters of a previous (possibly incomplete) document
+		pendingCharsLength = 0;
+		if (pendingChars.length > MAXIMUM_RETAINED_PENDING_CHARS) {
+			pendingChars = new char[256];
+		}
+
+		// buffer stream if not already (known buffered or in-memory targets)
 		if (!(os instanceof BufferedOutputStream
-				|| os instanceof ByteArrayOutputStream || os instanceof DataOutputStream)) {
-			os = new BufferedOutputStream(os);
+				|| os instanceof ByteArrayOutputStream
+				|| os instanceof DataOutputStream
+				|| os instanceof ReusableBufferedOutputStream
+				|| os instanceof ChannelOutputStream || os instanceof ByteBufferOutputStream)) {
+			if (bufferedOutput == null) {
+				bufferedOutput = new ReusableBufferedOutputStream();
+			}
+			bufferedOutput.setOutputStream(os);
+			os = bufferedOutput;
 		}
 
 		// write header & get body encoder
 		this.encoder = exiStream.encodeHeader(os);
 	}
 
+	/**
+	 * Writes the EXI stream to the given channel. Bytes are collected in a
+	 * pooled buffer that is written to the channel whenever it fills up and
+	 * when the document ends. The channel is not closed.
+	 * 
+	 * @param channel
+	 *            target channel
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutput(WritableByteChannel channel) throws EXIException,
+			IOException {
+		if (channelOutput == null) {
+			channelOutput = new ChannelOutputStream(channel);
+		} else {
+			channelOutput.setChannel(channel);
+		}
+		setOutputStream(channelOutput);
+	}
+
+	/**
+	 * Writes the EXI stream directly into the given heap or direct buffer,
+	 * starting at its current position. Encoding fails if the buffer is too
+	 * small.
+	 * 
+	 * @param buffer
+	 *            target buffer
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutput(ByteBuffer buffer) throws EXIException, IOException {
+		setOutputStream(new ByteBufferOutputStream(buffer));
+	}
+
+	/**
+	 * Prepares this encoder for the next document. All internal structures
+	 * (stream encoder, attribute list, output buffer) are reused, any state
+	 * left over from a previous (possibly incomplete) document is dropped.
+	 * 
+	 * @param os
+	 *            output stream of the next document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void reset(OutputStream os) throws EXIException, IOException {
+		exiAttributes.clear();
+		setOutputStream(os);
+	}
+
 	/*
 	 * ======================================================================
 	 * Interface ContentHandler
@@ -112,6 +197,8 @@ public class SAXEncoder extends DefaultHandler2 {
 
 	protected void startElementPfx(String uri, String local, String prefix,
 			Attributes attributes) throws EXIException, IOException {
+		checkPendingChars();
+
 		// start element
 		encoder.encodeStartElement(uri, local, prefix);
 
@@ -148,6 +235,7 @@ public class SAXEncoder extends DefaultHandler2 {
 
 	public void endDocument() throws SAXException {
 		try {
+			checkPendingChars();
 			encoder.encodeEndDocument();
 			encoder.flush();
 		} catch (Exception e) {
@@ -158,6 +246,7 @@ public class SAXEncoder extends DefaultHandler2 {
 	public void endElement(String uri, String local, String raw)
 			throws SAXException {
 		try {
+			checkPendingChars();
 			encoder.encodeEndElement();
 		} catch (Exception e) {
 			throw new SAXException("endElement=" + raw, e);
@@ -167,12 +256,37 @@ public class SAXEncoder extends DefaultHandler2 {
 	@Override
 	public void characters(char[] ch, int start, int length)
 			throws SAXException {
-		try {
-			encoder.encodeCharacters(new StringValue(new String(ch, start,
-					length)));
-		} catch (Exception e) {
-			throw new SAXException("characters="
-					+ new String(ch, start, length), e);
+		// SAX parsers may report one text node in several chunks, collect
+		// them until the next structural event
+		int newLength = pendingCharsLength + length;
+		if (newLength > pendingChars.length) {
+			char[] newPendingChars = new char[Math.max(newLength,
+					pendingChars.length << 1)];
+			System.arraycopy(pendingChars, 0, newPendingChars, 0,
+					pendingCharsLength);
+			pendingChars = newPendingChars;
+		}
+		System.arraycopy(ch, start, pendingChars, pendingCharsLength, length);
+		pendingCharsLength = newLength;
+	}
+
+	/**
+	 * Encodes the characters collected since the last structural event (if
+	 * any) as one CH event. Subclasses that encode additional events have to
+	 * call this method first.
+	 * 
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	protected void checkPendingChars() throws EXIException, IOException {
+		if (pendingCharsLength > 0) {
+			// the value is kept by the body encoder, hand over an exact copy
+			char[] chars = new char[pendingCharsLength];
+			System.arraycopy(pendingChars, 0, chars, 0, pendingCharsLength);
+			pendingCharsLength = 0;
+			encoder.encodeCharacters(new StringValue(chars));
 		}
 	}
 
@@ -51,7 +51,8 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 	protected String docTypeName;
 	protected String docTypePublicID;
 	protected String docTypeSystemID;
-	protected String docTypeText;
+	// declarations of the internal subset (reused)
+	protected final StringBuilder docTypeText = new StringBuilder();
 	protected boolean entityReferenceRange;
 	protected boolean dtdRange;
 
@@ -121,12 +122,13 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 		if (dtdRange) {
 			// DTD section
 			if (preserveDTD) {
-				this.docTypeText += "<!--" + new String(ch, start, length)
-						+ "-->";
+				docTypeText.append("<!--").append(ch, start, length)
+						.append("-->");
 			}
 		} else {
 			if (preserveComment) {
 				try {
+					checkPendingChars();
 					encoder.encodeComment(ch, start, length);
 				} catch (Exception e) {
 					throw new SAXException("comment", e);
@@ -141,9 +143,11 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 			if (dtdRange) {
 				// DTD section
 				if (preserveDTD) {
-					this.docTypeText += "<?" + target + " " + data + "?>";
+					docTypeText.append("<?").append(target).append(' ')
+							.append(data).append("?>");
 				}
 			} else {
+				checkPendingChars();
 				encoder.encodeProcessingInstruction(target, data);
 			}
 		} catch (Exception e) {
@@ -170,7 +174,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 				docTypeName = name;
 				docTypePublicID = publicId == null ? "" : publicId;
 				docTypeSystemID = systemId == null ? "" : systemId;
-				docTypeText = "";
+				docTypeText.setLength(0);
 			}
 			dtdRange = true;
 
@@ -182,8 +186,9 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 	public void endDTD() throws SAXException {
 		try {
 			if (preserveDTD) {
+				checkPendingChars();
 				encoder.encodeDocType(docTypeName, docTypePublicID,
-						docTypeSystemID, docTypeText);
+						docTypeSystemID, docTypeText.toString());
 				// System.out.println("DAPE encode DTD text = " + docTypeText);
 			}
 			dtdRange = false;
@@ -197,7 +202,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 			if (retainEntityReference) {
 				try {
 					// &amp; --> name="amp"
-					// checkPendingChars();
+					checkPendingChars();
 				} catch (Exception e) {
 					throw new SAXException("startEntity", e);
 				}
@@ -233,6 +238,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 	public void skippedEntity(String name) throws SAXException {
 		try {
 			if (preserveDTD) {
+				checkPendingChars();
 				encoder.encodeEntityReference(name);
 			}
 		} catch (Exception e) {
@@ -262,7 +268,8 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 		if (preserveDTD) {
 			// e.g. <!ELEMENT Hello (#PCDATA)>
 			// --> name == Hello && model == (#PCDATA) <--
-			docTypeText += "<!ELEMENT " + name + " " + model + "> ";
+			docTypeText.append("<!ELEMENT ").append(name).append(' ')
+					.append(model).append("> ");
 		}
 	}
 
@@ -270,8 +277,9 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 			String mode, String value) throws SAXException {
 		if (preserveDTD) {
 			// e.g. <!ATTLIST TVSCHEDULE NAME CDATA #REQUIRED>
-			docTypeText += "<!ATTLIST " + eName + " " + aName + " " + type
-					+ " " + mode + "> ";
+			docTypeText.append("<!ATTLIST ").append(eName).append(' ')
+					.append(aName).append(' ').append(type).append(' ')
+					.append(mode).append("> ");
 		}
 	}
 
@@ -279,7 +287,8 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 			throws SAXException {
 		if (preserveDTD) {
 			// e.g. <!ENTITY eacute "&#xE9;">
-			docTypeText += "<!ENTITY " + name + " \"" + value + "\"> ";
+			docTypeText.append("<!ENTITY ").append(name).append(" \"")
+					.append(value).append("\"> ");
 		}
 	}
 
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.helpers.SelfContainedIndex;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
+import com.siemens.ct.exi.main.util.ChannelInputStream;
+
+/**
+ * Decodes single self-contained (SC) fragments of an EXI stream. The reader
+ * seeks to the offset recorded in a <code>SelfContainedIndex</code> and
+ * decodes the subtree of that SC element only, the cost does not depend on
+ * the position of the fragment within the document.
+ * 
+ * <p>
+ * An SC fragment is an EXI body without header that starts with the
+ * fragment grammar, the decoder is set up accordingly from a copy of the
+ * factory used for encoding. Not thread-safe.
+ * </p>
+ * 
+ * @see SelfContainedIndex
+ */
+
+public class SelfContainedFragmentReader {
+
+	protected final SelfContainedIndex index;
+	protected final SAXDecoder decoder;
+
+	public SelfContainedFragmentReader(EXIFactory factory,
+			SelfContainedIndex index) throws EXIException {
+		this.index = index;
+		EXIFactory fragmentFactory = factory.clone();
+		fragmentFactory.setFragment(true);
+		this.decoder = new SAXDecoder(fragmentFactory);
+		// no EXI header
+		this.decoder.exiBodyOnly = true;
+	}
+
+	public SelfContainedIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Decodes fragment <code>ordinal</code> from a seekable channel, e.g. a
+	 * <code>FileChannel</code>. The channel is positioned at the fragment and
+	 * not closed.
+	 * 
+	 * @param ordinal
+	 *            fragment ordinal
+	 * @param channel
+	 *            channel of the whole EXI stream
+	 * @param handler
+	 *            content handler, also lexical handler if implemented
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void parseFragment(int ordinal, SeekableByteChannel channel,
+			ContentHandler handler) throws IOException, SAXException {
+		channel.position(index.getOffset(ordinal));
+		ChannelInputStream cis = new ChannelInputStream(channel);
+		try {
+			parse(cis, handler);
+		} finally {
+			// hand back pooled buffer
+			cis.close();
+		}
+	}
+
+	/**
+	 * Decodes fragment <code>ordinal</code> from a buffer holding the whole
+	 * EXI stream (e.g. a mapped file) starting at its position. The position
+	 * of the buffer is not changed.
+	 * 
+	 * @param ordinal
+	 *            fragment ordinal
+	 * @param buffer
+	 *            buffer of the whole EXI stream
+	 * @param handler
+	 *            content handler, also lexical handler if implemented
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void parseFragment(int ordinal, ByteBuffer buffer,
+			ContentHandler handler) throws IOException, SAXException {
+		long offset = index.getOffset(ordinal);
+		ByteBuffer fragment = buffer.duplicate();
+		fragment.position(buffer.position() + (int) offset);
+		parse(new ByteBufferInputStream(fragment), handler);
+	}
+
+	protected void parse(InputStream is, ContentHandler handler)
+			throws IOException, SAXException {
+		decoder.setContentHandler(handler);
+		decoder.setProperty("http://xml.org/sax/properties/lexical-handler",
+				handler instanceof LexicalHandler ? handler : null);
+		decoder.parse(new InputSource(is));
+	}
+
+}
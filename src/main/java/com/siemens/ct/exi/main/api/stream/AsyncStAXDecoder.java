@@ -0,0 +1,1002 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.siemens.ct.exi.core.EXIFactory;
+
+/**
+ * Push-based StAX reader for EXI streams. Bytes are pushed with
+ * <code>feedInput</code> as they arrive, <code>next()</code> returns
+ * <code>EVENT_INCOMPLETE</code> as long as the buffered bytes do not suffice
+ * for the next event (same contract as the Aalto async parser).
+ * 
+ * <p>
+ * This is not a non-blocking decoder. The EXI body decoder pulls its input
+ * and cannot suspend in the middle of an event, so each document is decoded
+ * by a continuation, a task on an executor that owns a blocking
+ * <code>StAXDecoder</code>. Fed bytes wake the task, which decodes ahead into
+ * a queue of events until the input runs out and then parks, keeping its
+ * decoder state. <code>next()</code> takes events from the queue and waits
+ * only while the task is decoding and nothing is queued yet. Every byte is
+ * decoded once and consumed bytes are dropped.
+ * </p>
+ * 
+ * <p>
+ * A parked continuation occupies a thread of the executor. By default
+ * virtual threads are used where the runtime offers them (Java 21 and later),
+ * there a parked document costs some heap only and thousands of connections
+ * share the carrier threads. On older runtimes the default is a cached pool
+ * of daemon threads, i.e. one platform thread per document waiting for
+ * input. A custom executor must not limit the number of concurrently parked
+ * tasks, <code>next()</code> would wait forever for a task that never starts.
+ * </p>
+ * 
+ * <p>
+ * After <code>END_DOCUMENT</code>, <code>reset()</code> prepares the reader
+ * for the next document on the same connection. In (pre-)compression mode the
+ * decoder may read beyond the end of the document, there one reader per
+ * document with <code>endOfInput()</code> is needed. <code>close()</code>
+ * ends a pending continuation. Not thread-safe.
+ * </p>
+ * 
+ * @see StAXDecoder
+ */
+
+public class AsyncStAXDecoder implements XMLStreamReader {
+
+	/** Returned by <code>next()</code> if more input is needed */
+	public static final int EVENT_INCOMPLETE = 257;
+
+	protected final EXIFactory noOptionsFactory;
+
+	protected final Executor executor;
+
+	// input of the connection, replaced when a document is abandoned
+	protected FeedInputStream input;
+
+	// continuation decoding the current document (null if none)
+	protected Continuation continuation;
+
+	protected int eventType;
+
+	// current event, null while incomplete
+	protected Event event;
+
+	// start tags in scope, the last one is popped after its end tag
+	protected final List<Event> scope;
+
+	protected final NamespaceContext namespaceContext;
+
+	public AsyncStAXDecoder(EXIFactory noOptionsFactory) {
+		this(noOptionsFactory, DefaultExecutor.INSTANCE);
+	}
+
+	/**
+	 * Creates a reader whose continuations run on the given executor.
+	 * 
+	 * @param noOptionsFactory
+	 *            EXI factory
+	 * @param executor
+	 *            executor without limit of concurrent tasks, e.g. one virtual
+	 *            thread per task
+	 */
+	public AsyncStAXDecoder(EXIFactory noOptionsFactory, Executor executor) {
+		this.noOptionsFactory = noOptionsFactory;
+		this.executor = executor;
+		this.input = new FeedInputStream();
+		this.eventType = EVENT_INCOMPLETE;
+		this.scope = new ArrayList<Event>();
+		this.namespaceContext = new ScopeNamespaceContext();
+	}
+
+	/*
+	 * ======================================================================
+	 * Input feeding
+	 * ======================================================================
+	 */
+
+	/**
+	 * Appends the given bytes to the input. The bytes are copied.
+	 * 
+	 * @param b
+	 *            bytes
+	 * @param off
+	 *            offset
+	 * @param len
+	 *            number of bytes
+	 * @throws XMLStreamException
+	 *             if input was already marked as complete
+	 */
+	public void feedInput(byte[] b, int off, int len)
+			throws XMLStreamException {
+		checkFeedable();
+		input.append(b, off, len);
+	}
+
+	/**
+	 * Appends the remaining bytes of the given buffer to the input. The
+	 * position of the buffer is moved to its limit.
+	 * 
+	 * @param buffer
+	 *            heap or direct buffer
+	 * @throws XMLStreamException
+	 *             if input was already marked as complete
+	 */
+	public void feedInput(ByteBuffer buffer) throws XMLStreamException {
+		checkFeedable();
+		input.append(buffer);
+	}
+
+	protected void checkFeedable() throws XMLStreamException {
+		if (input.isClosed()) {
+			throw new XMLStreamException("Reader closed");
+		}
+		if (input.isEnded()) {
+			throw new XMLStreamException("Input already marked as complete");
+		}
+	}
+
+	/**
+	 * Marks the input as complete, no further bytes will be fed.
+	 */
+	public void endOfInput() {
+		input.end();
+	}
+
+	/**
+	 * Tells whether <code>next()</code> cannot make progress without more
+	 * input.
+	 * 
+	 * @return true if more input is needed
+	 */
+	public boolean needMoreInput() {
+		return eventType == EVENT_INCOMPLETE && continuation != null
+				&& continuation.isStarved();
+	}
+
+	/**
+	 * Returns the number of fed bytes not yet read by the decoder. Exact
+	 * while <code>next()</code> reports <code>EVENT_INCOMPLETE</code> and
+	 * after <code>END_DOCUMENT</code>, approximate while the continuation
+	 * decodes.
+	 * 
+	 * @return buffered bytes
+	 */
+	public int getBufferedBytes() {
+		return input.available();
+	}
+
+	/**
+	 * Returns the number of bytes read by the decoder since this reader was
+	 * created or abandoned a document. Each fed byte is read at most once.
+	 * Exact under the same conditions as <code>getBufferedBytes()</code>.
+	 * 
+	 * @return consumed bytes
+	 */
+	public long getConsumedBytes() {
+		return input.getConsumed();
+	}
+
+	/**
+	 * Prepares the reader for the next document after
+	 * <code>END_DOCUMENT</code>. Bytes following the previous document are
+	 * kept. Called in the middle of a document, the pending continuation is
+	 * ended and all input is dropped.
+	 */
+	public void reset() {
+		if (eventType != END_DOCUMENT) {
+			input.close(continuation != null);
+			input = new FeedInputStream();
+		}
+		continuation = null;
+		event = null;
+		scope.clear();
+		eventType = EVENT_INCOMPLETE;
+	}
+
+	/*
+	 * ======================================================================
+	 * Decoding
+	 * ======================================================================
+	 */
+
+	public int next() throws XMLStreamException {
+		if (eventType == END_DOCUMENT) {
+			throw new XMLStreamException("No more events, END_DOCUMENT reached");
+		}
+		if (eventType == END_ELEMENT) {
+			scope.remove(scope.size() - 1);
+		}
+
+		if (continuation == null) {
+			continuation = new Continuation(input);
+			try {
+				executor.execute(continuation);
+			} catch (RejectedExecutionException e) {
+				continuation = null;
+				throw new XMLStreamException(e);
+			}
+		}
+		try {
+			event = continuation.take();
+		} catch (XMLStreamException e) {
+			event = null;
+			eventType = EVENT_INCOMPLETE;
+			throw e;
+		}
+		if (event == null) {
+			eventType = EVENT_INCOMPLETE;
+		} else {
+			eventType = event.type;
+			if (eventType == START_ELEMENT) {
+				scope.add(event);
+			}
+		}
+		return eventType;
+	}
+
+	public boolean hasNext() throws XMLStreamException {
+		return eventType != END_DOCUMENT;
+	}
+
+	public int getEventType() {
+		return eventType;
+	}
+
+	public int nextTag() throws XMLStreamException {
+		int ev = next();
+		while ((ev == CHARACTERS && isWhiteSpace()) || ev == SPACE
+				|| ev == PROCESSING_INSTRUCTION || ev == COMMENT) {
+			ev = next();
+		}
+		if (ev == EVENT_INCOMPLETE) {
+			throw new XMLStreamException(
+					"Not enough input to advance to the next tag");
+		}
+		if (ev != START_ELEMENT && ev != END_ELEMENT) {
+			throw new XMLStreamException("expected start or end tag",
+					getLocation());
+		}
+		return ev;
+	}
+
+	public String getElementText() throws XMLStreamException {
+		if (eventType != START_ELEMENT) {
+			throw new XMLStreamException(
+					"parser must be on START_ELEMENT to read next text",
+					getLocation());
+		}
+		StringBuilder buf = new StringBuilder();
+		int ev = next();
+		while (ev != END_ELEMENT) {
+			if (ev == CHARACTERS || ev == CDATA || ev == SPACE
+					|| ev == ENTITY_REFERENCE) {
+				buf.append(getText());
+			} else if (ev == EVENT_INCOMPLETE) {
+				throw new XMLStreamException(
+						"Not enough input to read element text");
+			} else if (ev != PROCESSING_INSTRUCTION && ev != COMMENT) {
+				throw new XMLStreamException("Unexpected event type " + ev,
+						getLocation());
+			}
+			ev = next();
+		}
+		return buf.toString();
+	}
+
+	public void require(int type, String namespaceURI, String localName)
+			throws XMLStreamException {
+		if (type != eventType) {
+			throw new XMLStreamException("Event type " + type
+					+ " does not match current event " + eventType);
+		}
+		if (hasName()) {
+			QName name = event.name;
+			if (namespaceURI != null
+					&& !namespaceURI.equals(name.getNamespaceURI())) {
+				throw new XMLStreamException("Namespace " + namespaceURI
+						+ " does not match " + name);
+			}
+			if (localName != null && !localName.equals(name.getLocalPart())) {
+				throw new XMLStreamException("Local name " + localName
+						+ " does not match " + name);
+			}
+		}
+	}
+
+	public void close() throws XMLStreamException {
+		input.close(true);
+		continuation = null;
+		event = null;
+		scope.clear();
+	}
+
+	protected Event current() {
+		if (event == null) {
+			throw new IllegalStateException(
+					"No current event, more input needed");
+		}
+		return event;
+	}
+
+	protected String text() {
+		String text = current().text;
+		if (text == null) {
+			throw new IllegalStateException("No text for event type "
+					+ eventType);
+		}
+		return text;
+	}
+
+	/*
+	 * ======================================================================
+	 * Current event
+	 * ======================================================================
+	 */
+
+	public Object getProperty(String name) throws IllegalArgumentException {
+		return null;
+	}
+
+	public String getNamespaceURI(String prefix) {
+		current();
+		return namespaceContext.getNamespaceURI(prefix);
+	}
+
+	public boolean isStartElement() {
+		return eventType == START_ELEMENT;
+	}
+
+	public boolean isEndElement() {
+		return eventType == END_ELEMENT;
+	}
+
+	public boolean isCharacters() {
+		return eventType == CHARACTERS;
+	}
+
+	public boolean isWhiteSpace() {
+		return eventType == SPACE
+				|| (eventType == CHARACTERS && event.text.trim().length() == 0);
+	}
+
+	public String getAttributeValue(String namespaceURI, String localName) {
+		Event e = current();
+		for (int i = 0; i < e.attributeNames.length; i++) {
+			QName name = e.attributeNames[i];
+			if (name.getLocalPart().equals(localName)
+					&& (namespaceURI == null || name.getNamespaceURI().equals(
+							namespaceURI))) {
+				return e.attributeValues[i];
+			}
+		}
+		return null;
+	}
+
+	public int getAttributeCount() {
+		return current().attributeNames.length;
+	}
+
+	public QName getAttributeName(int index) {
+		return current().attributeNames[index];
+	}
+
+	public String getAttributeNamespace(int index) {
+		return getAttributeName(index).getNamespaceURI();
+	}
+
+	public String getAttributeLocalName(int index) {
+		return getAttributeName(index).getLocalPart();
+	}
+
+	public String getAttributePrefix(int index) {
+		return current().attributePrefixes[index];
+	}
+
+	public String getAttributeType(int index) {
+		return "CDATA";
+	}
+
+	public String getAttributeValue(int index) {
+		return current().attributeValues[index];
+	}
+
+	public boolean isAttributeSpecified(int index) {
+		return false;
+	}
+
+	public int getNamespaceCount() {
+		return current().namespaces.length / 2;
+	}
+
+	public String getNamespacePrefix(int index) {
+		return current().namespaces[2 * index];
+	}
+
+	public String getNamespaceURI(int index) {
+		return current().namespaces[2 * index + 1];
+	}
+
+	public NamespaceContext getNamespaceContext() {
+		return namespaceContext;
+	}
+
+	public String getText() {
+		return text();
+	}
+
+	public char[] getTextCharacters() {
+		return text().toCharArray();
+	}
+
+	public int getTextCharacters(int sourceStart, char[] target,
+			int targetStart, int length) throws XMLStreamException {
+		String text = text();
+		int n = Math.min(length, text.length() - sourceStart);
+		text.getChars(sourceStart, sourceStart + n, target, targetStart);
+		return n;
+	}
+
+	public int getTextStart() {
+		return 0;
+	}
+
+	public int getTextLength() {
+		return text().length();
+	}
+
+	public String getEncoding() {
+		return null;
+	}
+
+	public boolean hasText() {
+		return event != null && event.text != null;
+	}
+
+	public Location getLocation() {
+		return EmptyLocation.getInstance();
+	}
+
+	public QName getName() {
+		return current().name;
+	}
+
+	public String getLocalName() {
+		return getName().getLocalPart();
+	}
+
+	public boolean hasName() {
+		return eventType == START_ELEMENT || eventType == END_ELEMENT;
+	}
+
+	public String getNamespaceURI() {
+		return getName().getNamespaceURI();
+	}
+
+	public String getPrefix() {
+		return getName().getPrefix();
+	}
+
+	public String getVersion() {
+		return null;
+	}
+
+	public boolean isStandalone() {
+		return false;
+	}
+
+	public boolean standaloneSet() {
+		return false;
+	}
+
+	public String getCharacterEncodingScheme() {
+		return null;
+	}
+
+	public String getPITarget() {
+		return current().piTarget;
+	}
+
+	public String getPIData() {
+		return current().piData;
+	}
+
+	/*
+	 * Copy of one decoded event. The continuation decodes ahead, so the
+	 * blocking decoder has moved on by the time the caller reads the event.
+	 */
+	protected static class Event {
+
+		static final QName[] NO_NAMES = new QName[0];
+		static final String[] NO_STRINGS = new String[0];
+
+		final int type;
+		// START_ELEMENT, END_ELEMENT
+		QName name;
+		// prefix and URI pairs declared by the start tag or going out of
+		// scope with the end tag
+		String[] namespaces = NO_STRINGS;
+		QName[] attributeNames = NO_NAMES;
+		String[] attributePrefixes = NO_STRINGS;
+		String[] attributeValues = NO_STRINGS;
+		// CHARACTERS, SPACE, COMMENT, ENTITY_REFERENCE, DTD
+		String text;
+		String piTarget;
+		String piData;
+
+		Event(StAXDecoder d, int type) {
+			this.type = type;
+			if (type == START_ELEMENT || type == END_ELEMENT) {
+				String prefix = d.getPrefix();
+				name = new QName(d.getNamespaceURI(), d.getLocalName(),
+						prefix == null ? XMLConstants.DEFAULT_NS_PREFIX
+								: prefix);
+				int n = d.getNamespaceCount();
+				if (n > 0) {
+					namespaces = new String[2 * n];
+					for (int i = 0; i < n; i++) {
+						namespaces[2 * i] = d.getNamespacePrefix(i);
+						namespaces[2 * i + 1] = d.getNamespaceURI(i);
+					}
+				}
+			}
+			if (type == START_ELEMENT) {
+				int n = d.getAttributeCount();
+				if (n > 0) {
+					attributeNames = new QName[n];
+					attributePrefixes = new String[n];
+					attributeValues = new String[n];
+					for (int i = 0; i < n; i++) {
+						attributeNames[i] = d.getAttributeName(i);
+						attributePrefixes[i] = d.getAttributePrefix(i);
+						attributeValues[i] = d.getAttributeValue(i);
+					}
+				}
+			} else if (type == CHARACTERS || type == SPACE || type == COMMENT
+					|| type == ENTITY_REFERENCE || type == DTD) {
+				text = d.getText();
+			} else if (type == PROCESSING_INSTRUCTION) {
+				piTarget = d.getPITarget();
+				piData = d.getPIData();
+			}
+		}
+	}
+
+	/* namespace declarations of the start tags in scope, inner to outer */
+	class ScopeNamespaceContext implements NamespaceContext {
+
+		public String getNamespaceURI(String prefix) {
+			for (int k = scope.size() - 1; k >= 0; k--) {
+				String[] ns = scope.get(k).namespaces;
+				for (int i = 0; i < ns.length; i += 2) {
+					if (ns[i].equals(prefix)) {
+						return ns[i + 1];
+					}
+				}
+			}
+			return null;
+		}
+
+		public String getPrefix(String namespaceURI) {
+			for (int k = scope.size() - 1; k >= 0; k--) {
+				String[] ns = scope.get(k).namespaces;
+				for (int i = 0; i < ns.length; i += 2) {
+					if (ns[i + 1].equals(namespaceURI)) {
+						return ns[i];
+					}
+				}
+			}
+			return null;
+		}
+
+		@SuppressWarnings("rawtypes")
+		public Iterator getPrefixes(String namespaceURI) {
+			List<String> prefixes = new ArrayList<String>();
+			for (int k = scope.size() - 1; k >= 0; k--) {
+				String[] ns = scope.get(k).namespaces;
+				for (int i = 0; i < ns.length; i += 2) {
+					if (ns[i + 1].equals(namespaceURI)) {
+						prefixes.add(ns[i]);
+					}
+				}
+			}
+			return prefixes.iterator();
+		}
+	}
+
+	/*
+	 * Decodes one document with a blocking StAXDecoder and queues a copy of
+	 * every event. The task runs as long as there is input and parks in the
+	 * input stream otherwise. Shared state is guarded by the lock of the
+	 * input, no lock is held while the task decodes or waits.
+	 */
+	protected class Continuation implements Runnable {
+
+		final FeedInputStream in;
+
+		// guarded by in.lock
+		final Queue<Event> events = new ArrayDeque<Event>();
+		Exception failure;
+		boolean finished;
+
+		Continuation(FeedInputStream in) {
+			this.in = in;
+		}
+
+		/*
+		 * next queued event, null if the task parked for more input; waits
+		 * while the task is decoding
+		 */
+		Event take() throws XMLStreamException {
+			in.lock.lock();
+			try {
+				while (events.isEmpty() && !finished && !in.parked) {
+					in.progress.await();
+				}
+				Event e = events.poll();
+				if (e != null || !finished) {
+					return e;
+				}
+				if (failure instanceof XMLStreamException) {
+					throw (XMLStreamException) failure;
+				}
+				if (failure != null) {
+					throw new XMLStreamException(failure);
+				}
+				throw new XMLStreamException("Reader closed");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new XMLStreamException(
+						"Interrupted while waiting for the decoder", e);
+			} finally {
+				in.lock.unlock();
+			}
+		}
+
+		boolean isStarved() {
+			in.lock.lock();
+			try {
+				return events.isEmpty() && !finished && in.parked;
+			} finally {
+				in.lock.unlock();
+			}
+		}
+
+		public void run() {
+			Exception failure = null;
+			try {
+				StAXDecoder d = new StAXDecoder(noOptionsFactory);
+				// decodes header and SD
+				d.setInputStream(in);
+				publish(new Event(d, START_DOCUMENT));
+				int ev;
+				do {
+					ev = d.next();
+					publish(new Event(d, ev));
+				} while (ev != END_DOCUMENT);
+			} catch (Exception e) {
+				failure = e;
+			}
+			in.lock.lock();
+			try {
+				if (!in.closed) {
+					this.failure = failure;
+				}
+				finished = true;
+				in.progress.signal();
+			} finally {
+				in.lock.unlock();
+			}
+		}
+
+		void publish(Event e) throws IOException {
+			in.lock.lock();
+			try {
+				if (in.closed) {
+					throw new IOException("Reader closed");
+				}
+				events.add(e);
+				in.progress.signal();
+			} finally {
+				in.lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Shared default executor: virtual threads if available, daemon threads
+	 * otherwise
+	 */
+	static class DefaultExecutor {
+
+		static final Executor INSTANCE = create();
+
+		static Executor create() {
+			try {
+				return (Executor) Executors.class.getMethod(
+						"newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				// Java 20 and older
+			}
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "exi-async-decoder-"
+							+ count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/*
+	 * Double-buffered input. The continuation reads its chunk without
+	 * locking and takes over all fed bytes at once when the chunk is used up,
+	 * the consumed chunk is then reused for feeding. Running out of bytes
+	 * before the input is complete parks the continuation. Extends
+	 * BufferedInputStream so that the EXI stream decoder does not wrap (and
+	 * read ahead) once more.
+	 */
+	static class FeedInputStream extends BufferedInputStream {
+
+		static final byte[] EMPTY = new byte[0];
+
+		final ReentrantLock lock = new ReentrantLock();
+		// signalled when bytes are fed, the input ends or is closed
+		final Condition fed = lock.newCondition();
+		// signalled when an event is queued or the continuation parks or ends
+		final Condition progress = lock.newCondition();
+
+		// owned by the continuation
+		byte[] chunk = EMPTY;
+		int chunkPosition;
+		int chunkLimit;
+
+		// guarded by lock
+		byte[] pending = EMPTY;
+		int pendingLength;
+		// bytes handed to the continuation
+		long taken;
+		boolean ended;
+		boolean closed;
+		// continuation waits for input
+		boolean parked;
+
+		FeedInputStream() {
+			super(new ByteArrayInputStream(EMPTY), 1);
+		}
+
+		void append(byte[] b, int off, int len) {
+			lock.lock();
+			try {
+				ensureCapacity(len);
+				System.arraycopy(b, off, pending, pendingLength, len);
+				pendingLength += len;
+				wake(len > 0);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void append(ByteBuffer buffer) {
+			lock.lock();
+			try {
+				int len = buffer.remaining();
+				ensureCapacity(len);
+				buffer.get(pending, pendingLength, len);
+				pendingLength += len;
+				wake(len > 0);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void ensureCapacity(int len) {
+			if (pendingLength + len > pending.length) {
+				byte[] newPending = new byte[Math.max(pendingLength + len,
+						Math.max(pending.length << 1, 1024))];
+				System.arraycopy(pending, 0, newPending, 0, pendingLength);
+				pending = newPending;
+			}
+		}
+
+		/* lets a parked continuation go on */
+		void wake(boolean change) {
+			if (change) {
+				parked = false;
+				fed.signal();
+			}
+		}
+
+		void end() {
+			lock.lock();
+			try {
+				ended = true;
+				wake(true);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/* ends the continuation reading this input */
+		void close(boolean wake) {
+			lock.lock();
+			try {
+				closed = true;
+				pending = EMPTY;
+				pendingLength = 0;
+				wake(wake);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean isEnded() {
+			lock.lock();
+			try {
+				return ended;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean isClosed() {
+			lock.lock();
+			try {
+				return closed;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long getConsumed() {
+			lock.lock();
+			try {
+				return taken - (chunkLimit - chunkPosition);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/* takes over the fed bytes, false at the end of input */
+		boolean fill() throws IOException {
+			lock.lock();
+			try {
+				while (pendingLength == 0) {
+					if (closed) {
+						throw new IOException("Reader closed");
+					}
+					if (ended) {
+						return false;
+					}
+					parked = true;
+					progress.signal();
+					fed.await();
+				}
+				parked = false;
+				byte[] consumed = chunk;
+				chunk = pending;
+				chunkPosition = 0;
+				chunkLimit = pendingLength;
+				taken += pendingLength;
+				pending = consumed;
+				pendingLength = 0;
+				return true;
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while parked");
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (chunkPosition == chunkLimit && !fill()) {
+				return -1;
+			}
+			return chunk[chunkPosition++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (chunkPosition == chunkLimit && !fill()) {
+				return -1;
+			}
+			len = Math.min(len, chunkLimit - chunkPosition);
+			System.arraycopy(chunk, chunkPosition, b, off, len);
+			chunkPosition += len;
+			return len;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0 || (chunkPosition == chunkLimit && !fill())) {
+				return 0;
+			}
+			int skip = (int) Math.min(n, chunkLimit - chunkPosition);
+			chunkPosition += skip;
+			return skip;
+		}
+
+		@Override
+		public int available() {
+			lock.lock();
+			try {
+				return pendingLength + chunkLimit - chunkPosition;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void mark(int readlimit) {
+		}
+
+		@Override
+		public void reset() throws IOException {
+			throw new IOException("mark/reset not supported");
+		}
+
+		@Override
+		public void close() {
+			// the decoder does not end the connection
+		}
+	}
+
+}
@@ -25,6 +25,8 @@ package com.siemens.ct.exi.main.api.stream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -48,7 +50,9 @@ import com.siemens.ct.exi.core.context.QNameContext;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.grammars.event.EventType;
 import com.siemens.ct.exi.core.values.Value;
-import com.siemens.ct.exi.main.helpers.DefaultSchemaIdResolver;
+import com.siemens.ct.exi.main.helpers.CachingSchemaIdResolver;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
+import com.siemens.ct.exi.main.util.ChannelInputStream;
 
 /**
  * De-Serializes EXI to StAX
@@ -66,6 +70,9 @@ public class StAXDecoder implements XMLStreamReader
 	protected EXIStreamDecoder exiStream;
 	protected EXIBodyDecoder decoder;
 
+	// channel input (buffer is handed back on close)
+	protected ChannelInputStream channelInput;
+
 	// protected XMLStreamReader xmlStream;
 
 	protected boolean exiBodyOnly = false;
@@ -103,8 +110,9 @@ public class StAXDecoder implements XMLStreamReader
 	public StAXDecoder(EXIFactory noOptionsFactory) throws EXIException {
 		this.noOptionsFactory = noOptionsFactory;
 		if (noOptionsFactory.getSchemaIdResolver() == null) {
-			// set default schemaId resolver
-			noOptionsFactory.setSchemaIdResolver(new DefaultSchemaIdResolver());
+			// set default schemaId resolver (shared grammar cache)
+			noOptionsFactory.setSchemaIdResolver(CachingSchemaIdResolver
+					.getSharedInstance());
 		}
 		this.exiStream = noOptionsFactory.createEXIStreamDecoder();
 		this.attributes = new ArrayList<AttributeContainer>();
@@ -114,9 +122,55 @@ public class StAXDecoder implements XMLStreamReader
 
 	public void setInputStream(InputStream is) throws EXIException,
 			IOException, XMLStreamException {
+		releaseChannelInput();
 		parseHeader(is);
 	}
 
+	/**
+	 * Reads the EXI stream from the given channel. The pooled read buffer is
+	 * handed back by <code>close()</code>, the channel itself is not closed.
+	 * 
+	 * @param channel
+	 *            source channel
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws XMLStreamException
+	 *             XML stream exception
+	 */
+	public void setInput(ReadableByteChannel channel) throws EXIException,
+			IOException, XMLStreamException {
+		releaseChannelInput();
+		channelInput = new ChannelInputStream(channel);
+		parseHeader(channelInput);
+	}
+
+	/**
+	 * Reads the EXI stream between position and limit of the given heap or
+	 * direct buffer. Reading advances the position of the buffer.
+	 * 
+	 * @param buffer
+	 *            source buffer
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws XMLStreamException
+	 *             XML stream exception
+	 */
+	public void setInput(ByteBuffer buffer) throws EXIException, IOException,
+			XMLStreamException {
+		setInputStream(new ByteBufferInputStream(buffer));
+	}
+
+	protected void releaseChannelInput() {
+		if (channelInput != null) {
+			channelInput.close();
+			channelInput = null;
+		}
+	}
+
 	protected void initForEachRun() {
 		eventType = null;
 		preReadEventType = null;
@@ -328,6 +382,7 @@ public class StAXDecoder implements XMLStreamReader
 	}
 
 	public void close() throws XMLStreamException {
+		releaseChannelInput();
 	}
 
 	protected void handleAttributes() throws EXIException, IOException {
@@ -25,6 +25,8 @@ package com.siemens.ct.exi.main.api.stream;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -60,6 +62,8 @@ import com.siemens.ct.exi.core.attributes.AttributeList;
 import com.siemens.ct.exi.core.container.NamespaceDeclaration;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.main.util.ByteBufferOutputStream;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
 import com.siemens.ct.exi.main.util.SimpleDocTypeParser;
 
 /**
@@ -78,6 +82,9 @@ public class StAXEncoder implements XMLStreamWriter {
 	protected EXIBodyEncoder encoder;
 	protected EXIStreamEncoder exiStream;
 
+	// channel output (reused across documents)
+	protected ChannelOutputStream channelOutput;
+
 	protected SimpleDocTypeParser dtdParser;
 
 	// preserve options
@@ -114,6 +121,62 @@ public class StAXEncoder implements XMLStreamWriter {
 		this.encoder = exiStream.encodeHeader(os);
 	}
 
+	/**
+	 * Writes the EXI stream to the given channel. Bytes are collected in a
+	 * pooled buffer that is written to the channel whenever it fills up and
+	 * when the document ends. The channel is not closed.
+	 * 
+	 * @param channel
+	 *            target channel
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutput(WritableByteChannel channel) throws EXIException,
+			IOException {
+		if (channelOutput == null) {
+			channelOutput = new ChannelOutputStream(channel);
+		} else {
+			channelOutput.setChannel(channel);
+		}
+		setOutputStream(channelOutput);
+	}
+
+	/**
+	 * Writes the EXI stream directly into the given heap or direct buffer,
+	 * starting at its current position. Encoding fails if the buffer is too
+	 * small.
+	 * 
+	 * @param buffer
+	 *            target buffer
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutput(ByteBuffer buffer) throws EXIException, IOException {
+		setOutputStream(new ByteBufferOutputStream(buffer));
+	}
+
+	/**
+	 * Prepares this writer for the next document. All internal structures
+	 * (stream encoder, attribute list, namespace context) are reused, any
+	 * state left over from a previous (possibly incomplete) document is
+	 * dropped.
+	 * 
+	 * @param os
+	 *            output stream of the next document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void reset(OutputStream os) throws EXIException, IOException {
+		init();
+		setOutputStream(os);
+	}
+
 	protected void init() {
 		pendingATs = false;
 		exiAttributes.clear();
@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.siemens.ct.exi.core.EXIBodyDecoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.EXIStreamDecoder;
+import com.siemens.ct.exi.core.container.DocType;
+import com.siemens.ct.exi.core.container.NamespaceDeclaration;
+import com.siemens.ct.exi.core.container.ProcessingInstruction;
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.event.EventType;
+import com.siemens.ct.exi.core.values.ListValue;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.helpers.CachingSchemaIdResolver;
+
+/**
+ * Decodes an EXI stream to XML text without a JAXP transformer. The events
+ * of the EXI body decoder are escaped and written as UTF-8 into a reusable
+ * byte buffer, the bytes of qualified names are cached per
+ * <code>QNameContext</code>. Names of schema-informed grammars stay cached
+ * across streams.
+ * 
+ * <p>
+ * The output corresponds to an identity transformation of the
+ * <code>SAXDecoder</code> events: empty elements are written as
+ * <code>&lt;a/&gt;</code>, no indentation is added. A writer can be reused
+ * for several streams but is not thread-safe.
+ * </p>
+ * 
+ * <pre>
+ * EXIToXMLWriter writer = new EXIToXMLWriter(exiFactory);
+ * writer.decode(exiInput, xmlOutput);
+ * </pre>
+ * 
+ */
+
+public class EXIToXMLWriter {
+
+	protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	protected static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			.getBytes(UTF_8);
+
+	protected static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	// bound for cached names, e.g. schema-less streams behind a schemaId
+	protected static final int MAX_CACHED_QNAMES = 4096;
+
+	protected final EXIFactory noOptionsFactory;
+	protected final EXIStreamDecoder exiStream;
+
+	protected boolean omitXMLDeclaration;
+
+	// output buffer, flushed to the target stream
+	protected final XMLByteBuffer output;
+	// attributes of the pending start tag
+	protected final XMLByteBuffer attributes;
+
+	// kept for schema contexts, runtime contexts are created anew per stream
+	protected final Map<QNameContext, QNameBytes> qnames;
+
+	protected char[] cbuffer;
+
+	public EXIToXMLWriter(EXIFactory noOptionsFactory) throws EXIException {
+		this.noOptionsFactory = noOptionsFactory;
+		if (noOptionsFactory.getSchemaIdResolver() == null) {
+			// set default schemaId resolver (shared grammar cache)
+			noOptionsFactory.setSchemaIdResolver(CachingSchemaIdResolver
+					.getSharedInstance());
+		}
+		this.exiStream = noOptionsFactory.createEXIStreamDecoder();
+		this.omitXMLDeclaration = noOptionsFactory.isFragment();
+		this.output = new XMLByteBuffer(DEFAULT_BUFFER_SIZE);
+		this.attributes = new XMLByteBuffer(256);
+		this.qnames = new IdentityHashMap<QNameContext, QNameBytes>();
+		this.cbuffer = new char[256];
+	}
+
+	/**
+	 * Whether the XML declaration is written, by default it is omitted for
+	 * fragments only.
+	 * 
+	 * @param omitXMLDeclaration
+	 *            omit XML declaration
+	 */
+	public void setOmitXMLDeclaration(boolean omitXMLDeclaration) {
+		this.omitXMLDeclaration = omitXMLDeclaration;
+	}
+
+	/**
+	 * Decodes an EXI stream (header included) and writes the XML text.
+	 * 
+	 * @param exiInput
+	 *            EXI input (not closed)
+	 * @param xmlOutput
+	 *            XML output (flushed, not closed)
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void decode(InputStream exiInput, OutputStream xmlOutput)
+			throws EXIException, IOException {
+		output.reset(xmlOutput);
+		if (!noOptionsFactory.getGrammars().isSchemaInformed()
+				|| qnames.size() > MAX_CACHED_QNAMES) {
+			qnames.clear();
+		}
+		try {
+			if (!omitXMLDeclaration) {
+				output.write(XML_DECLARATION);
+			}
+			writeEvents(exiStream.decodeHeader(exiInput));
+			output.flush();
+			xmlOutput.flush();
+		} finally {
+			output.reset(null);
+		}
+	}
+
+	protected void writeEvents(EXIBodyDecoder decoder) throws EXIException,
+			IOException {
+		EventType eventType;
+
+		QNameContext deferredStartElement = null;
+		boolean isStartElementDeferred = false;
+		// start tag written but not closed
+		boolean isStartTagOpen = false;
+
+		while ((eventType = decoder.next()) != null) {
+
+			if (isStartElementDeferred) {
+				switch (eventType) {
+				case ATTRIBUTE_XSI_NIL:
+				case ATTRIBUTE_XSI_TYPE:
+				case ATTRIBUTE:
+				case ATTRIBUTE_NS:
+				case ATTRIBUTE_GENERIC:
+				case ATTRIBUTE_GENERIC_UNDECLARED:
+				case ATTRIBUTE_INVALID_VALUE:
+				case ATTRIBUTE_ANY_INVALID_VALUE:
+				case NAMESPACE_DECLARATION:
+				case SELF_CONTAINED:
+					break;
+				default:
+					writeStartTag(decoder, deferredStartElement);
+					isStartElementDeferred = false;
+					isStartTagOpen = true;
+					break;
+				}
+			}
+
+			if (isStartTagOpen) {
+				switch (eventType) {
+				case END_ELEMENT:
+				case END_ELEMENT_UNDECLARED:
+					break;
+				default:
+					output.write('>');
+					isStartTagOpen = false;
+					break;
+				}
+			}
+
+			switch (eventType) {
+			/* DOCUMENT */
+			case START_DOCUMENT:
+				decoder.decodeStartDocument();
+				break;
+			case END_DOCUMENT:
+				decoder.decodeEndDocument();
+				break;
+			/* ATTRIBUTES */
+			case ATTRIBUTE_XSI_NIL:
+				writeAttribute(decoder, decoder.decodeAttributeXsiNil());
+				break;
+			case ATTRIBUTE_XSI_TYPE:
+				writeAttribute(decoder, decoder.decodeAttributeXsiType());
+				break;
+			case ATTRIBUTE:
+			case ATTRIBUTE_NS:
+			case ATTRIBUTE_GENERIC:
+			case ATTRIBUTE_GENERIC_UNDECLARED:
+			case ATTRIBUTE_INVALID_VALUE:
+			case ATTRIBUTE_ANY_INVALID_VALUE:
+				writeAttribute(decoder, decoder.decodeAttribute());
+				break;
+			/* NAMESPACE DECLARATION */
+			case NAMESPACE_DECLARATION:
+				// Note: Prefix declaration etc. is done internally
+				decoder.decodeNamespaceDeclaration();
+				break;
+			/* SELF_CONTAINED */
+			case SELF_CONTAINED:
+				decoder.decodeStartSelfContainedFragment();
+				break;
+			/* START ELEMENT */
+			case START_ELEMENT:
+			case START_ELEMENT_NS:
+			case START_ELEMENT_GENERIC:
+			case START_ELEMENT_GENERIC_UNDECLARED:
+				// defer start element until prefixes and attributes are known
+				deferredStartElement = decoder.decodeStartElement();
+				isStartElementDeferred = true;
+				break;
+			/* END ELEMENT */
+			case END_ELEMENT:
+			case END_ELEMENT_UNDECLARED:
+				String eeQNameAsString = decoder.getElementQNameAsString();
+				QNameContext eeQName = decoder.decodeEndElement();
+				if (isStartTagOpen) {
+					output.write('/');
+					output.write('>');
+					isStartTagOpen = false;
+				} else {
+					output.write('<');
+					output.write('/');
+					output.write(getQNameBytes(eeQName, eeQNameAsString));
+					output.write('>');
+				}
+				break;
+			/* CHARACTERS */
+			case CHARACTERS:
+			case CHARACTERS_GENERIC:
+			case CHARACTERS_GENERIC_UNDECLARED:
+				writeValue(decoder.decodeCharacters(), output, false);
+				break;
+			/* MISC */
+			case DOC_TYPE:
+				writeDocType(decoder.decodeDocType());
+				break;
+			case ENTITY_REFERENCE:
+				output.write('&');
+				output.writeRaw(decoder.decodeEntityReference());
+				output.write(';');
+				break;
+			case COMMENT:
+				output.writeASCII("<!--");
+				output.writeRaw(decoder.decodeComment());
+				output.writeASCII("-->");
+				break;
+			case PROCESSING_INSTRUCTION:
+				ProcessingInstruction pi = decoder
+						.decodeProcessingInstruction();
+				output.write('<');
+				output.write('?');
+				output.writeRaw(pi.target);
+				if (pi.data != null && pi.data.length() > 0) {
+					output.write(' ');
+					output.writeRaw(pi.data);
+				}
+				output.write('?');
+				output.write('>');
+				break;
+			default:
+				throw new RuntimeException("Unexpected EXI Event '" + eventType
+						+ "' ");
+			}
+		}
+	}
+
+	protected void writeStartTag(EXIBodyDecoder decoder,
+			QNameContext deferredStartElement) throws IOException {
+		output.write('<');
+		output.write(getQNameBytes(deferredStartElement,
+				decoder.getElementQNameAsString()));
+
+		List<NamespaceDeclaration> prefixes = decoder
+				.getDeclaredPrefixDeclarations();
+		if (prefixes != null) {
+			for (int i = 0; i < prefixes.size(); i++) {
+				NamespaceDeclaration ns = prefixes.get(i);
+				output.writeASCII(" xmlns");
+				if (ns.prefix != null && ns.prefix.length() > 0) {
+					output.write(':');
+					output.writeRaw(ns.prefix);
+				}
+				output.write('=');
+				output.write('"');
+				output.writeEscaped(ns.namespaceURI, true);
+				output.write('"');
+			}
+		}
+
+		output.write(attributes);
+		attributes.clear();
+	}
+
+	protected void writeAttribute(EXIBodyDecoder decoder, QNameContext atQName)
+			throws IOException {
+		Value val = decoder.getAttributeValue();
+		attributes.write(' ');
+		attributes.write(getQNameBytes(atQName,
+				decoder.getAttributeQNameAsString()));
+		attributes.write('=');
+		attributes.write('"');
+		writeValue(val, attributes, true);
+		attributes.write('"');
+	}
+
+	protected void writeValue(Value val, XMLByteBuffer target,
+			boolean attribute) throws IOException {
+		switch (val.getValueType()) {
+		case BOOLEAN:
+		case STRING:
+			char[] chars = val.getCharacters();
+			target.writeEscaped(chars, 0, chars.length, attribute);
+			break;
+		case LIST:
+			// items are followed by a delimiter each (see SAXDecoder)
+			Value[] values = ((ListValue) val).toValues();
+			for (int i = 0; i < values.length; i++) {
+				writeValue(values[i], target, attribute);
+				target.write(' ');
+			}
+			break;
+		default:
+			int slen = val.getCharactersLength();
+			if (slen > cbuffer.length) {
+				cbuffer = new char[Math.max(slen, cbuffer.length << 1)];
+			}
+			val.getCharacters(cbuffer, 0);
+			target.writeEscaped(cbuffer, 0, slen, attribute);
+			break;
+		}
+	}
+
+	protected void writeDocType(DocType docType) throws IOException {
+		output.writeASCII("<!DOCTYPE ");
+		output.writeRaw(docType.name);
+		if (docType.publicID.length > 0) {
+			output.writeASCII(" PUBLIC \"");
+			output.writeRaw(docType.publicID);
+			output.writeASCII("\" \"");
+			output.writeRaw(docType.systemID);
+			output.write('"');
+		} else if (docType.systemID.length > 0) {
+			output.writeASCII(" SYSTEM \"");
+			output.writeRaw(docType.systemID);
+			output.write('"');
+		}
+		if (docType.text.length > 0) {
+			output.writeASCII(" [");
+			output.writeRaw(docType.text);
+			output.write(']');
+		}
+		output.write('>');
+	}
+
+	/*
+	 * Returns the UTF-8 bytes of the qualified name. The textual name of a
+	 * context usually stays the same, it only changes with the prefix.
+	 */
+	protected byte[] getQNameBytes(QNameContext qnc, String qnameAsString) {
+		QNameBytes qb = qnames.get(qnc);
+		if (qb == null) {
+			qb = new QNameBytes(qnameAsString);
+			qnames.put(qnc, qb);
+		} else if (!qb.qname.equals(qnameAsString)) {
+			qb.set(qnameAsString);
+		}
+		return qb.bytes;
+	}
+
+	static final class QNameBytes {
+		String qname;
+		byte[] bytes;
+
+		QNameBytes(String qname) {
+			set(qname);
+		}
+
+		void set(String qname) {
+			this.qname = qname;
+			this.bytes = qname.getBytes(UTF_8);
+		}
+	}
+
+	/*
+	 * UTF-8 byte buffer with XML escaping. Flushes to the target stream if
+	 * one is set, grows otherwise.
+	 */
+	static final class XMLByteBuffer {
+
+		// longest encoding of one char: "&quot;" or 4 bytes
+		static final int MAX_CHAR_BYTES = 6;
+
+		static final byte[] AMP = "&amp;".getBytes(UTF_8);
+		static final byte[] LT = "&lt;".getBytes(UTF_8);
+		static final byte[] GT = "&gt;".getBytes(UTF_8);
+		static final byte[] QUOT = "&quot;".getBytes(UTF_8);
+		static final byte[] CR = "&#13;".getBytes(UTF_8);
+		static final byte[] LF = "&#10;".getBytes(UTF_8);
+		static final byte[] TAB = "&#9;".getBytes(UTF_8);
+
+		byte[] buf;
+		int len;
+		OutputStream os;
+
+		XMLByteBuffer(int size) {
+			buf = new byte[size];
+		}
+
+		void reset(OutputStream os) {
+			this.os = os;
+			this.len = 0;
+		}
+
+		void clear() {
+			len = 0;
+		}
+
+		void flush() throws IOException {
+			if (len > 0) {
+				os.write(buf, 0, len);
+				len = 0;
+			}
+		}
+
+		/* makes room for n bytes */
+		void require(int n) throws IOException {
+			if (len + n > buf.length) {
+				if (os != null) {
+					flush();
+				}
+				if (len + n > buf.length) {
+					byte[] b = new byte[Math.max(len + n, buf.length << 1)];
+					System.arraycopy(buf, 0, b, 0, len);
+					buf = b;
+				}
+			}
+		}
+
+		void write(int b) throws IOException {
+			if (len == buf.length) {
+				require(1);
+			}
+			buf[len++] = (byte) b;
+		}
+
+		void write(byte[] b) throws IOException {
+			require(b.length);
+			System.arraycopy(b, 0, buf, len, b.length);
+			len += b.length;
+		}
+
+		void write(XMLByteBuffer other) throws IOException {
+			require(other.len);
+			System.arraycopy(other.buf, 0, buf, len, other.len);
+			len += other.len;
+		}
+
+		void writeASCII(String s) throws IOException {
+			int n = s.length();
+			require(n);
+			for (int i = 0; i < n; i++) {
+				buf[len++] = (byte) s.charAt(i);
+			}
+		}
+
+		/* content that needs no escaping (names, comments, DTD text) */
+		void writeRaw(String s) throws IOException {
+			writeRaw(s.toCharArray());
+		}
+
+		void writeRaw(char[] ch) throws IOException {
+			for (int i = 0; i < ch.length; i++) {
+				if (len + MAX_CHAR_BYTES > buf.length) {
+					require(MAX_CHAR_BYTES);
+				}
+				i = encode(ch, i, ch.length);
+			}
+		}
+
+		void writeEscaped(String s, boolean attribute) throws IOException {
+			char[] ch = s.toCharArray();
+			writeEscaped(ch, 0, ch.length, attribute);
+		}
+
+		void writeEscaped(char[] ch, int start, int length, boolean attribute)
+				throws IOException {
+			int end = start + length;
+			for (int i = start; i < end; i++) {
+				if (len + MAX_CHAR_BYTES > buf.length) {
+					require(MAX_CHAR_BYTES);
+				}
+				char c = ch[i];
+				switch (c) {
+				case '&':
+					entity(AMP);
+					break;
+				case '<':
+					entity(LT);
+					break;
+				case '>':
+					entity(GT);
+					break;
+				case '"':
+					if (attribute) {
+						entity(QUOT);
+					} else {
+						buf[len++] = '"';
+					}
+					break;
+				case '\r':
+					entity(CR);
+					break;
+				case '\n':
+					if (attribute) {
+						entity(LF);
+					} else {
+						buf[len++] = '\n';
+					}
+					break;
+				case '\t':
+					if (attribute) {
+						entity(TAB);
+					} else {
+						buf[len++] = '\t';
+					}
+					break;
+				default:
+					if (c < 0x80) {
+						buf[len++] = (byte) c;
+					} else {
+						i = encode(ch, i, end);
+					}
+					break;
+				}
+			}
+		}
+
+		/* space has been required before */
+		void entity(byte[] ref) {
+			System.arraycopy(ref, 0, buf, len, ref.length);
+			len += ref.length;
+		}
+
+		/*
+		 * Writes the UTF-8 bytes of ch[i] (and its low surrogate) and returns
+		 * the index of the last char consumed.
+		 */
+		int encode(char[] ch, int i, int end) {
+			char c = ch[i];
+			if (c < 0x80) {
+				buf[len++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[len++] = (byte) (0xC0 | (c >> 6));
+				buf[len++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < end
+					&& Character.isLowSurrogate(ch[i + 1])) {
+				int cp = Character.toCodePoint(c, ch[++i]);
+				buf[len++] = (byte) (0xF0 | (cp >> 18));
+				buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[len++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogate
+				buf[len++] = '?';
+			} else {
+				buf[len++] = (byte) (0xE0 | (c >> 12));
+				buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[len++] = (byte) (0x80 | (c & 0x3F));
+			}
+			return i;
+		}
+	}
+
+}
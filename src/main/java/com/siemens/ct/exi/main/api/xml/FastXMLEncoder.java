@@ -0,0 +1,810 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+
+import com.siemens.ct.exi.core.EXIBodyEncoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.EXIStreamEncoder;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.attributes.AttributeFactory;
+import com.siemens.ct.exi.core.attributes.AttributeList;
+import com.siemens.ct.exi.core.context.GrammarContext;
+import com.siemens.ct.exi.core.context.GrammarUriContext;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.main.util.ReusableBufferedOutputStream;
+
+/**
+ * Encodes UTF-8 XML to EXI without a general-purpose XML parser. A minimal
+ * non-validating tokenizer drives the EXI body encoder directly: names are
+ * hashed while they are scanned and looked up as byte sequences in a name
+ * table that is seeded with the qualified names of the grammars, so that a
+ * <code>String</code> is created once per distinct name only.
+ * 
+ * <p>
+ * Meant for trusted, machine-generated XML. Supported are UTF-8 (or ASCII)
+ * documents with namespaces, CDATA sections, comments, processing
+ * instructions and the predefined and character entity references. Documents
+ * with a DOCTYPE are rejected, well-formedness is checked only as far as the
+ * tokenizer needs it. The EXI stream is the same a <code>SAXEncoder</code>
+ * writes for the events of a SAX parser.
+ * </p>
+ * 
+ * <p>
+ * The document is tokenized from memory, an input stream is read
+ * completely first. An encoder can be reused for several documents but is
+ * not thread-safe.
+ * </p>
+ * 
+ * @see com.siemens.ct.exi.main.api.sax.SAXEncoder
+ */
+
+public class FastXMLEncoder {
+
+	protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	protected final EXIStreamEncoder exiStream;
+	protected final AttributeList exiAttributes;
+
+	// same distinction as SAXFactory.createEXIWriter
+	protected final boolean extended;
+	protected final boolean preservePrefix;
+	protected final boolean preserveComment;
+
+	protected final NameTable names;
+
+	protected ReusableBufferedOutputStream bufferedOutput;
+
+	// input
+	protected byte[] in;
+	protected int pos;
+	protected int end;
+	protected byte[] readBuffer;
+
+	// pending text and attribute/comment values
+	protected final Chars text;
+	protected final Chars value;
+
+	// open elements and their namespace scopes
+	protected Name[] elements;
+	protected int[] nsMarks;
+	protected int depth;
+
+	// namespace bindings in scope
+	protected String[] nsPrefixes;
+	protected String[] nsUris;
+	protected int nsCount;
+
+	// attributes of the current start tag
+	protected Name[] attNames;
+	protected String[] attValues;
+	protected int attCount;
+
+	public FastXMLEncoder(EXIFactory factory) throws EXIException {
+		this.exiStream = factory.createEXIStreamEncoder();
+		this.exiAttributes = AttributeFactory.newInstance()
+				.createAttributeListInstance(factory);
+
+		FidelityOptions fo = factory.getFidelityOptions();
+		preservePrefix = fo.isFidelityEnabled(FidelityOptions.FEATURE_PREFIX);
+		preserveComment = fo
+				.isFidelityEnabled(FidelityOptions.FEATURE_COMMENT);
+		extended = preservePrefix || preserveComment
+				|| fo.isFidelityEnabled(FidelityOptions.FEATURE_PI)
+				|| fo.isFidelityEnabled(FidelityOptions.FEATURE_DTD);
+
+		names = new NameTable();
+		GrammarContext gc = factory.getGrammars().getGrammarContext();
+		for (int i = 0; i < gc.getNumberOfGrammarUriContexts(); i++) {
+			GrammarUriContext guc = gc.getGrammarUriContext(i);
+			for (int k = 0; k < guc.getNumberOfQNames(); k++) {
+				names.add(guc.getQNameContext(k).getLocalName());
+			}
+		}
+
+		text = new Chars(256);
+		value = new Chars(64);
+		elements = new Name[16];
+		nsMarks = new int[16];
+		nsPrefixes = new String[8];
+		nsUris = new String[8];
+		attNames = new Name[8];
+		attValues = new String[8];
+	}
+
+	/**
+	 * Reads the XML document completely and encodes it.
+	 * 
+	 * @param xml
+	 *            UTF-8 XML input (not closed)
+	 * @param os
+	 *            EXI output stream (not closed)
+	 * @throws EXIException
+	 *             EXI exception or malformed XML
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void encode(InputStream xml, OutputStream os) throws EXIException,
+			IOException {
+		if (readBuffer == null) {
+			readBuffer = new byte[8192];
+		}
+		int n = 0;
+		int r;
+		while ((r = xml.read(readBuffer, n, readBuffer.length - n)) != -1) {
+			n += r;
+			if (n == readBuffer.length) {
+				readBuffer = Arrays.copyOf(readBuffer, n << 1);
+			}
+		}
+		encode(readBuffer, 0, n, os);
+	}
+
+	/**
+	 * Encodes the XML document held by the given bytes.
+	 * 
+	 * @param xml
+	 *            UTF-8 XML document
+	 * @param off
+	 *            offset of the document
+	 * @param len
+	 *            length of the document
+	 * @param os
+	 *            EXI output stream (not closed)
+	 * @throws EXIException
+	 *             EXI exception or malformed XML
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void encode(byte[] xml, int off, int len, OutputStream os)
+			throws EXIException, IOException {
+		// buffer stream if not already (see SAXEncoder)
+		if (!(os instanceof BufferedOutputStream
+				|| os instanceof ByteArrayOutputStream
+				|| os instanceof DataOutputStream || os instanceof ReusableBufferedOutputStream)) {
+			if (bufferedOutput == null) {
+				bufferedOutput = new ReusableBufferedOutputStream();
+			}
+			bufferedOutput.setOutputStream(os);
+			os = bufferedOutput;
+		}
+
+		this.in = xml;
+		this.pos = off;
+		this.end = off + len;
+		depth = 0;
+		nsCount = 0;
+		text.length = 0;
+		exiAttributes.clear();
+		try {
+			parse(exiStream.encodeHeader(os));
+		} finally {
+			this.in = null;
+		}
+	}
+
+	protected void parse(EXIBodyEncoder encoder) throws EXIException,
+			IOException {
+		// byte order mark
+		if (end - pos >= 3 && in[pos] == (byte) 0xEF
+				&& in[pos + 1] == (byte) 0xBB && in[pos + 2] == (byte) 0xBF) {
+			pos += 3;
+		}
+
+		encoder.encodeStartDocument();
+
+		boolean root = false;
+		while (pos < end) {
+			if (in[pos] == '<') {
+				if (pos + 1 == end) {
+					throw malformed("unexpected end of document");
+				}
+				byte c = in[pos + 1];
+				if (c == '/') {
+					endTag(encoder);
+				} else if (c == '?') {
+					processingInstruction(encoder);
+				} else if (c == '!') {
+					if (startsWith("<!--")) {
+						comment(encoder);
+					} else if (depth > 0 && startsWith("<![CDATA[")) {
+						cdata();
+					} else if (startsWith("<!DOCTYPE")) {
+						throw malformed("DOCTYPE not supported");
+					} else {
+						throw malformed("unexpected markup");
+					}
+				} else if (depth == 0 && root) {
+					throw malformed("second root element");
+				} else {
+					root = true;
+					startTag(encoder);
+				}
+			} else if (depth > 0) {
+				characters();
+			} else if (isWhitespace(in[pos])) {
+				// outside of the root element
+				pos++;
+			} else {
+				throw malformed("content outside of the root element");
+			}
+		}
+		if (!root || depth > 0) {
+			throw malformed("unexpected end of document");
+		}
+
+		encoder.encodeEndDocument();
+		encoder.flush();
+	}
+
+	protected void startTag(EXIBodyEncoder encoder) throws EXIException,
+			IOException {
+		flushText(encoder);
+
+		pos++;
+		Name name = scanName();
+		int nsMark = nsCount;
+		attCount = 0;
+		boolean empty;
+		while (true) {
+			skipWhitespace();
+			if (pos == end) {
+				throw malformed("unexpected end of document");
+			}
+			byte b = in[pos];
+			if (b == '>') {
+				pos++;
+				empty = false;
+				break;
+			} else if (b == '/') {
+				expect('/');
+				expect('>');
+				empty = true;
+				break;
+			}
+			Name att = scanName();
+			skipWhitespace();
+			expect('=');
+			skipWhitespace();
+			String val = attributeValue();
+			if (att.xmlns) {
+				declarePrefix(att.prefix == null ? XMLConstants.DEFAULT_NS_PREFIX
+						: att.local, val);
+			} else {
+				if (attCount == attNames.length) {
+					attNames = Arrays.copyOf(attNames, attCount << 1);
+					attValues = Arrays.copyOf(attValues, attCount << 1);
+				}
+				attNames[attCount] = att;
+				attValues[attCount++] = val;
+			}
+		}
+
+		// namespace declarations (startPrefixMapping)
+		for (int i = nsMark; i < nsCount; i++) {
+			exiAttributes.addNamespaceDeclaration(nsUris[i], nsPrefixes[i]);
+		}
+
+		// start element
+		encoder.encodeStartElement(getUri(name.prefix), name.local,
+				preservePrefix ? name.prefixOrEmpty() : null);
+
+		// attributes
+		for (int i = 0; i < attCount; i++) {
+			Name att = attNames[i];
+			exiAttributes.addAttribute(att.prefix == null ? XMLConstants.NULL_NS_URI
+					: getUri(att.prefix), att.local, att.prefixOrEmpty(),
+					attValues[i]);
+			attValues[i] = null;
+		}
+		encoder.encodeAttributeList(exiAttributes);
+		exiAttributes.clear();
+
+		if (empty) {
+			encoder.encodeEndElement();
+			nsCount = nsMark;
+		} else {
+			if (depth == elements.length) {
+				elements = Arrays.copyOf(elements, depth << 1);
+				nsMarks = Arrays.copyOf(nsMarks, depth << 1);
+			}
+			elements[depth] = name;
+			nsMarks[depth++] = nsMark;
+		}
+	}
+
+	protected void endTag(EXIBodyEncoder encoder) throws EXIException,
+			IOException {
+		pos += 2;
+		Name name = scanName();
+		skipWhitespace();
+		expect('>');
+		if (depth == 0 || elements[depth - 1] != name) {
+			throw malformed("unexpected end tag " + name.qname);
+		}
+		flushText(encoder);
+		encoder.encodeEndElement();
+		nsCount = nsMarks[--depth];
+		elements[depth] = null;
+	}
+
+	protected void characters() throws EXIException {
+		int lt = indexOf('<', pos);
+		if (lt < 0) {
+			throw malformed("unexpected end of document");
+		}
+		decode(text, pos, lt, true, false);
+		pos = lt;
+	}
+
+	protected void cdata() throws EXIException {
+		int start = pos + 9;
+		int close = indexOf("]]>", start);
+		decode(text, start, close, false, false);
+		pos = close + 3;
+	}
+
+	protected void comment(EXIBodyEncoder encoder) throws EXIException,
+			IOException {
+		int start = pos + 4;
+		int close = indexOf("-->", start);
+		pos = close + 3;
+		if (preserveComment) {
+			flushText(encoder);
+			value.length = 0;
+			decode(value, start, close, false, false);
+			encoder.encodeComment(value.ch, 0, value.length);
+		}
+	}
+
+	protected void processingInstruction(EXIBodyEncoder encoder)
+			throws EXIException, IOException {
+		pos += 2;
+		Name target = scanName();
+		int close = indexOf("?>", pos);
+		skipWhitespace();
+		int start = Math.min(pos, close);
+		pos = close + 2;
+		if ("xml".equals(target.qname)) {
+			checkEncoding(start, close);
+		} else if (extended) {
+			flushText(encoder);
+			value.length = 0;
+			decode(value, start, close, false, false);
+			encoder.encodeProcessingInstruction(target.qname, new String(
+					value.ch, 0, value.length));
+		}
+	}
+
+	/* only UTF-8 and its ASCII subset are supported */
+	protected void checkEncoding(int start, int close) throws EXIException {
+		String decl = new String(in, start, close - start, UTF_8);
+		int i = decl.indexOf("encoding");
+		if (i >= 0) {
+			int q = i + 8;
+			while (q < decl.length() && decl.charAt(q) != '"'
+					&& decl.charAt(q) != '\'') {
+				q++;
+			}
+			int e = q + 1 < decl.length() ? decl.indexOf(decl.charAt(q), q + 1)
+					: -1;
+			String enc = e < 0 ? "" : decl.substring(q + 1, e);
+			if (!"UTF-8".equalsIgnoreCase(enc)
+					&& !"UTF8".equalsIgnoreCase(enc)
+					&& !"US-ASCII".equalsIgnoreCase(enc)
+					&& !"ASCII".equalsIgnoreCase(enc)) {
+				throw malformed("encoding '" + enc + "' not supported");
+			}
+		}
+	}
+
+	protected String attributeValue() throws EXIException {
+		if (pos == end) {
+			throw malformed("unexpected end of document");
+		}
+		byte quote = in[pos++];
+		if (quote != '"' && quote != '\'') {
+			throw malformed("quote expected");
+		}
+		int close = indexOf(quote, pos);
+		if (close < 0) {
+			throw malformed("unterminated attribute value");
+		}
+		value.length = 0;
+		decode(value, pos, close, true, true);
+		pos = close + 1;
+		return new String(value.ch, 0, value.length);
+	}
+
+	/* encodes the text collected since the last structural event */
+	protected void flushText(EXIBodyEncoder encoder) throws EXIException,
+			IOException {
+		if (text.length > 0) {
+			// the value is kept by the body encoder, hand over an exact copy
+			encoder.encodeCharacters(new StringValue(Arrays.copyOf(text.ch,
+					text.length)));
+			text.length = 0;
+		}
+	}
+
+	protected void declarePrefix(String prefix, String uri) {
+		if (nsCount == nsPrefixes.length) {
+			nsPrefixes = Arrays.copyOf(nsPrefixes, nsCount << 1);
+			nsUris = Arrays.copyOf(nsUris, nsCount << 1);
+		}
+		nsPrefixes[nsCount] = prefix;
+		nsUris[nsCount++] = uri;
+	}
+
+	protected String getUri(String prefix) throws EXIException {
+		if (prefix == null) {
+			prefix = XMLConstants.DEFAULT_NS_PREFIX;
+		}
+		for (int i = nsCount - 1; i >= 0; i--) {
+			if (prefix.equals(nsPrefixes[i])) {
+				return nsUris[i];
+			}
+		}
+		if (prefix.length() == 0) {
+			return XMLConstants.NULL_NS_URI;
+		} else if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+			return XMLConstants.XML_NS_URI;
+		}
+		throw malformed("unbound prefix " + prefix);
+	}
+
+	/*
+	 * ======================================================================
+	 * Tokenizer
+	 * ======================================================================
+	 */
+
+	protected Name scanName() throws EXIException {
+		int start = pos;
+		int h = 0;
+		byte b;
+		while (pos < end && !isNameDelimiter(b = in[pos])) {
+			h = 31 * h + b;
+			pos++;
+		}
+		if (pos == start) {
+			throw malformed("name expected");
+		}
+		return names.get(in, start, pos - start, h);
+	}
+
+	protected static boolean isNameDelimiter(byte b) {
+		switch (b) {
+		case ' ':
+		case '\t':
+		case '\n':
+		case '\r':
+		case '=':
+		case '/':
+		case '>':
+		case '?':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	protected static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+	}
+
+	protected void skipWhitespace() {
+		while (pos < end && isWhitespace(in[pos])) {
+			pos++;
+		}
+	}
+
+	protected void expect(char c) throws EXIException {
+		if (pos >= end || in[pos] != c) {
+			throw malformed("'" + c + "' expected");
+		}
+		pos++;
+	}
+
+	protected boolean startsWith(String s) {
+		if (pos + s.length() > end) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (in[pos + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected int indexOf(int b, int from) {
+		for (int i = from; i < end; i++) {
+			if (in[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	protected int indexOf(String s, int from) throws EXIException {
+		int first = s.charAt(0);
+		for (int i = indexOf(first, from); i >= 0; i = indexOf(first, i + 1)) {
+			int k = 1;
+			while (k < s.length() && i + k < end && in[i + k] == s.charAt(k)) {
+				k++;
+			}
+			if (k == s.length()) {
+				return i;
+			}
+		}
+		throw malformed("'" + s + "' expected");
+	}
+
+	/*
+	 * Decodes UTF-8 bytes, normalizes line ends and (for attribute values)
+	 * whitespace and resolves entity references.
+	 */
+	protected void decode(Chars out, int from, int to, boolean entities,
+			boolean attribute) throws EXIException {
+		// chars never exceed bytes
+		out.ensure(out.length + to - from);
+		char[] ch = out.ch;
+		int n = out.length;
+		int i = from;
+		while (i < to) {
+			int b = in[i];
+			if (b >= 0) {
+				i++;
+				if (b == '&' && entities) {
+					out.length = n;
+					i = entity(out, i, to);
+					n = out.length;
+				} else if (b == '\r') {
+					// CR LF and CR are line ends
+					if (i < to && in[i] == '\n') {
+						i++;
+					}
+					ch[n++] = attribute ? ' ' : '\n';
+				} else if (attribute && (b == '\n' || b == '\t')) {
+					ch[n++] = ' ';
+				} else {
+					ch[n++] = (char) b;
+				}
+			} else if ((b & 0xE0) == 0xC0) {
+				checkSequence(i, 2, to);
+				ch[n++] = (char) (((b & 0x1F) << 6) | (in[i + 1] & 0x3F));
+				i += 2;
+			} else if ((b & 0xF0) == 0xE0) {
+				checkSequence(i, 3, to);
+				ch[n++] = (char) (((b & 0x0F) << 12)
+						| ((in[i + 1] & 0x3F) << 6) | (in[i + 2] & 0x3F));
+				i += 3;
+			} else if ((b & 0xF8) == 0xF0) {
+				checkSequence(i, 4, to);
+				int cp = ((b & 0x07) << 18) | ((in[i + 1] & 0x3F) << 12)
+						| ((in[i + 2] & 0x3F) << 6) | (in[i + 3] & 0x3F);
+				if (cp > Character.MAX_CODE_POINT) {
+					throw malformed("invalid UTF-8 sequence");
+				}
+				ch[n++] = Character.highSurrogate(cp);
+				ch[n++] = Character.lowSurrogate(cp);
+				i += 4;
+			} else {
+				// continuation byte without lead byte
+				throw malformed("invalid UTF-8 sequence");
+			}
+		}
+		out.length = n;
+	}
+
+	/* the multi-byte sequence at i must end before to */
+	protected void checkSequence(int i, int length, int to)
+			throws EXIException {
+		if (i + length > to) {
+			throw malformed("truncated UTF-8 sequence");
+		}
+	}
+
+	/* resolves the reference after '&', returns the index after ';' */
+	protected int entity(Chars out, int from, int to) throws EXIException {
+		int semicolon = from;
+		while (semicolon < to && in[semicolon] != ';') {
+			semicolon++;
+		}
+		if (semicolon == to) {
+			throw malformed("unterminated entity reference");
+		}
+		String ref = new String(in, from, semicolon - from, UTF_8);
+		if ("lt".equals(ref)) {
+			out.ch[out.length++] = '<';
+		} else if ("gt".equals(ref)) {
+			out.ch[out.length++] = '>';
+		} else if ("amp".equals(ref)) {
+			out.ch[out.length++] = '&';
+		} else if ("quot".equals(ref)) {
+			out.ch[out.length++] = '"';
+		} else if ("apos".equals(ref)) {
+			out.ch[out.length++] = '\'';
+		} else if (ref.startsWith("#")) {
+			int cp;
+			try {
+				cp = ref.startsWith("#x") ? Integer.parseInt(ref.substring(2),
+						16) : Integer.parseInt(ref.substring(1));
+			} catch (NumberFormatException e) {
+				throw malformed("invalid character reference &" + ref + ";");
+			}
+			if (!Character.isValidCodePoint(cp)) {
+				throw malformed("invalid character reference &" + ref + ";");
+			}
+			// "&#x10000;" has at least as many bytes as the two chars
+			out.length += Character.toChars(cp, out.ch, out.length);
+		} else {
+			throw malformed("undeclared entity &" + ref + ";");
+		}
+		return semicolon + 1;
+	}
+
+	protected EXIException malformed(String message) {
+		return new EXIException("Malformed XML at byte " + pos + ": "
+				+ message);
+	}
+
+	/*
+	 * ======================================================================
+	 * Helpers
+	 * ======================================================================
+	 */
+
+	static final class Chars {
+		char[] ch;
+		int length;
+
+		Chars(int size) {
+			ch = new char[size];
+		}
+
+		void ensure(int size) {
+			if (size > ch.length) {
+				ch = Arrays.copyOf(ch, Math.max(size, ch.length << 1));
+			}
+		}
+	}
+
+	/* qualified name as scanned, split into prefix and local name */
+	static final class Name {
+		final byte[] bytes;
+		final int hash;
+		final String qname;
+		// null if unprefixed
+		final String prefix;
+		final String local;
+		// namespace declaration attribute
+		final boolean xmlns;
+		Name next;
+
+		Name(byte[] bytes, int hash, String qname) {
+			this.bytes = bytes;
+			this.hash = hash;
+			this.qname = qname;
+			int colon = qname.indexOf(':');
+			if (colon < 0) {
+				prefix = null;
+				local = qname;
+				xmlns = XMLConstants.XMLNS_ATTRIBUTE.equals(qname);
+			} else {
+				prefix = qname.substring(0, colon);
+				local = qname.substring(colon + 1);
+				xmlns = XMLConstants.XMLNS_ATTRIBUTE.equals(prefix);
+			}
+		}
+
+		String prefixOrEmpty() {
+			return prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix;
+		}
+	}
+
+	/* hash table of names keyed by their UTF-8 bytes */
+	static final class NameTable {
+		Name[] buckets = new Name[256];
+		int size;
+
+		static int hash(byte[] b, int off, int len) {
+			int h = 0;
+			for (int i = off; i < off + len; i++) {
+				h = 31 * h + b[i];
+			}
+			return h;
+		}
+
+		void add(String qname) {
+			byte[] b = qname.getBytes(UTF_8);
+			int h = hash(b, 0, b.length);
+			if (lookup(b, 0, b.length, h) == null) {
+				put(new Name(b, h, qname));
+			}
+		}
+
+		Name get(byte[] b, int off, int len, int h) {
+			Name n = lookup(b, off, len, h);
+			if (n == null) {
+				n = new Name(Arrays.copyOfRange(b, off, off + len), h,
+						new String(b, off, len, UTF_8));
+				put(n);
+			}
+			return n;
+		}
+
+		Name lookup(byte[] b, int off, int len, int h) {
+			for (Name n = buckets[h & (buckets.length - 1)]; n != null; n = n.next) {
+				if (n.hash == h && n.bytes.length == len && equals(n.bytes, b, off)) {
+					return n;
+				}
+			}
+			return null;
+		}
+
+		static boolean equals(byte[] a, byte[] b, int off) {
+			for (int i = 0; i < a.length; i++) {
+				if (a[i] != b[off + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void put(Name n) {
+			if (size >= buckets.length - (buckets.length >> 2)) {
+				Name[] old = buckets;
+				buckets = new Name[old.length << 1];
+				for (Name e : old) {
+					while (e != null) {
+						Name next = e.next;
+						int i = e.hash & (buckets.length - 1);
+						e.next = buckets[i];
+						buckets[i] = e;
+						e = next;
+					}
+				}
+			}
+			int i = n.hash & (buckets.length - 1);
+			n.next = buckets[i];
+			buckets[i] = n;
+			size++;
+		}
+	}
+
+}
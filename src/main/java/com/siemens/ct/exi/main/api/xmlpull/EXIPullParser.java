@@ -50,6 +50,7 @@ import com.siemens.ct.exi.core.context.QNameContext;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.grammars.event.EventType;
 import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.helpers.CachingSchemaIdResolver;
 
 public class EXIPullParser implements XmlPullParser {
 
@@ -86,6 +87,11 @@ public class EXIPullParser implements XmlPullParser {
 
 	public EXIPullParser(EXIFactory factory) throws EXIException {
 		this.factory = factory;
+		if (factory.getSchemaIdResolver() == null) {
+			// set default schemaId resolver (shared grammar cache)
+			factory.setSchemaIdResolver(CachingSchemaIdResolver
+					.getSharedInstance());
+		}
 
 		exiStream = factory.createEXIStreamDecoder();
 		this.attributes = new ArrayList<AttributeContainer>();
@@ -124,6 +124,22 @@ public class EXISerializer implements XmlSerializer {
 		exiAttributes.clear();
 	}
 
+	/**
+	 * Prepares this serializer for the next document. The stream encoder,
+	 * attribute list and namespace declarations are reused, any state left
+	 * over from a previous (possibly incomplete) document is dropped.
+	 * 
+	 * @param os
+	 *            output stream of the next document
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void reset(OutputStream os) throws IOException {
+		init();
+		nsDecls.clear();
+		setOutput(os, null);
+	}
+
 	public void startDocument(String encoding, Boolean standalone)
 			throws IOException, IllegalArgumentException, IllegalStateException {
 		try {
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.cmd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.xml.transform.TransformerException;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.xml.EXIToXMLWriter;
+import com.siemens.ct.exi.main.api.xml.FastXMLEncoder;
+import com.siemens.ct.exi.main.util.MappedFileInputStream;
+
+/**
+ * 
+ * Batch mode of the command shell: codes many files with one JVM launch. The
+ * EXI factory (and with it the compiled grammars) is shared by all workers,
+ * each worker thread keeps its own XML reader and coders and reuses them for
+ * every file it picks up.
+ * 
+ * <p>
+ * Inputs are a directory (all <code>*.xml</code> files when encoding, all
+ * <code>*.exi</code> files when decoding, recursively), a glob pattern such
+ * as <code>data/**&#47;*.xml</code> or a list file with one path per line.
+ * Outputs are written next to the inputs or, if an output directory is
+ * given, to the same relative path below that directory.
+ * </p>
+ * 
+ * <p>
+ * A failing file does not stop the batch, failures are collected and
+ * reported together with the throughput at the end. Files that would be
+ * written to the same output are not coded and reported as failures.
+ * </p>
+ * 
+ */
+
+public class EXIficientBatch {
+
+	protected final EXIficientCMD cmd;
+	protected final CmdOption cmdOption;
+	protected final EXIFactory exiFactory;
+	protected final PrintStream messages;
+	protected final int threads;
+
+	protected final ThreadLocal<Worker> workers;
+
+	protected final AtomicInteger processed;
+	protected final AtomicLong bytesIn;
+	protected final AtomicLong bytesOut;
+	protected final Queue<String> failures;
+
+	public EXIficientBatch(EXIficientCMD cmd, int threads) {
+		this.cmd = cmd;
+		this.cmdOption = cmd.cmdOption;
+		this.exiFactory = cmd.exiFactory;
+		this.messages = cmd.messages;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime()
+				.availableProcessors();
+		this.workers = new ThreadLocal<Worker>();
+		this.processed = new AtomicInteger();
+		this.bytesIn = new AtomicLong();
+		this.bytesOut = new AtomicLong();
+		this.failures = new ConcurrentLinkedQueue<String>();
+	}
+
+	/**
+	 * Tells whether the input parameter selects more than one file, i.e.
+	 * whether it contains glob characters.
+	 * 
+	 * @param input
+	 *            input parameter
+	 * @return true for a glob pattern
+	 */
+	public static boolean isGlob(String input) {
+		for (int i = 0; i < input.length(); i++) {
+			switch (input.charAt(i)) {
+			case '*':
+			case '?':
+			case '[':
+			case '{':
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getProcessed() {
+		return processed.get();
+	}
+
+	public List<String> getFailures() {
+		return new ArrayList<String>(failures);
+	}
+
+	/**
+	 * Collects the input files of the batch.
+	 * 
+	 * @param input
+	 *            input directory or glob pattern, may be null
+	 * @param fileList
+	 *            file with one input path per line, may be null
+	 * @param outputDir
+	 *            output directory, null to write next to the inputs
+	 * @return jobs sorted by decreasing input size
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public List<Job> collect(String input, String fileList, String outputDir)
+			throws IOException {
+		List<Job> jobs = new ArrayList<Job>();
+		if (input != null) {
+			if (new File(input).isDirectory()) {
+				String ext = CmdOption.encode == cmdOption ? EXIficientCMD.DEFAULT_XML_FILE_EXTENSION
+						: EXIficientCMD.DEFAULT_EXI_FILE_EXTENSION;
+				collect(Paths.get(input), Integer.MAX_VALUE, FileSystems
+						.getDefault().getPathMatcher("glob:*" + ext), false,
+						outputDir, jobs);
+			} else if (isGlob(input)) {
+				Path base = getGlobBase(input);
+				collect(base, getGlobDepth(input, base), FileSystems
+						.getDefault().getPathMatcher("glob:" + input), true,
+						outputDir, jobs);
+			} else {
+				jobs.add(createJob(new File(input), null, outputDir));
+			}
+		}
+		if (fileList != null) {
+			BufferedReader br = new BufferedReader(new FileReader(fileList));
+			try {
+				String line;
+				while ((line = br.readLine()) != null) {
+					line = line.trim();
+					if (line.length() > 0 && line.charAt(0) != '#') {
+						jobs.add(createJob(new File(line), null, outputDir));
+					}
+				}
+			} finally {
+				br.close();
+			}
+		}
+
+		jobs = checkOutputs(jobs);
+
+		// largest files first, keeps all workers busy until the end
+		Collections.sort(jobs, new Comparator<Job>() {
+			public int compare(Job j1, Job j2) {
+				return Long.compare(j2.size, j1.size);
+			}
+		});
+		return jobs;
+	}
+
+	/*
+	 * Drops inputs given twice and marks jobs whose output another input
+	 * maps to as well (e.g. list entries with the same name in different
+	 * directories), they would overwrite each other.
+	 */
+	protected List<Job> checkOutputs(List<Job> jobs) {
+		List<Job> checked = new ArrayList<Job>(jobs.size());
+		Map<Path, Job> outputs = new HashMap<Path, Job>();
+		for (Job job : jobs) {
+			Path output = normalize(job.output);
+			Job other = outputs.get(output);
+			if (other == null) {
+				outputs.put(output, job);
+				checked.add(job);
+			} else if (!normalize(other.input).equals(normalize(job.input))) {
+				other.conflict = job.input;
+				job.conflict = other.input;
+				checked.add(job);
+			}
+		}
+		return checked;
+	}
+
+	protected static Path normalize(File file) {
+		return file.getAbsoluteFile().toPath().normalize();
+	}
+
+	/*
+	 * Directory part of a glob pattern in front of the first glob character,
+	 * the empty path (current directory) if there is none.
+	 */
+	protected static Path getGlobBase(String pattern) {
+		int last = -1;
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '/' || c == File.separatorChar) {
+				last = i;
+			} else if (isGlob(String.valueOf(c))) {
+				break;
+			}
+		}
+		return Paths.get(last < 0 ? "" : pattern.substring(0, last + 1));
+	}
+
+	/*
+	 * Directory levels below the base a pattern can match, unlimited for
+	 * patterns that cross directories.
+	 */
+	protected static int getGlobDepth(String pattern, Path base) {
+		if (pattern.contains("**")) {
+			return Integer.MAX_VALUE;
+		}
+		int depth = 1;
+		for (int i = base.toString().length() + 1; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '/' || c == File.separatorChar) {
+				depth++;
+			}
+		}
+		return depth;
+	}
+
+	protected void collect(Path base, int maxDepth, PathMatcher matcher,
+			boolean matchFullPath, String outputDir, List<Job> jobs)
+			throws IOException {
+		Stream<Path> paths = Files.walk(base, maxDepth);
+		try {
+			Iterator<Path> iter = paths.iterator();
+			while (iter.hasNext()) {
+				Path p = iter.next();
+				if (Files.isRegularFile(p)
+						&& matcher.matches(matchFullPath ? p : p.getFileName())) {
+					jobs.add(createJob(p.toFile(), base.relativize(p)
+							.toString(), outputDir));
+				}
+			}
+		} finally {
+			paths.close();
+		}
+	}
+
+	protected Job createJob(File in, String relative, String outputDir) {
+		String ext = CmdOption.encode == cmdOption ? EXIficientCMD.DEFAULT_EXI_FILE_EXTENSION
+				: EXIficientCMD.DEFAULT_XML_FILE_EXTENSION;
+		File out;
+		if (outputDir == null) {
+			out = new File(in.getPath() + ext);
+		} else {
+			if (relative == null) {
+				// list entries keep relative paths, absolute ones the name
+				relative = in.isAbsolute() || in.getPath().startsWith("..") ? in
+						.getName() : in.getPath();
+			}
+			out = new File(outputDir, relative + ext);
+		}
+		return new Job(in, out);
+	}
+
+	/**
+	 * Codes all jobs with the worker pool and prints the summary.
+	 * 
+	 * @param jobs
+	 *            files to code
+	 * @return number of failed files
+	 * @throws EXIException
+	 *             if the batch got interrupted
+	 */
+	public int run(List<Job> jobs) throws EXIException {
+		processed.set(0);
+		bytesIn.set(0);
+		bytesOut.set(0);
+		failures.clear();
+
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, Math.max(1, jobs.size())));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(jobs.size());
+			for (final Job job : jobs) {
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						process(job);
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EXIException("Batch interrupted", e);
+		} catch (ExecutionException e) {
+			throw new EXIException("Batch worker failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		printSummary(System.nanoTime() - start);
+
+		return failures.size();
+	}
+
+	protected void process(Job job) {
+		if (job.conflict != null) {
+			failures.add(job.input.getPath() + ": output " + job.output.getPath()
+					+ " is also the output of " + job.conflict.getPath());
+			return;
+		}
+		try {
+			File parentDir = job.output.getParentFile();
+			if (parentDir != null && !parentDir.exists()) {
+				parentDir.mkdirs();
+			}
+			if (CmdOption.encode == cmdOption) {
+				getWorker().encode(job.input, job.output);
+			} else {
+				getWorker().decode(job.input, job.output);
+			}
+			processed.incrementAndGet();
+			bytesIn.addAndGet(job.size);
+			bytesOut.addAndGet(job.output.length());
+		} catch (Exception e) {
+			// do not leave partial output behind
+			job.output.delete();
+			failures.add(job.input.getPath() + ": " + e.getLocalizedMessage()
+					+ " " + e.getClass());
+		}
+	}
+
+	protected Worker getWorker() throws EXIException, SAXException {
+		Worker w = workers.get();
+		if (w == null) {
+			w = new Worker();
+			workers.set(w);
+		}
+		return w;
+	}
+
+	protected void printSummary(long nanos) {
+		double seconds = nanos / 1e9;
+		int n = processed.get();
+		messages.println(String.format(Locale.ENGLISH,
+				"[Batch] %d files coded, %d failed, %d threads, %.3f s", n,
+				failures.size(), threads, seconds));
+		if (seconds > 0) {
+			messages.println(String.format(Locale.ENGLISH,
+					"[Batch] %.1f files/s, %.2f MB/s in, %.2f MB/s out", n
+							/ seconds, bytesIn.get() / 1e6 / seconds,
+					bytesOut.get() / 1e6 / seconds));
+		}
+		for (String failure : failures) {
+			cmd.printError(failure);
+		}
+	}
+
+	public static class Job {
+		public final File input;
+		public final File output;
+		final long size;
+		// other input with the same output
+		File conflict;
+
+		public Job(File input, File output) {
+			this.input = input;
+			this.output = output;
+			this.size = input.length();
+		}
+	}
+
+	/*
+	 * Coders of one thread, created on first use. Modes without reusable coder
+	 * (fragments, pipelined encoding, JAXP decoding) fall back to the single
+	 * file code path.
+	 */
+	protected class Worker {
+
+		protected XMLReader xmlReader;
+		protected SAXEncoder saxEncoder;
+		protected FastXMLEncoder fastEncoder;
+		protected EXIToXMLWriter xmlWriter;
+
+		protected void encode(File in, File out) throws EXIException,
+				SAXException, IOException {
+			if (exiFactory.isFragment() || (cmd.pipelined && !cmd.fastXML)) {
+				cmd.encode(in.getPath(), exiFactory, out.getPath());
+				return;
+			}
+
+			OutputStream os = new BufferedOutputStream(
+					new FileOutputStream(out));
+			try {
+				if (cmd.fastXML) {
+					if (fastEncoder == null) {
+						fastEncoder = new FastXMLEncoder(exiFactory);
+					}
+					InputStream is = new FileInputStream(in);
+					try {
+						fastEncoder.encode(is, os);
+					} finally {
+						is.close();
+					}
+				} else {
+					if (xmlReader == null) {
+						saxEncoder = new SAXFactory(exiFactory)
+								.createEXIWriter();
+						xmlReader = cmd.getXMLReader();
+						xmlReader.setContentHandler(saxEncoder);
+						xmlReader.setProperty(
+								"http://xml.org/sax/properties/lexical-handler",
+								saxEncoder);
+						xmlReader.setProperty(
+								"http://xml.org/sax/properties/declaration-handler",
+								saxEncoder);
+						xmlReader.setDTDHandler(saxEncoder);
+					}
+					saxEncoder.reset(os);
+					xmlReader.parse(new InputSource(in.getPath()));
+				}
+			} finally {
+				os.close();
+			}
+		}
+
+		protected void decode(File in, File out) throws EXIException,
+				SAXException, IOException {
+			if (cmd.transformer) {
+				try {
+					cmd.decode(in.getPath(), exiFactory, out.getPath());
+				} catch (TransformerException e) {
+					throw new EXIException(e);
+				}
+				return;
+			}
+
+			if (xmlWriter == null) {
+				xmlWriter = new EXIToXMLWriter(exiFactory);
+			}
+			InputStream is = cmd.mapped ? new MappedFileInputStream(in)
+					: new BufferedInputStream(new FileInputStream(in));
+			try {
+				OutputStream os = new FileOutputStream(out);
+				try {
+					xmlWriter.decode(is, os);
+				} finally {
+					os.close();
+				}
+			} finally {
+				is.close();
+			}
+		}
+	}
+
+}
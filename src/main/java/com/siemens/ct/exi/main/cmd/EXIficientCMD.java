@@ -23,10 +23,13 @@
 
 package com.siemens.ct.exi.main.cmd;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.StringTokenizer;
@@ -50,11 +53,19 @@ import com.siemens.ct.exi.core.EXIFactory;
 import com.siemens.ct.exi.core.EncodingOptions;
 import com.siemens.ct.exi.core.FidelityOptions;
 import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
 import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
 import com.siemens.ct.exi.grammars.GrammarFactory;
 import com.siemens.ct.exi.main.api.sax.EXIResult;
+import com.siemens.ct.exi.main.api.sax.PipelinedSAXEncoder;
 import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.xml.EXIToXMLWriter;
+import com.siemens.ct.exi.main.api.xml.FastXMLEncoder;
+import com.siemens.ct.exi.main.helpers.GrammarSnapshot;
+import com.siemens.ct.exi.main.util.ChannelInputStream;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
 import com.siemens.ct.exi.main.util.FragmentUtilities;
+import com.siemens.ct.exi.main.util.MappedFileInputStream;
 import com.siemens.ct.exi.main.util.NoEntityResolver;
 import com.siemens.ct.exi.main.util.SkipRootElementXMLReader;
 
@@ -97,10 +108,18 @@ public class EXIficientCMD {
 
 	public static final String INPUT = "-i";
 	public static final String OUTPUT = "-o";
+	public static final String STDIO = "-";
+	public static final String MAPPED = "-mapped";
+	public static final String PIPELINED = "-pipelined";
+	public static final String TRANSFORMER = "-transformer";
+	public static final String FAST_XML = "-fastXML";
+	public static final String THREADS = "-threads";
+	public static final String FILE_LIST = "-list";
 
 	public static final String NO_SCHEMA = "-" + SchemaOption.noSchema;
 	public static final String XSD_SCHEMA = "-" + SchemaOption.xsdSchema;
 	public static final String SCHEMA = "-" + SchemaOption.schema;
+	public static final String GRAMMAR_SNAPSHOT = "-grammarSnapshot";
 
 	public static final String OPTION_STRICT = "-strict";
 	public static final String PRESERVE_COMMENTS = "-preserveComments";
@@ -140,85 +159,114 @@ public class EXIficientCMD {
 	protected EXIFactory exiFactory;
 	protected String input;
 	protected String output;
+	protected boolean mapped;
+	protected boolean pipelined;
+	protected boolean transformer;
+	protected boolean fastXML;
+	protected String fileList;
+	protected int threads;
+	protected boolean batch;
+	// messages, standard error while EXI or XML goes to standard output
+	protected PrintStream messages = ps;
 
 	public EXIficientCMD() {
 	}
 
-	private static void printHeader() {
-		ps.println("#########################################################################");
-		ps.println("###   EXIficient                                                     ###");
-		ps.println("###   Command-Shell Options                                          ###");
-		ps.println("#########################################################################");
+	private void printHeader() {
+		messages.println("#########################################################################");
+		messages.println("###   EXIficient                                                     ###");
+		messages.println("###   Command-Shell Options                                          ###");
+		messages.println("#########################################################################");
 	}
 
-	private static void printHelp() {
+	private void printHelp() {
 		printHeader();
 
-		ps.println();
-		ps.println(" " + HELP
+		messages.println();
+		messages.println(" " + HELP
 				+ "                               /* shows help */");
-		ps.println();
-		ps.println(" " + ENCODE);
-		ps.println(" " + DECODE);
-		ps.println();
-		ps.println(" " + INPUT + " <input-file>");
-		ps.println(" " + OUTPUT + " <output-file>");
-		ps.println();
-		ps.println(" " + SCHEMA + " <schema-input-file>");
-		ps.println(" " + XSD_SCHEMA
+		messages.println();
+		messages.println(" " + ENCODE);
+		messages.println(" " + DECODE);
+		messages.println();
+		messages.println(" " + INPUT + " <input-file>");
+		messages.println(" " + OUTPUT + " <output-file>");
+		messages.println(" " + INPUT + " " + STDIO + " " + OUTPUT + " " + STDIO
+				+ "                        /* standard input / output */");
+		messages.println(" " + INPUT + " <input-directory|glob>"
+				+ "      /* batch mode, e.g. \"data/**/*.xml\" */");
+		messages.println(" " + FILE_LIST + " <list-file>"
+				+ "                /* batch mode, one input file per line */");
+		messages.println(" " + OUTPUT + " <output-directory>"
+				+ "         /* batch mode, default next to inputs */");
+		messages.println(" " + THREADS + " <n>"
+				+ "                     /* batch mode worker threads */");
+		messages.println(" " + MAPPED
+				+ "                          /* decode from memory mapped input file */");
+		messages.println(" " + PIPELINED
+				+ "                       /* parse and encode on separate threads */");
+		messages.println(" " + TRANSFORMER
+				+ "                     /* decode via JAXP identity transformer */");
+		messages.println(" " + FAST_XML
+				+ "                         /* encode trusted UTF-8 XML without XML parser */");
+		messages.println();
+		messages.println(" " + SCHEMA + " <schema-input-file>");
+		messages.println(" " + XSD_SCHEMA
 				+ "                       /* XML schema datatypes only */");
-		ps.println(" " + NO_SCHEMA + "                        /* default */");
-		ps.println();
-		ps.println(" " + OPTION_STRICT);
-		ps.println(" " + PRESERVE_PREFIXES);
-		ps.println(" " + PRESERVE_COMMENTS);
-		ps.println(" " + PRESERVE_LEXICAL_VALUES);
-		ps.println(" " + PRESERVE_PIS
+		messages.println(" " + NO_SCHEMA + "                        /* default */");
+		messages.println(" " + GRAMMAR_SNAPSHOT
+				+ " <snapshot-file>    /* written if a schema is given, read otherwise */");
+		messages.println();
+		messages.println(" " + OPTION_STRICT);
+		messages.println(" " + PRESERVE_PREFIXES);
+		messages.println(" " + PRESERVE_COMMENTS);
+		messages.println(" " + PRESERVE_LEXICAL_VALUES);
+		messages.println(" " + PRESERVE_PIS
 				+ "                     /* processing instructions */");
-		ps.println(" " + PRESERVE_DTDS
+		messages.println(" " + PRESERVE_DTDS
 				+ "                    /* DTDs & entity references */");
-		ps.println();
-		ps.println(" " + CODING_BYTEPACKED);
-		ps.println(" " + CODING_PRE_COMPRESSION);
-		ps.println(" " + CODING_COMPRESSION);
-		ps.println();
-		ps.println(" " + BLOCK_SIZE + " <value>");
-		ps.println(" " + VALUE_MAX_LENGTH + " <value>");
-		ps.println(" " + VALUE_PARTITION_CAPACITY + " <value>");
-		ps.println();
-		ps.println(" " + NO_LOCAL_VALUE_PARTITIONS
+		messages.println();
+		messages.println(" " + CODING_BYTEPACKED);
+		messages.println(" " + CODING_PRE_COMPRESSION);
+		messages.println(" " + CODING_COMPRESSION);
+		messages.println();
+		messages.println(" " + BLOCK_SIZE + " <value>");
+		messages.println(" " + VALUE_MAX_LENGTH + " <value>");
+		messages.println(" " + VALUE_PARTITION_CAPACITY + " <value>");
+		messages.println();
+		messages.println(" " + NO_LOCAL_VALUE_PARTITIONS
 				+ "          /* EXI Profile parameters */");
-		ps.println(" " + MAXIMUM_NUMBER_OF_BUILT_IN_PRODUCTIONS + " <value>");
-		ps.println(" " + MAXIMUM_NUMBER_OF_BUILT_IN_ELEMENT_GRAMMARS
+		messages.println(" " + MAXIMUM_NUMBER_OF_BUILT_IN_PRODUCTIONS + " <value>");
+		messages.println(" " + MAXIMUM_NUMBER_OF_BUILT_IN_ELEMENT_GRAMMARS
 				+ " <value>");
-		ps.println();
-		ps.println(" " + INCLUDE_OPTIONS);
-		ps.println(" " + INCLUDE_COOKIE);
-		ps.println(" " + INCLUDE_SCHEMA_ID);
-		ps.println(" " + INCLUDE_SCHEMA_LOCATION);
-		ps.println(" " + INCLUDE_INSIGNIFICANT_XSI_NIL);
-		ps.println(" " + INCLUDE_PROFILE_VALUES);
-		ps.println(" " + RETAIN_ENTITY_REFERENCE);
-		ps.println(" " + FRAGMENT);
-		ps.println(" " + SELF_CONTAINED + " <{urn:foo}elWithNS,elDefNS>");
-		ps.println(" "
+		messages.println();
+		messages.println(" " + INCLUDE_OPTIONS);
+		messages.println(" " + INCLUDE_COOKIE);
+		messages.println(" " + INCLUDE_SCHEMA_ID);
+		messages.println(" " + INCLUDE_SCHEMA_LOCATION);
+		messages.println(" " + INCLUDE_INSIGNIFICANT_XSI_NIL);
+		messages.println(" " + INCLUDE_PROFILE_VALUES);
+		messages.println(" " + RETAIN_ENTITY_REFERENCE);
+		messages.println(" " + FRAGMENT);
+		messages.println(" " + SELF_CONTAINED + " <{urn:foo}elWithNS,elDefNS>");
+		messages.println(" "
 				+ DATATYPE_REPRESENTATION_MAP
 				+ " <qnameType,qnameRepresentation,{http://www.w3.org/2001/XMLSchema}decimal,{http://www.w3.org/2009/exi}string>");
 
-		ps.println();
-		ps.println("# Examples");
-		ps.println(" " + ENCODE + " " + SCHEMA + " notebook.xsd " + INPUT
+		messages.println();
+		messages.println("# Examples");
+		messages.println(" " + ENCODE + " " + SCHEMA + " notebook.xsd " + INPUT
 				+ " notebook.xml");
-		ps.println(" " + DECODE + " " + SCHEMA + " notebook.xsd " + INPUT
+		messages.println(" " + DECODE + " " + SCHEMA + " notebook.xsd " + INPUT
 				+ " notebook.xml.exi " + OUTPUT + " notebookDec.xml");
 	}
 
-	protected static void printError(String msg) {
-		ps.println("[ERROR] " + msg);
+	protected void printError(String msg) {
+		messages.println("[ERROR] " + msg);
 	}
 
-	protected static void printWarning(String msg) {
-		ps.println("[Warning] " + msg);
+	protected void printWarning(String msg) {
+		messages.println("[Warning] " + msg);
 	}
 
 	protected void parseArguments(String[] args) throws EXIException {
@@ -226,9 +274,18 @@ public class EXIficientCMD {
 		cmdOption = null;
 		SchemaOption schemaOption = SchemaOption.noSchema; // default
 		String schemaLocation = null;
+		String grammarSnapshot = null;
 
+		messages = ps;
 		input = null;
 		output = null;
+		mapped = false;
+		pipelined = false;
+		transformer = false;
+		fastXML = false;
+		fileList = null;
+		threads = 0;
+		batch = false;
 
 		exiFactory = DefaultEXIFactory.newInstance();
 
@@ -268,6 +325,24 @@ public class EXIficientCMD {
 				indexArgument++;
 
 				output = args[indexArgument];
+			} else if (MAPPED.equalsIgnoreCase(argument)) {
+				mapped = true;
+			} else if (PIPELINED.equalsIgnoreCase(argument)) {
+				pipelined = true;
+			} else if (TRANSFORMER.equalsIgnoreCase(argument)) {
+				transformer = true;
+			} else if (FAST_XML.equalsIgnoreCase(argument)) {
+				fastXML = true;
+			} else if (FILE_LIST.equalsIgnoreCase(argument)) {
+				assert ((indexArgument + 1) < args.length);
+				indexArgument++;
+
+				fileList = args[indexArgument];
+			} else if (THREADS.equalsIgnoreCase(argument)) {
+				assert ((indexArgument + 1) < args.length);
+				indexArgument++;
+
+				threads = Integer.parseInt(args[indexArgument]);
 			}
 			// ### SCHEMA_OPTIONS
 			else if (NO_SCHEMA.equalsIgnoreCase(argument)) {
@@ -284,6 +359,12 @@ public class EXIficientCMD {
 				indexArgument++;
 
 				schemaLocation = args[indexArgument];
+			} else if (GRAMMAR_SNAPSHOT.equalsIgnoreCase(argument)) {
+				// pre-compiled grammars
+				assert ((indexArgument + 1) < args.length);
+				indexArgument++;
+
+				grammarSnapshot = args[indexArgument];
 			}
 			// ### OPTIONS
 			else if (OPTION_STRICT.equalsIgnoreCase(argument)) {
@@ -500,27 +581,60 @@ public class EXIficientCMD {
 					+ DECODE);
 		}
 
-		if (input == null) {
+		batch = fileList != null
+				|| (input != null && (new File(input).isDirectory() || EXIficientBatch
+						.isGlob(input)));
+
+		if (input == null && fileList == null) {
 			inputParametersOK = false;
 			printError("Missing option -i");
-		} else if (!(new File(input)).exists()) {
+		} else if (fileList != null && !(new File(fileList)).isFile()) {
+			inputParametersOK = false;
+			printError("Not existing file list " + FILE_LIST + ", \""
+					+ fileList + "\"");
+		} else if (input != null && !STDIO.equals(input)
+				&& !EXIficientBatch.isGlob(input)
+				&& !(new File(input)).exists()) {
 			inputParametersOK = false;
 			printError("Not existing input parameter -i, \"" + input + "\"");
 		} else {
 			// ok
 		}
 
-		if (input != null && output == null) {
+		if (!batch && input != null && output == null) {
 			// default output
-			if (CmdOption.encode == cmdOption) {
+			if (STDIO.equals(input)) {
+				output = STDIO;
+			} else if (CmdOption.encode == cmdOption) {
 				output = input + DEFAULT_EXI_FILE_EXTENSION;
 			} else {
 				output = input + DEFAULT_XML_FILE_EXTENSION;
 			}
 		}
 
+		if (grammarSnapshot != null && SchemaOption.noSchema == schemaOption
+				&& !(new File(grammarSnapshot)).isFile()) {
+			inputParametersOK = false;
+			printError("Not existing grammar snapshot " + GRAMMAR_SNAPSHOT
+					+ ", \"" + grammarSnapshot + "\"");
+		}
+
 		File fOutput = null;
-		if (output == null) {
+		if (batch) {
+			// output directory (optional), created on demand
+			if (output != null
+					&& (STDIO.equals(output) || (new File(output)).isFile())) {
+				inputParametersOK = false;
+				printError("Output '" + output
+						+ "' of batch mode is unexpectedly a file");
+			}
+		} else if (STDIO.equals(output)) {
+			// keep standard output free of messages
+			messages = System.err;
+			if (mapped && STDIO.equals(input)) {
+				printWarning(MAPPED + " ignored for standard input");
+			}
+		} else if (output == null) {
 			inputParametersOK = false;
 			printError("Missing output specification!");
 		} else {
@@ -555,6 +669,10 @@ public class EXIficientCMD {
 		if (inputParametersOK) {
 			// schema available ?
 			if (SchemaOption.noSchema == schemaOption) {
+				if (grammarSnapshot != null) {
+					// pre-compiled grammars
+					exiFactory.setGrammars(readGrammarSnapshot(grammarSnapshot));
+				}
 				// default: schema-less mode
 				// exiFactory.setGrammar ( "" );
 			} else if (SchemaOption.xsdSchema == schemaOption) {
@@ -564,12 +682,43 @@ public class EXIficientCMD {
 				GrammarFactory gf = GrammarFactory.newInstance();
 				exiFactory.setGrammars(gf.createGrammars(schemaLocation));
 			}
+
+			if (grammarSnapshot != null
+					&& SchemaOption.noSchema != schemaOption) {
+				writeGrammarSnapshot(exiFactory.getGrammars(), grammarSnapshot);
+			}
+		}
+	}
+
+	protected Grammars readGrammarSnapshot(String grammarSnapshot)
+			throws EXIException {
+		try {
+			return GrammarSnapshot.read(new File(grammarSnapshot));
+		} catch (IOException e) {
+			throw new EXIException("Grammar snapshot '" + grammarSnapshot
+					+ "' could not be read", e);
+		}
+	}
+
+	protected void writeGrammarSnapshot(Grammars grammars,
+			String grammarSnapshot) throws EXIException {
+		try {
+			GrammarSnapshot.write(grammars, new File(grammarSnapshot));
+		} catch (IOException e) {
+			throw new EXIException("Grammar snapshot '" + grammarSnapshot
+					+ "' could not be written", e);
 		}
 	}
 
 	protected void process() throws EXIException, TransformerException,
 			IOException, SAXException {
 		if (inputParametersOK) {
+			if (batch) {
+				EXIficientBatch exiBatch = new EXIficientBatch(this, threads);
+				exiBatch.run(exiBatch.collect(input, fileList, output));
+				return;
+			}
+
 			// start coding
 			switch (cmdOption) {
 			case decode:
@@ -594,37 +743,99 @@ public class EXIficientCMD {
 
 		if (args == null || args.length == 0) {
 			// show help
-			printHelp();
+			new EXIficientCMD().printHelp();
 		} else {
 			EXIficientCMD cmd = new EXIficientCMD();
 			try {
 				cmd.parseArguments(args);
 				cmd.process();
 			} catch (Exception e) {
-				printError(e.getLocalizedMessage() + e.getClass());
+				cmd.printError(e.getLocalizedMessage() + e.getClass());
 			}
 		}
 	}
 
 	protected void decode(String input, EXIFactory exiFactory, String output)
 			throws EXIException, TransformerException, IOException {
-		OutputStream xmlOutput = new FileOutputStream(output);
+		OutputStream xmlOutput = openOutput(output);
+		InputStream exiInput = mapped && !STDIO.equals(input) ? new MappedFileInputStream(
+				new File(input)) : openInput(input);
+
+		try {
+			if (!transformer) {
+				new EXIToXMLWriter(exiFactory).decode(exiInput, xmlOutput);
+				return;
+			}
 
-		TransformerFactory tf = TransformerFactory.newInstance();
-		Transformer transformer = tf.newTransformer();
-		SAXSource exiSource = new SAXSource(new InputSource(
-				new FileInputStream(input)));
-		exiSource.setXMLReader(new SAXFactory(exiFactory).createEXIReader());
+			TransformerFactory tf = TransformerFactory.newInstance();
+			Transformer transformer = tf.newTransformer();
+			SAXSource exiSource = new SAXSource(new InputSource(exiInput));
+			exiSource.setXMLReader(new SAXFactory(exiFactory)
+					.createEXIReader());
 
-		if (exiFactory.isFragment()) {
-			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,
-					"yes");
+			if (exiFactory.isFragment()) {
+				transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,
+						"yes");
+			}
+
+			transformer.transform(exiSource, new StreamResult(xmlOutput));
+
+			xmlOutput.flush();
+		} finally {
+			exiInput.close();
+			xmlOutput.close();
 		}
+	}
 
-		transformer.transform(exiSource, new StreamResult(xmlOutput));
+	/**
+	 * Opens the input file or, for <code>-</code>, standard input. Bytes are
+	 * passed on as they arrive, coding starts before the input is complete.
+	 * 
+	 * @param input
+	 *            file name or <code>-</code>
+	 * @return buffered input stream
+	 * @throws IOException
+	 *             IO exception
+	 */
+	protected InputStream openInput(String input) throws IOException {
+		if (STDIO.equals(input)) {
+			return openStandardInput();
+		}
+		return new BufferedInputStream(new FileInputStream(input));
+	}
 
-		xmlOutput.flush();
-		xmlOutput.close();
+	/**
+	 * Opens the output file or, for <code>-</code>, standard output. Closing
+	 * the returned stream leaves standard output open.
+	 * 
+	 * @param output
+	 *            file name or <code>-</code>
+	 * @return output stream
+	 * @throws IOException
+	 *             IO exception
+	 */
+	protected OutputStream openOutput(String output) throws IOException {
+		if (STDIO.equals(output)) {
+			return openStandardOutput();
+		}
+		return new FileOutputStream(output);
+	}
+
+	/* reads the file descriptor through a pooled buffer, no System.in copy */
+	protected InputStream openStandardInput() throws IOException {
+		return new ChannelInputStream(
+				new FileInputStream(FileDescriptor.in).getChannel());
+	}
+
+	protected OutputStream openStandardOutput() throws IOException {
+		return new ChannelOutputStream(new FileOutputStream(
+				FileDescriptor.out).getChannel());
+	}
+
+	protected InputSource getInputSource(String input) throws IOException {
+		// files by system id, relative references resolve against it
+		return STDIO.equals(input) ? new InputSource(openInput(input))
+				: new InputSource(input);
 	}
 
 	protected XMLReader getXMLReader() throws SAXException {
@@ -653,10 +864,32 @@ public class EXIficientCMD {
 
 	protected void encode(String input, EXIFactory exiFactory, String output)
 			throws SAXException, EXIException, IOException {
-		OutputStream os = new FileOutputStream(output);
+		OutputStream os = openOutput(output);
+
+		if (fastXML && !exiFactory.isFragment()) {
+			InputStream xmlInput = openInput(input);
+			try {
+				new FastXMLEncoder(exiFactory).encode(xmlInput, os);
+			} finally {
+				xmlInput.close();
+				os.close();
+			}
+			return;
+		}
 
 		XMLReader xmlReader = getXMLReader();
 
+		if (pipelined && !exiFactory.isFragment()) {
+			PipelinedSAXEncoder encoder = new PipelinedSAXEncoder(exiFactory);
+			try {
+				encoder.encode(xmlReader, getInputSource(input), os);
+			} finally {
+				encoder.shutdown();
+				os.close();
+			}
+			return;
+		}
+
 		EXIResult exiResult = new EXIResult(exiFactory);
 		exiResult.setOutputStream(os);
 
@@ -673,22 +906,29 @@ public class EXIficientCMD {
 		xmlReader.setDTDHandler((DTDHandler) exiResult.getHandler());
 
 		InputSource is;
+		InputStream fragmentInput = null;
 		if (exiFactory.isFragment()) {
 			// surround fragment section with *root* element
 			// (necessary for xml reader to avoid messages like "root element
 			// must
 			// be well-formed")
+			fragmentInput = openInput(input);
 			is = new InputSource(
 					FragmentUtilities
-							.getSurroundingRootInputStream(new FileInputStream(
-									input)));
+							.getSurroundingRootInputStream(fragmentInput));
 			// skip root element when passing infoset to EXI encoder
 			xmlReader = new SkipRootElementXMLReader(xmlReader);
 		} else {
-			is = new InputSource(input);
+			is = getInputSource(input);
 		}
 
-		xmlReader.parse(is);
+		try {
+			xmlReader.parse(is);
+		} finally {
+			if (fragmentInput != null) {
+				fragmentInput.close();
+			}
+		}
 
 		os.flush();
 		os.close();
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+
+/**
+ *
+ * Thread-safe <code>SchemaIdResolver</code> that keeps the grammars of
+ * previously resolved schemaIds.
+ *
+ * <p>
+ * Each schemaId is compiled exactly once, also when several threads ask for
+ * the same schemaId at the same time. The number of cached entries is bounded
+ * and the least recently used entry is evicted first. If the schemaId points
+ * to a local file, an entry is dropped as soon as the modification time of
+ * the file changes.
+ * </p>
+ *
+ * @see EXIFactory
+ * @see DefaultSchemaIdResolver
+ *
+ */
+
+public class CachingSchemaIdResolver extends DefaultSchemaIdResolver {
+
+	public static final int DEFAULT_MAXIMUM_ENTRIES = 32;
+
+	/* shared instance installed by the decoders if none is set */
+	private static final CachingSchemaIdResolver SHARED_INSTANCE = new CachingSchemaIdResolver();
+
+	protected final int maximumEntries;
+
+	/* access-ordered, guarded by "this" */
+	protected final Map<String, CacheEntry> cache;
+
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong misses = new AtomicLong();
+	protected final AtomicLong evictions = new AtomicLong();
+
+	static class CacheEntry {
+		final FutureTask<Grammars> task;
+		final long lastModified;
+
+		CacheEntry(FutureTask<Grammars> task, long lastModified) {
+			this.task = task;
+			this.lastModified = lastModified;
+		}
+	}
+
+	public CachingSchemaIdResolver() {
+		this(DEFAULT_MAXIMUM_ENTRIES);
+	}
+
+	public CachingSchemaIdResolver(int maximumEntries) {
+		if (maximumEntries < 1) {
+			throw new IllegalArgumentException(
+					"Maximum number of entries must be positive, but was "
+							+ maximumEntries);
+		}
+		this.maximumEntries = maximumEntries;
+		this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the resolver that is shared by all decoders which were not
+	 * configured with an explicit <code>SchemaIdResolver</code>.
+	 *
+	 * @return JVM-wide caching resolver
+	 */
+	public static CachingSchemaIdResolver getSharedInstance() {
+		return SHARED_INSTANCE;
+	}
+
+	@Override
+	public Grammars resolveSchemaId(final String schemaId) throws EXIException {
+		if (schemaId == null) {
+			// schema-less grammars are cheap, nothing to cache
+			return super.resolveSchemaId(schemaId);
+		}
+
+		final long lastModified = getLastModified(schemaId);
+		FutureTask<Grammars> task;
+		boolean owner = false;
+
+		synchronized (this) {
+			CacheEntry entry = cache.get(schemaId);
+			if (entry != null && entry.lastModified != lastModified) {
+				// schema file changed on disk
+				cache.remove(schemaId);
+				entry = null;
+			}
+			if (entry == null) {
+				task = new FutureTask<Grammars>(new Callable<Grammars>() {
+					public Grammars call() throws Exception {
+						return CachingSchemaIdResolver.super
+								.resolveSchemaId(schemaId);
+					}
+				});
+				cache.put(schemaId, new CacheEntry(task, lastModified));
+				evictEldest();
+				owner = true;
+				misses.incrementAndGet();
+			} else {
+				task = entry.task;
+				hits.incrementAndGet();
+			}
+		}
+
+		if (owner) {
+			// compile outside of the lock, concurrent callers wait for it
+			task.run();
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EXIException(this.getClass().getName()
+					+ " interrupted while resolving schemaId == " + schemaId, e);
+		} catch (ExecutionException e) {
+			// do not keep failures, the next caller may try again
+			synchronized (this) {
+				CacheEntry entry = cache.get(schemaId);
+				if (entry != null && entry.task == task) {
+					cache.remove(schemaId);
+				}
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof EXIException) {
+				throw (EXIException) cause;
+			}
+			throw new EXIException(this.getClass().getName()
+					+ " failed to retrieve schemaId == " + schemaId, e);
+		}
+	}
+
+	private void evictEldest() {
+		Iterator<CacheEntry> iter = cache.values().iterator();
+		while (cache.size() > maximumEntries && iter.hasNext()) {
+			iter.next();
+			iter.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	protected long getLastModified(String schemaId) {
+		File f = new File(schemaId);
+		// 0L for non-existing files and not file-based locations (e.g., URLs)
+		return f.isFile() ? f.lastModified() : 0L;
+	}
+
+	/**
+	 * Drops the cached grammars for the given schemaId (if any).
+	 *
+	 * @param schemaId
+	 *            schema identifier
+	 */
+	public synchronized void invalidate(String schemaId) {
+		cache.remove(schemaId);
+	}
+
+	/**
+	 * Drops all cached grammars.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	public int getMaximumEntries() {
+		return maximumEntries;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "CachingSchemaIdResolver[size=" + size() + ", hits="
+				+ getHitCount() + ", misses=" + getMissCount()
+				+ ", evictions=" + getEvictionCount() + "]";
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.grammars.Grammars;
+
+/**
+ * 
+ * Immutable snapshot of the coding relevant settings of an
+ * <code>EXIFactory</code>. Two factories with equal fingerprints create
+ * interchangeable coders, which makes fingerprints suitable as cache and pool
+ * keys.
+ * 
+ * <p>
+ * Schema-informed grammars, schemaId resolvers and self-contained handlers
+ * are compared by identity. Self-contained element lists are not exposed by
+ * <code>EXIFactory</code>, factories with self-contained fidelity are
+ * therefore compared by identity as well.
+ * </p>
+ * 
+ */
+
+public final class EXIFactoryFingerprint {
+
+	private final Object[] settings;
+	private final int hashCode;
+
+	private EXIFactoryFingerprint(Object[] settings) {
+		this.settings = settings;
+		this.hashCode = Arrays.hashCode(settings);
+	}
+
+	public static EXIFactoryFingerprint of(EXIFactory f) {
+		List<String> sharedStrings = f.getSharedStrings() == null ? null
+				: Collections.unmodifiableList(new ArrayList<String>(f
+						.getSharedStrings()));
+		boolean sc = f.getFidelityOptions().isFidelityEnabled(
+				FidelityOptions.FEATURE_SC);
+
+		Object[] settings = new Object[] {
+				f.getCodingMode(),
+				// options are mutable, keep their textual form
+				String.valueOf(f.getFidelityOptions()),
+				String.valueOf(f.getEncodingOptions()),
+				String.valueOf(f.getDecodingOptions()),
+				f.isFragment(),
+				f.getBlockSize(),
+				f.getValueMaxLength(),
+				f.getValuePartitionCapacity(),
+				f.isLocalValuePartitions(),
+				f.getMaximumNumberOfBuiltInElementGrammars(),
+				f.getMaximumNumberOfBuiltInProductions(),
+				f.isGrammarLearningDisabled(),
+				f.isUsingNonEvolvingGrammars(),
+				copy(f.getDatatypeRepresentationMapTypes()),
+				copy(f.getDatatypeRepresentationMapRepresentations()),
+				sharedStrings, grammarsKey(f.getGrammars()),
+				new Identity(f.getSchemaIdResolver()),
+				new Identity(f.getSelfContainedHandler()),
+				new Identity(sc ? f : null) };
+
+		return new EXIFactoryFingerprint(settings);
+	}
+
+	private static Object grammarsKey(Grammars g) {
+		if (g == null) {
+			return null;
+		} else if (!g.isSchemaInformed()) {
+			// schema-less grammars are all alike
+			return "schemaLess";
+		} else if (g.isBuiltInXMLSchemaTypesOnly()) {
+			return "xsdTypesOnly";
+		} else {
+			return new Identity(g);
+		}
+	}
+
+	private static List<QName> copy(QName[] qnames) {
+		return qnames == null ? null : Collections
+				.unmodifiableList(new ArrayList<QName>(Arrays.asList(qnames)));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof EXIFactoryFingerprint)) {
+			return false;
+		}
+		EXIFactoryFingerprint other = (EXIFactoryFingerprint) o;
+		return hashCode == other.hashCode
+				&& Arrays.equals(settings, other.settings);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		return "EXIFactoryFingerprint" + Arrays.toString(settings);
+	}
+
+	static final class Identity {
+		final Object o;
+
+		Identity(Object o) {
+			this.o = o;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Identity && ((Identity) obj).o == o;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(o);
+		}
+
+		@Override
+		public String toString() {
+			return o == null ? "null" : o.getClass().getSimpleName() + "@"
+					+ Integer.toHexString(hashCode());
+		}
+	}
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+
+/**
+ * 
+ * Compiles XML schemas concurrently on a fork-join pool.
+ * 
+ * <p>
+ * Each schema is compiled by its own <code>GrammarFactory</code>, imported and
+ * included documents are shared by means of one
+ * <code>SharedImportsEntityResolver</code> so that common imports such as
+ * <code>xml.xsd</code> are read only once.
+ * </p>
+ * 
+ * @see SharedImportsEntityResolver
+ * @see GrammarSnapshot
+ * 
+ */
+
+public class GrammarCompilationService {
+
+	public static final String XSD_FILE_EXTENSION = ".xsd";
+
+	protected final ForkJoinPool pool;
+	protected final boolean ownsPool;
+	protected final XMLEntityResolver entityResolver;
+
+	/**
+	 * Creates a service that uses all available processors.
+	 */
+	public GrammarCompilationService() {
+		this(new ForkJoinPool(), true, new SharedImportsEntityResolver());
+	}
+
+	public GrammarCompilationService(ForkJoinPool pool) {
+		this(pool, false, new SharedImportsEntityResolver());
+	}
+
+	public GrammarCompilationService(ForkJoinPool pool,
+			XMLEntityResolver entityResolver) {
+		this(pool, false, entityResolver);
+	}
+
+	protected GrammarCompilationService(ForkJoinPool pool, boolean ownsPool,
+			XMLEntityResolver entityResolver) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.entityResolver = entityResolver;
+	}
+
+	public XMLEntityResolver getEntityResolver() {
+		return entityResolver;
+	}
+
+	/**
+	 * Schedules the compilation of the given schema.
+	 * 
+	 * @param xsdLocation
+	 *            schema location
+	 * @return future grammars
+	 */
+	public Future<Grammars> compile(final String xsdLocation) {
+		return pool.submit(new Callable<Grammars>() {
+			public Grammars call() throws Exception {
+				return GrammarFactory.newInstance().createGrammars(
+						xsdLocation, entityResolver);
+			}
+		});
+	}
+
+	/**
+	 * Schedules the compilation of all given schemas.
+	 * 
+	 * @param xsdLocations
+	 *            schema locations
+	 * @return future grammars per schema location (in the given order)
+	 */
+	public Map<String, Future<Grammars>> compileAll(
+			Collection<String> xsdLocations) {
+		Map<String, Future<Grammars>> futures = new LinkedHashMap<String, Future<Grammars>>();
+		for (String xsdLocation : xsdLocations) {
+			if (!futures.containsKey(xsdLocation)) {
+				futures.put(xsdLocation, compile(xsdLocation));
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Schedules the compilation of all schema files (*.xsd) in the given
+	 * directory and its sub-directories.
+	 * 
+	 * @param directory
+	 *            schema directory
+	 * @return future grammars per schema file (sorted by path)
+	 * @throws IOException
+	 *             if directory is not a directory
+	 */
+	public Map<String, Future<Grammars>> compileDirectory(File directory)
+			throws IOException {
+		if (!directory.isDirectory()) {
+			throw new IOException("'" + directory + "' is not a directory");
+		}
+		List<String> xsdLocations = new ArrayList<String>();
+		collectSchemas(directory, xsdLocations);
+		Collections.sort(xsdLocations);
+		return compileAll(xsdLocations);
+	}
+
+	private static void collectSchemas(File directory, List<String> xsdLocations) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File f : files) {
+			if (f.isDirectory()) {
+				collectSchemas(f, xsdLocations);
+			} else if (f.getName().toLowerCase().endsWith(XSD_FILE_EXTENSION)) {
+				xsdLocations.add(f.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Schedules the compilation of all schemas listed in a catalog file. The
+	 * catalog lists one schema location per line, empty lines and lines
+	 * starting with '#' are ignored. Relative file locations are resolved
+	 * against the directory of the catalog.
+	 * 
+	 * @param catalog
+	 *            catalog file
+	 * @return future grammars per listed schema location
+	 * @throws IOException
+	 *             if the catalog cannot be read
+	 */
+	public Map<String, Future<Grammars>> compileCatalog(File catalog)
+			throws IOException {
+		List<String> xsdLocations = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new FileInputStream(catalog), "UTF-8"));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				if (line.indexOf("://") < 0 && !new File(line).isAbsolute()) {
+					// relative file location
+					line = new File(catalog.getAbsoluteFile().getParentFile(),
+							line).getPath();
+				}
+				xsdLocations.add(line);
+			}
+		} finally {
+			br.close();
+		}
+		return compileAll(xsdLocations);
+	}
+
+	/**
+	 * Compiles the given schema several times in parallel and checks that all
+	 * runs produce the same grammars.
+	 * 
+	 * @param xsdLocation
+	 *            schema location
+	 * @param runs
+	 *            number of compilations
+	 * @return true if all fingerprints match
+	 * @throws EXIException
+	 *             if a compilation fails
+	 */
+	public boolean isDeterministic(String xsdLocation, int runs)
+			throws EXIException {
+		List<Future<Grammars>> futures = new ArrayList<Future<Grammars>>();
+		for (int i = 0; i < runs; i++) {
+			futures.add(compile(xsdLocation));
+		}
+		byte[] expected = null;
+		for (Future<Grammars> f : futures) {
+			byte[] fp = fingerprint(get(f));
+			if (expected == null) {
+				expected = fp;
+			} else if (!Arrays.equals(expected, fp)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for compiled grammars.
+	 * 
+	 * @param future
+	 *            future grammars
+	 * @return grammars
+	 * @throws EXIException
+	 *             if the compilation failed or was interrupted
+	 */
+	public static Grammars get(Future<Grammars> future) throws EXIException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EXIException("Interrupted while compiling grammars", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof EXIException) {
+				throw (EXIException) e.getCause();
+			}
+			throw new EXIException("Compiling grammars failed", e);
+		}
+	}
+
+	/**
+	 * Returns a SHA-256 digest of the grammar snapshot. Equal grammars have
+	 * equal fingerprints.
+	 * 
+	 * @param grammars
+	 *            schema-informed grammars
+	 * @return fingerprint
+	 * @throws EXIException
+	 *             if grammars cannot be persisted
+	 */
+	public static byte[] fingerprint(Grammars grammars) throws EXIException {
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			GrammarSnapshot.write(grammars, baos);
+			return MessageDigest.getInstance("SHA-256").digest(
+					baos.toByteArray());
+		} catch (IOException e) {
+			throw new EXIException(e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new EXIException(e);
+		}
+	}
+
+	/**
+	 * Shuts down the pool if it was created by this service.
+	 */
+	public void shutdown() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+
+}
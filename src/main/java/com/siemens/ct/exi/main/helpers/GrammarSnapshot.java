@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.sax.SAXSource;
+
+import org.xml.sax.InputSource;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.grammars.SchemaInformedGrammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.grammars._2017.schemaforgrammars.ExiGrammars;
+import com.siemens.ct.exi.grammars.persistency.Grammars2X;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
+
+/**
+ * 
+ * Binary snapshot of compiled schema-informed <code>Grammars</code>.
+ * 
+ * <p>
+ * The grammars are persisted by means of the
+ * <code>SchemaForGrammars</code> representation (see
+ * <code>Grammars2X</code>) which in turn is stored as compressed EXI stream.
+ * Loading a snapshot does not require the original XML schema(s) nor
+ * Xerces, the snapshot file is memory mapped and rebuilt in a single pass.
+ * </p>
+ * 
+ * <p>
+ * Layout: magic number, format version, grammar flags and schemaId followed
+ * by the EXI stream.
+ * </p>
+ * 
+ * @see Grammars2X
+ * 
+ */
+
+public class GrammarSnapshot {
+
+	/* "EXIG" */
+	public static final int MAGIC = 0x45584947;
+	public static final int VERSION = 1;
+
+	/* EXI settings of the snapshot stream itself */
+	protected static EXIFactory createSnapshotFactory() {
+		EXIFactory f = DefaultEXIFactory.newInstance();
+		f.setCodingMode(CodingMode.COMPRESSION);
+		return f;
+	}
+
+	protected GrammarSnapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of the given grammars.
+	 * 
+	 * @param grammars
+	 *            schema-informed grammars
+	 * @param os
+	 *            output stream (not closed)
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public static void write(Grammars grammars, OutputStream os)
+			throws EXIException, IOException {
+		if (!(grammars instanceof SchemaInformedGrammars)) {
+			throw new EXIException(
+					"Snapshots are only supported for schema-informed grammars");
+		}
+		try {
+			DataOutputStream dos = new DataOutputStream(os);
+			dos.writeInt(MAGIC);
+			dos.writeByte(VERSION);
+			dos.writeBoolean(grammars.isBuiltInXMLSchemaTypesOnly());
+			String schemaId = grammars.getSchemaId();
+			dos.writeBoolean(schemaId != null);
+			if (schemaId != null) {
+				dos.writeUTF(schemaId);
+			}
+			dos.flush();
+
+			if (grammars.isBuiltInXMLSchemaTypesOnly()) {
+				// nothing to persist
+				return;
+			}
+
+			ExiGrammars exiGrammars = new Grammars2X()
+					.toGrammarsX((SchemaInformedGrammars) grammars);
+			SAXEncoder encoder = new SAXFactory(
+					createSnapshotFactory()).createEXIWriter();
+			encoder.setOutputStream(os);
+			Grammars2X.marshal(exiGrammars, encoder);
+		} catch (IOException e) {
+			throw e;
+		} catch (EXIException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new EXIException("Writing grammar snapshot failed", e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the given grammars to a file.
+	 * 
+	 * @param grammars
+	 *            schema-informed grammars
+	 * @param snapshot
+	 *            target file
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public static void write(Grammars grammars, File snapshot)
+			throws EXIException, IOException {
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(
+				snapshot));
+		try {
+			write(grammars, os);
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Reads grammars from a snapshot stream.
+	 * 
+	 * @param is
+	 *            snapshot input stream (not closed)
+	 * @return grammars
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public static Grammars read(InputStream is) throws EXIException,
+			IOException {
+		DataInputStream dis = new DataInputStream(is);
+		if (dis.readInt() != MAGIC) {
+			throw new EXIException("No grammar snapshot");
+		}
+		int version = dis.readUnsignedByte();
+		if (version != VERSION) {
+			throw new EXIException("Unsupported grammar snapshot version "
+					+ version);
+		}
+		boolean builtInXMLSchemaTypesOnly = dis.readBoolean();
+		String schemaId = dis.readBoolean() ? dis.readUTF() : null;
+
+		if (builtInXMLSchemaTypesOnly) {
+			return GrammarFactory.newInstance().createXSDTypesOnlyGrammars();
+		}
+
+		SAXSource source = new SAXSource(
+				new SAXFactory(createSnapshotFactory()).createEXIReader(),
+				new InputSource(is));
+		try {
+			SchemaInformedGrammars grammars = Grammars2X
+					.toGrammars(Grammars2X.unmarshal(source));
+			grammars.setSchemaId(schemaId);
+			return grammars;
+		} catch (JAXBException e) {
+			throw new EXIException("Reading grammar snapshot failed", e);
+		}
+	}
+
+	/**
+	 * Reads grammars from a (memory mapped) snapshot file.
+	 * 
+	 * @param snapshot
+	 *            snapshot file
+	 * @return grammars
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public static Grammars read(File snapshot) throws EXIException,
+			IOException {
+		RandomAccessFile raf = new RandomAccessFile(snapshot, "r");
+		try {
+			FileChannel fc = raf.getChannel();
+			MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_ONLY, 0,
+					fc.size());
+			return read(new ByteBufferInputStream(mbb));
+		} finally {
+			raf.close();
+		}
+	}
+
+}
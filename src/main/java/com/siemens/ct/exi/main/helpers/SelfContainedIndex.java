@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import com.siemens.ct.exi.core.SelfContainedHandler;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.io.channel.EncoderChannel;
+
+/**
+ * 
+ * Side index of the self-contained (SC) fragments of an EXI stream. Each
+ * entry holds the qualified name of the SC element and the absolute byte
+ * offset of its fragment, the position in the index is the ordinal of the
+ * fragment in document order.
+ * 
+ * <p>
+ * The index is recorded while encoding: it is registered as
+ * <code>SelfContainedHandler</code> and the encoder writes to the stream
+ * returned by <code>track</code>, which counts the bytes (EXI header
+ * included). SC fragments are byte-aligned, so that the count at
+ * <code>scElement</code> is the exact fragment offset in every coding mode
+ * that permits SC.
+ * </p>
+ * 
+ * <pre>
+ * SelfContainedIndex index = new SelfContainedIndex();
+ * factory.setSelfContainedElements(scElements, index);
+ * encoder.setOutputStream(index.track(os));
+ * </pre>
+ * 
+ * <p>
+ * Layout of the persisted index: magic number, format version, number of
+ * entries followed by namespace, local-name and offset of each entry.
+ * </p>
+ * 
+ * @see com.siemens.ct.exi.main.api.sax.SelfContainedFragmentReader
+ * 
+ */
+
+public class SelfContainedIndex implements SelfContainedHandler {
+
+	/* "EXIS" */
+	public static final int MAGIC = 0x45584953;
+	public static final int VERSION = 1;
+
+	protected final List<QName> qnames;
+	protected long[] offsets;
+
+	// stream of the document being encoded
+	protected CountingOutputStream output;
+
+	public SelfContainedIndex() {
+		this.qnames = new ArrayList<QName>();
+		this.offsets = new long[16];
+	}
+
+	/**
+	 * Returns a stream that tracks the byte position of the EXI stream
+	 * written to <code>os</code>. The encoder has to write to this stream,
+	 * entries recorded so far are dropped.
+	 * 
+	 * @param os
+	 *            EXI output stream
+	 * @return stream to pass to the encoder
+	 */
+	public OutputStream track(OutputStream os) {
+		clear();
+		output = new CountingOutputStream(os);
+		return output;
+	}
+
+	/**
+	 * Returns the number of bytes written to the tracked stream so far.
+	 *
+	 * @return byte position or -1 if no stream is tracked
+	 */
+	public long getPosition() {
+		return output == null ? -1 : output.count;
+	}
+
+	public void scElement(String uri, String localName,
+			EncoderChannel channel) throws EXIException {
+		if (output == null) {
+			throw new EXIException(
+					"SC fragment without tracked output stream, see track()");
+		}
+		add(new QName(uri, localName), output.count);
+	}
+
+	protected void add(QName qname, long offset) {
+		int n = qnames.size();
+		if (n == offsets.length) {
+			offsets = Arrays.copyOf(offsets, n << 1);
+		}
+		offsets[n] = offset;
+		qnames.add(qname);
+	}
+
+	public void clear() {
+		qnames.clear();
+	}
+
+	/**
+	 * Returns the number of SC fragments.
+	 * 
+	 * @return number of fragments
+	 */
+	public int size() {
+		return qnames.size();
+	}
+
+	public QName getQName(int ordinal) {
+		return qnames.get(ordinal);
+	}
+
+	/**
+	 * Returns the byte offset of the given fragment, relative to the start of
+	 * the EXI stream.
+	 * 
+	 * @param ordinal
+	 *            fragment ordinal (document order, starting at 0)
+	 * @return byte offset
+	 */
+	public long getOffset(int ordinal) {
+		if (ordinal < 0 || ordinal >= qnames.size()) {
+			throw new IndexOutOfBoundsException("SC fragment " + ordinal
+					+ " of " + qnames.size());
+		}
+		return offsets[ordinal];
+	}
+
+	/**
+	 * Returns the ordinal of the n-th fragment with the given name.
+	 * 
+	 * @param qname
+	 *            SC element name
+	 * @param occurrence
+	 *            occurrence of the name (starting at 0)
+	 * @return ordinal or -1 if there is no such fragment
+	 */
+	public int indexOf(QName qname, int occurrence) {
+		for (int i = 0; i < qnames.size(); i++) {
+			if (qnames.get(i).equals(qname) && occurrence-- == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes the index.
+	 * 
+	 * @param os
+	 *            output stream (not closed)
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void write(OutputStream os) throws IOException {
+		DataOutputStream dos = new DataOutputStream(os);
+		dos.writeInt(MAGIC);
+		dos.writeByte(VERSION);
+		dos.writeInt(qnames.size());
+		for (int i = 0; i < qnames.size(); i++) {
+			QName qname = qnames.get(i);
+			dos.writeUTF(qname.getNamespaceURI());
+			dos.writeUTF(qname.getLocalPart());
+			dos.writeLong(offsets[i]);
+		}
+		dos.flush();
+	}
+
+	public void write(File file) throws IOException {
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(os);
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Reads an index written by <code>write</code>.
+	 * 
+	 * @param is
+	 *            input stream (not closed)
+	 * @return index
+	 * @throws EXIException
+	 *             if the stream is no SC index
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public static SelfContainedIndex read(InputStream is) throws EXIException,
+			IOException {
+		DataInputStream dis = new DataInputStream(is);
+		if (dis.readInt() != MAGIC) {
+			throw new EXIException("No self-contained index");
+		}
+		int version = dis.readUnsignedByte();
+		if (version != VERSION) {
+			throw new EXIException("Unsupported self-contained index version "
+					+ version);
+		}
+		SelfContainedIndex index = new SelfContainedIndex();
+		int size = dis.readInt();
+		for (int i = 0; i < size; i++) {
+			String uri = dis.readUTF();
+			String localName = dis.readUTF();
+			index.add(new QName(uri, localName), dis.readLong());
+		}
+		return index;
+	}
+
+	public static SelfContainedIndex read(File file) throws EXIException,
+			IOException {
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	/*
+	 * Counts the bytes written. Extends BufferedOutputStream so that encoders
+	 * do not buffer in front of it, the count would lag behind otherwise.
+	 */
+	static class CountingOutputStream extends BufferedOutputStream {
+
+		long count;
+
+		CountingOutputStream(OutputStream os) {
+			super(os);
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			super.write(b);
+			count++;
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len)
+				throws IOException {
+			super.write(b, off, len);
+			count += len;
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * 
+ * Thread-safe <code>XMLEntityResolver</code> that reads every imported or
+ * included schema document only once and serves subsequent requests from
+ * memory. Commonly shared documents (e.g., <code>xml.xsd</code>) can be
+ * mapped to local copies.
+ * 
+ * @see GrammarCompilationService
+ * 
+ */
+
+public class SharedImportsEntityResolver implements XMLEntityResolver {
+
+	protected final XMLEntityResolver delegate;
+
+	/* systemId --> local location */
+	protected final Map<String, String> locations = new ConcurrentHashMap<String, String>();
+
+	/* systemId --> content */
+	protected final ConcurrentHashMap<String, CachedDocument> documents = new ConcurrentHashMap<String, CachedDocument>();
+
+	public SharedImportsEntityResolver() {
+		this(null);
+	}
+
+	/**
+	 * @param delegate
+	 *            resolver asked before a document is loaded, may be null
+	 */
+	public SharedImportsEntityResolver(XMLEntityResolver delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Maps a systemId (e.g., <code>http://www.w3.org/2001/xml.xsd</code>) to a
+	 * local file.
+	 * 
+	 * @param systemId
+	 *            literal or expanded systemId
+	 * @param location
+	 *            local file location
+	 */
+	public void addLocation(String systemId, String location) {
+		locations.put(systemId, location);
+	}
+
+	public int size() {
+		return documents.size();
+	}
+
+	public void clear() {
+		documents.clear();
+	}
+
+	public XMLInputSource resolveEntity(XMLResourceIdentifier resourceIdentifier)
+			throws XNIException, IOException {
+		String key = resourceIdentifier.getExpandedSystemId();
+		if (key == null) {
+			key = resourceIdentifier.getLiteralSystemId();
+			if (key != null && resourceIdentifier.getBaseSystemId() != null) {
+				// the same relative systemId may denote different documents
+				try {
+					key = resolve(key, resourceIdentifier.getBaseSystemId())
+							.toString();
+				} catch (MalformedURLException e) {
+					// e.g., a URN, kept as it is
+				}
+			}
+		}
+		if (key == null) {
+			// e.g., import without schemaLocation
+			return delegate == null ? null : delegate
+					.resolveEntity(resourceIdentifier);
+		}
+
+		CachedDocument document = documents.get(key);
+		if (document == null) {
+			document = load(resourceIdentifier, key);
+			// concurrent loads of the same document are equal, keep first
+			CachedDocument prev = documents.putIfAbsent(key, document);
+			if (prev != null) {
+				document = prev;
+			}
+		}
+
+		// systemId keeps relative imports of the document resolvable
+		return new XMLInputSource(resourceIdentifier.getPublicId(), key,
+				resourceIdentifier.getBaseSystemId(),
+				new ByteArrayInputStream(document.content), document.encoding);
+	}
+
+	protected CachedDocument load(XMLResourceIdentifier resourceIdentifier,
+			String key) throws IOException {
+		String location = locations.get(key);
+		if (location == null && resourceIdentifier.getLiteralSystemId() != null) {
+			location = locations.get(resourceIdentifier.getLiteralSystemId());
+		}
+		if (location != null) {
+			return read(new FileInputStream(location), null);
+		}
+
+		String systemId = key;
+		String baseSystemId = null;
+		String encoding = null;
+		if (delegate != null) {
+			XMLInputSource xis = delegate.resolveEntity(resourceIdentifier);
+			if (xis != null) {
+				if (xis.getByteStream() != null) {
+					return read(xis.getByteStream(), xis.getEncoding());
+				} else if (xis.getCharacterStream() != null) {
+					return read(xis.getCharacterStream());
+				} else if (xis.getSystemId() != null) {
+					// redirected, e.g. by a catalog
+					systemId = xis.getSystemId();
+					baseSystemId = xis.getBaseSystemId();
+					encoding = xis.getEncoding();
+				}
+			}
+		}
+
+		return read(resolve(systemId, baseSystemId).openStream(), encoding);
+	}
+
+	protected static URL resolve(String systemId, String baseSystemId)
+			throws MalformedURLException {
+		return baseSystemId == null ? new URL(systemId) : new URL(new URL(
+				baseSystemId), systemId);
+	}
+
+	protected static CachedDocument read(InputStream is, String encoding)
+			throws IOException {
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int len;
+			while ((len = is.read(buf)) != -1) {
+				baos.write(buf, 0, len);
+			}
+			return new CachedDocument(baos.toByteArray(), encoding);
+		} finally {
+			is.close();
+		}
+	}
+
+	/* characters are kept as UTF-8 */
+	protected static CachedDocument read(Reader reader) throws IOException {
+		try {
+			StringBuilder sb = new StringBuilder();
+			char[] buf = new char[4096];
+			int len;
+			while ((len = reader.read(buf)) != -1) {
+				sb.append(buf, 0, len);
+			}
+			return new CachedDocument(sb.toString().getBytes(
+					StandardCharsets.UTF_8), "UTF-8");
+		} finally {
+			reader.close();
+		}
+	}
+
+	/*
+	 * Content of a loaded document, the encoding is null if it is detected
+	 * from the content
+	 */
+	protected static class CachedDocument {
+		final byte[] content;
+		final String encoding;
+
+		CachedDocument(byte[] content, String encoding) {
+			this.content = content;
+			this.encoding = encoding;
+		}
+	}
+
+}
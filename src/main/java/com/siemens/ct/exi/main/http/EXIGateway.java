@@ -0,0 +1,658 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.SAXCoderPool;
+import com.siemens.ct.exi.main.api.sax.SAXDecoder;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.util.NoEntityResolver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 
+ * HTTP gateway that transcodes between XML and EXI, built on the JDK HTTP
+ * server (<code>com.sun.net.httpserver</code>).
+ * 
+ * <p>
+ * A <code>POST</code> body of type <code>application/xml</code> (also
+ * <code>text/xml</code> and <code>+xml</code> types) is parsed and encoded by
+ * a <code>SAXEncoder</code>, a body of type <code>application/exi</code> is
+ * decoded by a <code>SAXDecoder</code>. The type of the response is
+ * negotiated from the <code>Accept</code> header, without preference the
+ * gateway answers with the other representation.
+ * </p>
+ * 
+ * <p>
+ * With an upstream URL the gateway acts as proxy in front of an XML service:
+ * the request is forwarded as XML and the XML response of the service is
+ * returned in the representation the client accepts (by default the one it
+ * sent).
+ * </p>
+ * 
+ * <p>
+ * All requests share the grammars of the given factory, coders are borrowed
+ * from a <code>SAXCoderPool</code>. Bodies are streamed, responses are sent
+ * with chunked transfer encoding once the first byte is ready. Failures
+ * before that are answered with <code>400</code> (<code>502</code> for
+ * upstream failures), later failures drop the connection so that the client
+ * never mistakes a truncated body for a complete one.
+ * </p>
+ * 
+ * <pre>
+ * EXIGateway gateway = new EXIGateway(exiFactory);
+ * gateway.start(new InetSocketAddress(8080));
+ * ...
+ * gateway.stop(1);
+ * </pre>
+ * 
+ */
+
+public class EXIGateway implements HttpHandler {
+
+	public static final String MEDIA_TYPE_EXI = "application/exi";
+	public static final String MEDIA_TYPE_XML = "application/xml";
+
+	protected static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+	protected static final String DECLARATION_HANDLER = "http://xml.org/sax/properties/declaration-handler";
+
+	protected final EXIFactory exiFactory;
+	protected final SAXCoderPool coderPool;
+	protected final ExecutorService executor;
+	protected final boolean ownsExecutor;
+
+	/* XML readers and transformer factories are not thread-safe */
+	protected final ThreadLocal<XMLReader> xmlReaders;
+	protected final ThreadLocal<SAXTransformerFactory> transformerFactories;
+
+	protected String upstream;
+	protected HttpServer server;
+
+	// metrics
+	protected final AtomicLong requests = new AtomicLong();
+	protected final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * Creates a gateway with its own pool of request threads (one per
+	 * available processor) and coder pool.
+	 * 
+	 * @param exiFactory
+	 *            EXI factory, grammars are shared by all requests
+	 */
+	public EXIGateway(EXIFactory exiFactory) {
+		this(exiFactory, new SAXCoderPool(), Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "exi-gateway-"
+								+ count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				}), true);
+	}
+
+	/**
+	 * Creates a gateway that handles requests on the given executor.
+	 * 
+	 * @param exiFactory
+	 *            EXI factory, grammars are shared by all requests
+	 * @param coderPool
+	 *            pool of SAX coders, may be shared with other components
+	 * @param executor
+	 *            executor of the HTTP server
+	 */
+	public EXIGateway(EXIFactory exiFactory, SAXCoderPool coderPool,
+			ExecutorService executor) {
+		this(exiFactory, coderPool, executor, false);
+	}
+
+	protected EXIGateway(EXIFactory exiFactory, SAXCoderPool coderPool,
+			ExecutorService executor, boolean ownsExecutor) {
+		this.exiFactory = exiFactory;
+		this.coderPool = coderPool;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.xmlReaders = new ThreadLocal<XMLReader>();
+		this.transformerFactories = new ThreadLocal<SAXTransformerFactory>();
+	}
+
+	/**
+	 * Forwards requests as XML to the given service instead of answering
+	 * them. The request path (and query) is appended to the upstream URL.
+	 * 
+	 * @param upstream
+	 *            base URL of the XML service, null for transcoding only
+	 */
+	public void setUpstream(String upstream) {
+		if (upstream != null && upstream.endsWith("/")) {
+			upstream = upstream.substring(0, upstream.length() - 1);
+		}
+		this.upstream = upstream;
+	}
+
+	public String getUpstream() {
+		return upstream;
+	}
+
+	public SAXCoderPool getCoderPool() {
+		return coderPool;
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Starts an HTTP server that passes all requests to this gateway.
+	 * 
+	 * @param address
+	 *            socket address, port 0 picks a free port
+	 * @throws IOException
+	 *             if the server cannot be bound
+	 */
+	public void start(InetSocketAddress address) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Gateway already started");
+		}
+		server = HttpServer.create(address, 0);
+		server.createContext("/", this);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * @return bound port of the started server
+	 */
+	public int getPort() {
+		if (server == null) {
+			throw new IllegalStateException("Gateway not started");
+		}
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server and, if owned, its request threads.
+	 * 
+	 * @param delay
+	 *            seconds to wait for running requests
+	 */
+	public void stop(int delay) {
+		if (server != null) {
+			server.stop(delay);
+			server = null;
+		}
+		if (ownsExecutor) {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(delay, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		ResponseStream response = null;
+		try {
+			if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				sendError(exchange, 405, "Method not allowed");
+				return;
+			}
+			String requestType = getMediaType(exchange.getRequestHeaders()
+					.getFirst("Content-Type"));
+			if (requestType == null) {
+				sendError(exchange, 415, "Expected " + MEDIA_TYPE_XML
+						+ " or " + MEDIA_TYPE_EXI);
+				return;
+			}
+			String preferred = upstream != null ? requestType
+					: (MEDIA_TYPE_EXI.equals(requestType) ? MEDIA_TYPE_XML
+							: MEDIA_TYPE_EXI);
+			String responseType = negotiate(exchange.getRequestHeaders()
+					.getFirst("Accept"), preferred);
+			if (responseType == null) {
+				sendError(exchange, 406, "Acceptable are " + MEDIA_TYPE_XML
+						+ " and " + MEDIA_TYPE_EXI);
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Vary", "Accept");
+			response = new ResponseStream(exchange, responseType);
+			if (upstream == null) {
+				transcode(exchange.getRequestBody(), requestType, response,
+						responseType);
+			} else {
+				forward(exchange, requestType, response, responseType);
+			}
+			response.close();
+		} catch (Exception e) {
+			failures.incrementAndGet();
+			if (response != null && response.isCommitted()) {
+				// status is out, let the server drop the connection
+				throw e instanceof IOException ? (IOException) e
+						: new IOException(e);
+			}
+			sendError(exchange, upstream != null && e instanceof IOException ? 502
+					: 400, e.getClass().getSimpleName() + ": "
+					+ e.getMessage());
+		}
+		exchange.close();
+	}
+
+	/**
+	 * Transcodes a body. Equal types are copied.
+	 * 
+	 * @param in
+	 *            input body
+	 * @param inType
+	 *            media type of the input, <code>MEDIA_TYPE_XML</code> or
+	 *            <code>MEDIA_TYPE_EXI</code>
+	 * @param out
+	 *            output body (not closed)
+	 * @param outType
+	 *            media type of the output
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws SAXException
+	 *             malformed input
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void transcode(InputStream in, String inType, OutputStream out,
+			String outType) throws EXIException, SAXException, IOException {
+		if (inType.equals(outType)) {
+			copy(in, out);
+		} else if (MEDIA_TYPE_EXI.equals(outType)) {
+			encode(in, out);
+		} else {
+			decode(in, out);
+		}
+	}
+
+	protected void encode(InputStream xml, OutputStream exi)
+			throws EXIException, SAXException, IOException {
+		SAXEncoder writer = coderPool.borrowWriter(exiFactory);
+		try {
+			writer.reset(exi);
+			XMLReader xmlReader = getXMLReader();
+			xmlReader.setContentHandler(writer);
+			xmlReader.setProperty(LEXICAL_HANDLER, writer);
+			xmlReader.setProperty(DECLARATION_HANDLER, writer);
+			xmlReader.setDTDHandler(writer);
+			xmlReader.parse(new InputSource(xml));
+		} finally {
+			coderPool.returnWriter(writer);
+		}
+	}
+
+	protected void decode(InputStream exi, OutputStream xml)
+			throws EXIException, SAXException, IOException {
+		SAXDecoder reader = coderPool.borrowReader(exiFactory);
+		try {
+			TransformerHandler th = getTransformerFactory()
+					.newTransformerHandler();
+			if (exiFactory.isFragment()) {
+				th.getTransformer().setOutputProperty(
+						OutputKeys.OMIT_XML_DECLARATION, "yes");
+			}
+			th.setResult(new StreamResult(xml));
+			reader.setContentHandler(th);
+			reader.setProperty(LEXICAL_HANDLER, th);
+			reader.parse(new InputSource(exi));
+		} catch (TransformerConfigurationException e) {
+			throw new EXIException(e);
+		} finally {
+			coderPool.returnReader(reader);
+		}
+	}
+
+	protected void forward(HttpExchange exchange, String requestType,
+			ResponseStream response, String responseType) throws EXIException,
+			SAXException, IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(upstream
+				+ exchange.getRequestURI().getRawPath()
+				+ (exchange.getRequestURI().getRawQuery() == null ? ""
+						: "?" + exchange.getRequestURI().getRawQuery()))
+				.openConnection();
+		try {
+			conn.setRequestMethod("POST");
+			conn.setDoOutput(true);
+			conn.setChunkedStreamingMode(0);
+			conn.setRequestProperty("Content-Type", MEDIA_TYPE_XML);
+			conn.setRequestProperty("Accept", MEDIA_TYPE_XML);
+			OutputStream up = conn.getOutputStream();
+			try {
+				transcode(exchange.getRequestBody(), requestType, up,
+						MEDIA_TYPE_XML);
+			} finally {
+				up.close();
+			}
+
+			int status = conn.getResponseCode();
+			InputStream down = status >= 400 ? conn.getErrorStream() : conn
+					.getInputStream();
+			response.setStatus(status);
+			if (down == null) {
+				return;
+			}
+			try {
+				String downType = getMediaType(conn.getContentType());
+				if (downType == null) {
+					// neither XML nor EXI, pass through
+					response.setContentType(conn.getContentType());
+					copy(down, response);
+				} else {
+					transcode(down, downType, response, responseType);
+				}
+			} catch (SAXException e) {
+				throw new IOException("Malformed response of " + upstream, e);
+			} finally {
+				down.close();
+			}
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+	protected XMLReader getXMLReader() throws SAXException {
+		XMLReader xmlReader = xmlReaders.get();
+		if (xmlReader == null) {
+			xmlReader = XMLReaderFactory.createXMLReader();
+			xmlReader.setFeature("http://xml.org/sax/features/namespaces",
+					true);
+			xmlReader.setFeature(
+					"http://xml.org/sax/features/namespace-prefixes", false);
+			xmlReader.setFeature("http://xml.org/sax/features/validation",
+					false);
+			// no external DTDs and entities from request bodies
+			xmlReader.setEntityResolver(new NoEntityResolver());
+			xmlReaders.set(xmlReader);
+		}
+		return xmlReader;
+	}
+
+	protected SAXTransformerFactory getTransformerFactory() {
+		SAXTransformerFactory tf = transformerFactories.get();
+		if (tf == null) {
+			tf = (SAXTransformerFactory) TransformerFactory.newInstance();
+			transformerFactories.set(tf);
+		}
+		return tf;
+	}
+
+	/**
+	 * Maps a <code>Content-Type</code> header to <code>MEDIA_TYPE_XML</code>
+	 * or <code>MEDIA_TYPE_EXI</code>.
+	 * 
+	 * @param contentType
+	 *            header value, may be null
+	 * @return media type or null if neither XML nor EXI
+	 */
+	public static String getMediaType(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		int semicolon = contentType.indexOf(';');
+		String type = (semicolon < 0 ? contentType : contentType.substring(0,
+				semicolon)).trim().toLowerCase(Locale.ENGLISH);
+		if (MEDIA_TYPE_EXI.equals(type)) {
+			return MEDIA_TYPE_EXI;
+		} else if (MEDIA_TYPE_XML.equals(type) || "text/xml".equals(type)
+				|| (type.endsWith("+xml") && type.indexOf('/') > 0)) {
+			return MEDIA_TYPE_XML;
+		}
+		return null;
+	}
+
+	/**
+	 * Picks the response type from an <code>Accept</code> header. The most
+	 * specific media range decides the quality of a type, equal qualities go
+	 * to the preferred type.
+	 * 
+	 * @param accept
+	 *            header value, null accepts everything
+	 * @param preferred
+	 *            <code>MEDIA_TYPE_XML</code> or <code>MEDIA_TYPE_EXI</code>
+	 * @return media type or null if neither is acceptable
+	 */
+	public static String negotiate(String accept, String preferred) {
+		if (accept == null || accept.trim().length() == 0) {
+			return preferred;
+		}
+		float qExi = quality(accept, MEDIA_TYPE_EXI);
+		// text/xml only counts when named, wildcards already reach application/xml
+		float qXml = Math.max(quality(accept, MEDIA_TYPE_XML),
+				quality(accept, "text/xml", 2));
+		if (qExi <= 0 && qXml <= 0) {
+			return null;
+		} else if (qExi == qXml) {
+			return preferred;
+		}
+		return qExi > qXml ? MEDIA_TYPE_EXI : MEDIA_TYPE_XML;
+	}
+
+	protected static float quality(String accept, String mediaType) {
+		return quality(accept, mediaType, 0);
+	}
+
+	protected static float quality(String accept, String mediaType,
+			int minSpecificity) {
+		int slash = mediaType.indexOf('/');
+		float q = 0;
+		int specificity = minSpecificity - 1;
+		for (String range : accept.split(",")) {
+			String[] params = range.split(";");
+			String type = params[0].trim().toLowerCase(Locale.ENGLISH);
+			int s;
+			if (type.equals(mediaType)) {
+				s = 2;
+			} else if (type.equals(mediaType.substring(0, slash + 1) + "*")) {
+				s = 1;
+			} else if (type.equals("*/*")) {
+				s = 0;
+			} else {
+				continue;
+			}
+			if (s > specificity) {
+				specificity = s;
+				q = 1;
+				for (int i = 1; i < params.length; i++) {
+					String p = params[i].trim();
+					if (p.startsWith("q=")) {
+						try {
+							q = Float.parseFloat(p.substring(2));
+						} catch (NumberFormatException e) {
+							q = 0;
+						}
+					}
+				}
+			}
+		}
+		return q;
+	}
+
+	protected static void copy(InputStream in, OutputStream out)
+			throws IOException {
+		byte[] buffer = new byte[8192];
+		int len;
+		while ((len = in.read(buffer)) != -1) {
+			out.write(buffer, 0, len);
+		}
+	}
+
+	protected void sendError(HttpExchange exchange, int status, String message)
+			throws IOException {
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type",
+				"text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+		exchange.close();
+	}
+
+	/*
+	 * Response body that sends the headers (chunked) with the first byte, the
+	 * status can be changed until then.
+	 */
+	protected static class ResponseStream extends OutputStream {
+
+		protected final HttpExchange exchange;
+		protected String contentType;
+		protected int status;
+		protected OutputStream body;
+
+		public ResponseStream(HttpExchange exchange, String contentType) {
+			this.exchange = exchange;
+			this.contentType = contentType;
+			this.status = 200;
+		}
+
+		public void setStatus(int status) {
+			this.status = status;
+		}
+
+		public void setContentType(String contentType) {
+			this.contentType = contentType;
+		}
+
+		public boolean isCommitted() {
+			return body != null;
+		}
+
+		protected OutputStream commit() throws IOException {
+			if (body == null) {
+				if (contentType != null) {
+					exchange.getResponseHeaders().set("Content-Type",
+							contentType);
+				}
+				exchange.sendResponseHeaders(status, 0);
+				body = exchange.getResponseBody();
+			}
+			return body;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			commit().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len > 0) {
+				commit().write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (body != null) {
+				body.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			commit().close();
+		}
+	}
+
+	/**
+	 * Runs a gateway.
+	 * 
+	 * <pre>
+	 * EXIGateway &lt;port&gt; [&lt;schema-file&gt; [&lt;upstream-url&gt;]]
+	 * </pre>
+	 * 
+	 * @param args
+	 *            port, XML schema (<code>-</code> for none) and upstream URL
+	 * @throws Exception
+	 *             if the gateway cannot be started
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out
+					.println("EXIGateway <port> [<schema-file> [<upstream-url>]]");
+			return;
+		}
+		EXIFactory exiFactory = DefaultEXIFactory.newInstance();
+		if (args.length > 1 && !"-".equals(args[1])) {
+			exiFactory.setGrammars(GrammarFactory.newInstance()
+					.createGrammars(args[1]));
+		}
+		EXIGateway gateway = new EXIGateway(exiFactory);
+		if (args.length > 2) {
+			gateway.setUpstream(args[2]);
+		}
+		gateway.start(new InetSocketAddress(Integer.parseInt(args[0])));
+		System.out.println("EXI gateway listening on port "
+				+ gateway.getPort()
+				+ (gateway.getUpstream() == null ? "" : ", forwarding to "
+						+ gateway.getUpstream()));
+	}
+
+}
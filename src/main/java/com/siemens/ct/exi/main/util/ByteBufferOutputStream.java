@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * <code>OutputStream</code> view of a heap or direct <code>ByteBuffer</code>.
+ * Writing advances the position of the buffer, writing beyond its limit
+ * fails with an <code>IOException</code>.
+ * 
+ * <p>
+ * Not thread-safe.
+ * </p>
+ * 
+ */
+
+public class ByteBufferOutputStream extends OutputStream {
+
+	protected final ByteBuffer buffer;
+
+	public ByteBufferOutputStream(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException("No buffer given");
+		}
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		try {
+			buffer.put((byte) b);
+		} catch (BufferOverflowException e) {
+			throw overflow(1);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		try {
+			buffer.put(b, off, len);
+		} catch (BufferOverflowException e) {
+			throw overflow(len);
+		}
+	}
+
+	private IOException overflow(int len) {
+		return new IOException("ByteBuffer full, " + len
+				+ " byte(s) do not fit into " + buffer.remaining()
+				+ " remaining byte(s) of " + buffer.capacity());
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe pool of equally sized <code>ByteBuffer</code>s used by the
+ * channel streams.
+ * 
+ * <p>
+ * Direct buffers are the default since channels copy heap buffers into a
+ * temporary direct buffer on every read and write anyway. At most
+ * <code>maximumIdle</code> buffers are kept, further released buffers are
+ * left to the garbage collector.
+ * </p>
+ * 
+ * @see ChannelInputStream
+ * @see ChannelOutputStream
+ */
+
+public class ByteBufferPool {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	public static final int DEFAULT_MAXIMUM_IDLE = 64;
+
+	private static final ByteBufferPool SHARED_INSTANCE = new ByteBufferPool();
+
+	protected final int bufferSize;
+	protected final boolean direct;
+	protected final int maximumIdle;
+
+	protected final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<ByteBuffer>();
+	protected final AtomicInteger idleCount = new AtomicInteger();
+
+	public ByteBufferPool() {
+		this(DEFAULT_BUFFER_SIZE, true, DEFAULT_MAXIMUM_IDLE);
+	}
+
+	public ByteBufferPool(int bufferSize, boolean direct, int maximumIdle) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size <= 0");
+		}
+		if (maximumIdle < 0) {
+			throw new IllegalArgumentException("Maximum idle < 0");
+		}
+		this.bufferSize = bufferSize;
+		this.direct = direct;
+		this.maximumIdle = maximumIdle;
+	}
+
+	/**
+	 * Returns the pool used by the encoders and decoders if none is given.
+	 * 
+	 * @return JVM-wide buffer pool
+	 */
+	public static ByteBufferPool getSharedInstance() {
+		return SHARED_INSTANCE;
+	}
+
+	/**
+	 * Takes an idle buffer or allocates a new one.
+	 * 
+	 * @return cleared buffer of <code>getBufferSize()</code> bytes
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = idle.poll();
+		if (buffer == null) {
+			return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer
+					.allocate(bufferSize);
+		}
+		idleCount.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Hands a buffer back. The buffer must not be used by the caller
+	 * afterwards.
+	 * 
+	 * @param buffer
+	 *            buffer taken from this pool
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() != bufferSize
+				|| buffer.isDirect() != direct || buffer.isReadOnly()) {
+			return;
+		}
+		if (idleCount.incrementAndGet() <= maximumIdle) {
+			idle.offer(buffer);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	public int getIdleCount() {
+		return idleCount.get();
+	}
+
+}
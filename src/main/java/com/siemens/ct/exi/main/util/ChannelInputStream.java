@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Buffered <code>InputStream</code> that reads from a
+ * <code>ReadableByteChannel</code>.
+ * 
+ * <p>
+ * The buffer is taken from a <code>ByteBufferPool</code> on the first read
+ * and handed back at the end of the channel or on <code>close()</code>.
+ * Closing the stream leaves the channel open, the channel is owned by the
+ * caller and is expected to be in blocking mode. Note that bytes may be read ahead from the channel, bytes following
+ * an EXI stream are not available to other readers of the channel.
+ * </p>
+ * 
+ * <p>
+ * Not thread-safe.
+ * </p>
+ * 
+ */
+
+public class ChannelInputStream extends InputStream {
+
+	protected final ByteBufferPool pool;
+	protected final ReadableByteChannel channel;
+	protected ByteBuffer buffer;
+	protected boolean eof;
+
+	public ChannelInputStream(ReadableByteChannel channel) {
+		this(channel, ByteBufferPool.getSharedInstance());
+	}
+
+	public ChannelInputStream(ReadableByteChannel channel, ByteBufferPool pool) {
+		if (channel == null) {
+			throw new NullPointerException("No channel given");
+		}
+		if (pool == null) {
+			throw new NullPointerException("No buffer pool given");
+		}
+		this.channel = channel;
+		this.pool = pool;
+	}
+
+	public ReadableByteChannel getChannel() {
+		return channel;
+	}
+
+	/* returns false at the end of the channel */
+	protected boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (buffer == null) {
+			buffer = pool.acquire();
+			buffer.limit(0);
+		}
+		if (buffer.hasRemaining()) {
+			return true;
+		}
+		buffer.clear();
+		int n;
+		do {
+			n = channel.read(buffer);
+		} while (n == 0);
+		buffer.flip();
+		if (n < 0) {
+			eof = true;
+			release();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return fill() ? (buffer.get() & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public int available() {
+		return buffer == null ? 0 : buffer.remaining();
+	}
+
+	protected void release() {
+		if (buffer != null) {
+			ByteBuffer b = buffer;
+			buffer = null;
+			pool.release(b);
+		}
+	}
+
+	/**
+	 * Hands the buffer back to the pool. The channel is not closed.
+	 */
+	@Override
+	public void close() {
+		eof = true;
+		release();
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered <code>OutputStream</code> that writes to a
+ * <code>WritableByteChannel</code>.
+ * 
+ * <p>
+ * The buffer is taken from a <code>ByteBufferPool</code> on the first write
+ * and handed back on <code>flush()</code>, so an idle stream does not hold
+ * any buffer. Closing the stream flushes it but leaves the channel open, the
+ * channel is owned by the caller.
+ * </p>
+ * 
+ * <p>
+ * Not thread-safe.
+ * </p>
+ * 
+ */
+
+public class ChannelOutputStream extends OutputStream {
+
+	protected final ByteBufferPool pool;
+	protected WritableByteChannel channel;
+	protected ByteBuffer buffer;
+
+	public ChannelOutputStream(WritableByteChannel channel) {
+		this(channel, ByteBufferPool.getSharedInstance());
+	}
+
+	public ChannelOutputStream(WritableByteChannel channel, ByteBufferPool pool) {
+		if (pool == null) {
+			throw new NullPointerException("No buffer pool given");
+		}
+		this.pool = pool;
+		setChannel(channel);
+	}
+
+	/**
+	 * Sets the target channel. Bytes not flushed to the previous target are
+	 * discarded.
+	 * 
+	 * @param channel
+	 *            target channel
+	 */
+	public void setChannel(WritableByteChannel channel) {
+		if (channel == null) {
+			throw new NullPointerException("No channel given");
+		}
+		this.channel = channel;
+		if (buffer != null) {
+			buffer.clear();
+		}
+	}
+
+	public WritableByteChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (buffer == null) {
+			buffer = pool.acquire();
+		} else if (!buffer.hasRemaining()) {
+			drain();
+		}
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (buffer == null) {
+			buffer = pool.acquire();
+		}
+		if (len >= buffer.capacity()) {
+			// large chunk, bypass buffer
+			drain();
+			writeFully(ByteBuffer.wrap(b, off, len));
+			return;
+		}
+		if (len > buffer.remaining()) {
+			drain();
+		}
+		buffer.put(b, off, len);
+	}
+
+	protected void drain() throws IOException {
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	protected void writeFully(ByteBuffer src) throws IOException {
+		while (src.hasRemaining()) {
+			channel.write(src);
+		}
+	}
+
+	/**
+	 * Writes all buffered bytes to the channel and hands the buffer back to
+	 * the pool.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (buffer != null) {
+			ByteBuffer b = buffer;
+			try {
+				drain();
+			} finally {
+				buffer = null;
+				pool.release(b);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+}
@@ -24,25 +24,47 @@
 package com.siemens.ct.exi.main.util;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
 
 public class FragmentUtilities {
-	public static InputStream getSurroundingRootInputStream(InputStream is)
-			throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-		baos.write("<root>".getBytes());
 
-		int b;
-		while ((b = is.read()) != -1) {
-			baos.write(b);
-		}
+	protected static final Charset US_ASCII = Charset.forName("US-ASCII");
 
-		baos.write("</root>".getBytes());
-		baos.flush();
+	public static InputStream getSurroundingRootInputStream(InputStream is)
+			throws IOException {
+		return getSurroundingInputStream(is, "root");
+	}
 
-		return new ByteArrayInputStream(baos.toByteArray());
+	/**
+	 * Surrounds the XML fragment read from the given stream with an element
+	 * so that it can be parsed as document. The fragment is streamed, not
+	 * buffered. The returned stream does not close the given one.
+	 * 
+	 * @param is
+	 *            XML fragment
+	 * @param elementName
+	 *            name of the surrounding element
+	 * @return stream of the surrounded fragment
+	 */
+	public static InputStream getSurroundingInputStream(InputStream is,
+			String elementName) {
+		InputStream start = new ByteArrayInputStream(("<" + elementName + ">")
+				.getBytes(US_ASCII));
+		InputStream end = new ByteArrayInputStream(("</" + elementName + ">")
+				.getBytes(US_ASCII));
+		// SequenceInputStream closes exhausted streams
+		InputStream content = new FilterInputStream(is) {
+			@Override
+			public void close() {
+			}
+		};
+		return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+				start, content, end)));
 	}
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <code>InputStream</code> over a memory mapped file. The file is mapped in
+ * windows of at most <code>windowSize</code> bytes, so that also files larger
+ * than 2 GB (the limit of a single <code>MappedByteBuffer</code>) can be read.
+ * 
+ * <p>
+ * The EXI stream decoder wraps any stream that is not a
+ * <code>BufferedInputStream</code> into one. This class only extends
+ * <code>BufferedInputStream</code> to avoid that extra copy, all reads go
+ * straight to the mapped window and none of the inherited buffering is used.
+ * </p>
+ * 
+ * <p>
+ * Closing the stream closes the file. Mapped regions are released by the
+ * garbage collector. Not thread-safe.
+ * </p>
+ * 
+ */
+
+public class MappedFileInputStream extends BufferedInputStream {
+
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 28; // 256 MB
+
+	protected final RandomAccessFile file;
+	protected final FileChannel channel;
+	protected final long size;
+	protected final int windowSize;
+
+	// file offset of the current window
+	protected long windowStart;
+	protected ByteBuffer window;
+	protected boolean closed;
+
+	protected long markPosition = -1;
+
+	public MappedFileInputStream(File f) throws IOException {
+		this(f, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedFileInputStream(File f, int windowSize) throws IOException {
+		super(new ByteArrayInputStream(new byte[0]), 1);
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size <= 0");
+		}
+		this.windowSize = windowSize;
+		this.file = new RandomAccessFile(f, "r");
+		try {
+			this.channel = file.getChannel();
+			this.size = channel.size();
+			map(0L);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	protected void map(long position) throws IOException {
+		long len = Math.min(windowSize, size - position);
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, len);
+	}
+
+	/* returns false at the end of the file */
+	protected boolean nextWindow() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		long next = windowStart + window.limit();
+		if (next >= size) {
+			return false;
+		}
+		map(next);
+		return true;
+	}
+
+	/**
+	 * Returns the current read position in the file.
+	 * 
+	 * @return file offset
+	 */
+	public long getPosition() {
+		return windowStart + window.position();
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!window.hasRemaining() && !nextWindow()) {
+			return -1;
+		}
+		return window.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!window.hasRemaining() && !nextWindow()) {
+			return -1;
+		}
+		len = Math.min(len, window.remaining());
+		window.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		long pos = getPosition();
+		long skip = Math.min(n, size - pos);
+		seek(pos + skip);
+		return skip;
+	}
+
+	/**
+	 * Moves the read position to the given file offset.
+	 * 
+	 * @param position
+	 *            file offset
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void seek(long position) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (position < 0 || position > size) {
+			throw new IOException("Position " + position
+					+ " outside of file (size " + size + ")");
+		}
+		if (position >= windowStart
+				&& position <= windowStart + window.limit()) {
+			window.position((int) (position - windowStart));
+		} else {
+			map(position);
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, size - getPosition());
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		markPosition = getPosition();
+	}
+
+	@Override
+	public void reset() throws IOException {
+		if (markPosition < 0) {
+			throw new IOException("Resetting to invalid mark");
+		}
+		seek(markPosition);
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		window = ByteBuffer.allocate(0);
+		file.close();
+	}
+
+}
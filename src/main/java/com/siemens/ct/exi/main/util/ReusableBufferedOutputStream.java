@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered output stream whose target can be exchanged so that the buffer is
+ * reused for several documents.
+ * 
+ * <p>
+ * Not thread-safe.
+ * </p>
+ * 
+ */
+
+public class ReusableBufferedOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	protected final byte[] buf;
+	protected int count;
+	protected OutputStream out;
+
+	public ReusableBufferedOutputStream() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	public ReusableBufferedOutputStream(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Buffer size <= 0");
+		}
+		buf = new byte[size];
+	}
+
+	/**
+	 * Sets the target stream. Bytes not flushed to the previous target are
+	 * discarded.
+	 * 
+	 * @param out
+	 *            target stream
+	 */
+	public void setOutputStream(OutputStream out) {
+		this.out = out;
+		count = 0;
+	}
+
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buf, 0, count);
+			count = 0;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count >= buf.length) {
+			flushBuffer();
+		}
+		buf[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len >= buf.length) {
+			// large chunks bypass the buffer
+			flushBuffer();
+			out.write(b, off, len);
+			return;
+		}
+		if (len > buf.length - count) {
+			flushBuffer();
+		}
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Records SAX events and replays them to another handler later. Document
+ * start and end are not recorded, so that the events of several buffers can
+ * be replayed into one document. Character data is kept in one growing
+ * array. DTD and CDATA boundaries are dropped.
+ * 
+ */
+
+public class SAXEventBuffer implements ContentHandler, LexicalHandler {
+
+	protected static final byte START_ELEMENT = 0;
+	protected static final byte END_ELEMENT = 1;
+	protected static final byte CHARACTERS = 2;
+	protected static final byte IGNORABLE_WHITESPACE = 3;
+	protected static final byte START_PREFIX_MAPPING = 4;
+	protected static final byte END_PREFIX_MAPPING = 5;
+	protected static final byte PROCESSING_INSTRUCTION = 6;
+	protected static final byte SKIPPED_ENTITY = 7;
+	protected static final byte COMMENT = 8;
+
+	protected byte[] types;
+	protected int size;
+
+	// names, attributes etc. in event order
+	protected final List<Object> objects;
+
+	// character data, start and length per character event
+	protected char[] chars;
+	protected int charsLength;
+	protected int[] charRanges;
+	protected int charRangesLength;
+
+	public SAXEventBuffer() {
+		types = new byte[64];
+		objects = new ArrayList<Object>();
+		chars = new char[256];
+		charRanges = new int[32];
+	}
+
+	public void clear() {
+		size = 0;
+		objects.clear();
+		charsLength = 0;
+		charRangesLength = 0;
+	}
+
+	/**
+	 * Returns the number of recorded events.
+	 * 
+	 * @return number of events
+	 */
+	public int size() {
+		return size;
+	}
+
+	protected void add(byte type) {
+		if (size == types.length) {
+			types = Arrays.copyOf(types, size << 1);
+		}
+		types[size++] = type;
+	}
+
+	protected void addChars(char[] ch, int start, int length) {
+		if (charsLength + length > chars.length) {
+			chars = Arrays.copyOf(chars,
+					Math.max(charsLength + length, chars.length << 1));
+		}
+		System.arraycopy(ch, start, chars, charsLength, length);
+		if (charRangesLength + 2 > charRanges.length) {
+			charRanges = Arrays.copyOf(charRanges, charRanges.length << 1);
+		}
+		charRanges[charRangesLength++] = charsLength;
+		charRanges[charRangesLength++] = length;
+		charsLength += length;
+	}
+
+	/**
+	 * Replays all recorded events. Comments are only passed on if the
+	 * handler is a <code>LexicalHandler</code> as well.
+	 * 
+	 * @param handler
+	 *            target handler
+	 * @throws SAXException
+	 *             SAX exception of the handler
+	 */
+	public void replay(ContentHandler handler) throws SAXException {
+		LexicalHandler lexicalHandler = handler instanceof LexicalHandler ? (LexicalHandler) handler
+				: null;
+		int o = 0;
+		int c = 0;
+		for (int i = 0; i < size; i++) {
+			switch (types[i]) {
+			case START_ELEMENT:
+				handler.startElement((String) objects.get(o),
+						(String) objects.get(o + 1),
+						(String) objects.get(o + 2),
+						(Attributes) objects.get(o + 3));
+				o += 4;
+				break;
+			case END_ELEMENT:
+				handler.endElement((String) objects.get(o),
+						(String) objects.get(o + 1),
+						(String) objects.get(o + 2));
+				o += 3;
+				break;
+			case CHARACTERS:
+				handler.characters(chars, charRanges[c], charRanges[c + 1]);
+				c += 2;
+				break;
+			case IGNORABLE_WHITESPACE:
+				handler.ignorableWhitespace(chars, charRanges[c],
+						charRanges[c + 1]);
+				c += 2;
+				break;
+			case START_PREFIX_MAPPING:
+				handler.startPrefixMapping((String) objects.get(o),
+						(String) objects.get(o + 1));
+				o += 2;
+				break;
+			case END_PREFIX_MAPPING:
+				handler.endPrefixMapping((String) objects.get(o));
+				o += 1;
+				break;
+			case PROCESSING_INSTRUCTION:
+				handler.processingInstruction((String) objects.get(o),
+						(String) objects.get(o + 1));
+				o += 2;
+				break;
+			case SKIPPED_ENTITY:
+				handler.skippedEntity((String) objects.get(o));
+				o += 1;
+				break;
+			case COMMENT:
+				if (lexicalHandler != null) {
+					lexicalHandler.comment(chars, charRanges[c],
+							charRanges[c + 1]);
+				}
+				c += 2;
+				break;
+			}
+		}
+	}
+
+	/*
+	 * ======================================================================
+	 * Interface ContentHandler
+	 * ======================================================================
+	 */
+
+	public void setDocumentLocator(Locator locator) {
+	}
+
+	public void startDocument() throws SAXException {
+	}
+
+	public void endDocument() throws SAXException {
+	}
+
+	public void startPrefixMapping(String prefix, String uri)
+			throws SAXException {
+		add(START_PREFIX_MAPPING);
+		objects.add(prefix);
+		objects.add(uri);
+	}
+
+	public void endPrefixMapping(String prefix) throws SAXException {
+		add(END_PREFIX_MAPPING);
+		objects.add(prefix);
+	}
+
+	public void startElement(String uri, String localName, String qName,
+			Attributes atts) throws SAXException {
+		add(START_ELEMENT);
+		objects.add(uri);
+		objects.add(localName);
+		objects.add(qName);
+		// attributes are reused by the caller
+		objects.add(new AttributesImpl(atts));
+	}
+
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+		add(END_ELEMENT);
+		objects.add(uri);
+		objects.add(localName);
+		objects.add(qName);
+	}
+
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		add(CHARACTERS);
+		addChars(ch, start, length);
+	}
+
+	public void ignorableWhitespace(char[] ch, int start, int length)
+			throws SAXException {
+		add(IGNORABLE_WHITESPACE);
+		addChars(ch, start, length);
+	}
+
+	public void processingInstruction(String target, String data)
+			throws SAXException {
+		add(PROCESSING_INSTRUCTION);
+		objects.add(target);
+		objects.add(data);
+	}
+
+	public void skippedEntity(String name) throws SAXException {
+		add(SKIPPED_ENTITY);
+		objects.add(name);
+	}
+
+	/*
+	 * ======================================================================
+	 * Interface LexicalHandler
+	 * ======================================================================
+	 */
+
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		add(COMMENT);
+		addChars(ch, start, length);
+	}
+
+	public void startDTD(String name, String publicId, String systemId)
+			throws SAXException {
+	}
+
+	public void endDTD() throws SAXException {
+	}
+
+	public void startEntity(String name) throws SAXException {
+	}
+
+	public void endEntity(String name) throws SAXException {
+	}
+
+	public void startCDATA() throws SAXException {
+	}
+
+	public void endCDATA() throws SAXException {
+	}
+
+}
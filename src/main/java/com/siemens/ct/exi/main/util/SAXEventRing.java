@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Bounded single-producer/single-consumer queue of SAX events. The producer
+ * thread calls the handler methods (e.g. as content handler of an XML
+ * parser), the consumer thread calls <code>drainTo</code> which passes the
+ * events on to another handler until the end of the document.
+ * 
+ * <p>
+ * All slots are allocated up front and reused: names are kept as references,
+ * character data and attributes are copied into per-slot buffers that only
+ * grow. Producer and consumer synchronize through two sequence counters
+ * without locks, a side that has to wait spins briefly and then parks.
+ * </p>
+ * 
+ * <p>
+ * A failure on either side is handed to the other one by
+ * <code>abort</code>, so that neither waits forever.
+ * </p>
+ * 
+ */
+
+public class SAXEventRing implements ContentHandler, LexicalHandler,
+		DeclHandler {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	protected static final byte START_DOCUMENT = 0;
+	protected static final byte END_DOCUMENT = 1;
+	protected static final byte START_ELEMENT = 2;
+	protected static final byte END_ELEMENT = 3;
+	protected static final byte CHARACTERS = 4;
+	protected static final byte IGNORABLE_WHITESPACE = 5;
+	protected static final byte START_PREFIX_MAPPING = 6;
+	protected static final byte END_PREFIX_MAPPING = 7;
+	protected static final byte PROCESSING_INSTRUCTION = 8;
+	protected static final byte SKIPPED_ENTITY = 9;
+	protected static final byte COMMENT = 10;
+	protected static final byte START_DTD = 11;
+	protected static final byte END_DTD = 12;
+	protected static final byte START_ENTITY = 13;
+	protected static final byte END_ENTITY = 14;
+	protected static final byte START_CDATA = 15;
+	protected static final byte END_CDATA = 16;
+	protected static final byte ELEMENT_DECL = 17;
+	protected static final byte ATTRIBUTE_DECL = 18;
+	protected static final byte INTERNAL_ENTITY_DECL = 19;
+	protected static final byte EXTERNAL_ENTITY_DECL = 20;
+
+	// strings per slot (attributeDecl has five)
+	protected static final int STRINGS = 5;
+
+	protected static final int SPINS = 256;
+
+	protected final int capacity;
+	protected final int mask;
+
+	protected final byte[] types;
+	protected final String[] strings;
+	protected final char[][] chars;
+	protected final int[] lengths;
+	protected final AttributesImpl[] attributes;
+
+	// next sequence to write, owned by the producer
+	protected long head;
+	// next sequence to read, owned by the consumer
+	protected long tail;
+
+	protected final AtomicLong published = new AtomicLong();
+	protected final AtomicLong consumed = new AtomicLong();
+
+	protected volatile Throwable failure;
+
+	public SAXEventRing() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a ring of the given capacity.
+	 * 
+	 * @param capacity
+	 *            number of slots, rounded up to a power of two
+	 */
+	public SAXEventRing(int capacity) {
+		int c = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.capacity = c;
+		this.mask = c - 1;
+		types = new byte[c];
+		strings = new String[c * STRINGS];
+		chars = new char[c][];
+		lengths = new int[c];
+		attributes = new AttributesImpl[c];
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Prepares the ring for the next document. Must not be called while
+	 * producer or consumer are active.
+	 */
+	public void reset() {
+		head = 0;
+		tail = 0;
+		published.set(0);
+		consumed.set(0);
+		failure = null;
+	}
+
+	/**
+	 * Stops both sides, waiting calls fail with the given cause.
+	 * 
+	 * @param cause
+	 *            failure
+	 */
+	public void abort(Throwable cause) {
+		if (failure == null) {
+			failure = cause;
+		}
+	}
+
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	protected void checkFailure() throws SAXException {
+		Throwable t = failure;
+		if (t != null) {
+			if (t instanceof SAXException) {
+				throw (SAXException) t;
+			}
+			throw new SAXException("SAX event pipeline aborted",
+					t instanceof Exception ? (Exception) t : null);
+		}
+	}
+
+	protected static void backoff(int spins) {
+		if (spins < SPINS) {
+			// busy spin
+		} else if (spins < 2 * SPINS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(10000L);
+		}
+	}
+
+	/*
+	 * ======================================================================
+	 * Producer side
+	 * ======================================================================
+	 */
+
+	/* waits for a free slot and returns its index */
+	protected int claim(byte type) throws SAXException {
+		checkFailure();
+		int spins = 0;
+		while (head - consumed.get() >= capacity) {
+			checkFailure();
+			backoff(spins++);
+		}
+		int i = (int) head & mask;
+		types[i] = type;
+		return i;
+	}
+
+	protected void publish() {
+		published.lazySet(++head);
+	}
+
+	protected void put(byte type) throws SAXException {
+		claim(type);
+		publish();
+	}
+
+	protected void put(byte type, String s0) throws SAXException {
+		int i = claim(type);
+		strings[i * STRINGS] = s0;
+		publish();
+	}
+
+	protected void put(byte type, String s0, String s1) throws SAXException {
+		int i = claim(type);
+		strings[i * STRINGS] = s0;
+		strings[i * STRINGS + 1] = s1;
+		publish();
+	}
+
+	protected void put(byte type, String s0, String s1, String s2)
+			throws SAXException {
+		int i = claim(type);
+		int s = i * STRINGS;
+		strings[s] = s0;
+		strings[s + 1] = s1;
+		strings[s + 2] = s2;
+		publish();
+	}
+
+	protected void put(byte type, char[] ch, int start, int length)
+			throws SAXException {
+		int i = claim(type);
+		char[] buffer = chars[i];
+		if (buffer == null || buffer.length < length) {
+			buffer = chars[i] = new char[Math.max(length, 64)];
+		}
+		System.arraycopy(ch, start, buffer, 0, length);
+		lengths[i] = length;
+		publish();
+	}
+
+	public void setDocumentLocator(Locator locator) {
+	}
+
+	public void startDocument() throws SAXException {
+		put(START_DOCUMENT);
+	}
+
+	public void endDocument() throws SAXException {
+		put(END_DOCUMENT);
+	}
+
+	public void startPrefixMapping(String prefix, String uri)
+			throws SAXException {
+		put(START_PREFIX_MAPPING, prefix, uri);
+	}
+
+	public void endPrefixMapping(String prefix) throws SAXException {
+		put(END_PREFIX_MAPPING, prefix);
+	}
+
+	public void startElement(String uri, String localName, String qName,
+			Attributes atts) throws SAXException {
+		int i = claim(START_ELEMENT);
+		int s = i * STRINGS;
+		strings[s] = uri;
+		strings[s + 1] = localName;
+		strings[s + 2] = qName;
+		AttributesImpl a = attributes[i];
+		if (a == null) {
+			a = attributes[i] = new AttributesImpl();
+		}
+		if (atts.getLength() == 0) {
+			a.clear();
+		} else {
+			a.setAttributes(atts);
+		}
+		publish();
+	}
+
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+		put(END_ELEMENT, uri, localName, qName);
+	}
+
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		put(CHARACTERS, ch, start, length);
+	}
+
+	public void ignorableWhitespace(char[] ch, int start, int length)
+			throws SAXException {
+		put(IGNORABLE_WHITESPACE, ch, start, length);
+	}
+
+	public void processingInstruction(String target, String data)
+			throws SAXException {
+		put(PROCESSING_INSTRUCTION, target, data);
+	}
+
+	public void skippedEntity(String name) throws SAXException {
+		put(SKIPPED_ENTITY, name);
+	}
+
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		put(COMMENT, ch, start, length);
+	}
+
+	public void startDTD(String name, String publicId, String systemId)
+			throws SAXException {
+		put(START_DTD, name, publicId, systemId);
+	}
+
+	public void endDTD() throws SAXException {
+		put(END_DTD);
+	}
+
+	public void startEntity(String name) throws SAXException {
+		put(START_ENTITY, name);
+	}
+
+	public void endEntity(String name) throws SAXException {
+		put(END_ENTITY, name);
+	}
+
+	public void startCDATA() throws SAXException {
+		put(START_CDATA);
+	}
+
+	public void endCDATA() throws SAXException {
+		put(END_CDATA);
+	}
+
+	public void elementDecl(String name, String model) throws SAXException {
+		put(ELEMENT_DECL, name, model);
+	}
+
+	public void attributeDecl(String eName, String aName, String type,
+			String mode, String value) throws SAXException {
+		int i = claim(ATTRIBUTE_DECL);
+		int s = i * STRINGS;
+		strings[s] = eName;
+		strings[s + 1] = aName;
+		strings[s + 2] = type;
+		strings[s + 3] = mode;
+		strings[s + 4] = value;
+		publish();
+	}
+
+	public void internalEntityDecl(String name, String value)
+			throws SAXException {
+		put(INTERNAL_ENTITY_DECL, name, value);
+	}
+
+	public void externalEntityDecl(String name, String publicId,
+			String systemId) throws SAXException {
+		put(EXTERNAL_ENTITY_DECL, name, publicId, systemId);
+	}
+
+	/*
+	 * ======================================================================
+	 * Consumer side
+	 * ======================================================================
+	 */
+
+	/**
+	 * Passes events on to the given handler until the end of the document.
+	 * Lexical and declaration events are only passed on if the handler
+	 * implements the according interface. A failure of the handler aborts
+	 * the ring.
+	 * 
+	 * @param handler
+	 *            target handler
+	 * @throws SAXException
+	 *             failure of the handler or the producer
+	 */
+	public void drainTo(ContentHandler handler) throws SAXException {
+		LexicalHandler lh = handler instanceof LexicalHandler ? (LexicalHandler) handler
+				: null;
+		DeclHandler dh = handler instanceof DeclHandler ? (DeclHandler) handler
+				: null;
+		try {
+			boolean done = false;
+			while (!done) {
+				long available = published.get();
+				int spins = 0;
+				while (available == tail) {
+					checkFailure();
+					backoff(spins++);
+					available = published.get();
+				}
+				// process everything published so far
+				while (tail < available) {
+					done = dispatch((int) tail & mask, handler, lh, dh);
+					consumed.lazySet(++tail);
+					if (done) {
+						break;
+					}
+				}
+			}
+		} catch (SAXException e) {
+			abort(e);
+			throw e;
+		} catch (RuntimeException e) {
+			abort(e);
+			throw e;
+		}
+	}
+
+	protected boolean dispatch(int i, ContentHandler handler,
+			LexicalHandler lh, DeclHandler dh) throws SAXException {
+		int s = i * STRINGS;
+		switch (types[i]) {
+		case START_DOCUMENT:
+			handler.startDocument();
+			break;
+		case END_DOCUMENT:
+			handler.endDocument();
+			return true;
+		case START_ELEMENT:
+			handler.startElement(strings[s], strings[s + 1], strings[s + 2],
+					attributes[i]);
+			break;
+		case END_ELEMENT:
+			handler.endElement(strings[s], strings[s + 1], strings[s + 2]);
+			break;
+		case CHARACTERS:
+			handler.characters(chars[i], 0, lengths[i]);
+			break;
+		case IGNORABLE_WHITESPACE:
+			handler.ignorableWhitespace(chars[i], 0, lengths[i]);
+			break;
+		case START_PREFIX_MAPPING:
+			handler.startPrefixMapping(strings[s], strings[s + 1]);
+			break;
+		case END_PREFIX_MAPPING:
+			handler.endPrefixMapping(strings[s]);
+			break;
+		case PROCESSING_INSTRUCTION:
+			handler.processingInstruction(strings[s], strings[s + 1]);
+			break;
+		case SKIPPED_ENTITY:
+			handler.skippedEntity(strings[s]);
+			break;
+		case COMMENT:
+			if (lh != null) {
+				lh.comment(chars[i], 0, lengths[i]);
+			}
+			break;
+		case START_DTD:
+			if (lh != null) {
+				lh.startDTD(strings[s], strings[s + 1], strings[s + 2]);
+			}
+			break;
+		case END_DTD:
+			if (lh != null) {
+				lh.endDTD();
+			}
+			break;
+		case START_ENTITY:
+			if (lh != null) {
+				lh.startEntity(strings[s]);
+			}
+			break;
+		case END_ENTITY:
+			if (lh != null) {
+				lh.endEntity(strings[s]);
+			}
+			break;
+		case START_CDATA:
+			if (lh != null) {
+				lh.startCDATA();
+			}
+			break;
+		case END_CDATA:
+			if (lh != null) {
+				lh.endCDATA();
+			}
+			break;
+		case ELEMENT_DECL:
+			if (dh != null) {
+				dh.elementDecl(strings[s], strings[s + 1]);
+			}
+			break;
+		case ATTRIBUTE_DECL:
+			if (dh != null) {
+				dh.attributeDecl(strings[s], strings[s + 1], strings[s + 2],
+						strings[s + 3], strings[s + 4]);
+			}
+			break;
+		case INTERNAL_ENTITY_DECL:
+			if (dh != null) {
+				dh.internalEntityDecl(strings[s], strings[s + 1]);
+			}
+			break;
+		case EXTERNAL_ENTITY_DECL:
+			if (dh != null) {
+				dh.externalEntityDecl(strings[s], strings[s + 1],
+						strings[s + 2]);
+			}
+			break;
+		}
+		return false;
+	}
+
+}
@@ -1,186 +1,274 @@
-/*
- * Copyright (c) 2007-2018 Siemens AG
- *
- * Permission is hereby granted, free of charge, to any person obtaining a copy
- * of this software and associated documentation files (the "Software"), to deal
- * in the Software without restriction, including without limitation the rights
- * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
- * copies of the Software, and to permit persons to whom the Software is
- * furnished to do so, subject to the following conditions:
- *
- * The above copyright notice and this permission notice shall be included in
- * all copies or substantial portions of the Software.
- *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
- * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
- * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
- * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
- * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
- * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
- * THE SOFTWARE.
- * 
- */
-
-package com.siemens.ct.exi.main.util;
-
-import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.ContentHandler;
-import org.xml.sax.InputSource;
-import org.xml.sax.Locator;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.ext.DeclHandler;
-import org.xml.sax.ext.LexicalHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
-
-public class SimpleDocTypeParser implements LexicalHandler, ContentHandler,
-		DeclHandler {
-
-	XMLReader xmlReader;
-
-	public String name;
-	public String publicID;
-	public String systemID;
-	public String text;
-
-	public SimpleDocTypeParser() throws SAXException {
-
-		xmlReader = XMLReaderFactory.createXMLReader();
-
-		xmlReader.setContentHandler(this);
-
-		// LexicalHandler
-		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
-				this);
-
-		// DeclHandler
-		xmlReader.setProperty(
-				"http://xml.org/sax/properties/declaration-handler", this);
-
-		// DTD
-		xmlReader.setFeature("http://xml.org/sax/features/resolve-dtd-uris",
-				false);
-		// *skip* resolving entities like DTDs
-		xmlReader.setEntityResolver(new NoEntityResolver());
-
-		// xmlReader.setProperty(
-		// "http://xml.org/sax/properties/declaration-handler", dh);
-
-	}
-
-	public void parse(String docTypeDecl) throws IOException, SAXException {
-
-		StringBuilder dt = new StringBuilder();
-		dt.append(docTypeDecl);
-		dt.append("<foo />");
-		Reader r = new StringReader(dt.toString());
-		xmlReader.parse(new InputSource(r));
-	}
-
-	public void startDTD(String name, String publicId, String systemId)
-			throws SAXException {
-		this.name = name;
-		this.publicID = publicId == null ? "" : publicId;
-		this.systemID = systemId == null ? "" : systemId;
-		this.text = "";
-
-	}
-
-	public void endDTD() throws SAXException {
-	}
-
-	public void startEntity(String name) throws SAXException {
-	}
-
-	public void endEntity(String name) throws SAXException {
-	}
-
-	public void startCDATA() throws SAXException {
-	}
-
-	public void endCDATA() throws SAXException {
-	}
-
-	public void comment(char[] ch, int start, int length) throws SAXException {
-	}
-
-	/*
-	 * CONTENT handler
-	 */
-	public void setDocumentLocator(Locator locator) {
-	}
-
-	public void startDocument() throws SAXException {
-	}
-
-	public void endDocument() throws SAXException {
-	}
-
-	public void startPrefixMapping(String prefix, String uri)
-			throws SAXException {
-	}
-
-	public void endPrefixMapping(String prefix) throws SAXException {
-	}
-
-	public void startElement(String uri, String localName, String qName,
-			Attributes atts) throws SAXException {
-	}
-
-	public void endElement(String uri, String localName, String qName)
-			throws SAXException {
-	}
-
-	public void characters(char[] ch, int start, int length)
-			throws SAXException {
-		this.text += new String(ch, start, length);
-	}
-
-	public void ignorableWhitespace(char[] ch, int start, int length)
-			throws SAXException {
-	}
-
-	public void processingInstruction(String target, String data)
-			throws SAXException {
-	}
-
-	public void skippedEntity(String name) throws SAXException {
-	}
-
-	/*
-	 * DeclHandler
-	 */
-	public void elementDecl(String name, String model) throws SAXException {
-		// e.g. <!ELEMENT Hello (#PCDATA)>
-		// --> name == Hello && model == (#PCDATA) <--
-		text += "<!ELEMENT " + name + " " + model + "> ";
-	}
-
-	public void attributeDecl(String eName, String aName, String type,
-			String mode, String value) throws SAXException {
-		// e.g. <!ATTLIST TVSCHEDULE NAME CDATA #REQUIRED>
-		text += "<!ATTLIST " + eName + " " + aName + " " + type + " " + mode
-				+ "> ";
-	}
-
-	public void internalEntityDecl(String name, String value)
-			throws SAXException {
-		// e.g. <!ENTITY eacute "&#xE9;">
-		text += "<!ENTITY " + name + " \"" + value + "\"> ";
-	}
-
-	public void externalEntityDecl(String name, String publicId, String systemId)
-			throws SAXException {
-		// e.g., <!ENTITY ent SYSTEM "entityReference2-er.xml">
-		if (publicId == null) {
-			text += "<!ENTITY " + name + " SYSTEM \"" + systemId + "\"> ";
-		} else {
-			text += "<!ENTITY " + name + " PUBLIC \"" + systemId + "\"> ";
-		}
-	}
-
-}
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Splits a DOCTYPE declaration into name, public and system ID and the
+ * declarations of the internal subset.
+ * 
+ * <p>
+ * The declaration itself is tokenized directly. Only a non-empty internal
+ * subset is handed to an XML reader, which is created once and reused, so
+ * that its declarations are reported in the normalized form of the
+ * <code>DeclHandler</code>.
+ * </p>
+ */
+public class SimpleDocTypeParser implements LexicalHandler, ContentHandler,
+		DeclHandler {
+
+	protected static final String DOCTYPE = "<!DOCTYPE";
+
+	// created on first internal subset
+	XMLReader xmlReader;
+
+	public String name;
+	public String publicID;
+	public String systemID;
+	public String text;
+
+	// declarations of the internal subset (reused)
+	protected final StringBuilder sbText = new StringBuilder();
+
+	public SimpleDocTypeParser() throws SAXException {
+	}
+
+	protected XMLReader getXMLReader() throws SAXException {
+		if (xmlReader == null) {
+			xmlReader = XMLReaderFactory.createXMLReader();
+
+			xmlReader.setContentHandler(this);
+
+			// LexicalHandler
+			xmlReader.setProperty(
+					"http://xml.org/sax/properties/lexical-handler", this);
+
+			// DeclHandler
+			xmlReader.setProperty(
+					"http://xml.org/sax/properties/declaration-handler", this);
+
+			// DTD
+			xmlReader.setFeature(
+					"http://xml.org/sax/features/resolve-dtd-uris", false);
+			// *skip* resolving entities like DTDs
+			xmlReader.setEntityResolver(new NoEntityResolver());
+		}
+		return xmlReader;
+	}
+
+	public void parse(String docTypeDecl) throws IOException, SAXException {
+		int i = skipWhitespace(docTypeDecl, 0);
+		if (!docTypeDecl.startsWith(DOCTYPE, i)) {
+			throw new SAXException("No DOCTYPE declaration: " + docTypeDecl);
+		}
+		i = skipWhitespace(docTypeDecl, i + DOCTYPE.length());
+
+		// name
+		int n = i;
+		while (n < docTypeDecl.length() && !isWhitespace(docTypeDecl.charAt(n))
+				&& docTypeDecl.charAt(n) != '[' && docTypeDecl.charAt(n) != '>') {
+			n++;
+		}
+		this.name = docTypeDecl.substring(i, n);
+		this.publicID = "";
+		this.systemID = "";
+		i = skipWhitespace(docTypeDecl, n);
+
+		// external ID
+		if (docTypeDecl.startsWith("PUBLIC", i)) {
+			i = skipWhitespace(docTypeDecl, i + 6);
+			int close = closingQuote(docTypeDecl, i);
+			this.publicID = docTypeDecl.substring(i + 1, close);
+			i = skipWhitespace(docTypeDecl, close + 1);
+			if (i < docTypeDecl.length()
+					&& (docTypeDecl.charAt(i) == '"' || docTypeDecl.charAt(i) == '\'')) {
+				close = closingQuote(docTypeDecl, i);
+				this.systemID = docTypeDecl.substring(i + 1, close);
+				i = skipWhitespace(docTypeDecl, close + 1);
+			}
+		} else if (docTypeDecl.startsWith("SYSTEM", i)) {
+			i = skipWhitespace(docTypeDecl, i + 6);
+			int close = closingQuote(docTypeDecl, i);
+			this.systemID = docTypeDecl.substring(i + 1, close);
+			i = skipWhitespace(docTypeDecl, close + 1);
+		}
+
+		// internal subset
+		sbText.setLength(0);
+		if (i < docTypeDecl.length() && docTypeDecl.charAt(i) == '[') {
+			int close = docTypeDecl.lastIndexOf(']');
+			if (close < i) {
+				throw new SAXException("Unterminated internal subset: "
+						+ docTypeDecl);
+			}
+			if (skipWhitespace(docTypeDecl, i + 1) < close) {
+				StringBuilder dt = new StringBuilder(close - i + 32);
+				dt.append("<!DOCTYPE ").append(name).append(' ');
+				dt.append(docTypeDecl, i, close + 1);
+				// the root name may carry an unbound prefix
+				dt.append("><foo/>");
+				getXMLReader().parse(
+						new InputSource(new StringReader(dt.toString())));
+			}
+		}
+		this.text = sbText.toString();
+	}
+
+	protected static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	protected static int skipWhitespace(String s, int i) {
+		while (i < s.length() && isWhitespace(s.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	protected static int closingQuote(String s, int i) throws SAXException {
+		if (i >= s.length() || (s.charAt(i) != '"' && s.charAt(i) != '\'')) {
+			throw new SAXException("Quoted literal expected: " + s);
+		}
+		int close = s.indexOf(s.charAt(i), i + 1);
+		if (close < 0) {
+			throw new SAXException("Unterminated literal: " + s);
+		}
+		return close;
+	}
+
+	public void startDTD(String name, String publicId, String systemId)
+			throws SAXException {
+		// name and IDs are tokenized by parse()
+	}
+
+	public void endDTD() throws SAXException {
+	}
+
+	public void startEntity(String name) throws SAXException {
+	}
+
+	public void endEntity(String name) throws SAXException {
+	}
+
+	public void startCDATA() throws SAXException {
+	}
+
+	public void endCDATA() throws SAXException {
+	}
+
+	public void comment(char[] ch, int start, int length) throws SAXException {
+	}
+
+	/*
+	 * CONTENT handler
+	 */
+	public void setDocumentLocator(Locator locator) {
+	}
+
+	public void startDocument() throws SAXException {
+	}
+
+	public void endDocument() throws SAXException {
+	}
+
+	public void startPrefixMapping(String prefix, String uri)
+			throws SAXException {
+	}
+
+	public void endPrefixMapping(String prefix) throws SAXException {
+	}
+
+	public void startElement(String uri, String localName, String qName,
+			Attributes atts) throws SAXException {
+	}
+
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+	}
+
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		sbText.append(ch, start, length);
+	}
+
+	public void ignorableWhitespace(char[] ch, int start, int length)
+			throws SAXException {
+	}
+
+	public void processingInstruction(String target, String data)
+			throws SAXException {
+	}
+
+	public void skippedEntity(String name) throws SAXException {
+	}
+
+	/*
+	 * DeclHandler
+	 */
+	public void elementDecl(String name, String model) throws SAXException {
+		// e.g. <!ELEMENT Hello (#PCDATA)>
+		// --> name == Hello && model == (#PCDATA) <--
+		sbText.append("<!ELEMENT ").append(name).append(' ').append(model)
+				.append("> ");
+	}
+
+	public void attributeDecl(String eName, String aName, String type,
+			String mode, String value) throws SAXException {
+		// e.g. <!ATTLIST TVSCHEDULE NAME CDATA #REQUIRED>
+		sbText.append("<!ATTLIST ").append(eName).append(' ').append(aName)
+				.append(' ').append(type).append(' ').append(mode).append("> ");
+	}
+
+	public void internalEntityDecl(String name, String value)
+			throws SAXException {
+		// e.g. <!ENTITY eacute "&#xE9;">
+		sbText.append("<!ENTITY ").append(name).append(" \"").append(value)
+				.append("\"> ");
+	}
+
+	public void externalEntityDecl(String name, String publicId, String systemId)
+			throws SAXException {
+		// e.g., <!ENTITY ent SYSTEM "entityReference2-er.xml">
+		if (publicId == null) {
+			sbText.append("<!ENTITY ").append(name).append(" SYSTEM \"")
+					.append(systemId).append("\"> ");
+		} else {
+			sbText.append("<!ENTITY ").append(name).append(" PUBLIC \"")
+					.append(systemId).append("\"> ");
+		}
+	}
+
+}
@@ -13,12 +13,9 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
-import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.stream.StreamResult;
-
 import org.apache.xerces.impl.xs.SchemaGrammar;
 import org.apache.xerces.impl.xs.XMLSchemaLoader;
 import org.apache.xerces.xni.XNIException;
@@ -28,7 +25,6 @@ import org.apache.xerces.xs.XSModel;
 import org.custommonkey.xmlunit.Diff;
 import org.custommonkey.xmlunit.XMLUnit;
 import org.junit.Assert;
-import org.junit.Ignore;
 import org.w3c.dom.Document;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
@@ -39,7 +35,6 @@ import com.siemens.ct.exi.core.EncodingOptions;
 import com.siemens.ct.exi.core.FidelityOptions;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.grammars.Grammars;
-import com.siemens.ct.exi.core.grammars.SchemaInformedGrammars;
 import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
 import com.siemens.ct.exi.grammars.GrammarFactory;
 import com.siemens.ct.exi.main.api.dom.DOMBuilder;
@@ -47,6 +42,7 @@ import com.siemens.ct.exi.main.api.dom.DOMWriter;
 import com.siemens.ct.exi.main.api.sax.EXIResult;
 import com.siemens.ct.exi.main.data.AbstractTestCase;
 import com.siemens.ct.exi.main.data.TestXSDResolver;
+import com.siemens.ct.exi.main.helpers.GrammarCompilationService;
 
 public class ParallelTest extends AbstractTestCase {
 
@@ -92,60 +88,30 @@ public class ParallelTest extends AbstractTestCase {
 		}
 	}
 
-	@Ignore
-	public void testParallelGrammarsCreation() throws XNIException,
-			IOException, InterruptedException, ExecutionException,
-			EXIException, ParserConfigurationException,
-			DatatypeConfigurationException {
-
-		Collection<Callable<Grammars>> tasks = new ArrayList<Callable<Grammars>>();
-		for (int i = 0; i < 100; i++) {
-			Callable<Grammars> task = new Callable<Grammars>() {
-				public Grammars call() throws Exception {
-					GrammarFactory gf = GrammarFactory.newInstance();
-					Grammars grs = gf
-							.createGrammars("./data/general/randj.xsd");
+	public void testParallelGrammarsCreation() throws InterruptedException,
+			ExecutionException, EXIException {
 
-					return grs;
-				}
-			};
+		ForkJoinPool pool = new ForkJoinPool(10);
+		GrammarCompilationService service = new GrammarCompilationService(
+				pool);
 
-			tasks.add(task);
+		List<Future<Grammars>> results = new ArrayList<Future<Grammars>>();
+		for (int i = 0; i < 100; i++) {
+			results.add(service.compile("./data/general/randj.xsd"));
 		}
 
-		ExecutorService executor = Executors.newFixedThreadPool(10);
-		List<Future<Grammars>> results = executor.invokeAll(tasks);
-
 		byte[] comparisonBytes = null;
 
 		for (Future<Grammars> result : results) {
-			boolean equal = false;
-			// TODO add proper test again
-			/*
+			byte[] bytes = GrammarCompilationService.fingerprint(result.get());
 			if (comparisonBytes == null) {
 				// first item
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				Grammars2X g2j = new Grammars2X();
-				ExiGrammars exiGrammar = g2j
-						.toGrammarsX((SchemaInformedGrammars) result.get());
-				Grammars2X.marshal(exiGrammar, new StreamResult(baos));
-				// System.out.println(new String(baos.toByteArray()));
-				comparisonBytes = baos.toByteArray();
-				equal = true;
-			} else {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				Grammars2X g2j = new Grammars2X();
-				ExiGrammars exiGrammar = g2j
-						.toGrammarsX((SchemaInformedGrammars) result.get());
-				Grammars2X.marshal(exiGrammar, new StreamResult(baos));
-				byte[] bytes = baos.toByteArray();
-				equal = Arrays.equals(comparisonBytes, bytes);
+				comparisonBytes = bytes;
 			}
-
-			System.out.println("Grammars: " + result.get() + "\t" + equal);
-			assertTrue(equal);
-			*/
+			assertTrue(Arrays.equals(comparisonBytes, bytes));
 		}
+
+		pool.shutdown();
 	}
 
 	public static EXIFactory getExiFactory() throws EXIException {
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.dom.DOMBuilder;
+import com.siemens.ct.exi.main.api.dom.DOMWriter;
+import com.siemens.ct.exi.main.api.sax.SAXDecoder;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.stream.StAXDecoder;
+import com.siemens.ct.exi.main.api.stream.StAXEncoder;
+import com.siemens.ct.exi.main.util.ByteBufferOutputStream;
+import com.siemens.ct.exi.main.util.ByteBufferPool;
+import com.siemens.ct.exi.main.util.ChannelInputStream;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
+
+public class ChannelAndBufferTest extends TestCase {
+
+	static final String XML = "./data/W3C/PrimerNotebook/notebook.xml";
+
+	protected EXIFactory getFactory() {
+		return DefaultEXIFactory.newInstance();
+	}
+
+	protected void sax(SAXEncoder encoder, String xml) throws Exception {
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(xml));
+	}
+
+	protected byte[] encodeSAX(EXIFactory factory) throws Exception {
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.setOutputStream(baos);
+		sax(encoder, XML);
+		return baos.toByteArray();
+	}
+
+	protected static byte[] toArray(ByteBuffer buffer) {
+		buffer.flip();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	public void testSAXEncoder() throws Exception {
+		EXIFactory factory = getFactory();
+		byte[] expected = encodeSAX(factory);
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+
+		// channel
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.setOutput(Channels.newChannel(baos));
+		sax(encoder, XML);
+		assertTrue(Arrays.equals(expected, baos.toByteArray()));
+
+		// heap and direct buffer
+		ByteBuffer heap = ByteBuffer.allocate(4096);
+		encoder.setOutput(heap);
+		sax(encoder, XML);
+		assertTrue(Arrays.equals(expected, toArray(heap)));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(4096);
+		encoder.setOutput(direct);
+		sax(encoder, XML);
+		assertTrue(Arrays.equals(expected, toArray(direct)));
+	}
+
+	public void testSAXEncoderBufferTooSmall() throws Exception {
+		SAXEncoder encoder = new SAXFactory(getFactory()).createEXIWriter();
+		encoder.setOutput(ByteBuffer.allocate(8));
+		try {
+			sax(encoder, XML);
+			fail("buffer overflow not reported");
+		} catch (Exception e) {
+			// expected
+		}
+	}
+
+	public void testSAXDecoder() throws Exception {
+		EXIFactory factory = getFactory();
+		byte[] exi = encodeSAX(factory);
+
+		// channel
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.setOutputStream(baos);
+		SAXDecoder decoder = (SAXDecoder) new SAXFactory(factory)
+				.createEXIReader();
+		decoder.setContentHandler(encoder);
+		decoder.parse(Channels.newChannel(new ByteArrayInputStream(exi)));
+		assertTrue(Arrays.equals(exi, baos.toByteArray()));
+
+		// direct buffer
+		ByteBuffer direct = ByteBuffer.allocateDirect(exi.length);
+		direct.put(exi);
+		direct.flip();
+		baos = new ByteArrayOutputStream();
+		encoder.reset(baos);
+		decoder.parse(direct);
+		assertTrue(Arrays.equals(exi, baos.toByteArray()));
+	}
+
+	public void testSAXDecoderFileChannel() throws Exception {
+		EXIFactory factory = getFactory();
+		byte[] exi = encodeSAX(factory);
+		File f = File.createTempFile("exi", ".exi");
+		try {
+			FileOutputStream fos = new FileOutputStream(f);
+			fos.write(exi);
+			fos.close();
+
+			SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			encoder.setOutputStream(baos);
+			SAXDecoder decoder = (SAXDecoder) new SAXFactory(factory)
+					.createEXIReader();
+			decoder.setContentHandler(encoder);
+			FileChannel fc = new FileInputStream(f).getChannel();
+			try {
+				decoder.parse(fc);
+				// channel stays open
+				assertTrue(fc.isOpen());
+			} finally {
+				fc.close();
+			}
+			assertTrue(Arrays.equals(exi, baos.toByteArray()));
+		} finally {
+			f.delete();
+		}
+	}
+
+	protected void stax(StAXEncoder encoder) throws Exception {
+		InputStream is = new FileInputStream(XML);
+		try {
+			XMLStreamReader xmlStream = XMLInputFactory.newInstance()
+					.createXMLStreamReader(is);
+			encoder.encode(xmlStream);
+		} finally {
+			is.close();
+		}
+	}
+
+	public void testStAX() throws Exception {
+		EXIFactory factory = getFactory();
+		StAXEncoder encoder = new StAXEncoder(factory);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		encoder.setOutputStream(expected);
+		stax(encoder);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder = new StAXEncoder(factory);
+		encoder.setOutput(Channels.newChannel(baos));
+		stax(encoder);
+		assertTrue(Arrays.equals(expected.toByteArray(), baos.toByteArray()));
+
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		encoder = new StAXEncoder(factory);
+		encoder.setOutput(buffer);
+		stax(encoder);
+		byte[] exi = toArray(buffer);
+		assertTrue(Arrays.equals(expected.toByteArray(), exi));
+
+		// decode from channel and re-encode
+		StAXDecoder decoder = new StAXDecoder(factory);
+		decoder.setInput(Channels.newChannel(new ByteArrayInputStream(exi)));
+		StAXEncoder reencoder = new StAXEncoder(factory);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		reencoder.setOutputStream(actual);
+		reencoder.encode(decoder);
+		decoder.close();
+		assertTrue(Arrays.equals(exi, actual.toByteArray()));
+
+		// decode from buffer
+		decoder.setInput(ByteBuffer.wrap(exi));
+		reencoder.reset(actual = new ByteArrayOutputStream());
+		reencoder.encode(decoder);
+		assertTrue(Arrays.equals(exi, actual.toByteArray()));
+	}
+
+	public void testDOM() throws Exception {
+		EXIFactory factory = getFactory();
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		Document doc = dbf.newDocumentBuilder().parse(XML);
+
+		DOMWriter writer = new DOMWriter(factory);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		writer.setOutput(expected);
+		writer.encode(doc);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		writer.setOutput(Channels.newChannel(baos));
+		writer.encode(doc);
+		assertTrue(Arrays.equals(expected.toByteArray(), baos.toByteArray()));
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+		writer.setOutput(buffer);
+		writer.encode(doc);
+		byte[] exi = toArray(buffer);
+		assertTrue(Arrays.equals(expected.toByteArray(), exi));
+
+		DOMBuilder builder = new DOMBuilder(factory);
+		Document fromChannel = builder.parse(Channels
+				.newChannel(new ByteArrayInputStream(exi)));
+		Document fromBuffer = builder.parse(ByteBuffer.wrap(exi));
+		assertTrue(fromChannel.getDocumentElement().isEqualNode(
+				fromBuffer.getDocumentElement()));
+		assertEquals("notebook", fromChannel.getDocumentElement()
+				.getLocalName());
+	}
+
+	public void testChannelStreamsPooledBuffers() throws Exception {
+		ByteBufferPool pool = new ByteBufferPool(16, false, 2);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ChannelOutputStream cos = new ChannelOutputStream(
+				Channels.newChannel(baos), pool);
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		cos.write(data[0]);
+		cos.write(data, 1, 9);
+		cos.write(data, 10, 90);
+		assertEquals(0, pool.getIdleCount());
+		cos.flush();
+		// buffer handed back on flush
+		assertEquals(1, pool.getIdleCount());
+		assertTrue(Arrays.equals(data, baos.toByteArray()));
+
+		ChannelInputStream cis = new ChannelInputStream(
+				Channels.newChannel(new ByteArrayInputStream(data)), pool);
+		assertEquals(0, cis.read());
+		assertEquals(0, pool.getIdleCount());
+		byte[] read = new byte[99];
+		int off = 0;
+		int n;
+		while ((n = cis.read(read, off, read.length - off)) > 0) {
+			off += n;
+		}
+		assertEquals(99, off);
+		assertEquals(-1, cis.read());
+		// buffer handed back at the end of the channel
+		assertEquals(1, pool.getIdleCount());
+		assertTrue(Arrays.equals(Arrays.copyOfRange(data, 1, 100), read));
+	}
+
+	public void testByteBufferOutputStreamOverflow() throws Exception {
+		ByteBufferOutputStream bbos = new ByteBufferOutputStream(
+				ByteBuffer.allocate(2));
+		bbos.write(1);
+		try {
+			bbos.write(new byte[2], 0, 2);
+			fail("overflow not reported");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
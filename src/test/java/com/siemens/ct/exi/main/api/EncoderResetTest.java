@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+import org.xmlpull.v1.XmlSerializer;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.dom.DOMWriter;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.stream.StAXEncoder;
+import com.siemens.ct.exi.main.api.xmlpull.EXISerializer;
+
+public class EncoderResetTest extends TestCase {
+
+	static final String[] XML_FILES = { "./data/W3C/PrimerNotebook/notebook.xml",
+			"./data/general/order.xml", "./data/general/randj.xml",
+			"./data/W3C/PrimerNotebook/notebook.xml" };
+
+	protected EXIFactory getFactory() {
+		return DefaultEXIFactory.newInstance();
+	}
+
+	protected void sax(SAXEncoder encoder, String xml) throws Exception {
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		InputStream is = new FileInputStream(xml);
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+	}
+
+	public void testSAXEncoder() throws Exception {
+		EXIFactory factory = getFactory();
+		SAXEncoder reused = new SAXFactory(factory).createEXIWriter();
+
+		for (String xml : XML_FILES) {
+			SAXEncoder fresh = new SAXFactory(factory).createEXIWriter();
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			fresh.setOutputStream(expected);
+			sax(fresh, xml);
+
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			reused.reset(actual);
+			sax(reused, xml);
+
+			assertTrue(xml, Arrays.equals(expected.toByteArray(),
+					actual.toByteArray()));
+		}
+	}
+
+	public void testSAXEncoderBufferedOutput() throws Exception {
+		// non-buffered target streams share one reusable buffer
+		EXIFactory factory = getFactory();
+		SAXEncoder reused = new SAXFactory(factory).createEXIWriter();
+
+		byte[] first = null;
+		for (int i = 0; i < 3; i++) {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			reused.reset(new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					baos.write(b);
+				}
+			});
+			sax(reused, XML_FILES[0]);
+			if (first == null) {
+				first = baos.toByteArray();
+				assertTrue(first.length > 0);
+			} else {
+				assertTrue(Arrays.equals(first, baos.toByteArray()));
+			}
+		}
+	}
+
+	protected void stax(StAXEncoder encoder, String xml) throws Exception {
+		InputStream is = new FileInputStream(xml);
+		try {
+			XMLStreamReader xmlStream = XMLInputFactory.newInstance()
+					.createXMLStreamReader(is);
+			encoder.encode(xmlStream);
+		} finally {
+			is.close();
+		}
+	}
+
+	public void testStAXEncoder() throws Exception {
+		EXIFactory factory = getFactory();
+		StAXEncoder reused = new StAXEncoder(factory);
+
+		for (String xml : XML_FILES) {
+			StAXEncoder fresh = new StAXEncoder(factory);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			fresh.setOutputStream(expected);
+			stax(fresh, xml);
+
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			reused.reset(actual);
+			stax(reused, xml);
+
+			assertTrue(xml, Arrays.equals(expected.toByteArray(),
+					actual.toByteArray()));
+		}
+	}
+
+	public void testDOMWriter() throws Exception {
+		EXIFactory factory = getFactory();
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		DocumentBuilder db = dbf.newDocumentBuilder();
+		DOMWriter reused = new DOMWriter(factory);
+
+		for (String xml : XML_FILES) {
+			Document doc = db.parse(xml);
+
+			DOMWriter fresh = new DOMWriter(factory);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			fresh.setOutput(expected);
+			fresh.encode(doc);
+
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			reused.reset(actual);
+			reused.encode(doc);
+
+			assertTrue(xml, Arrays.equals(expected.toByteArray(),
+					actual.toByteArray()));
+		}
+	}
+
+	protected void write(XmlSerializer xpp, int n) throws IOException {
+		xpp.startDocument(null, null);
+		xpp.setPrefix("foo", "urn:foo");
+		xpp.startTag("", "root");
+		xpp.attribute("", "atRoot", "atValue" + n);
+		for (int i = 0; i < n; i++) {
+			xpp.startTag("urn:foo", "el");
+			xpp.text("text " + i);
+			xpp.endTag("urn:foo", "el");
+		}
+		xpp.endTag("", "root");
+		xpp.endDocument();
+	}
+
+	public void testEXISerializer() throws Exception {
+		EXIFactory factory = getFactory();
+		EXISerializer reused = new EXISerializer(factory);
+
+		for (int n = 0; n < 4; n++) {
+			EXISerializer fresh = new EXISerializer(factory);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			fresh.setOutput(expected, null);
+			write(fresh, n);
+
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			reused.reset(actual);
+			write(reused, n);
+
+			assertTrue(Arrays.equals(expected.toByteArray(),
+					actual.toByteArray()));
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.flow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.flow.EXIEventPublisher.Subscriber;
+import com.siemens.ct.exi.main.api.flow.EXIEventPublisher.Subscription;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+
+public class EXIEventPublisherTest extends TestCase {
+
+	static final String XML = "./data/W3C/PrimerNotebook/notebook.xml";
+	static final String XSD = "./data/W3C/PrimerNotebook/notebook.xsd";
+
+	static class RecordingSubscriber implements Subscriber {
+		final List<EXIEvent> events = new ArrayList<EXIEvent>();
+		final CountDownLatch terminated = new CountDownLatch(1);
+		final long initialRequest;
+		final boolean requestOnNext;
+		Subscription subscription;
+		Throwable error;
+		boolean completed;
+
+		RecordingSubscriber(long initialRequest, boolean requestOnNext) {
+			this.initialRequest = initialRequest;
+			this.requestOnNext = requestOnNext;
+		}
+
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+			if (initialRequest > 0) {
+				subscription.request(initialRequest);
+			}
+		}
+
+		public void onNext(EXIEvent event) {
+			events.add(event);
+			if (requestOnNext) {
+				subscription.request(1);
+			}
+		}
+
+		public void onError(Throwable throwable) {
+			error = throwable;
+			terminated.countDown();
+		}
+
+		public void onComplete() {
+			completed = true;
+			terminated.countDown();
+		}
+	}
+
+	protected EXIFactory createFactory() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(GrammarFactory.newInstance().createGrammars(XSD));
+		return factory;
+	}
+
+	protected byte[] encode(EXIFactory factory) throws Exception {
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(XML));
+		return baos.toByteArray();
+	}
+
+	protected List<String> decode(EXIFactory factory, byte[] exi,
+			RecordingSubscriber subscriber) {
+		new EXIEventPublisher(factory, new ByteArrayInputStream(exi))
+				.subscribe(subscriber);
+		assertNull(subscriber.error);
+		assertTrue(subscriber.completed);
+		List<String> events = new ArrayList<String>();
+		for (EXIEvent ev : subscriber.events) {
+			events.add(ev.toString());
+		}
+		return events;
+	}
+
+	public void testUnboundedAndOneByOne() throws Exception {
+		EXIFactory factory = createFactory();
+		byte[] exi = encode(factory);
+
+		List<String> all = decode(factory, exi, new RecordingSubscriber(
+				Long.MAX_VALUE, false));
+		assertTrue(all.size() > 10);
+		assertEquals("START_DOCUMENT", all.get(0));
+		assertEquals("END_DOCUMENT", all.get(all.size() - 1));
+		assertTrue(all.contains("START_ELEMENT notebook"));
+
+		// request from within onNext
+		assertEquals(all, decode(factory, exi, new RecordingSubscriber(1, true)));
+	}
+
+	public void testBackpressure() throws Exception {
+		EXIFactory factory = createFactory();
+		byte[] exi = encode(factory);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber(0, false);
+		new EXIEventPublisher(factory, new ByteArrayInputStream(exi))
+				.subscribe(subscriber);
+		assertEquals(0, subscriber.events.size());
+
+		subscriber.subscription.request(3);
+		assertEquals(3, subscriber.events.size());
+		subscriber.subscription.request(2);
+		assertEquals(5, subscriber.events.size());
+		assertFalse(subscriber.completed);
+
+		subscriber.subscription.cancel();
+		subscriber.subscription.request(10);
+		assertEquals(5, subscriber.events.size());
+		assertFalse(subscriber.completed);
+		assertNull(subscriber.error);
+	}
+
+	public void testExecutor() throws Exception {
+		EXIFactory factory = createFactory();
+		byte[] exi = encode(factory);
+		List<String> expected = decode(factory, exi, new RecordingSubscriber(
+				Long.MAX_VALUE, false));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			RecordingSubscriber subscriber = new RecordingSubscriber(1, true);
+			new EXIEventPublisher(factory, new ByteArrayInputStream(exi),
+					executor).subscribe(subscriber);
+			assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+			assertNull(subscriber.error);
+			List<String> events = new ArrayList<String>();
+			for (EXIEvent ev : subscriber.events) {
+				events.add(ev.toString());
+			}
+			assertEquals(expected, events);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testInvalidRequest() throws Exception {
+		EXIFactory factory = createFactory();
+		RecordingSubscriber subscriber = new RecordingSubscriber(0, false);
+		new EXIEventPublisher(factory, new ByteArrayInputStream(
+				encode(factory))).subscribe(subscriber);
+		subscriber.subscription.request(0);
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+		assertEquals(0, subscriber.events.size());
+	}
+
+	public void testSingleSubscriber() throws Exception {
+		EXIFactory factory = createFactory();
+		EXIEventPublisher publisher = new EXIEventPublisher(factory,
+				new ByteArrayInputStream(encode(factory)));
+		publisher.subscribe(new RecordingSubscriber(0, false));
+		RecordingSubscriber second = new RecordingSubscriber(0, false);
+		publisher.subscribe(second);
+		assertTrue(second.error instanceof IllegalStateException);
+	}
+
+	public void testDecodingError() throws Exception {
+		EXIFactory factory = createFactory();
+		byte[] exi = encode(factory);
+		byte[] truncated = new byte[exi.length / 2];
+		System.arraycopy(exi, 0, truncated, 0, truncated.length);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber(
+				Long.MAX_VALUE, false);
+		new EXIEventPublisher(factory, new ByteArrayInputStream(truncated))
+				.subscribe(subscriber);
+		assertNotNull(subscriber.error);
+		assertFalse(subscriber.completed);
+	}
+
+}
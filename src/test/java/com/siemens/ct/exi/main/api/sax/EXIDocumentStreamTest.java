@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class EXIDocumentStreamTest extends TestCase {
+
+	static final String XML = "<notebook date=\"2007-09-12\"><note date=\"2007-07-23\" category=\"EXI\"><subject>EXI</subject><body>Do not forget it!</body></note><note date=\"2007-09-12\"><subject>shopping list</subject><body>milk, honey</body></note></notebook>";
+
+	static final int DOCUMENTS = 5;
+
+	protected byte[] write(EXIFactory factory) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EXIDocumentStreamWriter writer = new EXIDocumentStreamWriter(factory,
+				baos);
+		for (int i = 0; i < DOCUMENTS; i++) {
+			writer.writeDocument(new InputSource(new StringReader(XML)));
+		}
+		writer.flush();
+		assertEquals(DOCUMENTS, writer.getDocumentCount());
+		return baos.toByteArray();
+	}
+
+	protected void _testDocuments(EXIFactory factory) throws Exception {
+		byte[] exi = write(factory);
+
+		EXIDocumentStreamReader reader = new EXIDocumentStreamReader(factory,
+				new ByteArrayInputStream(exi));
+		Iterator<Document> documents = reader.documents();
+		int n = 0;
+		while (documents.hasNext()) {
+			Document doc = documents.next();
+			assertEquals("notebook", doc.getDocumentElement().getLocalName());
+			assertEquals(2, doc.getElementsByTagNameNS("*", "note")
+					.getLength());
+			n++;
+		}
+		assertEquals(DOCUMENTS, n);
+		assertEquals(DOCUMENTS, reader.getDocumentCount());
+	}
+
+	public void testBitPacked() throws Exception {
+		_testDocuments(DefaultEXIFactory.newInstance());
+	}
+
+	public void testBytePackedFidelityAll() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(CodingMode.BYTE_PACKED);
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		_testDocuments(factory);
+	}
+
+	public void testCompression() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(CodingMode.COMPRESSION);
+		_testDocuments(factory);
+	}
+
+	public void testContentHandlerAndTrailingBytes() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(CodingMode.COMPRESSION);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(write(factory));
+		// bytes that cannot start an EXI header
+		baos.write(31);
+		baos.write(2);
+
+		EXIDocumentStreamReader reader = new EXIDocumentStreamReader(factory,
+				new ByteArrayInputStream(baos.toByteArray()));
+		final int[] elements = new int[1];
+		DefaultHandler handler = new DefaultHandler() {
+			@Override
+			public void startElement(String uri, String localName,
+					String qName, Attributes attributes) {
+				elements[0]++;
+			}
+		};
+		while (reader.hasNextDocument()) {
+			reader.parseNextDocument(handler);
+		}
+		assertEquals(DOCUMENTS, reader.getDocumentCount());
+		assertEquals(DOCUMENTS * 7, elements[0]);
+		assertEquals(31, reader.getInputStream().read());
+		assertEquals(2, reader.getInputStream().read());
+		assertEquals(-1, reader.getInputStream().read());
+	}
+
+}
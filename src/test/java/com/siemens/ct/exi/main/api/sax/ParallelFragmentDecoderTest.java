@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.helpers.SelfContainedIndex;
+
+public class ParallelFragmentDecoderTest extends TestCase {
+
+	static final int RECORDS = 200;
+
+	static class TextHandler extends DefaultHandler {
+		final StringBuilder sb = new StringBuilder();
+		int documents;
+
+		@Override
+		public void startDocument() {
+			documents++;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) {
+			sb.append('<').append(localName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				sb.append(' ').append(attributes.getLocalName(i)).append('=')
+						.append(attributes.getValue(i));
+			}
+			sb.append('>');
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			sb.append("</").append(localName).append('>');
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			sb.append(ch, start, length);
+		}
+	}
+
+	protected EXIFactory factory;
+	protected SelfContainedIndex index;
+	protected byte[] exi;
+	protected CodingMode codingMode = CodingMode.BYTE_PACKED;
+
+	// content around the fragments
+	static final String HEAD = "<log version=\"2\"><head>records</head><data>";
+	static final String TAIL = "</data><end/></log>";
+
+	@Override
+	protected void setUp() throws Exception {
+		exi = encode(buildXML());
+		assertEquals(RECORDS, index.size());
+	}
+
+	protected String buildXML() {
+		StringBuilder xml = new StringBuilder(HEAD);
+		for (int i = 0; i < RECORDS; i++) {
+			if (i % 50 == 49) {
+				// content between fragments
+				xml.append("<mark n=\"" + i + "\"/>text " + i);
+			}
+			xml.append("<rec id=\"" + i + "\"><msg>message " + i
+					+ "</msg><level>" + (i % 3) + "</level></rec>");
+		}
+		return xml.append(TAIL).toString();
+	}
+
+	protected byte[] encode(String xml) throws Exception {
+		factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(codingMode);
+		factory.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_SC,
+				true);
+		index = new SelfContainedIndex();
+		factory.setSelfContainedElements(
+				new QName[] { new QName("", "rec") }, index);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(index.track(baos));
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(new StringReader(xml)));
+		return baos.toByteArray();
+	}
+
+	/* sequential decode of the same stream */
+	protected String expected() throws Exception {
+		SAXDecoder decoder = new SAXDecoder(factory);
+		TextHandler handler = new TextHandler();
+		decoder.setContentHandler(handler);
+		decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+		return handler.sb.toString();
+	}
+
+	public void testByteBuffer() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			ParallelFragmentDecoder decoder = new ParallelFragmentDecoder(
+					factory, index, pool);
+			TextHandler handler = new TextHandler();
+			decoder.parse(ByteBuffer.wrap(exi), handler);
+			assertEquals(1, handler.documents);
+			assertEquals(expected(), handler.sb.toString());
+			// content in front of, between and after the fragments
+			assertTrue(handler.sb.toString().startsWith(
+					"<log version=2><head>records</head><data>"));
+			assertTrue(handler.sb.indexOf("<mark n=49></mark>text 49") > 0);
+			assertTrue(handler.sb.toString().endsWith("</data><end></end></log>"));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/* a DOM builder rejects several root elements */
+	public void testDOMResult() throws Exception {
+		ParallelFragmentDecoder decoder = new ParallelFragmentDecoder(
+				factory, index);
+		try {
+			TransformerHandler th = ((SAXTransformerFactory) TransformerFactory
+					.newInstance()).newTransformerHandler();
+			DOMResult result = new DOMResult();
+			th.setResult(result);
+			decoder.parse(ByteBuffer.wrap(exi), th);
+			Document doc = (Document) result.getNode();
+			assertEquals("log", doc.getDocumentElement().getLocalName());
+			assertEquals("2", doc.getDocumentElement().getAttribute("version"));
+			assertEquals(RECORDS, doc.getElementsByTagName("rec").getLength());
+		} finally {
+			decoder.shutdown();
+		}
+	}
+
+	public void testBitPacked() throws Exception {
+		codingMode = CodingMode.BIT_PACKED;
+		setUp();
+		ParallelFragmentDecoder decoder = new ParallelFragmentDecoder(
+				factory, index);
+		try {
+			TextHandler handler = new TextHandler();
+			decoder.parse(ByteBuffer.wrap(exi), handler);
+			assertEquals(expected(), handler.sb.toString());
+		} finally {
+			decoder.shutdown();
+		}
+	}
+
+	/* an index of another stream is detected */
+	public void testIndexMismatch() throws Exception {
+		byte[] records = exi;
+		encode("<log><data><rec id=\"0\"/></data></log>");
+		assertEquals(1, index.size());
+		ParallelFragmentDecoder decoder = new ParallelFragmentDecoder(
+				factory, index);
+		try {
+			decoder.parse(ByteBuffer.wrap(records), new TextHandler());
+			fail("index does not match the stream");
+		} catch (SAXException e) {
+			// expected
+		} finally {
+			decoder.shutdown();
+		}
+	}
+
+	public void testNoFragments() throws Exception {
+		byte[] plain = encode("<log><head>nothing</head></log>");
+		assertEquals(0, index.size());
+		ParallelFragmentDecoder decoder = new ParallelFragmentDecoder(
+				factory, index);
+		try {
+			TextHandler handler = new TextHandler();
+			decoder.parse(ByteBuffer.wrap(plain), handler);
+			assertEquals(1, handler.documents);
+			assertEquals("<log><head>nothing</head></log>",
+					handler.sb.toString());
+		} finally {
+			decoder.shutdown();
+		}
+	}
+
+	public void testFileChannel() throws Exception {
+		File file = File.createTempFile("scp", ".exi");
+		try {
+			FileOutputStream fos = new FileOutputStream(file);
+			fos.write(exi);
+			fos.close();
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			ParallelFragmentDecoder decoder = new ParallelFragmentDecoder(
+					factory, index);
+			try {
+				TextHandler handler = new TextHandler();
+				decoder.parse(raf.getChannel(), handler);
+				assertEquals(expected(), handler.sb.toString());
+			} finally {
+				decoder.shutdown();
+				raf.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+}
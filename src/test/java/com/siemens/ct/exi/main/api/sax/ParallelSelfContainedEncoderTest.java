@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.dom.DOMBuilder;
+import com.siemens.ct.exi.main.util.SAXEventBuffer;
+
+public class ParallelSelfContainedEncoderTest extends TestCase {
+
+	static final QName[] SC = { new QName("", "rec") };
+
+	protected String createXML() {
+		StringBuilder sb = new StringBuilder("<export><head>records</head>");
+		for (int i = 0; i < 100; i++) {
+			sb.append("<rec id=\"" + i + "\"><name>record " + i
+					+ "</name><value>" + (i * 7) + "</value></rec>");
+			if (i % 25 == 0) {
+				sb.append("<page>" + (i / 25) + "</page>");
+			}
+		}
+		return sb.append("</export>").toString();
+	}
+
+	protected EXIFactory createFactory() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(CodingMode.BYTE_PACKED);
+		factory.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_SC,
+				true);
+		return factory;
+	}
+
+	/* reference: one SAXEncoder */
+	protected byte[] encodeSequential() throws Exception {
+		return encodeSequential(createFactory(), SC, createXML());
+	}
+
+	protected byte[] encodeSequential(EXIFactory factory, QName[] sc,
+			String xml) throws Exception {
+		factory.setSelfContainedElements(sc);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(new StringReader(xml)));
+		return baos.toByteArray();
+	}
+
+	protected SAXEventBuffer record(String xml) throws Exception {
+		SAXEventBuffer events = new SAXEventBuffer();
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(events);
+		xmlReader.parse(new InputSource(new StringReader(xml)));
+		return events;
+	}
+
+	public void testEventBuffer() throws Exception {
+		SAXEventBuffer events = record(createXML());
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelSelfContainedEncoder encoder = new ParallelSelfContainedEncoder(
+					createFactory(), SC, pool);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			encoder.encode(events, baos);
+			assertTrue(Arrays.equals(encodeSequential(), baos.toByteArray()));
+
+			// encoder is reusable
+			baos.reset();
+			encoder.encode(events, baos);
+			assertTrue(Arrays.equals(encodeSequential(), baos.toByteArray()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testDocument() throws Exception {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		Document doc = dbf.newDocumentBuilder().parse(
+				new InputSource(new StringReader(createXML())));
+
+		ParallelSelfContainedEncoder encoder = new ParallelSelfContainedEncoder(
+				createFactory(), SC);
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			encoder.encode(doc, baos);
+
+			EXIFactory factory = createFactory();
+			factory.setSelfContainedElements(SC);
+			Document decoded = new DOMBuilder(factory)
+					.parse(new ByteArrayInputStream(baos.toByteArray()));
+			assertEquals(100, decoded.getElementsByTagName("rec").getLength());
+			assertEquals("record 42", decoded.getElementsByTagName("name")
+					.item(42).getTextContent());
+		} finally {
+			encoder.shutdown();
+		}
+	}
+
+	/*
+	 * The splitter picks the same SC elements as the core encoder, also for
+	 * names with regular expression metacharacters
+	 */
+	public void testNamespaceWithRegexCharacters() throws Exception {
+		String ns = "urn:a.b+c?(d)";
+		// matches the SC namespace when read as pattern
+		String decoy = "urn:aXbbd";
+		QName[] sc = { new QName(ns, "rec") };
+
+		StringBuilder sb = new StringBuilder("<export xmlns='" + ns
+				+ "' xmlns:d='" + decoy + "'>");
+		for (int i = 0; i < 20; i++) {
+			sb.append("<rec><name>record " + i + "</name></rec>");
+			sb.append("<d:rec>decoy " + i + "</d:rec>");
+		}
+		String xml = sb.append("</export>").toString();
+
+		EXIFactory reference = createFactory();
+		reference.setSelfContainedElements(sc);
+		ParallelSelfContainedEncoder encoder = new ParallelSelfContainedEncoder(
+				createFactory(), sc);
+		try {
+			String[] uris = { ns, decoy };
+			for (String uri : uris) {
+				assertEquals(uri, reference.isSelfContainedElement(new QName(
+						uri, "rec")), encoder.isSelfContained(uri, "rec"));
+			}
+			assertFalse(encoder.isSelfContained(ns, "export"));
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			encoder.encode(record(xml), baos);
+			assertTrue(Arrays.equals(
+					encodeSequential(createFactory(), sc, xml),
+					baos.toByteArray()));
+		} finally {
+			encoder.shutdown();
+		}
+	}
+
+	static final String XSD = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+			+ " <xs:element name='export'><xs:complexType><xs:sequence>"
+			+ "  <xs:element name='head' type='xs:string'/>"
+			+ "  <xs:choice maxOccurs='unbounded'>"
+			+ "   <xs:element name='rec'><xs:complexType><xs:sequence>"
+			+ "    <xs:element name='name' type='xs:string'/>"
+			+ "    <xs:element name='value' type='xs:int'/>"
+			+ "   </xs:sequence>"
+			+ "   <xs:attribute name='id' type='xs:int' use='required'/>"
+			+ "   </xs:complexType></xs:element>"
+			+ "   <xs:element name='page' type='xs:int'/>"
+			+ "  </xs:choice>"
+			+ " </xs:sequence></xs:complexType></xs:element>"
+			+ "</xs:schema>";
+
+	/*
+	 * The empty placeholder of an SC element with required content is a
+	 * schema deviation in the enclosing stream; the stitched stream must
+	 * still match the sequential one
+	 */
+	public void testSchemaInformed() throws Exception {
+		Grammars grammars = GrammarFactory.newInstance().createGrammars(
+				new ByteArrayInputStream(XSD.getBytes()));
+		EXIFactory factory = createFactory();
+		factory.setGrammars(grammars);
+
+		ParallelSelfContainedEncoder encoder = new ParallelSelfContainedEncoder(
+				factory, SC);
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			encoder.encode(record(createXML()), baos);
+
+			EXIFactory reference = createFactory();
+			reference.setGrammars(grammars);
+			assertTrue(Arrays.equals(
+					encodeSequential(reference, SC, createXML()),
+					baos.toByteArray()));
+
+			reference.setSelfContainedElements(SC);
+			Document decoded = new DOMBuilder(reference)
+					.parse(new ByteArrayInputStream(baos.toByteArray()));
+			assertEquals(100, decoded.getElementsByTagName("rec").getLength());
+			assertEquals("294", decoded.getElementsByTagName("value")
+					.item(42).getTextContent());
+		} finally {
+			encoder.shutdown();
+		}
+	}
+
+	public void testBitPackedRejected() throws Exception {
+		EXIFactory factory = createFactory();
+		factory.setCodingMode(CodingMode.BIT_PACKED);
+		try {
+			new ParallelSelfContainedEncoder(factory, SC);
+			fail("bit-packed accepted");
+		} catch (EXIException e) {
+			// expected
+		}
+	}
+
+}
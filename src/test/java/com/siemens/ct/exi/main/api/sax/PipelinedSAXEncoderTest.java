@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.dom.DOMBuilder;
+
+public class PipelinedSAXEncoderTest extends TestCase {
+
+	protected String createXML() {
+		StringBuilder sb = new StringBuilder(
+				"<?xml version=\"1.0\"?><!-- list --><list xmlns:p=\"urn:p\">");
+		for (int i = 0; i < 2000; i++) {
+			sb.append("<item n=\"" + i + "\" p:id=\"x" + i + "\">text " + i
+					+ "<![CDATA[ & more]]></item>");
+		}
+		return sb.append("</list>").toString();
+	}
+
+	protected EXIFactory createFactory() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.getFidelityOptions().setFidelity(
+				FidelityOptions.FEATURE_COMMENT, true);
+		factory.getFidelityOptions().setFidelity(
+				FidelityOptions.FEATURE_PREFIX, true);
+		return factory;
+	}
+
+	/* reference: parser drives the encoder directly */
+	protected byte[] encodeSequential(EXIFactory factory) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				encoder);
+		xmlReader.parse(new InputSource(new StringReader(createXML())));
+		return baos.toByteArray();
+	}
+
+	public void testSameOutput() throws Exception {
+		EXIFactory factory = createFactory();
+		// small ring, producer has to wait for the consumer
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			PipelinedSAXEncoder encoder = new PipelinedSAXEncoder(factory, 16,
+					executor);
+			byte[] expected = encodeSequential(factory);
+			for (int i = 0; i < 3; i++) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				encoder.encode(
+						new InputSource(new StringReader(createXML())), baos);
+				assertTrue(Arrays.equals(expected, baos.toByteArray()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testRoundtrip() throws Exception {
+		EXIFactory factory = createFactory();
+		PipelinedSAXEncoder encoder = new PipelinedSAXEncoder(factory);
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			encoder.encode(new InputSource(new StringReader(createXML())),
+					baos);
+			Document doc = new DOMBuilder(factory)
+					.parse(new ByteArrayInputStream(baos.toByteArray()));
+			assertEquals(2000, doc.getElementsByTagName("item").getLength());
+			assertEquals("text 7 & more", doc.getElementsByTagName("item")
+					.item(7).getTextContent());
+		} finally {
+			encoder.shutdown();
+		}
+	}
+
+	public void testMalformedXML() throws Exception {
+		PipelinedSAXEncoder encoder = new PipelinedSAXEncoder(createFactory());
+		try {
+			encoder.encode(new InputSource(new StringReader(
+					"<list><item></list>")), new ByteArrayOutputStream());
+			fail("malformed XML accepted");
+		} catch (SAXException e) {
+			// expected
+		}
+
+		// encoder is usable afterwards
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.encode(new InputSource(new StringReader("<a>b</a>")), baos);
+		assertTrue(baos.size() > 0);
+		encoder.shutdown();
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class SAXCoderPoolTest extends TestCase {
+
+	static final String XML = "<root xmlns='urn:foo'><a at='1'>text</a><b/></root>";
+
+	protected byte[] encode(SAXCoderPool pool, EXIFactory f) throws Exception {
+		SAXEncoder writer = pool.borrowWriter(f);
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			writer.reset(baos);
+			XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+			xmlReader.setContentHandler(writer);
+			xmlReader.parse(new InputSource(new StringReader(XML)));
+			return baos.toByteArray();
+		} finally {
+			pool.returnWriter(writer);
+		}
+	}
+
+	protected String decode(SAXCoderPool pool, EXIFactory f, byte[] exi)
+			throws Exception {
+		SAXDecoder reader = pool.borrowReader(f);
+		try {
+			StringWriter sw = new StringWriter();
+			TransformerFactory.newInstance().newTransformer().transform(
+					new SAXSource(reader, new InputSource(
+							new ByteArrayInputStream(exi))),
+					new StreamResult(sw));
+			return sw.toString();
+		} finally {
+			pool.returnReader(reader);
+		}
+	}
+
+	public void testThreadLocalReuse() throws Exception {
+		SAXCoderPool pool = new SAXCoderPool();
+		EXIFactory f = DefaultEXIFactory.newInstance();
+
+		SAXEncoder w1 = pool.borrowWriter(f);
+		pool.returnWriter(w1);
+		SAXEncoder w2 = pool.borrowWriter(f);
+		assertSame(w1, w2);
+		pool.returnWriter(w2);
+
+		assertEquals(1, pool.getCreatedCount());
+		assertEquals(2, pool.getBorrowedCount());
+		assertEquals(1, pool.getThreadLocalHitCount());
+	}
+
+	public void testFingerprint() throws Exception {
+		SAXCoderPool pool = new SAXCoderPool();
+		EXIFactory f1 = DefaultEXIFactory.newInstance();
+		EXIFactory f2 = DefaultEXIFactory.newInstance();
+		EXIFactory f3 = DefaultEXIFactory.newInstance();
+		f3.setCodingMode(CodingMode.BYTE_PACKED);
+
+		SAXDecoder r1 = pool.borrowReader(f1);
+		pool.returnReader(r1);
+		// equal settings share instances
+		assertSame(r1, pool.borrowReader(f2));
+		// different settings do not
+		SAXDecoder r3 = pool.borrowReader(f3);
+		assertNotSame(r1, r3);
+		assertEquals(2, pool.getKeyCount());
+
+		// later changes to the factory do not affect pooled instances
+		f1.setCodingMode(CodingMode.COMPRESSION);
+		assertNotSame(r1, pool.borrowReader(f1));
+		assertEquals(3, pool.getKeyCount());
+	}
+
+	public void testMaximumIdle() throws Exception {
+		SAXCoderPool pool = new SAXCoderPool(1);
+		EXIFactory f = DefaultEXIFactory.newInstance();
+
+		SAXEncoder w1 = pool.borrowWriter(f);
+		SAXEncoder w2 = pool.borrowWriter(f);
+		SAXEncoder w3 = pool.borrowWriter(f);
+		pool.returnWriter(w1); // thread-local slot
+		pool.returnWriter(w2); // shared
+		pool.returnWriter(w3); // discarded
+
+		assertEquals(1, pool.getSharedIdleCount());
+		assertEquals(1, pool.getDiscardedCount());
+	}
+
+	public void testReaderReset() throws Exception {
+		SAXCoderPool pool = new SAXCoderPool();
+		EXIFactory f = DefaultEXIFactory.newInstance();
+
+		SAXDecoder r = pool.borrowReader(f);
+		r.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
+		r.setContentHandler(new DefaultHandler());
+		pool.returnReader(r);
+
+		r = pool.borrowReader(f);
+		assertNull(r.getContentHandler());
+		assertFalse(r.getFeature("http://xml.org/sax/features/namespace-prefixes"));
+	}
+
+	public void testConcurrentRoundtrip() throws Exception {
+		final SAXCoderPool pool = new SAXCoderPool(4);
+		final EXIFactory f = DefaultEXIFactory.newInstance();
+		final byte[] expectedEXI = encode(pool, f);
+		final String expectedXML = decode(pool, f, expectedEXI);
+
+		ExecutorService service = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 64; i++) {
+				results.add(service.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						byte[] exi = encode(pool, f);
+						return Arrays.equals(expectedEXI, exi)
+								&& expectedXML.equals(decode(pool, f, exi));
+					}
+				}));
+			}
+			for (Future<Boolean> r : results) {
+				assertTrue(r.get());
+			}
+		} finally {
+			service.shutdown();
+		}
+
+		assertEquals(pool.getBorrowedCount(), pool.getReturnedCount());
+		// at most one reader and one writer per thread plus the test thread
+		assertTrue(pool.toString(), pool.getCreatedCount() <= 10);
+	}
+
+}
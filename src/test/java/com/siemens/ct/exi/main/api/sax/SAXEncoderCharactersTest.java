@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class SAXEncoderCharactersTest extends TestCase {
+
+	static final String[] XML_FILES = { "./data/general/randj.xml",
+			"./data/general/order.xml", "./data/general/pi1.xml",
+			"./data/W3C/PrimerNotebook/notebook.xml" };
+
+	/* reports every character in a separate callback */
+	static class SplittingEncoder extends SAXEncoderExtendedHandler {
+		public SplittingEncoder(EXIFactory factory) throws EXIException {
+			super(factory);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			for (int i = 0; i < length; i++) {
+				super.characters(ch, start + i, 1);
+			}
+		}
+	}
+
+	protected byte[] encode(SAXEncoder encoder, InputStream is)
+			throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				encoder);
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return baos.toByteArray();
+	}
+
+	protected void _test(EXIFactory factory) throws Exception {
+		for (String xml : XML_FILES) {
+			byte[] expected = encode(new SAXEncoderExtendedHandler(factory),
+					new FileInputStream(xml));
+			byte[] split = encode(new SplittingEncoder(factory),
+					new FileInputStream(xml));
+			assertTrue(xml, Arrays.equals(expected, split));
+		}
+	}
+
+	public void testSplitCharacters() throws Exception {
+		_test(DefaultEXIFactory.newInstance());
+	}
+
+	public void testSplitCharactersWithCommentsAndPIs() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.getFidelityOptions().setFidelity(
+				FidelityOptions.FEATURE_COMMENT, true);
+		factory.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PI,
+				true);
+		_test(factory);
+	}
+
+	public void testCommentBetweenCharacters() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.getFidelityOptions().setFidelity(
+				FidelityOptions.FEATURE_COMMENT, true);
+		String xml = "<root>ab<!--c-->de<?pi x?>fg</root>";
+
+		byte[] exi = encode(new SplittingEncoder(factory),
+				new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+		final StringBuilder sb = new StringBuilder();
+		XMLReader exiReader = new SAXFactory(factory).createEXIReader();
+		DefaultHandler2 handler = new DefaultHandler2() {
+			@Override
+			public void characters(char[] ch, int start, int length) {
+				sb.append('[').append(ch, start, length).append(']');
+			}
+
+			@Override
+			public void comment(char[] ch, int start, int length) {
+				sb.append("<!--").append(ch, start, length).append("-->");
+			}
+		};
+		exiReader.setContentHandler(handler);
+		exiReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				handler);
+		exiReader.parse(new InputSource(new ByteArrayInputStream(exi)));
+
+		// PIs are not preserved, "de" and "fg" end up in one text node
+		assertEquals("[ab]<!--c-->[defg]", sb.toString());
+	}
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+
+public class AsyncStAXDecoderTest extends TestCase {
+
+	static final String XML = "./data/W3C/PrimerNotebook/notebook.xml";
+	static final String XSD = "./data/W3C/PrimerNotebook/notebook.xsd";
+
+	protected byte[] encode(EXIFactory factory, String xml) throws Exception {
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(xml));
+		return baos.toByteArray();
+	}
+
+	protected static String describe(XMLStreamReader r) {
+		switch (r.getEventType()) {
+		case XMLStreamConstants.START_ELEMENT:
+			StringBuilder sb = new StringBuilder("SE " + r.getName());
+			for (int i = 0; i < r.getAttributeCount(); i++) {
+				sb.append(" " + r.getAttributeName(i) + "="
+						+ r.getAttributeValue(i));
+			}
+			return sb.toString();
+		case XMLStreamConstants.END_ELEMENT:
+			return "EE " + r.getName();
+		case XMLStreamConstants.CHARACTERS:
+			return "CH " + r.getText();
+		default:
+			return "EV " + r.getEventType();
+		}
+	}
+
+	protected List<String> decodeBlocking(EXIFactory factory, byte[] exi)
+			throws Exception {
+		List<String> events = new ArrayList<String>();
+		StAXDecoder decoder = new StAXDecoder(factory);
+		decoder.setInputStream(new ByteArrayInputStream(exi));
+		events.add(describe(decoder));
+		while (decoder.hasNext()) {
+			decoder.next();
+			events.add(describe(decoder));
+		}
+		return events;
+	}
+
+	/* feeds chunks of the given size and drains all available events */
+	protected List<String> decodeAsync(AsyncStAXDecoder decoder, byte[] exi,
+			int chunk) throws Exception {
+		List<String> events = new ArrayList<String>();
+		int off = 0;
+		while (decoder.hasNext()) {
+			int ev = decoder.next();
+			if (ev == AsyncStAXDecoder.EVENT_INCOMPLETE) {
+				assertTrue(decoder.needMoreInput());
+				assertTrue("premature end of input", off < exi.length);
+				int len = Math.min(chunk, exi.length - off);
+				decoder.feedInput(exi, off, len);
+				off += len;
+				if (off == exi.length) {
+					decoder.endOfInput();
+				}
+			} else {
+				events.add(describe(decoder));
+			}
+		}
+		return events;
+	}
+
+	protected void _test(EXIFactory factory) throws Exception {
+		byte[] exi = encode(factory, XML);
+		List<String> expected = decodeBlocking(factory, exi);
+		assertTrue(expected.size() > 10);
+
+		int[] chunks = { 1, 3, 16, 100, exi.length };
+		for (int chunk : chunks) {
+			AsyncStAXDecoder decoder = new AsyncStAXDecoder(factory);
+			assertEquals(AsyncStAXDecoder.EVENT_INCOMPLETE,
+					decoder.getEventType());
+			assertEquals(expected, decodeAsync(decoder, exi, chunk));
+			// no byte is decoded twice, the inflater may leave the last ones
+			if (factory.getCodingMode() == CodingMode.COMPRESSION) {
+				assertTrue(decoder.getConsumedBytes() <= exi.length);
+			} else {
+				assertEquals(exi.length, decoder.getConsumedBytes());
+			}
+			decoder.close();
+		}
+	}
+
+	public void testSchemaLess() throws Exception {
+		_test(DefaultEXIFactory.newInstance());
+	}
+
+	public void testSchemaInformedBytePacked() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(GrammarFactory.newInstance().createGrammars(XSD));
+		factory.setCodingMode(CodingMode.BYTE_PACKED);
+		_test(factory);
+	}
+
+	public void testFidelityAll() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		_test(factory);
+	}
+
+	public void testCompression() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(CodingMode.COMPRESSION);
+		_test(factory);
+	}
+
+	/*
+	 * Decoding resumes where it parked: every byte is read once and only the
+	 * byte just fed is buffered
+	 */
+	public void testOneByteAtATime() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, XML);
+		List<String> expected = decodeBlocking(factory, exi);
+
+		AsyncStAXDecoder decoder = new AsyncStAXDecoder(factory);
+		List<String> events = new ArrayList<String>();
+		int off = 0;
+		while (decoder.hasNext()) {
+			int ev = decoder.next();
+			if (ev == AsyncStAXDecoder.EVENT_INCOMPLETE) {
+				assertEquals(0, decoder.getBufferedBytes());
+				assertEquals(off, decoder.getConsumedBytes());
+				decoder.feedInput(exi, off++, 1);
+				assertTrue(decoder.getBufferedBytes() <= 1);
+				if (off == exi.length) {
+					decoder.endOfInput();
+				}
+			} else {
+				events.add(describe(decoder));
+			}
+		}
+		assertEquals(expected, events);
+		assertEquals(exi.length, decoder.getConsumedBytes());
+		decoder.close();
+	}
+
+	/*
+	 * many connections interleaved on one thread, more parked documents than
+	 * carrier threads of the virtual thread scheduler
+	 */
+	public void testManyConnections() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, XML);
+		List<String> expected = decodeBlocking(factory, exi);
+
+		AsyncStAXDecoder[] decoders = new AsyncStAXDecoder[1000];
+		List<List<String>> events = new ArrayList<List<String>>();
+		for (int i = 0; i < decoders.length; i++) {
+			decoders[i] = new AsyncStAXDecoder(factory);
+			events.add(new ArrayList<String>());
+		}
+		int off = 0;
+		while (off < exi.length) {
+			int len = Math.min(7, exi.length - off);
+			for (int i = 0; i < decoders.length; i++) {
+				decoders[i].feedInput(exi, off, len);
+				if (off + len == exi.length) {
+					decoders[i].endOfInput();
+				}
+				while (decoders[i].hasNext()
+						&& decoders[i].next() != AsyncStAXDecoder.EVENT_INCOMPLETE) {
+					events.get(i).add(describe(decoders[i]));
+				}
+				assertTrue(decoders[i].getBufferedBytes() <= len);
+			}
+			off += len;
+		}
+		for (int i = 0; i < decoders.length; i++) {
+			assertFalse(decoders[i].hasNext());
+			assertEquals(expected, events.get(i));
+			decoders[i].close();
+		}
+	}
+
+	/* fed input is decoded without waiting for next() */
+	public void testDecodesAhead() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, XML);
+
+		AsyncStAXDecoder decoder = new AsyncStAXDecoder(factory);
+		decoder.feedInput(exi, 0, exi.length);
+		decoder.endOfInput();
+		assertEquals(XMLStreamConstants.START_DOCUMENT, decoder.next());
+		long timeout = System.currentTimeMillis() + 10000;
+		while (decoder.getConsumedBytes() < exi.length) {
+			assertTrue("no decoding ahead",
+					System.currentTimeMillis() < timeout);
+			Thread.sleep(1);
+		}
+		assertEquals(0, decoder.getBufferedBytes());
+
+		List<String> events = new ArrayList<String>();
+		events.add(describe(decoder));
+		while (decoder.hasNext()) {
+			assertTrue(decoder.next() != AsyncStAXDecoder.EVENT_INCOMPLETE);
+			events.add(describe(decoder));
+		}
+		assertEquals(decodeBlocking(factory, exi), events);
+	}
+
+	public void testDocumentsOnOneConnection() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi1 = encode(factory, XML);
+		byte[] exi2 = encode(factory, "./data/general/order.xml");
+		ByteBuffer both = ByteBuffer.allocate(exi1.length + exi2.length);
+		both.put(exi1).put(exi2).flip();
+
+		AsyncStAXDecoder decoder = new AsyncStAXDecoder(factory);
+		decoder.feedInput(both);
+		assertEquals(0, both.remaining());
+		decoder.endOfInput();
+
+		List<String> events = new ArrayList<String>();
+		while (decoder.hasNext()) {
+			assertTrue(decoder.next() != AsyncStAXDecoder.EVENT_INCOMPLETE);
+			events.add(describe(decoder));
+		}
+		assertEquals(decodeBlocking(factory, exi1), events);
+
+		decoder.reset();
+		events.clear();
+		while (decoder.hasNext()) {
+			assertTrue(decoder.next() != AsyncStAXDecoder.EVENT_INCOMPLETE);
+			events.add(describe(decoder));
+		}
+		assertEquals(decodeBlocking(factory, exi2), events);
+	}
+
+	public void testTruncatedInput() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, XML);
+
+		AsyncStAXDecoder decoder = new AsyncStAXDecoder(factory);
+		assertEquals(AsyncStAXDecoder.EVENT_INCOMPLETE, decoder.next());
+		decoder.feedInput(exi, 0, exi.length / 2);
+		decoder.endOfInput();
+		try {
+			while (decoder.hasNext()) {
+				assertTrue(decoder.next() != AsyncStAXDecoder.EVENT_INCOMPLETE);
+			}
+			fail("truncated input not reported");
+		} catch (XMLStreamException e) {
+			// expected
+		}
+		try {
+			decoder.feedInput(exi, 0, 1);
+			fail("feeding after end of input");
+		} catch (XMLStreamException e) {
+			// expected
+		}
+	}
+
+}
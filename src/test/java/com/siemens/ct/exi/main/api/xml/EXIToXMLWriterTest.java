@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+
+public class EXIToXMLWriterTest extends TestCase {
+
+	static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<root xmlns=\"urn:default\" xmlns:p=\"urn:p\">"
+			+ "<!-- note --><?pi data?>"
+			+ "<p:a p:att=\"x &amp; &lt;y&gt; &quot;z&quot;\">1 &lt; 2 &amp;&amp; 3 &gt; 2</p:a>"
+			+ "<b/><c>\u00e4\u20ac\ud83d\ude00</c><d>text<e/>tail</d></root>";
+
+	static final int XML_DECLARATION_LENGTH = EXIToXMLWriter.XML_DECLARATION.length;
+
+	protected byte[] encode(EXIFactory factory, String xml) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				encoder);
+		xmlReader.parse(new InputSource(new StringReader(xml)));
+		return baos.toByteArray();
+	}
+
+	protected String write(EXIFactory factory, byte[] exi) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new EXIToXMLWriter(factory).decode(new ByteArrayInputStream(exi),
+				baos);
+		return baos.toString("UTF-8");
+	}
+
+	protected Document parse(String xml) throws Exception {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		Document doc = dbf.newDocumentBuilder().parse(
+				new InputSource(new StringReader(xml)));
+		doc.normalizeDocument();
+		return doc;
+	}
+
+	public void testPreserveAll() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		String xml = write(factory, encode(factory, XML));
+		assertEquals(XML, xml);
+	}
+
+	public void testSameAsTransformer() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, XML);
+
+		TransformerFactory tf = TransformerFactory.newInstance();
+		Transformer transformer = tf.newTransformer();
+		SAXSource exiSource = new SAXSource(new InputSource(
+				new ByteArrayInputStream(exi)));
+		exiSource.setXMLReader(new SAXFactory(factory).createEXIReader());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		transformer.transform(exiSource, new StreamResult(baos));
+
+		Document expected = parse(baos.toString("UTF-8"));
+		Document actual = parse(write(factory, exi));
+		assertTrue(expected.isEqualNode(actual));
+	}
+
+	public void testReuse() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, XML);
+		EXIToXMLWriter writer = new EXIToXMLWriter(factory);
+		writer.setOmitXMLDeclaration(true);
+		String first = null;
+		for (int i = 0; i < 3; i++) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			writer.decode(new ByteArrayInputStream(exi), baos);
+			String xml = baos.toString("UTF-8");
+			assertTrue(xml.length() > 0);
+			if (first == null) {
+				first = xml;
+			}
+			assertEquals(first, xml);
+		}
+	}
+
+	/* cached names do not pile up over schema-less streams */
+	public void testReuseCacheBounded() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		EXIToXMLWriter writer = new EXIToXMLWriter(factory);
+		writer.setOmitXMLDeclaration(true);
+		for (int i = 0; i < 500; i++) {
+			String xml = "<doc" + i + " a" + i + "=\"v\"><item" + i
+					+ ">text</item" + i + "></doc" + i + ">";
+			byte[] exi = encode(factory, xml);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			writer.decode(new ByteArrayInputStream(exi), baos);
+			assertEquals(write(factory, exi).substring(XML_DECLARATION_LENGTH),
+					baos.toString("UTF-8"));
+			// doc, a and item of the last stream
+			assertTrue(writer.qnames.size() > 0);
+			assertTrue(writer.qnames.size() <= 3);
+		}
+	}
+
+	/* names of schema contexts stay cached over streams */
+	public void testReuseSchemaInformed() throws Exception {
+		String xsd = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+				+ " <xs:element name='root'><xs:complexType><xs:sequence>"
+				+ "  <xs:element name='item' type='xs:int' maxOccurs='unbounded'/>"
+				+ " </xs:sequence></xs:complexType></xs:element>"
+				+ "</xs:schema>";
+		Grammars g = GrammarFactory.newInstance().createGrammars(
+				new ByteArrayInputStream(xsd.getBytes("UTF-8")));
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(g);
+		byte[] exi = encode(factory, "<root><item>1</item><item>2</item></root>");
+		EXIToXMLWriter writer = new EXIToXMLWriter(factory);
+		writer.setOmitXMLDeclaration(true);
+		String first = null;
+		int cached = -1;
+		for (int i = 0; i < 3; i++) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			writer.decode(new ByteArrayInputStream(exi), baos);
+			String xml = baos.toString("UTF-8");
+			if (first == null) {
+				first = xml;
+				cached = writer.qnames.size();
+				assertTrue(cached >= 2);
+			}
+			assertEquals(first, xml);
+			assertEquals(cached, writer.qnames.size());
+		}
+	}
+
+}
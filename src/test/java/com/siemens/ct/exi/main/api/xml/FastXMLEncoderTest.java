@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.api.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+
+public class FastXMLEncoderTest extends TestCase {
+
+	static final String XML = "<?xml version='1.0' encoding='UTF-8'?>\r\n"
+			+ "<!-- head --><p:root xmlns:p=\"urn:p\" xmlns=\"urn:d\">\r\n"
+			+ "  <a x='1 &lt; 2' y=\"tab\there\" xml:lang=\"en\">a &amp; b &#65;&#x42;</a>\n"
+			+ "  <p:b p:z=\"&quot;q&quot;\"/><?pi  some data?>"
+			+ "<c><![CDATA[<not markup> & ]]>\u00e4\u20ac\ud83d\ude00<!-- c --></c>"
+			+ "<d xmlns=\"\">no ns</d></p:root>";
+
+	/* reference: SAX parser drives the encoder */
+	protected byte[] encodeSAX(EXIFactory factory, byte[] xml)
+			throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				encoder);
+		xmlReader.parse(new InputSource(new ByteArrayInputStream(xml)));
+		return baos.toByteArray();
+	}
+
+	protected byte[] encodeFast(EXIFactory factory, byte[] xml)
+			throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new FastXMLEncoder(factory).encode(xml, 0, xml.length, baos);
+		return baos.toByteArray();
+	}
+
+	protected void assertSameAsSAX(EXIFactory factory, byte[] xml)
+			throws Exception {
+		assertTrue(Arrays.equals(encodeSAX(factory, xml),
+				encodeFast(factory, xml)));
+	}
+
+	public void testSchemaLess() throws Exception {
+		assertSameAsSAX(DefaultEXIFactory.newInstance(), XML.getBytes("UTF-8"));
+	}
+
+	public void testPreserveAll() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		assertSameAsSAX(factory, XML.getBytes("UTF-8"));
+	}
+
+	public void testSchemaInformed() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(GrammarFactory.newInstance().createGrammars(
+				"./data/W3C/PrimerNotebook/notebook.xsd"));
+		InputStream is = new FileInputStream(
+				"./data/W3C/PrimerNotebook/notebook.xml");
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		try {
+			byte[] b = new byte[1024];
+			int n;
+			while ((n = is.read(b)) != -1) {
+				xml.write(b, 0, n);
+			}
+		} finally {
+			is.close();
+		}
+		assertSameAsSAX(factory, xml.toByteArray());
+	}
+
+	public void testReuse() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] xml = XML.getBytes("UTF-8");
+		byte[] expected = encodeSAX(factory, xml);
+		FastXMLEncoder encoder = new FastXMLEncoder(factory);
+		for (int i = 0; i < 3; i++) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			encoder.encode(new ByteArrayInputStream(xml), baos);
+			assertTrue(Arrays.equals(expected, baos.toByteArray()));
+		}
+	}
+
+	public void testMalformed() throws Exception {
+		String[] malformed = { "<a><b></a>", "<a>", "<a/><b/>",
+				"<a>&unknown;</a>", "<!DOCTYPE a><a/>", "<p:a/>",
+				"<?xml version='1.0' encoding='ISO-8859-1'?><a/>",
+				"<a></a><", "<a x", "<a x=", "<a>&#x110000;</a>",
+				"<a>&#-1;</a>" };
+		FastXMLEncoder encoder = new FastXMLEncoder(
+				DefaultEXIFactory.newInstance());
+		for (String xml : malformed) {
+			assertMalformed(encoder, xml.getBytes("UTF-8"));
+		}
+	}
+
+	public void testMalformedUTF8() throws Exception {
+		byte[][] malformed = {
+				// truncated before end of text or attribute value
+				{ '<', 'a', '>', (byte) 0xC3, '<', '/', 'a', '>' },
+				{ '<', 'a', ' ', 'x', '=', '\'', (byte) 0xE2, (byte) 0x82,
+						'\'', '/', '>' },
+				{ '<', 'a', '>', (byte) 0xF0, (byte) 0x9F },
+				// continuation byte without lead byte
+				{ '<', 'a', '>', (byte) 0x80, '<', '/', 'a', '>' },
+				// beyond U+10FFFF
+				{ '<', 'a', '>', (byte) 0xF4, (byte) 0x90, (byte) 0x80,
+						(byte) 0x80, '<', '/', 'a', '>' } };
+		FastXMLEncoder encoder = new FastXMLEncoder(
+				DefaultEXIFactory.newInstance());
+		for (byte[] b : malformed) {
+			assertMalformed(encoder, b);
+		}
+	}
+
+	protected void assertMalformed(FastXMLEncoder encoder, byte[] xml)
+			throws Exception {
+		try {
+			encoder.encode(xml, 0, xml.length, new ByteArrayOutputStream());
+			fail("accepted " + new String(xml, "UTF-8"));
+		} catch (EXIException e) {
+			assertTrue(e.getMessage(), e.getMessage()
+					.startsWith("Malformed XML"));
+		}
+	}
+
+}
@@ -23,11 +23,21 @@
 
 package com.siemens.ct.exi.main.cmd;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.xml.namespace.QName;
 
@@ -495,4 +505,216 @@ public class EXIficientCMDTest {
 		}
 	}
 
+	@Test
+	public void testDecodeMapped() throws Exception {
+		File fExi = File.createTempFile("notebook", ".exi");
+		File fXml1 = File.createTempFile("notebook1", ".xml");
+		File fXml2 = File.createTempFile("notebook2", ".xml");
+
+		String[] argsEnc = { EXIficientCMD.ENCODE, EXIficientCMD.INPUT,
+				xmlNotebook, EXIficientCMD.OUTPUT, fExi.getPath() };
+		EXIficientCMD cmd = new EXIficientCMD();
+		cmd.parseArguments(argsEnc);
+		cmd.process();
+
+		String[] argsDec = { EXIficientCMD.DECODE, EXIficientCMD.INPUT,
+				fExi.getPath(), EXIficientCMD.OUTPUT, fXml1.getPath() };
+		cmd.parseArguments(argsDec);
+		assertFalse(cmd.mapped);
+		cmd.process();
+
+		String[] argsDecMapped = { EXIficientCMD.DECODE, EXIficientCMD.MAPPED,
+				EXIficientCMD.INPUT, fExi.getPath(), EXIficientCMD.OUTPUT,
+				fXml2.getPath() };
+		cmd.parseArguments(argsDecMapped);
+		assertTrue(cmd.mapped);
+		cmd.process();
+
+		assertTrue(fXml1.length() > 0);
+		assertTrue(Arrays.equals(Files.readAllBytes(fXml1.toPath()),
+				Files.readAllBytes(fXml2.toPath())));
+		fExi.delete();
+		fXml1.delete();
+		fXml2.delete();
+	}
+
+	@Test
+	public void testGrammarSnapshot() throws Exception {
+		File fSnapshot = File.createTempFile("notebook", ".exig");
+		fSnapshot.deleteOnExit();
+		File f1 = File.createTempFile("notebook1", ".exi");
+		File f2 = File.createTempFile("notebook2", ".exi");
+		String sOutput1 = f1.getAbsolutePath();
+		String sOutput2 = f2.getAbsolutePath();
+
+		// compile XSD and write snapshot
+		String[] args1 = { EXIficientCMD.ENCODE, EXIficientCMD.SCHEMA,
+				xsdNotebook, EXIficientCMD.GRAMMAR_SNAPSHOT,
+				fSnapshot.getPath(), EXIficientCMD.INPUT, xmlNotebook,
+				EXIficientCMD.OUTPUT, sOutput1 };
+		EXIficientCMD cmd = new EXIficientCMD();
+		cmd.parseArguments(args1);
+		cmd.process();
+		assertTrue(fSnapshot.length() > 0);
+
+		// read snapshot only
+		String[] args2 = { EXIficientCMD.ENCODE,
+				EXIficientCMD.GRAMMAR_SNAPSHOT, fSnapshot.getPath(),
+				EXIficientCMD.INPUT, xmlNotebook, EXIficientCMD.OUTPUT,
+				sOutput2 };
+		cmd.parseArguments(args2);
+		assertTrue(cmd.exiFactory.getGrammars().isSchemaInformed());
+		cmd.process();
+
+		assertTrue(Arrays.equals(Files.readAllBytes(f1.toPath()),
+				Files.readAllBytes(f2.toPath())));
+		f1.delete();
+		f2.delete();
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		File inDir = Files.createTempDirectory("batchIn").toFile();
+		File outDir = Files.createTempDirectory("batchOut").toFile();
+		File decDir = Files.createTempDirectory("batchDec").toFile();
+		File sub = new File(inDir, "sub");
+		sub.mkdir();
+		File[] inputs = { new File(inDir, "a.xml"), new File(inDir, "b.xml"),
+				new File(sub, "c.xml") };
+		for (File in : inputs) {
+			Files.copy(new File(xmlNotebook).toPath(), in.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		// not picked up, no XML file extension
+		new File(inDir, "skip.txt").createNewFile();
+
+		String[] argsEnc = { EXIficientCMD.ENCODE, EXIficientCMD.SCHEMA,
+				xsdNotebook, EXIficientCMD.INPUT, inDir.getPath(),
+				EXIficientCMD.OUTPUT, outDir.getPath(), EXIficientCMD.THREADS,
+				"2" };
+		EXIficientCMD cmd = new EXIficientCMD();
+		cmd.parseArguments(argsEnc);
+		assertTrue(cmd.batch);
+		cmd.process();
+
+		File exi = new File(outDir, "sub/c.xml"
+				+ EXIficientCMD.DEFAULT_EXI_FILE_EXTENSION);
+		assertTrue(exi.length() > 0);
+		assertFalse(new File(outDir, "skip.txt"
+				+ EXIficientCMD.DEFAULT_EXI_FILE_EXTENSION).exists());
+
+		// decode via glob, same shared grammars
+		String[] argsDec = { EXIficientCMD.DECODE, EXIficientCMD.SCHEMA,
+				xsdNotebook, EXIficientCMD.INPUT,
+				outDir.getPath() + "/**.exi", EXIficientCMD.OUTPUT,
+				decDir.getPath() };
+		cmd.parseArguments(argsDec);
+		assertTrue(cmd.batch);
+		EXIficientBatch batch = new EXIficientBatch(cmd, 2);
+		assertEquals(0, batch.run(batch.collect(cmd.input, null,
+				cmd.output)));
+		assertEquals(inputs.length, batch.getProcessed());
+
+		File xml = new File(decDir, "sub/c.xml"
+				+ EXIficientCMD.DEFAULT_EXI_FILE_EXTENSION
+				+ EXIficientCMD.DEFAULT_XML_FILE_EXTENSION);
+		assertTrue(xml.length() > 0);
+	}
+
+	@Test
+	public void testBatchSameOutput() throws Exception {
+		File dir1 = Files.createTempDirectory("batchList1").toFile();
+		File dir2 = Files.createTempDirectory("batchList2").toFile();
+		File outDir = Files.createTempDirectory("batchOut").toFile();
+		File a1 = new File(dir1, "a.xml");
+		File a2 = new File(dir2, "a.xml");
+		File b = new File(dir1, "b.xml");
+		for (File in : new File[] { a1, a2, b }) {
+			Files.copy(new File(xmlNotebook).toPath(), in.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		// absolute entries keep the name only, b is listed twice
+		File list = File.createTempFile("batchList", ".txt");
+		Files.write(list.toPath(), Arrays.asList(a1.getAbsolutePath(),
+				a2.getAbsolutePath(), b.getAbsolutePath(), b.getAbsolutePath()),
+				StandardCharsets.UTF_8);
+
+		String[] argsEnc = { EXIficientCMD.ENCODE, EXIficientCMD.INPUT,
+				dir1.getPath(), EXIficientCMD.OUTPUT, outDir.getPath() };
+		EXIficientCMD cmd = new EXIficientCMD();
+		cmd.parseArguments(argsEnc);
+		assertTrue(cmd.batch);
+		EXIficientBatch batch = new EXIficientBatch(cmd, 2);
+		List<EXIficientBatch.Job> jobs = batch.collect(null, list.getPath(),
+				outDir.getPath());
+		assertEquals(3, jobs.size());
+		assertEquals(2, batch.run(jobs));
+		assertEquals(1, batch.getProcessed());
+		assertFalse(new File(outDir, "a.xml"
+				+ EXIficientCMD.DEFAULT_EXI_FILE_EXTENSION).exists());
+		assertTrue(new File(outDir, "b.xml"
+				+ EXIficientCMD.DEFAULT_EXI_FILE_EXTENSION).length() > 0);
+		list.delete();
+	}
+
+	/* standard input and output replaced by byte arrays */
+	static class StdioCMD extends EXIficientCMD {
+		byte[] in;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		@Override
+		protected InputStream openStandardInput() {
+			return new ByteArrayInputStream(in);
+		}
+
+		@Override
+		protected OutputStream openStandardOutput() {
+			return out;
+		}
+	}
+
+	@Test
+	public void testStdio() throws Exception {
+		File fExi = File.createTempFile("notebook", ".exi");
+
+		String[] argsFile = { EXIficientCMD.ENCODE, EXIficientCMD.INPUT,
+				xmlNotebook, EXIficientCMD.OUTPUT, fExi.getPath() };
+		EXIficientCMD cmd = new EXIficientCMD();
+		cmd.parseArguments(argsFile);
+		cmd.process();
+		byte[] exi = Files.readAllBytes(fExi.toPath());
+		fExi.delete();
+
+		// encode, output defaults to standard output
+		StdioCMD stdio = new StdioCMD();
+		stdio.in = Files.readAllBytes(new File(xmlNotebook).toPath());
+		String[] argsEnc = { EXIficientCMD.ENCODE, EXIficientCMD.INPUT,
+				EXIficientCMD.STDIO };
+		stdio.parseArguments(argsEnc);
+		assertTrue(stdio.inputParametersOK);
+		assertEquals(EXIficientCMD.STDIO, stdio.output);
+		// messages must not mix with the EXI stream
+		assertTrue(stdio.messages == System.err);
+		// other instances keep printing to standard output
+		assertTrue(cmd.messages == System.out);
+		assertTrue(new EXIficientBatch(stdio, 1).messages == System.err);
+		stdio.process();
+		assertTrue(Arrays.equals(exi, stdio.out.toByteArray()));
+
+		// decode
+		stdio = new StdioCMD();
+		stdio.in = exi;
+		String[] argsDec = { EXIficientCMD.DECODE, EXIficientCMD.INPUT,
+				EXIficientCMD.STDIO, EXIficientCMD.OUTPUT,
+				EXIficientCMD.STDIO };
+		stdio.parseArguments(argsDec);
+		stdio.process();
+		assertTrue(stdio.out.toString("UTF-8").contains(
+				"<subject>shopping list</subject>"));
+
+		// back to standard output for messages
+		stdio.parseArguments(argsFile);
+		assertTrue(stdio.messages == System.out);
+	}
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import com.siemens.ct.exi.core.grammars.Grammars;
+
+public class CachingSchemaIdResolverTest extends TestCase {
+
+	static final String XSD_1 = "./data/general/order.xsd";
+	static final String XSD_2 = "./data/general/datatypes.xsd";
+	static final String XSD_3 = "./data/general/attributes.xsd";
+
+	public void testHitsAndMisses() throws Exception {
+		CachingSchemaIdResolver resolver = new CachingSchemaIdResolver();
+
+		Grammars g1 = resolver.resolveSchemaId(XSD_1);
+		Grammars g2 = resolver.resolveSchemaId(XSD_1);
+
+		assertSame(g1, g2);
+		assertEquals(1, resolver.getMissCount());
+		assertEquals(1, resolver.getHitCount());
+		assertEquals(1, resolver.size());
+	}
+
+	public void testSchemaLessNotCached() throws Exception {
+		CachingSchemaIdResolver resolver = new CachingSchemaIdResolver();
+
+		assertNotNull(resolver.resolveSchemaId(null));
+		assertEquals(0, resolver.size());
+		assertEquals(0, resolver.getMissCount());
+	}
+
+	public void testConcurrentCompileOnce() throws Exception {
+		final CachingSchemaIdResolver resolver = new CachingSchemaIdResolver();
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService service = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Grammars>> futures = new ArrayList<Future<Grammars>>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(service.submit(new Callable<Grammars>() {
+					public Grammars call() throws Exception {
+						start.await();
+						return resolver.resolveSchemaId(XSD_1);
+					}
+				}));
+			}
+			start.countDown();
+
+			Grammars g = futures.get(0).get();
+			for (Future<Grammars> f : futures) {
+				assertSame(g, f.get());
+			}
+		} finally {
+			service.shutdown();
+		}
+
+		assertEquals(1, resolver.getMissCount());
+		assertEquals(threads - 1, resolver.getHitCount());
+	}
+
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		CachingSchemaIdResolver resolver = new CachingSchemaIdResolver(2);
+
+		Grammars g1 = resolver.resolveSchemaId(XSD_1);
+		resolver.resolveSchemaId(XSD_2);
+		// touch XSD_1 so that XSD_2 becomes the eldest entry
+		assertSame(g1, resolver.resolveSchemaId(XSD_1));
+		resolver.resolveSchemaId(XSD_3);
+
+		assertEquals(2, resolver.size());
+		assertEquals(1, resolver.getEvictionCount());
+		assertSame(g1, resolver.resolveSchemaId(XSD_1));
+
+		long misses = resolver.getMissCount();
+		resolver.resolveSchemaId(XSD_2);
+		assertEquals(misses + 1, resolver.getMissCount());
+	}
+
+	public void testModifiedFileInvalidates() throws Exception {
+		File tmp = File.createTempFile("exi-cache", ".xsd");
+		tmp.deleteOnExit();
+		copy(new File(XSD_1), tmp);
+
+		CachingSchemaIdResolver resolver = new CachingSchemaIdResolver();
+		String schemaId = tmp.getPath();
+
+		Grammars g1 = resolver.resolveSchemaId(schemaId);
+		assertSame(g1, resolver.resolveSchemaId(schemaId));
+
+		assertTrue(tmp.setLastModified(tmp.lastModified() - 10000));
+		Grammars g2 = resolver.resolveSchemaId(schemaId);
+
+		assertNotSame(g1, g2);
+		assertEquals(2, resolver.getMissCount());
+		assertEquals(1, resolver.size());
+	}
+
+	public void testInvalidate() throws Exception {
+		CachingSchemaIdResolver resolver = new CachingSchemaIdResolver();
+
+		Grammars g1 = resolver.resolveSchemaId(XSD_1);
+		resolver.invalidate(XSD_1);
+		assertEquals(0, resolver.size());
+		assertNotSame(g1, resolver.resolveSchemaId(XSD_1));
+	}
+
+	static void copy(File from, File to) throws IOException {
+		InputStream is = new FileInputStream(from);
+		try {
+			OutputStream os = new FileOutputStream(to);
+			try {
+				byte[] buf = new byte[4096];
+				int len;
+				while ((len = is.read(buf)) != -1) {
+					os.write(buf, 0, len);
+				}
+			} finally {
+				os.close();
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+}
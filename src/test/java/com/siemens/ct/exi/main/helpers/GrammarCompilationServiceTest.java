@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.util.XMLResourceIdentifierImpl;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+
+public class GrammarCompilationServiceTest extends TestCase {
+
+	GrammarCompilationService service;
+
+	@Override
+	protected void setUp() throws Exception {
+		service = new GrammarCompilationService();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		service.shutdown();
+	}
+
+	public void testCompile() throws Exception {
+		String xsd = "./data/general/order.xsd";
+		Grammars g = GrammarCompilationService.get(service.compile(xsd));
+
+		assertTrue(g.isSchemaInformed());
+		assertTrue(Arrays.equals(GrammarCompilationService
+				.fingerprint(GrammarFactory.newInstance().createGrammars(xsd)),
+				GrammarCompilationService.fingerprint(g)));
+	}
+
+	public void testCompileDirectory() throws Exception {
+		Map<String, Future<Grammars>> futures = service
+				.compileDirectory(new File("./data/W3C/PrimerNotebook"));
+
+		assertEquals(1, futures.size());
+		for (Future<Grammars> f : futures.values()) {
+			assertTrue(GrammarCompilationService.get(f).isSchemaInformed());
+		}
+	}
+
+	public void testCompileCatalog() throws Exception {
+		File catalog = File.createTempFile("catalog", ".txt");
+		catalog.deleteOnExit();
+		Writer w = new OutputStreamWriter(new FileOutputStream(catalog),
+				"UTF-8");
+		try {
+			w.write("# schemas\n");
+			w.write(new File("./data/general/order.xsd").getAbsolutePath()
+					+ "\n");
+			w.write("\n");
+			w.write(new File("./data/general/randj.xsd").getAbsolutePath()
+					+ "\n");
+		} finally {
+			w.close();
+		}
+
+		Map<String, Future<Grammars>> futures = service
+				.compileCatalog(catalog);
+		assertEquals(2, futures.size());
+		for (Future<Grammars> f : futures.values()) {
+			assertTrue(GrammarCompilationService.get(f).isSchemaInformed());
+		}
+	}
+
+	public void testSharedImports() throws Exception {
+		SharedImportsEntityResolver resolver = new SharedImportsEntityResolver();
+		resolver.addLocation("http://www.w3.org/2001/xml.xsd",
+				"./data/W3C/xsd/xml.xsd");
+		GrammarCompilationService s = new GrammarCompilationService(
+				new java.util.concurrent.ForkJoinPool(4), resolver);
+		try {
+			Map<String, Future<Grammars>> futures = s.compileAll(Arrays
+					.asList("./data/W3C/xhtml/xhtml1-strict.xsd",
+							"./data/W3C/xhtml/xhtml1-transitional.xsd",
+							"./data/schema/attributeSpace.xsd"));
+			for (Future<Grammars> f : futures.values()) {
+				assertTrue(GrammarCompilationService.get(f).isSchemaInformed());
+			}
+			// xhtml schemas share the mapped xml.xsd, attributeSpace.xsd
+			// imports its local copy
+			assertEquals(2, resolver.size());
+		} finally {
+			s.pool.shutdown();
+		}
+	}
+
+	public void testSharedImportsDelegate() throws Exception {
+		final File xmlXsd = new File("./data/W3C/xsd/xml.xsd");
+		SharedImportsEntityResolver resolver = new SharedImportsEntityResolver(
+				new XMLEntityResolver() {
+					public XMLInputSource resolveEntity(
+							XMLResourceIdentifier resourceIdentifier)
+							throws IOException {
+						if ("urn:chars".equals(resourceIdentifier
+								.getLiteralSystemId())) {
+							return new XMLInputSource(null, null, null,
+									new StringReader("<a>\u00e4</a>"), null);
+						}
+						// redirected by systemId only
+						return new XMLInputSource(null, xmlXsd.toURI()
+								.toString(), null);
+					}
+				});
+
+		XMLInputSource xis = resolver
+				.resolveEntity(new XMLResourceIdentifierImpl(null,
+						"urn:chars", null, "urn:chars"));
+		assertEquals("UTF-8", xis.getEncoding());
+		assertEquals("<a>\u00e4</a>", new String(
+				SharedImportsEntityResolver.read(xis.getByteStream(), null).content,
+				"UTF-8"));
+
+		String xmlNS = "http://www.w3.org/2001/xml.xsd";
+		xis = resolver.resolveEntity(new XMLResourceIdentifierImpl(null,
+				xmlNS, null, xmlNS));
+		assertEquals(xmlNS, xis.getSystemId());
+		assertEquals(Files.size(xmlXsd.toPath()), SharedImportsEntityResolver
+				.read(xis.getByteStream(), null).content.length);
+		assertEquals(2, resolver.size());
+	}
+
+	/* relative systemIds without expanded form resolve against the base */
+	public void testSharedImportsRelative() throws Exception {
+		File dir = new File("./data/W3C/xsd").getCanonicalFile();
+		SharedImportsEntityResolver resolver = new SharedImportsEntityResolver();
+		XMLInputSource xis = resolver
+				.resolveEntity(new XMLResourceIdentifierImpl(null, "xml.xsd",
+						new File(dir, "XMLSchema.xsd").toURI().toString(), null));
+		assertEquals(new File(dir, "xml.xsd").toURI().toString(),
+				xis.getSystemId());
+		assertEquals(Files.size(new File(dir, "xml.xsd").toPath()),
+				SharedImportsEntityResolver.read(xis.getByteStream(), null).content.length);
+	}
+
+	public void testDeterministic() throws Exception {
+		assertTrue(service.isDeterministic("./data/general/randj.xsd", 8));
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.EXIResult;
+
+public class GrammarSnapshotTest extends TestCase {
+
+	protected byte[] encode(Grammars grammars, String xml) throws Exception {
+		EXIFactory exiFactory = DefaultEXIFactory.newInstance();
+		exiFactory.setGrammars(grammars);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EXIResult exiResult = new EXIResult(exiFactory);
+		exiResult.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		InputStream is = new FileInputStream(xml);
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return baos.toByteArray();
+	}
+
+	protected void _test(String xsd, String xml) throws Exception {
+		Grammars grammars = GrammarFactory.newInstance().createGrammars(xsd);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GrammarSnapshot.write(grammars, baos);
+		Grammars loaded = GrammarSnapshot.read(new ByteArrayInputStream(baos
+				.toByteArray()));
+
+		assertEquals(grammars.isSchemaInformed(), loaded.isSchemaInformed());
+		assertEquals(grammars.getSchemaId(), loaded.getSchemaId());
+		assertEquals(grammars, loaded);
+		// identical grammars produce identical EXI streams
+		byte[] expected = encode(grammars, xml);
+		byte[] actual = encode(loaded, xml);
+		assertTrue(java.util.Arrays.equals(expected, actual));
+	}
+
+	public void testNotebook() throws Exception {
+		_test("./data/W3C/PrimerNotebook/notebook.xsd",
+				"./data/W3C/PrimerNotebook/notebook.xml");
+	}
+
+	public void testOrder() throws Exception {
+		_test("./data/general/order.xsd", "./data/general/order.xml");
+	}
+
+	public void testFile() throws Exception {
+		Grammars grammars = GrammarFactory.newInstance().createGrammars(
+				"./data/W3C/PrimerNotebook/notebook.xsd");
+		File f = File.createTempFile("notebook", ".exig");
+		f.deleteOnExit();
+		GrammarSnapshot.write(grammars, f);
+		Grammars loaded = GrammarSnapshot.read(f);
+
+		assertTrue(java.util.Arrays.equals(
+				encode(grammars, "./data/W3C/PrimerNotebook/notebook.xml"),
+				encode(loaded, "./data/W3C/PrimerNotebook/notebook.xml")));
+	}
+
+	public void testXSDTypesOnly() throws Exception {
+		Grammars grammars = GrammarFactory.newInstance()
+				.createXSDTypesOnlyGrammars();
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GrammarSnapshot.write(grammars, baos);
+		Grammars loaded = GrammarSnapshot.read(new ByteArrayInputStream(baos
+				.toByteArray()));
+
+		assertTrue(loaded.isBuiltInXMLSchemaTypesOnly());
+		assertEquals("", loaded.getSchemaId());
+	}
+
+	public void testNoSnapshot() throws Exception {
+		try {
+			GrammarSnapshot.read(new ByteArrayInputStream(new byte[] { 'E',
+					'X', 'I', '$', 0 }));
+			fail("Not a snapshot");
+		} catch (EXIException e) {
+			// expected
+		}
+	}
+
+	public void testSchemaLessFails() throws Exception {
+		try {
+			GrammarSnapshot.write(GrammarFactory.newInstance()
+					.createSchemaLessGrammars(), new ByteArrayOutputStream());
+			fail("Schema-less grammars cannot be persisted");
+		} catch (EXIException e) {
+			// expected
+		}
+	}
+
+}
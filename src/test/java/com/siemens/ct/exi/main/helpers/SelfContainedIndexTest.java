@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.sax.SelfContainedFragmentReader;
+
+public class SelfContainedIndexTest extends TestCase {
+
+	static final int RECORDS = 50;
+
+	static final QName REC = new QName("", "rec");
+
+	/* collects the events of one fragment */
+	static class FragmentHandler extends DefaultHandler {
+		final StringBuilder sb = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) {
+			sb.append('<').append(localName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				sb.append(' ').append(attributes.getLocalName(i)).append('=')
+						.append(attributes.getValue(i));
+			}
+			sb.append('>');
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			sb.append("</").append(localName).append('>');
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			sb.append(ch, start, length);
+		}
+	}
+
+	protected String createXML() {
+		StringBuilder sb = new StringBuilder("<log>");
+		for (int i = 0; i < RECORDS; i++) {
+			sb.append("<rec id=\"" + i + "\"><msg>message " + i
+					+ "</msg></rec>");
+			if (i % 10 == 0) {
+				sb.append("<mark>" + i + "</mark>");
+			}
+		}
+		return sb.append("</log>").toString();
+	}
+
+	protected EXIFactory createFactory(CodingMode codingMode)
+			throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(codingMode);
+		factory.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_SC,
+				true);
+		return factory;
+	}
+
+	protected byte[] encode(EXIFactory factory, SelfContainedIndex index)
+			throws Exception {
+		factory.setSelfContainedElements(new QName[] { REC }, index);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(index.track(baos));
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(new StringReader(createXML())));
+		return baos.toByteArray();
+	}
+
+	protected static String expected(int i) {
+		return "<rec id=" + i + "><msg>message " + i + "</msg></rec>";
+	}
+
+	protected void _test(CodingMode codingMode) throws Exception {
+		EXIFactory factory = createFactory(codingMode);
+		SelfContainedIndex index = new SelfContainedIndex();
+		byte[] exi = encode(factory, index);
+
+		assertEquals(RECORDS, index.size());
+		for (int i = 0; i < RECORDS; i++) {
+			assertEquals(REC, index.getQName(i));
+			assertTrue(index.getOffset(i) < exi.length);
+			if (i > 0) {
+				assertTrue(index.getOffset(i) > index.getOffset(i - 1));
+			}
+		}
+
+		SelfContainedFragmentReader reader = new SelfContainedFragmentReader(
+				factory, index);
+		int[] ordinals = { 0, 37, RECORDS - 1, 5 };
+		for (int ordinal : ordinals) {
+			FragmentHandler handler = new FragmentHandler();
+			reader.parseFragment(ordinal, ByteBuffer.wrap(exi), handler);
+			assertEquals(expected(ordinal), handler.sb.toString());
+		}
+
+		// seek in file
+		File file = File.createTempFile("scindex", ".exi");
+		try {
+			FileOutputStream fos = new FileOutputStream(file);
+			fos.write(exi);
+			fos.close();
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				FragmentHandler handler = new FragmentHandler();
+				reader.parseFragment(42, channel, handler);
+				assertEquals(expected(42), handler.sb.toString());
+			} finally {
+				raf.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testBitPacked() throws Exception {
+		_test(CodingMode.BIT_PACKED);
+	}
+
+	public void testBytePacked() throws Exception {
+		_test(CodingMode.BYTE_PACKED);
+	}
+
+	public void testWriteRead() throws Exception {
+		SelfContainedIndex index = new SelfContainedIndex();
+		encode(createFactory(CodingMode.BIT_PACKED), index);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		index.write(baos);
+		SelfContainedIndex index2 = SelfContainedIndex
+				.read(new ByteArrayInputStream(baos.toByteArray()));
+		assertEquals(index.size(), index2.size());
+		for (int i = 0; i < index.size(); i++) {
+			assertEquals(index.getQName(i), index2.getQName(i));
+			assertEquals(index.getOffset(i), index2.getOffset(i));
+		}
+		assertEquals(7, index2.indexOf(REC, 7));
+		assertEquals(-1, index2.indexOf(new QName("", "mark"), 0));
+	}
+
+}
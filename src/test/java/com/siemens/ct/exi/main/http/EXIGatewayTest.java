@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class EXIGatewayTest extends TestCase {
+
+	static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<notebook date=\"2007-09-12\"><note category=\"EXI\">"
+			+ "<subject>EXI</subject><body>Do not forget it!</body></note>"
+			+ "</notebook>";
+
+	EXIFactory factory;
+	EXIGateway gateway;
+
+	static class Response {
+		int status;
+		String contentType;
+		byte[] body;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		factory = DefaultEXIFactory.newInstance();
+		gateway = new EXIGateway(factory);
+		gateway.start(new InetSocketAddress("localhost", 0));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		gateway.stop(0);
+	}
+
+	protected byte[] encode(String xml) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(baos);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(new StringReader(xml)));
+		return baos.toByteArray();
+	}
+
+	protected Response post(String path, String contentType, String accept,
+			byte[] body) throws Exception {
+		HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:"
+				+ gateway.getPort() + path).openConnection();
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		conn.setRequestProperty("Content-Type", contentType);
+		if (accept != null) {
+			conn.setRequestProperty("Accept", accept);
+		}
+		OutputStream os = conn.getOutputStream();
+		os.write(body);
+		os.close();
+
+		Response r = new Response();
+		r.status = conn.getResponseCode();
+		r.contentType = conn.getContentType();
+		InputStream is = r.status >= 400 ? conn.getErrorStream() : conn
+				.getInputStream();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		if (is != null) {
+			EXIGateway.copy(is, baos);
+			is.close();
+		}
+		r.body = baos.toByteArray();
+		conn.disconnect();
+		return r;
+	}
+
+	public void testEncode() throws Exception {
+		Response r = post("/", "application/xml; charset=UTF-8",
+				EXIGateway.MEDIA_TYPE_EXI, XML.getBytes("UTF-8"));
+		assertEquals(200, r.status);
+		assertEquals(EXIGateway.MEDIA_TYPE_EXI, r.contentType);
+		assertTrue(Arrays.equals(encode(XML), r.body));
+	}
+
+	public void testDecode() throws Exception {
+		// no Accept, EXI is answered with XML
+		Response r = post("/", EXIGateway.MEDIA_TYPE_EXI, null, encode(XML));
+		assertEquals(200, r.status);
+		assertEquals(EXIGateway.MEDIA_TYPE_XML, r.contentType);
+		String xml = new String(r.body, "UTF-8");
+		assertTrue(xml, xml.contains("<subject>EXI</subject>"));
+
+		// round trip
+		assertTrue(Arrays.equals(encode(XML), encode(xml)));
+	}
+
+	public void testRepeated() throws Exception {
+		byte[] exi = encode(XML);
+		for (int i = 0; i < 10; i++) {
+			Response r = post("/", "text/xml", null, XML.getBytes("UTF-8"));
+			assertEquals(200, r.status);
+			assertTrue(Arrays.equals(exi, r.body));
+		}
+		assertEquals(10, gateway.getRequestCount());
+		assertEquals(10, gateway.getCoderPool().getBorrowedCount());
+		// at most one writer per request thread
+		assertTrue(gateway.getCoderPool().getCreatedCount() <= Runtime
+				.getRuntime().availableProcessors());
+	}
+
+	public void testErrors() throws Exception {
+		assertEquals(415, post("/", "text/plain", null, new byte[1]).status);
+		assertEquals(406, post("/", EXIGateway.MEDIA_TYPE_XML, "image/png",
+				XML.getBytes("UTF-8")).status);
+		assertEquals(400, post("/", EXIGateway.MEDIA_TYPE_XML, null,
+				"<a><b></a>".getBytes("UTF-8")).status);
+		assertEquals(3, gateway.getRequestCount());
+		assertEquals(1, gateway.getFailureCount());
+	}
+
+	public void testNegotiate() {
+		String exi = EXIGateway.MEDIA_TYPE_EXI;
+		String xml = EXIGateway.MEDIA_TYPE_XML;
+		assertEquals(exi, EXIGateway.negotiate(null, exi));
+		assertEquals(xml, EXIGateway.negotiate("*/*", xml));
+		assertEquals(xml, EXIGateway.negotiate("text/xml", exi));
+		assertEquals(exi, EXIGateway.negotiate("application/*", exi));
+		assertEquals(exi,
+				EXIGateway.negotiate("application/xml;q=0.5, */*", xml));
+		assertEquals(xml, EXIGateway.negotiate(
+				"application/exi;q=0, application/*", exi));
+		assertNull(EXIGateway.negotiate("text/html, image/*", exi));
+
+		assertEquals(xml, EXIGateway.getMediaType("application/atom+xml"));
+		assertEquals(exi, EXIGateway.getMediaType("Application/EXI; q=1"));
+		assertNull(EXIGateway.getMediaType("text/plain"));
+	}
+
+	public void testForward() throws Exception {
+		// XML service that echoes its request
+		HttpServer upstream = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		upstream.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				EXIGateway.copy(exchange.getRequestBody(), baos);
+				exchange.getResponseHeaders().set("Content-Type",
+						exchange.getRequestHeaders().getFirst("Content-Type"));
+				exchange.sendResponseHeaders(200, baos.size());
+				exchange.getResponseBody().write(baos.toByteArray());
+				exchange.close();
+			}
+		});
+		upstream.start();
+		try {
+			gateway.setUpstream("http://localhost:"
+					+ upstream.getAddress().getPort() + "/");
+			byte[] exi = encode(XML);
+			Response r = post("/service?id=1", EXIGateway.MEDIA_TYPE_EXI,
+					null, exi);
+			assertEquals(200, r.status);
+			assertEquals(EXIGateway.MEDIA_TYPE_EXI, r.contentType);
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			gateway.transcode(new ByteArrayInputStream(r.body),
+					EXIGateway.MEDIA_TYPE_EXI, baos, EXIGateway.MEDIA_TYPE_XML);
+			assertTrue(baos.toString("UTF-8").contains(
+					"<body>Do not forget it!</body>"));
+		} finally {
+			upstream.stop(0);
+		}
+
+		// unreachable upstream
+		gateway.setUpstream("http://localhost:1");
+		assertEquals(502, post("/", EXIGateway.MEDIA_TYPE_XML, null,
+				XML.getBytes("UTF-8")).status);
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+public class FragmentUtilitiesTest extends TestCase {
+
+	public void testSurroundingRoot() throws Exception {
+		InputStream is = FragmentUtilities
+				.getSurroundingRootInputStream(new ByteArrayInputStream(
+						"<a/><b>x</b>".getBytes("UTF-8")));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] b = new byte[3];
+		int n;
+		while ((n = is.read(b)) != -1) {
+			baos.write(b, 0, n);
+		}
+		assertEquals("<root><a/><b>x</b></root>", baos.toString("UTF-8"));
+	}
+
+	public void testSourceNotClosed() throws Exception {
+		final boolean[] closed = new boolean[1];
+		InputStream source = new ByteArrayInputStream("<a/>".getBytes("UTF-8")) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		InputStream is = FragmentUtilities.getSurroundingInputStream(source,
+				"fragment");
+		while (is.read() != -1) {
+		}
+		is.close();
+		assertFalse(closed[0]);
+	}
+
+	public void testStreamed() throws Exception {
+		// 256 MB of fragment content, never held in memory
+		final long size = 256L << 20;
+		InputStream source = new InputStream() {
+			long remaining = size;
+
+			@Override
+			public int read() {
+				return remaining-- > 0 ? ' ' : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int n = (int) Math.min(len, remaining);
+				remaining -= n;
+				return n;
+			}
+		};
+		InputStream is = FragmentUtilities.getSurroundingRootInputStream(source);
+		byte[] b = new byte[1 << 16];
+		long total = 0;
+		int n;
+		while ((n = is.read(b)) != -1) {
+			total += n;
+		}
+		assertEquals(size + "<root></root>".length(), total);
+	}
+
+}
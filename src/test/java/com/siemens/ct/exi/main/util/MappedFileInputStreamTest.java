@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+
+public class MappedFileInputStreamTest extends TestCase {
+
+	protected File data;
+	protected byte[] bytes;
+
+	@Override
+	protected void setUp() throws Exception {
+		bytes = new byte[1000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		data = write(bytes);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		data.delete();
+	}
+
+	protected static File write(byte[] b) throws IOException {
+		File f = File.createTempFile("mapped", ".bin");
+		FileOutputStream fos = new FileOutputStream(f);
+		fos.write(b);
+		fos.close();
+		return f;
+	}
+
+	public void testReadAcrossWindows() throws Exception {
+		// window sizes smaller, equal and larger than the file
+		int[] windowSizes = { 1, 7, 64, 1000, 4096 };
+		for (int windowSize : windowSizes) {
+			MappedFileInputStream mis = new MappedFileInputStream(data,
+					windowSize);
+			try {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				assertEquals(bytes[0] & 0xFF, mis.read());
+				baos.write(bytes[0]);
+				byte[] b = new byte[13];
+				int n;
+				while ((n = mis.read(b, 0, b.length)) > 0) {
+					baos.write(b, 0, n);
+				}
+				assertEquals(-1, mis.read());
+				assertEquals(bytes.length, mis.getPosition());
+				assertTrue(Arrays.equals(bytes, baos.toByteArray()));
+			} finally {
+				mis.close();
+			}
+		}
+	}
+
+	public void testSkipSeekMark() throws Exception {
+		MappedFileInputStream mis = new MappedFileInputStream(data, 10);
+		try {
+			assertEquals(95, mis.skip(95));
+			assertEquals(bytes[95] & 0xFF, mis.read());
+			mis.mark(0);
+			mis.seek(3);
+			assertEquals(bytes[3] & 0xFF, mis.read());
+			mis.reset();
+			assertEquals(bytes[96] & 0xFF, mis.read());
+			assertEquals(bytes.length - 97, mis.available());
+			assertEquals(bytes.length - 97, mis.skip(5000));
+			assertEquals(-1, mis.read());
+		} finally {
+			mis.close();
+		}
+		try {
+			mis.read();
+			fail("read after close");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testEmptyFile() throws Exception {
+		File f = write(new byte[0]);
+		try {
+			MappedFileInputStream mis = new MappedFileInputStream(f);
+			assertEquals(-1, mis.read());
+			assertEquals(-1, mis.read(new byte[4], 0, 4));
+			mis.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+	public void testDecode() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		ByteArrayOutputStream exi = new ByteArrayOutputStream();
+		encoder.setOutputStream(exi);
+		XMLReader xmlReader = new SAXFactory(factory).createEXIReader();
+		XMLReader xmlParser = XMLReaderFactory.createXMLReader();
+		xmlParser.setContentHandler(encoder);
+		xmlParser.parse("./data/W3C/PrimerNotebook/notebook.xml");
+
+		File f = write(exi.toByteArray());
+		try {
+			// decode from small windows and re-encode
+			ByteArrayOutputStream reencoded = new ByteArrayOutputStream();
+			encoder.reset(reencoded);
+			xmlReader.setContentHandler(encoder);
+			MappedFileInputStream mis = new MappedFileInputStream(f, 16);
+			try {
+				xmlReader.parse(new InputSource(mis));
+			} finally {
+				mis.close();
+			}
+			assertTrue(Arrays.equals(exi.toByteArray(),
+					reencoded.toByteArray()));
+		} finally {
+			f.delete();
+		}
+	}
+
+}